@@ -6,6 +6,9 @@ import java.util.concurrent.TimeUnit;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fides.server.tools.CleanerTask;
+import org.fides.server.tools.MetricsTask;
+import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.UploadCleanerTask;
 
 /**
  * The main app to run
@@ -23,18 +26,45 @@ public class App {
 	 *            unused
 	 */
 	public static void main(String[] args) {
-		Server server;
+		final Server server;
 		drawLogo();
 
 		LOG.trace("Starting server");
 		server = new Server();
+
+		PropertiesManager propertiesManager = PropertiesManager.getInstance();
+		if (propertiesManager.isWarmupEnabled()) {
+			LOG.trace("Warming up");
+			Warmup.run(propertiesManager.getWarmupMaxSeconds());
+		}
+
 		Thread serverThread = new Thread(server);
 		serverThread.start();
 
+		// Let the clients finish their current action when the process is stopped
+		final int drainTimeout = propertiesManager.getDrainTimeoutInSeconds();
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				LOG.info("Shutting down, draining the connections for at most " + drainTimeout + " seconds");
+				server.shutdown(drainTimeout);
+			}
+		}, "ShutdownHook"));
+
 		LOG.trace("Starting timer for cleaner");
 		Timer timer = new Timer("CleanerTimer");
 		long timeToClean = TimeUnit.DAYS.toMillis(1);
 		timer.scheduleAtFixedRate(new CleanerTask(), 0, timeToClean);
+		// An upload expires after a number of hours, so it is removed at most an hour late
+		long timeToCleanUploads = TimeUnit.HOURS.toMillis(1);
+		timer.scheduleAtFixedRate(new UploadCleanerTask(), 0, timeToCleanUploads);
+
+		int metricsInterval = propertiesManager.getMetricsIntervalInSeconds();
+		if (metricsInterval > 0) {
+			LOG.trace("Starting timer for metrics");
+			long timeToReport = TimeUnit.SECONDS.toMillis(metricsInterval);
+			timer.scheduleAtFixedRate(new MetricsTask(), timeToReport, timeToReport);
+		}
 
 	}
 
@@ -1,14 +1,20 @@
 package org.fides.server;
 
+import java.io.BufferedInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLSocket;
 
@@ -19,13 +25,26 @@ import org.fides.components.Actions;
 import org.fides.components.Responses;
 import org.fides.server.files.UserFile;
 import org.fides.server.files.UserManager;
+import org.fides.server.mux.MuxSession;
+import org.fides.server.mux.StreamHandler;
+import org.fides.server.protocol.MessageCodec;
+import org.fides.server.protocol.MessageCodecs;
+import org.fides.server.protocol.ProtocolInputStream;
+import org.fides.server.protocol.ProtocolOutputStream;
+import org.fides.server.tools.CoalescingOutputStream;
 import org.fides.server.tools.CommunicationUtil;
 import org.fides.server.tools.Errors;
+import org.fides.server.tools.FlushingInputStream;
 import org.fides.server.tools.JsonObjectHandler;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.ServerActions;
+import org.fides.server.tools.TransferMonitor;
 import org.fides.server.tools.UserLocker;
 
-import com.google.gson.Gson;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * Runnable to create a thread for the handling of a client
@@ -40,16 +59,59 @@ public class Client implements Runnable {
 
 	private final Socket server;
 
+	/** The time a client may be idle between actions, 0 for no limit */
+	private final int idleTimeoutMillis;
+
+	/** The time a read may block during an action, 0 for no limit */
+	private final int readTimeoutMillis;
+
+	/** The amount of requests which are read ahead, 0 or 1 reads a request after the previous one is answered */
+	private final int maxPipelinedRequests;
+
+	/** The amount of streams a multiplexed session may have open */
+	private final int maxStreams;
+
+	/** The window of a stream of a multiplexed session */
+	private final int streamWindowSize;
+
 	private UserFile userFile;
 
+	private ClientFileConnector clientFileConnector;
+
+	/** Measures the throughput of the actions, only used by {@link #run()} */
+	private TransferMonitor transferMonitor;
+
+	/** Whether an action is being handled, guarded by this */
+	private boolean busy;
+
+	/** Whether the server is shutting down, guarded by this */
+	private boolean draining;
+
+	/** The multiplexed session of the connection, guarded by this */
+	private MuxSession muxSession;
+
 	/**
 	 * Constructor for client connection
 	 * 
 	 * @param server
 	 *            socket for the connection with the client
 	 */
-	public Client(SSLSocket server) {
+	public Client(Socket server) {
 		this.server = server;
+		PropertiesManager propertiesManager = PropertiesManager.getInstance();
+		this.idleTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(propertiesManager.getIdleTimeoutInSeconds());
+		this.readTimeoutMillis = (int) TimeUnit.SECONDS.toMillis(propertiesManager.getReadTimeoutInSeconds());
+		this.maxPipelinedRequests = propertiesManager.getMaxPipelinedRequests();
+		this.maxStreams = propertiesManager.getMaxStreamsPerConnection();
+		this.streamWindowSize = propertiesManager.getStreamWindowSize();
+	}
+
+	/**
+	 * Constructor for a client connection of which the requests are read by the transport itself, see
+	 * {@link #handleRequest(JsonObject, DataInputStream, DataOutputStream)}
+	 */
+	public Client() {
+		this(null);
 	}
 
 	/**
@@ -57,47 +119,70 @@ public class Client implements Runnable {
 	 */
 	public void run() {
 		JsonObject requestObject;
-		try (DataInputStream in = new DataInputStream(server.getInputStream());
-			DataOutputStream out = new DataOutputStream(server.getOutputStream())) {
+		transferMonitor = new TransferMonitor(server);
+		// The responses are collected and sent when the server waits for the next request
+		try (InputStream socketIn = transferMonitor.wrap(server.getInputStream());
+			CoalescingOutputStream rawOut = new CoalescingOutputStream(transferMonitor.wrap(server.getOutputStream()))) {
+			PushbackInputStream rawIn = new PushbackInputStream(new FlushingInputStream(socketIn, rawOut), MessageCodecs.PREAMBLE_SIZE);
+			// The client chooses between the JSON messages and the binary frames with its first bytes
+			setReadTimeout(idleTimeoutMillis);
+			MessageCodec codec = MessageCodecs.negotiate(rawIn, rawOut);
+			DataInputStream in = new ProtocolInputStream(rawIn, codec);
+			DataOutputStream out = new ProtocolOutputStream(rawOut, codec);
+
 			// While user is not logged in
 			while (userFile == null) {
-				requestObject = new Gson().fromJson(in.readUTF(), JsonObject.class);
+				requestObject = readRequest(in);
+				if (!startAction()) {
+					return;
+				}
 
 				String action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
-
-				switch (action) {
-				case Actions.CREATE_USER:
-					UserManager.createUser(requestObject, out);
-					break;
-				case Actions.LOGIN:
-					userFile = UserManager.authenticateUser(requestObject, out);
-					break;
-				case Actions.DISCONNECT:
+				boolean connected;
+				try {
+					connected = handleLoginAction(action, requestObject, out);
+				} finally {
+					// Stop after the current action when the server is shutting down, also before a user logged in
+					if (!endAction()) {
+						if (userFile != null) {
+							UserLocker.unlock(userFile.getUsernameHash());
+						}
+						return;
+					}
+				}
+				if (!connected) {
 					return;
-				default:
-					CommunicationUtil.returnError(out, Errors.UNKNOWN_ACTION);
-					break;
 				}
 			}
 
-			// Update timestamp of all files
-			userFile.touch();
-
 			// Start the reading and handling of user actions.
-			ClientFileConnector clientFileConnector = new ClientFileConnector(userFile);
+			// A connection which isn't encrypted comes from a local TLS terminator
+			ClientFileConnector clientFileConnector = new ClientFileConnector(userFile, !(server instanceof SSLSocket));
+			clientFileConnector.forgetExpiredUploads();
 			handleActions(in, clientFileConnector, out);
 
 		} catch (EOFException e) {
 			LOG.debug("Closed by client don't throw an error message");
+		} catch (SocketTimeoutException e) {
+			LOG.debug("Session timed out", e);
+			if (userFile != null) {
+				Metrics.increment("session.reclaimed");
+			}
 		} catch (IOException e) {
-			LOG.error("IOException on server socket listen", e);
+			if (isDraining()) {
+				LOG.debug("Connection closed while the server is shutting down", e);
+			} else {
+				LOG.error("IOException on server socket listen", e);
+			}
 		} finally {
 			IOUtils.closeQuietly(server);
+			transferMonitor.close();
 		}
 	}
 
 	/**
 	 * Keeps listening to actions from the client and handles them. Will stop listening when it receives a disconnect.
+	 * When pipelining is enabled the next requests are read by a {@link RequestPipeline} while an action is handled.
 	 * 
 	 * @param in
 	 *            The InputStream with input from the client
@@ -108,52 +193,454 @@ public class Client implements Runnable {
 	 * @throws EOFException
 	 * @throws IOException
 	 */
-	public void handleActions(DataInputStream in, ClientFileConnector clientFileConnector, DataOutputStream out) throws IOException {
+	public void handleActions(final DataInputStream in, ClientFileConnector clientFileConnector, DataOutputStream out) throws IOException {
+		RequestPipeline pipeline = null;
+		if (maxPipelinedRequests > 1) {
+			// Read the next requests while the current one is handled
+			pipeline = new RequestPipeline(maxPipelinedRequests, new RequestPipeline.StreamRequestReader(in) {
+				@Override
+				public void awaitRequest() throws IOException {
+					setReadTimeout(idleTimeoutMillis);
+					super.awaitRequest();
+				}
+
+				@Override
+				public JsonObject readRequest() throws IOException {
+					// The rest of the request and the input of its action aren't idle time
+					setReadTimeout(readTimeoutMillis);
+					return super.readRequest();
+				}
+			});
+			pipeline.start();
+		}
+
 		try {
-			JsonObject requestObject = new Gson().fromJson(in.readUTF(), JsonObject.class);
-			String action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
-			while (!action.equals(Actions.DISCONNECT)) {
-				LOG.trace("Action: " + action);
-
-				switch (action) {
-				case Actions.GET_KEY_FILE:
-					clientFileConnector.downloadKeyFile(out);
-					break;
-				case Actions.GET_FILE:
-					clientFileConnector.downloadFile(requestObject, out);
-					break;
-				case Actions.UPDATE_KEY_FILE:
-					clientFileConnector.updateKeyFile(in, out);
-					break;
-				case Actions.UPDATE_FILE:
-					clientFileConnector.updateFile(in, requestObject, out);
-					break;
-				case Actions.UPLOAD_FILE:
-					clientFileConnector.uploadFile(in, out);
-					break;
-				case Actions.REMOVE_FILE:
-					clientFileConnector.removeFile(requestObject, out);
-					break;
-				case Actions.REQUEST_LOCATIONS:
-					requestLocations(out);
-					break;
-				default:
-					CommunicationUtil.returnError(out, Errors.UNKNOWN_ACTION);
-					out.close();
+			boolean connected = true;
+			while (connected) {
+				JsonObject requestObject;
+				if (pipeline == null) {
+					requestObject = readRequest(in);
+				} else {
+					if (pipeline.isEmpty()) {
+						// Send the answers before waiting for the client
+						out.flush();
+					}
+					requestObject = pipeline.take();
+				}
+				if (!startAction()) {
 					break;
 				}
-				requestObject = new Gson().fromJson(in.readUTF(), JsonObject.class);
-				action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
+				String action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
+				try {
+					connected = handleUserAction(action, requestObject, in, clientFileConnector, out);
+				} finally {
+					// Stop after the current action when the server is shutting down
+					if (!endAction()) {
+						connected = false;
+					}
+					if (pipeline != null) {
+						pipeline.finished(requestObject);
+					}
+				}
 			}
 		} catch (SocketException e) {
 			LOG.debug("Closed by client don't throw an error message");
 		} finally {
+			if (pipeline != null) {
+				pipeline.stop();
+			}
 			UserLocker.unlock(userFile.getUsernameHash());
 		}
 
 		LOG.trace("Action: " + Actions.DISCONNECT);
 	}
 
+	/**
+	 * Handles a single request of the client. This is used by transports which read the requests from the connection
+	 * themselves instead of dedicating a thread to {@link #run()}.
+	 * 
+	 * @param requestObject
+	 *            The request of the client
+	 * @param in
+	 *            The InputStream with the input that follows the request
+	 * @param out
+	 *            The OutputStream to send output to the client
+	 * @return false if the client disconnected, true otherwise
+	 * @throws IOException
+	 */
+	public boolean handleRequest(JsonObject requestObject, DataInputStream in, DataOutputStream out) throws IOException {
+		String action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
+		if (userFile == null) {
+			boolean connected = handleLoginAction(action, requestObject, out);
+			if (userFile != null) {
+				clientFileConnector = new ClientFileConnector(userFile);
+				clientFileConnector.forgetExpiredUploads();
+			}
+			return connected;
+		}
+
+		boolean connected = handleUserAction(action, requestObject, in, clientFileConnector, out);
+		if (!connected) {
+			LOG.trace("Action: " + Actions.DISCONNECT);
+		}
+		return connected;
+	}
+
+	/**
+	 * Releases the lock of the logged in user. This is used by transports which call
+	 * {@link #handleRequest(JsonObject, DataInputStream, DataOutputStream)} when the connection is closed.
+	 */
+	public void release() {
+		if (userFile != null) {
+			UserLocker.unlock(userFile.getUsernameHash());
+			userFile = null;
+			clientFileConnector = null;
+		}
+	}
+
+	/**
+	 * Reads the next request of the client. While the client is idle the idle timeout applies, while the action is
+	 * handled the read timeout applies.
+	 * 
+	 * @param in
+	 *            The InputStream with input from the client
+	 * @return The request
+	 * @throws SocketTimeoutException
+	 *             if the client was idle for too long or stopped sending data during an action
+	 * @throws IOException
+	 */
+	private JsonObject readRequest(DataInputStream in) throws IOException {
+		setReadTimeout(idleTimeoutMillis);
+		JsonObject request;
+		try {
+			request = MessageCodecs.read(in);
+		} catch (SocketTimeoutException e) {
+			Metrics.increment("session.idleTimeouts");
+			throw e;
+		}
+		setReadTimeout(readTimeoutMillis);
+		return request;
+	}
+
+	/**
+	 * Sets the time a read on the connection may block
+	 * 
+	 * @param timeoutMillis
+	 *            The timeout, 0 for no limit
+	 * @throws SocketException
+	 *             if the timeout could not be set
+	 */
+	private void setReadTimeout(int timeoutMillis) throws SocketException {
+		if (server != null && server.getSoTimeout() != timeoutMillis) {
+			server.setSoTimeout(timeoutMillis);
+		}
+	}
+
+	/**
+	 * Checks whether a user is logged in on this connection
+	 * 
+	 * @return true if a user is logged in
+	 */
+	public boolean isLoggedIn() {
+		return userFile != null;
+	}
+
+	/**
+	 * Returns the time a client may be idle between actions
+	 * 
+	 * @return The idle timeout in milliseconds, 0 for no limit
+	 */
+	public int getIdleTimeoutMillis() {
+		return idleTimeoutMillis;
+	}
+
+	/**
+	 * Returns the time a read may block during an action
+	 * 
+	 * @return The read timeout in milliseconds, 0 for no limit
+	 */
+	public int getReadTimeoutMillis() {
+		return readTimeoutMillis;
+	}
+
+	/**
+	 * Lets the server shut down the connection. An idle connection is closed right away, a connection which is handling
+	 * an action is closed when the action is finished. A multiplexed session is closed when its busy streams are done.
+	 * 
+	 * @return Whether an action was being handled
+	 */
+	public synchronized boolean drain() {
+		draining = true;
+		if (muxSession != null) {
+			muxSession.drain();
+			return true;
+		}
+		if (!busy) {
+			IOUtils.closeQuietly(server);
+		}
+		return busy;
+	}
+
+	/**
+	 * Closes the connection, even if an action is being handled
+	 */
+	public void abort() {
+		IOUtils.closeQuietly(server);
+	}
+
+	/**
+	 * Marks the start of an action
+	 * 
+	 * @return false if the server is shutting down and the action shouldn't be handled
+	 */
+	private synchronized boolean startAction() {
+		busy = !draining;
+		if (busy && transferMonitor != null) {
+			transferMonitor.startAction();
+		}
+		return busy;
+	}
+
+	/**
+	 * Marks the end of an action
+	 * 
+	 * @return false if the server is shutting down and the connection should be closed
+	 */
+	private synchronized boolean endAction() {
+		busy = false;
+		if (transferMonitor != null) {
+			transferMonitor.endAction();
+		}
+		return !draining;
+	}
+
+	/**
+	 * Checks whether the server is shutting down the connection
+	 * 
+	 * @return true if the connection is being drained
+	 */
+	private synchronized boolean isDraining() {
+		return draining;
+	}
+
+	/**
+	 * Remembers the multiplexed session of the connection, so the server can drain it
+	 * 
+	 * @param session
+	 *            The session, null when it ended
+	 */
+	private synchronized void setMuxSession(MuxSession session) {
+		muxSession = session;
+		if (session != null && draining) {
+			session.drain();
+		}
+	}
+
+	/**
+	 * Handles an action of a client which isn't logged in yet.
+	 * 
+	 * @param action
+	 *            The requested action
+	 * @param requestObject
+	 *            The request of the client
+	 * @param out
+	 *            The OutputStream to send output to the client
+	 * @return false if the client disconnected, true otherwise
+	 * @throws IOException
+	 */
+	private boolean handleLoginAction(String action, JsonObject requestObject, DataOutputStream out) throws IOException {
+		switch (action) {
+		case Actions.CREATE_USER:
+			UserManager.createUser(requestObject, out);
+			break;
+		case Actions.LOGIN:
+			userFile = UserManager.authenticateUser(requestObject, out);
+			if (userFile != null) {
+				// Update timestamp of all files
+				userFile.touch();
+			}
+			break;
+		case ServerActions.BOOTSTRAP:
+			// The keyfile and the locations are sent together with the successful login
+			userFile = UserManager.authenticateUser(requestObject, out, false);
+			if (userFile != null && !new ClientFileConnector(userFile).bootstrap(out)) {
+				UserLocker.unlock(userFile.getUsernameHash());
+				userFile = null;
+			}
+			break;
+		case Actions.DISCONNECT:
+			return false;
+		case ServerActions.PING:
+			CommunicationUtil.returnSuccessful(out);
+			break;
+		default:
+			CommunicationUtil.returnError(out, Errors.UNKNOWN_ACTION);
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Handles an action of a logged in client.
+	 * 
+	 * @param action
+	 *            The requested action
+	 * @param requestObject
+	 *            The request of the client
+	 * @param in
+	 *            The InputStream with input from the client
+	 * @param clientFileConnector
+	 *            The ClientFileConnector of the user that's logged in.
+	 * @param out
+	 *            The OutputStream to send output to the client
+	 * @return false if the client disconnected, true otherwise
+	 * @throws IOException
+	 */
+	private boolean handleUserAction(String action, JsonObject requestObject, DataInputStream in, ClientFileConnector clientFileConnector, DataOutputStream out)
+		throws IOException {
+		if (action.equals(Actions.DISCONNECT)) {
+			return false;
+		}
+		LOG.trace("Action: " + action);
+
+		switch (action) {
+		case Actions.GET_KEY_FILE:
+			clientFileConnector.downloadKeyFile(out);
+			break;
+		case Actions.GET_FILE:
+			clientFileConnector.downloadFile(requestObject, out);
+			break;
+		case ServerActions.GET_FILES:
+			clientFileConnector.downloadFiles(requestObject, out);
+			break;
+		case Actions.UPDATE_KEY_FILE:
+			clientFileConnector.updateKeyFile(in, out);
+			break;
+		case Actions.UPDATE_FILE:
+			clientFileConnector.updateFile(in, requestObject, out);
+			break;
+		case ServerActions.UPDATE_FILE_RANGE:
+			clientFileConnector.updateFileRange(in, requestObject, out);
+			break;
+		case Actions.UPLOAD_FILE:
+			clientFileConnector.uploadFile(in, out);
+			break;
+		case ServerActions.UPLOAD_FILES:
+			clientFileConnector.uploadFiles(in, requestObject, out);
+			break;
+		case ServerActions.RESUMABLE_UPLOAD:
+			clientFileConnector.resumableUpload(in, requestObject, out);
+			break;
+		case Actions.REMOVE_FILE:
+			clientFileConnector.removeFile(requestObject, out);
+			break;
+		case ServerActions.REMOVE_FILES:
+			clientFileConnector.removeFiles(requestObject, out);
+			break;
+		case Actions.REQUEST_LOCATIONS:
+			requestLocations(out);
+			break;
+		case ServerActions.PING:
+			CommunicationUtil.returnSuccessful(out);
+			break;
+		case ServerActions.MULTIPLEX:
+			return multiplex(in, clientFileConnector, out);
+		default:
+			CommunicationUtil.returnError(out, Errors.UNKNOWN_ACTION);
+			out.close();
+			break;
+		}
+		return true;
+	}
+
+	/**
+	 * Turns the connection into a multiplexed session, on which the client handles its actions on several streams at
+	 * the same time. The connection is closed when the client ends the session.
+	 * 
+	 * @param in
+	 *            The InputStream with input from the client
+	 * @param clientFileConnector
+	 *            The ClientFileConnector of the user that's logged in.
+	 * @param out
+	 *            The OutputStream to send output to the client
+	 * @return false when the session ended, true if the connection can't be multiplexed
+	 * @throws IOException
+	 */
+	private boolean multiplex(final DataInputStream in, final ClientFileConnector clientFileConnector, DataOutputStream out) throws IOException {
+		if (maxStreams <= 0) {
+			CommunicationUtil.returnError(out, Errors.UNKNOWN_ACTION);
+			return true;
+		}
+		Map<String, Object> properties = new HashMap<>();
+		properties.put(ServerActions.STREAM_WINDOW, streamWindowSize);
+		properties.put(ServerActions.MAX_STREAMS, maxStreams);
+		CommunicationUtil.returnSuccessfulWithProperties(out, properties);
+		out.flush();
+
+		// The streams have their own timeout, the session is idle when the client sends no frames
+		setReadTimeout(idleTimeoutMillis);
+		StreamHandler handler = new StreamHandler() {
+			@Override
+			public void handleStream(InputStream streamIn, OutputStream streamOut, ActionTracker tracker) throws IOException {
+				MessageCodec codec = MessageCodecs.createLike(in);
+				DataInputStream streamDataIn = new ProtocolInputStream(new BufferedInputStream(streamIn, MuxSession.MAX_PAYLOAD_SIZE), codec);
+				DataOutputStream streamDataOut = new ProtocolOutputStream(streamOut, codec);
+				handleStreamActions(streamDataIn, clientFileConnector, streamDataOut, tracker);
+			}
+		};
+		MuxSession session = new MuxSession(in, out, server, handler, maxStreams, streamWindowSize, idleTimeoutMillis);
+		setMuxSession(session);
+		try {
+			session.run();
+		} finally {
+			setMuxSession(null);
+		}
+		return false;
+	}
+
+	/**
+	 * Handles the actions on a stream of a multiplexed session until the client closes the stream
+	 * 
+	 * @param in
+	 *            The input of the stream
+	 * @param clientFileConnector
+	 *            The ClientFileConnector of the user that's logged in.
+	 * @param out
+	 *            The output of the stream
+	 * @param tracker
+	 *            Is told when an action is handled, so a drain only resets the stream between actions
+	 * @throws IOException
+	 */
+	private void handleStreamActions(DataInputStream in, ClientFileConnector clientFileConnector, DataOutputStream out, StreamHandler.ActionTracker tracker)
+		throws IOException {
+		boolean connected = true;
+		while (connected) {
+			JsonObject requestObject;
+			try {
+				requestObject = MessageCodecs.read(in);
+			} catch (EOFException e) {
+				return;
+			}
+			if (!tracker.startAction()) {
+				return;
+			}
+			try {
+				String action = JsonObjectHandler.getProperty(requestObject, Actions.ACTION);
+				if (ServerActions.MULTIPLEX.equals(action)) {
+					CommunicationUtil.returnError(out, Errors.ALREADY_MULTIPLEXED);
+				} else {
+					connected = handleUserAction(action, requestObject, in, clientFileConnector, out);
+				}
+				out.flush();
+			} finally {
+				// Stop after the current action when the server is shutting down
+				if (!tracker.endAction()) {
+					connected = false;
+				}
+			}
+		}
+	}
+
 	/**
 	 * Sends the list of locations the user owns to the client
 	 * 
@@ -166,7 +653,11 @@ public class Client implements Runnable {
 
 		try {
 			Map<String, Object> properties = new HashMap<>();
-			properties.put(Responses.LOCATIONS, new Gson().toJsonTree(locations));
+			JsonArray locationArray = new JsonArray();
+			for (String location : locations) {
+				locationArray.add(new JsonPrimitive(location));
+			}
+			properties.put(Responses.LOCATIONS, locationArray);
 			CommunicationUtil.returnSuccessfulWithProperties(outputStream, properties);
 			return true;
 		} catch (IOException e) {
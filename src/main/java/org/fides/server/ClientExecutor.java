@@ -0,0 +1,143 @@
+package org.fides.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.CommunicationUtil;
+import org.fides.server.tools.Errors;
+import org.fides.server.tools.Metrics;
+
+/**
+ * A bounded pool of worker threads which handles the clients. When all workers are busy and the accept queue is full,
+ * the connection is rejected with {@link Errors#SERVER_CANNOT_RESPOND}.
+ */
+public class ClientExecutor extends ThreadPoolExecutor {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(ClientExecutor.class);
+
+	/** The time a worker above the core size may be idle before it is stopped */
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	/** The maximum time a rejected client gets to receive the error message */
+	private static final int REJECT_TIMEOUT_MILLIS = 5000;
+
+	/** The maximum amount of rejected clients waiting for their error message, others are closed without a message */
+	private static final int REJECT_QUEUE_SIZE = 64;
+
+	/**
+	 * Constructor for ClientExecutor
+	 *
+	 * @param coreSize
+	 *            The amount of workers that are kept alive
+	 * @param maxSize
+	 *            The maximum amount of workers
+	 * @param queueSize
+	 *            The amount of clients that may wait for a worker
+	 */
+	public ClientExecutor(int coreSize, int maxSize, int queueSize) {
+		super(coreSize, Math.max(coreSize, maxSize), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+			new NamedThreadFactory("ClientWorker"), new RejectPolicy());
+
+		Metrics.registerGauge("worker.poolSize", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getPoolSize();
+			}
+		});
+		Metrics.registerGauge("worker.activeThreads", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getActiveCount();
+			}
+		});
+		Metrics.registerGauge("worker.queueDepth", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return getQueue().size();
+			}
+		});
+	}
+
+	/**
+	 * A thread factory which gives the threads a recognizable name
+	 */
+	static class NamedThreadFactory implements ThreadFactory {
+
+		private final String name;
+
+		private final AtomicInteger counter = new AtomicInteger();
+
+		/**
+		 * Constructor for NamedThreadFactory
+		 *
+		 * @param name
+		 *            The prefix of the names of the threads
+		 */
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Sends the rejected clients an error message and closes their connection. The message is sent on a separate
+	 * thread because it causes the TLS handshake, which shouldn't block the thread that accepts the connections.
+	 */
+	private static class RejectPolicy implements RejectedExecutionHandler {
+
+		private final ExecutorService rejectExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(REJECT_QUEUE_SIZE),
+			new NamedThreadFactory("ClientRejector"), new ThreadPoolExecutor.AbortPolicy());
+
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			Metrics.increment("worker.rejected");
+			if (!(runnable instanceof ClientTask)) {
+				throw new RejectedExecutionException("Worker pool is full");
+			}
+
+			final ClientTask task = (ClientTask) runnable;
+			final Socket socket = task.getSocket();
+			LOG.debug("Worker pool is full, rejecting " + socket.getRemoteSocketAddress());
+			try {
+				rejectExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							socket.setSoTimeout(REJECT_TIMEOUT_MILLIS);
+							CommunicationUtil.returnError(new DataOutputStream(socket.getOutputStream()), Errors.SERVER_CANNOT_RESPOND);
+						} catch (IOException e) {
+							LOG.debug("Could not send the rejection to the client", e);
+						} finally {
+							IOUtils.closeQuietly(socket);
+							task.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				IOUtils.closeQuietly(socket);
+				task.release();
+			}
+		}
+	}
+}
@@ -3,28 +3,51 @@ package org.fides.server;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fides.components.Actions;
+import org.fides.components.Responses;
 import org.fides.components.virtualstream.VirtualInputStream;
+import org.fides.components.virtualstream.VirtualOutputStream;
+import org.fides.server.files.DeletionQueue;
+import org.fides.server.files.FileJournal;
+import org.fides.server.files.FileLocks;
 import org.fides.server.files.FileManager;
+import org.fides.server.files.FilePrefetcher;
+import org.fides.server.files.FilePrefetcher.Prefetched;
+import org.fides.server.files.SpaceReservation;
 import org.fides.server.files.UserFile;
+import org.fides.server.protocol.MessageCodecs;
 import org.fides.server.tools.CommunicationUtil;
 import org.fides.server.tools.Errors;
 import org.fides.server.tools.JsonObjectHandler;
+import org.fides.server.tools.Metrics;
 import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.ServerActions;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * A class for handling the sending and receiving of files
@@ -37,8 +60,13 @@ public class ClientFileConnector {
 	 */
 	private static final Logger LOG = LogManager.getLogger(ClientFileConnector.class);
 
+	/** The files which are being written by a resumable upload or a range update, the streams of a multiplexed session may try to write the same one */
+	private static final Set<String> ACTIVE_UPLOADS = Collections.synchronizedSet(new HashSet<String>());
+
 	private final UserFile userFile;
 
+	private final boolean plaintext;
+
 	/**
 	 * Constructor for ClientFileConnector
 	 * 
@@ -46,7 +74,20 @@ public class ClientFileConnector {
 	 *            The logged in user's userFile
 	 */
 	public ClientFileConnector(UserFile userFile) {
+		this(userFile, false);
+	}
+
+	/**
+	 * Constructor for ClientFileConnector
+	 * 
+	 * @param userFile
+	 *            The logged in user's userFile
+	 * @param plaintext
+	 *            Whether the connection with the client isn't encrypted by the server
+	 */
+	public ClientFileConnector(UserFile userFile, boolean plaintext) {
 		this.userFile = userFile;
+		this.plaintext = plaintext;
 	}
 
 	/**
@@ -65,16 +106,82 @@ public class ClientFileConnector {
 			File keyFile = new File(dataDir, keyFileLocation);
 			// If the keyfile exists, return a 'successful' and copy the file to the outputstream.
 			if (keyFile.exists()) {
-				return FileManager.copyFileToStream(keyFile, outputStream);
+				return FileManager.copyFileToStream(keyFile, outputStream, plaintext);
 			} else {
 				LOG.error("User's keyfile doesn't exist");
-				CommunicationUtil.returnError(outputStream, "User keyfile could not be found (Please contact a server administrator)");
+				CommunicationUtil.returnError(outputStream, Errors.KEY_FILE_NOT_FOUND);
 			}
 		}
 
 		return false;
 	}
 
+	/**
+	 * Starts the session of a user which was just authenticated: the timestamps of the files are updated while the
+	 * keyfile is read, after which the user gets its locations followed by the keyfile in one response. This saves the
+	 * client the separate requests for the keyfile and the locations.
+	 * 
+	 * @param outputStream
+	 *            The stream to write responses to
+	 * @return whether the session was started or not
+	 */
+	public boolean bootstrap(DataOutputStream outputStream) {
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		String keyFileLocation = userFile.getKeyFileLocation();
+		if (StringUtils.isEmpty(dataDir) || StringUtils.isEmpty(keyFileLocation)) {
+			LOG.error("User's keyfile doesn't exist");
+			CommunicationUtil.returnError(outputStream, Errors.KEY_FILE_NOT_FOUND);
+			return false;
+		}
+
+		// The location of the keyfile is only known after the userfile is decrypted, it is read during the touch
+		File keyFile = new File(dataDir, keyFileLocation);
+		FilePrefetcher prefetcher = new FilePrefetcher(Collections.singletonList(keyFile), PropertiesManager.getInstance().getPrefetchBufferSize());
+		prefetcher.start();
+		try {
+			userFile.touch();
+			JsonArray locationArray = new JsonArray();
+			for (String location : userFile.getLocations()) {
+				locationArray.add(new JsonPrimitive(location));
+			}
+
+			Prefetched prefetched = prefetcher.take();
+			try {
+				InputStream fileStream = null;
+				if (prefetched.getContent() == null) {
+					// The keyfile could not be read ahead, it is read while it is sent
+					try {
+						fileStream = new FileInputStream(keyFile);
+					} catch (FileNotFoundException e) {
+						LOG.error("User's keyfile doesn't exist");
+						CommunicationUtil.returnError(outputStream, Errors.KEY_FILE_NOT_FOUND);
+						return false;
+					}
+				}
+				try (InputStream inStream = fileStream) {
+					Map<String, Object> properties = new HashMap<>();
+					properties.put(Responses.LOCATIONS, locationArray);
+					CommunicationUtil.returnSuccessfulWithProperties(outputStream, properties);
+					try (VirtualOutputStream virtualOutStream = new VirtualOutputStream(outputStream)) {
+						if (inStream == null) {
+							virtualOutStream.write(prefetched.getContent());
+						} else {
+							IOUtils.copy(inStream, virtualOutStream);
+						}
+					}
+				}
+			} finally {
+				prefetcher.release(prefetched);
+			}
+			return true;
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+		} finally {
+			prefetcher.stop();
+		}
+		return false;
+	}
+
 	/**
 	 * Downloads a file by writing it to the outputstream
 	 * 
@@ -93,7 +200,17 @@ public class ClientFileConnector {
 				File file = new File(PropertiesManager.getInstance().getDataDir(), fileLocation);
 				// Check if the requested file exists
 				if (file.exists()) {
-					return FileManager.copyFileToStream(file, outputStream);
+					// A range update isn't written into the file while it is sent
+					Lock readLock = FileLocks.readLock(file);
+					readLock.lock();
+					try {
+						if (fileRequest.has(ServerActions.OFFSET) || fileRequest.has(ServerActions.LENGTH)) {
+							return downloadFileRange(fileRequest, file, outputStream);
+						}
+						return FileManager.copyFileToStream(file, outputStream, plaintext);
+					} finally {
+						readLock.unlock();
+					}
 				} else {
 					CommunicationUtil.returnError(outputStream, Errors.FILE_NOT_FOUND);
 				}
@@ -106,6 +223,175 @@ public class ClientFileConnector {
 		return false;
 	}
 
+	/**
+	 * Sends a range of a file, the range starts at the offset of the request and runs until the end of the file unless
+	 * the request holds a length
+	 * 
+	 * @param fileRequest
+	 *            The request containing the range
+	 * @param file
+	 *            The requested file
+	 * @param outputStream
+	 *            The stream to write responses to
+	 * @return whether the download was successful or not
+	 */
+	private boolean downloadFileRange(JsonObject fileRequest, File file, DataOutputStream outputStream) {
+		long offset = 0;
+		long length = Long.MAX_VALUE;
+		try {
+			if (fileRequest.has(ServerActions.OFFSET)) {
+				offset = Long.parseLong(JsonObjectHandler.getProperty(fileRequest, ServerActions.OFFSET));
+			}
+			if (fileRequest.has(ServerActions.LENGTH)) {
+				length = Long.parseLong(JsonObjectHandler.getProperty(fileRequest, ServerActions.LENGTH));
+			}
+		} catch (NumberFormatException e) {
+			offset = -1;
+		}
+		if (offset < 0 || length < 0) {
+			CommunicationUtil.returnError(outputStream, Errors.INVALID_RANGE);
+			return false;
+		}
+		Metrics.increment("download.ranges");
+		return FileManager.copyFileRangeToStream(file, offset, length, outputStream);
+	}
+
+	/**
+	 * Downloads several files in one response. Every file gets its own status, so a file which can't be sent doesn't
+	 * end the batch. The files are read ahead by a {@link FilePrefetcher} while the earlier files are sent.
+	 * 
+	 * @param filesRequest
+	 *            The Json request which contains the locations of the files
+	 * @param outputStream
+	 *            The stream which the files need to be written to
+	 * @return Whether the batch was sent, the files may have failed on their own
+	 */
+	public boolean downloadFiles(JsonObject filesRequest, DataOutputStream outputStream) {
+		List<String> locations = JsonObjectHandler.getStringList(filesRequest, Responses.LOCATIONS);
+		if (locations == null || locations.isEmpty()) {
+			CommunicationUtil.returnError(outputStream, Errors.NO_FILE_LOCATION);
+			return false;
+		}
+
+		// Check the files before they are read, only the files which can be sent are read ahead
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		String[] errors = new String[locations.size()];
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < errors.length; i++) {
+			String location = locations.get(i);
+			if (StringUtils.isBlank(location)) {
+				errors[i] = Errors.NO_FILE_LOCATION;
+			} else if (!userFile.checkOwned(location)) {
+				errors[i] = Errors.FILE_WITHOUT_OWNERSHIP;
+			} else {
+				File file = new File(dataDir, location);
+				if (file.exists()) {
+					files.add(file);
+				} else {
+					errors[i] = Errors.FILE_NOT_FOUND;
+				}
+			}
+		}
+		Metrics.add("download.batchFiles", errors.length);
+
+		FilePrefetcher prefetcher = new FilePrefetcher(files, PropertiesManager.getInstance().getPrefetchBufferSize());
+		prefetcher.start();
+		try {
+			CommunicationUtil.returnSuccessful(outputStream);
+			for (int i = 0; i < errors.length; i++) {
+				if (errors[i] != null) {
+					writeFileStatus(outputStream, locations.get(i), errors[i]);
+				} else {
+					Prefetched prefetched = prefetcher.take();
+					try {
+						writeFile(outputStream, locations.get(i), prefetched);
+					} finally {
+						prefetcher.release(prefetched);
+					}
+				}
+			}
+			// The batch is complete, send what is left of it
+			outputStream.flush();
+			return true;
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+		} finally {
+			prefetcher.stop();
+		}
+		return false;
+	}
+
+	/**
+	 * Writes a file of a batch download: its status and its content when it could be read
+	 * 
+	 * @param outputStream
+	 *            The stream which the file needs to be written to
+	 * @param location
+	 *            The location of the file
+	 * @param prefetched
+	 *            The file with the content that was read ahead
+	 * @throws IOException
+	 *             if the file could not be written to the stream
+	 */
+	private static void writeFile(DataOutputStream outputStream, String location, Prefetched prefetched) throws IOException {
+		if (prefetched.getContent() != null) {
+			writeFileStatus(outputStream, location, null);
+			try (VirtualOutputStream virtualOutStream = new VirtualOutputStream(outputStream)) {
+				virtualOutStream.write(prefetched.getContent());
+			}
+			return;
+		}
+		if (prefetched.getFailure() != null) {
+			LOG.error(prefetched.getFailure().getMessage());
+			writeFileStatus(outputStream, location, Errors.FILE_NOT_READ);
+			return;
+		}
+
+		// The file is too large to be read ahead, it is read while it is sent
+		Lock readLock = FileLocks.readLock(prefetched.getFile());
+		readLock.lock();
+		try {
+			InputStream fileStream;
+			try {
+				fileStream = new FileInputStream(prefetched.getFile());
+			} catch (FileNotFoundException e) {
+				writeFileStatus(outputStream, location, Errors.FILE_NOT_FOUND);
+				return;
+			}
+			try (InputStream inStream = fileStream;
+				VirtualOutputStream virtualOutStream = new VirtualOutputStream(outputStream)) {
+				writeFileStatus(outputStream, location, null);
+				IOUtils.copy(inStream, virtualOutStream);
+			}
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes the status of a file of a batch download or upload
+	 * 
+	 * @param outputStream
+	 *            The stream to write the status to
+	 * @param location
+	 *            The location of the file, null if it has none
+	 * @param error
+	 *            The reason the file failed, null if it was successful
+	 * @throws IOException
+	 *             if the status could not be written
+	 */
+	private static void writeFileStatus(DataOutputStream outputStream, String location, String error) throws IOException {
+		JsonObject status = new JsonObject();
+		status.addProperty(Responses.SUCCESSFUL, error == null);
+		if (location != null) {
+			status.addProperty(Actions.Properties.LOCATION, location);
+		}
+		if (error != null) {
+			status.addProperty(Responses.ERROR, error);
+		}
+		MessageCodecs.write(outputStream, status);
+	}
+
 	/**
 	 * Uploads a new file with the inputStream as its content. Generates a new file on the server to fill with the
 	 * stream and returns the file's server location to the client through the outputstream.
@@ -124,14 +410,15 @@ public class ClientFileConnector {
 		// Check if the file was created correctly (should always be true)
 		if (file.exists() && tempFile.exists()) {
 			try (InputStream virtualInputStream = new VirtualInputStream(inputStream);
-				OutputStream fileOutputStream = new FileOutputStream(tempFile)) {
+				OutputStream fileOutputStream = new FileOutputStream(tempFile);
+				SpaceReservation reservation = new SpaceReservation(userFile)) {
 				// Return the location on the server where the new file will be written
 				Map<String, Object> properties = new HashMap<>();
 				properties.put(Actions.Properties.LOCATION, location);
 				CommunicationUtil.returnSuccessfulWithProperties(outputStream, properties);
 
 				// Put the inputstream received from the user into a temporary file
-				long bytesCopied = FileManager.copyLarge(virtualInputStream, fileOutputStream, userFile.getAmountOfFreeBytes());
+				long bytesCopied = FileManager.copyLarge(virtualInputStream, fileOutputStream, reservation);
 				fileOutputStream.flush();
 				fileOutputStream.close();
 				virtualInputStream.close();
@@ -154,11 +441,11 @@ public class ClientFileConnector {
 					}
 
 				} else {
-					CommunicationUtil.returnError(outputStream, "Upload file size too big.");
+					CommunicationUtil.returnError(outputStream, Errors.UPLOAD_TOO_BIG);
 				}
 			} catch (IOException e) {
 				LOG.error(e.getMessage());
-				CommunicationUtil.returnError(outputStream, "Upload failed. Please contact your server's administrator.");
+				CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
 			} finally {
 				if (!uploadSuccessful) {
 					file.delete();
@@ -167,11 +454,281 @@ public class ClientFileConnector {
 			}
 		} else {
 			LOG.error("A file generated with FileManager.createFile() was not generated correctly.");
-			CommunicationUtil.returnError(outputStream, "Upload failed. Please contact your server's administrator.");
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
 		}
 		return uploadSuccessful;
 	}
 
+	/**
+	 * Uploads several files in one exchange. The files are received into temporary files, the client gets the location
+	 * of every file and confirms the batch once. Then the files are synced to the disk together, moved to their
+	 * locations and added to the user with a single save of the userfile. A file which doesn't fit in the space of the
+	 * user fails on its own, the other files are still committed.
+	 * 
+	 * @param inputStream
+	 *            The content of the files
+	 * @param uploadRequest
+	 *            The request containing the amount of files
+	 * @param outputStream
+	 *            The stream to write the responses to
+	 * @return Whether the batch was committed
+	 */
+	public boolean uploadFiles(DataInputStream inputStream, JsonObject uploadRequest, DataOutputStream outputStream) {
+		int amount;
+		try {
+			amount = Integer.parseInt(JsonObjectHandler.getProperty(uploadRequest, ServerActions.AMOUNT));
+		} catch (NumberFormatException e) {
+			amount = 0;
+		}
+		if (amount <= 0 || amount > PropertiesManager.getInstance().getMaxFilesPerUpload()) {
+			CommunicationUtil.returnError(outputStream, Errors.INVALID_AMOUNT);
+			return false;
+		}
+
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		File[] tempFiles = new File[amount];
+		File[] files = new File[amount];
+		String[] errors = new String[amount];
+		boolean committed = false;
+		SpaceReservation reservation = new SpaceReservation(userFile);
+		try {
+			// Tell the client it can start sending the files
+			CommunicationUtil.returnSuccessful(outputStream);
+
+			long totalBytes = 0;
+			List<File> received = new ArrayList<>();
+			for (int i = 0; i < amount; i++) {
+				// The location is reserved now, so the client is told the name the file is stored under. The file is
+				// received next to it, the reserved name keeps the temporary name unique as well.
+				String location = FileManager.createFile();
+				try (InputStream virtualInputStream = new VirtualInputStream(inputStream)) {
+					if (location != null) {
+						files[i] = new File(dataDir, location);
+						tempFiles[i] = new File(dataDir, location + FileManager.TEMP_SUFFIX);
+					}
+					if (files[i] == null) {
+						errors[i] = Errors.UPLOAD_FAILED;
+					} else {
+						long bytesCopied;
+						try (OutputStream fileOutputStream = new FileOutputStream(tempFiles[i])) {
+							bytesCopied = FileManager.copyLarge(virtualInputStream, fileOutputStream, reservation);
+						}
+						if (bytesCopied != -1) {
+							totalBytes += bytesCopied;
+							received.add(tempFiles[i]);
+						} else {
+							errors[i] = Errors.UPLOAD_TOO_BIG;
+						}
+					}
+					// Skip what is left of a file that failed, the next file follows it
+					IOUtils.copy(virtualInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+				}
+			}
+
+			// Make the content durable before the client is told the locations
+			FileManager.syncFiles(received);
+			for (int i = 0; i < amount; i++) {
+				writeFileStatus(outputStream, errors[i] == null ? files[i].getName() : null, errors[i]);
+			}
+
+			if (CommunicationUtil.uploadSuccessful(outputStream, inputStream)) {
+				List<String> locations = new ArrayList<>();
+				for (int i = 0; i < amount; i++) {
+					if (errors[i] == null) {
+						Files.move(tempFiles[i].toPath(), files[i].toPath(), StandardCopyOption.REPLACE_EXISTING);
+						FileManager.touchFile(files[i]);
+						locations.add(files[i].getName());
+					}
+				}
+				FileManager.syncDirectory(new File(dataDir));
+				committed = userFile.addFiles(locations, totalBytes);
+				if (committed) {
+					Metrics.add("upload.batchFiles", locations.size());
+				} else {
+					CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
+				}
+				LOG.trace("Amount of free bytes: " + userFile.getAmountOfFreeBytes());
+			}
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
+		} finally {
+			for (File tempFile : tempFiles) {
+				if (tempFile != null) {
+					tempFile.delete();
+				}
+			}
+			// The reserved locations of the files which weren't committed don't belong to the user
+			for (int i = 0; i < amount; i++) {
+				if (files[i] != null && (!committed || errors[i] != null)) {
+					files[i].delete();
+				}
+			}
+			reservation.close();
+		}
+		return committed;
+	}
+
+	/**
+	 * Receives a file which can be continued on another connection when the upload is interrupted. A request without a
+	 * location starts a new upload, a request with the location of an unfinished upload continues it. The successful
+	 * response holds the location and the offset from which the client sends the rest of the file. What is received is
+	 * kept in a part file until the client confirms the upload, an upload which isn't continued expires.
+	 * 
+	 * @param inputStream
+	 *            The stream to read the file from
+	 * @param uploadRequest
+	 *            The request containing the location of an unfinished upload
+	 * @param outputStream
+	 *            The stream to write the responses to
+	 * @return Whether the upload was committed
+	 */
+	public boolean resumableUpload(DataInputStream inputStream, JsonObject uploadRequest, DataOutputStream outputStream) {
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		String location = JsonObjectHandler.getProperty(uploadRequest, Actions.Properties.LOCATION);
+		if (location == null) {
+			location = startUpload(dataDir);
+			if (location == null) {
+				CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
+				return false;
+			}
+		} else if (!userFile.checkPendingUpload(location) || !new File(dataDir, location + FileManager.PART_SUFFIX).exists()) {
+			CommunicationUtil.returnError(outputStream, Errors.UNKNOWN_UPLOAD);
+			return false;
+		}
+
+		if (!ACTIVE_UPLOADS.add(location)) {
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_IN_PROGRESS);
+			return false;
+		}
+		try {
+			return continueUpload(inputStream, location, outputStream);
+		} finally {
+			ACTIVE_UPLOADS.remove(location);
+		}
+	}
+
+	/**
+	 * Forgets the resumable uploads of the user of which the part file was removed by the cleaner, and gives back the
+	 * space they were charged
+	 */
+	public void forgetExpiredUploads() {
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		List<String> expired = new ArrayList<>();
+		for (String pending : userFile.getPendingUploads()) {
+			if (!ACTIVE_UPLOADS.contains(pending) && !new File(dataDir, pending + FileManager.PART_SUFFIX).exists()) {
+				new File(dataDir, pending).delete();
+				expired.add(pending);
+			}
+		}
+		if (!expired.isEmpty()) {
+			userFile.removePendingUploads(expired);
+		}
+	}
+
+	/**
+	 * Reserves the location of a new resumable upload with an empty part file. The uploads of the user which were
+	 * removed by the cleaner are forgotten first.
+	 * 
+	 * @param dataDir
+	 *            The directory of the files
+	 * @return The location of the upload, null if it could not be started
+	 */
+	private String startUpload(String dataDir) {
+		forgetExpiredUploads();
+
+		String location = FileManager.createFile();
+		if (location == null) {
+			return null;
+		}
+		File partFile = new File(dataDir, location + FileManager.PART_SUFFIX);
+		try {
+			if (partFile.createNewFile() && userFile.addPendingUpload(location)) {
+				Metrics.increment("upload.resumableStarted");
+				return location;
+			}
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+		}
+		partFile.delete();
+		new File(dataDir, location).delete();
+		return null;
+	}
+
+	/**
+	 * Appends the rest of a resumable upload to its part file, and commits the file when the client confirms it. What
+	 * the part file holds is counted in the used space of the user while the upload isn't finished.
+	 * 
+	 * @param inputStream
+	 *            The stream to read the file from
+	 * @param location
+	 *            The location of the upload
+	 * @param outputStream
+	 *            The stream to write the responses to
+	 * @return Whether the upload was committed
+	 */
+	private boolean continueUpload(DataInputStream inputStream, String location, DataOutputStream outputStream) {
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		File file = new File(dataDir, location);
+		File partFile = new File(dataDir, location + FileManager.PART_SUFFIX);
+		boolean keepPart = true;
+		SpaceReservation reservation = new SpaceReservation(userFile);
+		try (InputStream virtualInputStream = new VirtualInputStream(inputStream)) {
+			// The part file only holds what was forced to the disk, the client continues after it
+			long offset = partFile.length();
+			if (offset > 0) {
+				Metrics.increment("upload.resumed");
+			}
+			userFile.chargePendingUpload(location, offset);
+			Map<String, Object> properties = new HashMap<>();
+			properties.put(Actions.Properties.LOCATION, location);
+			properties.put(ServerActions.OFFSET, offset);
+			CommunicationUtil.returnSuccessfulWithProperties(outputStream, properties);
+
+			long bytesCopied = FileManager.appendWithCheckpoints(virtualInputStream, partFile, reservation,
+				PropertiesManager.getInstance().getUploadCheckpointSize());
+			if (bytesCopied == -1) {
+				// Skip what is left of the file, the next request follows it
+				IOUtils.copy(virtualInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+				keepPart = false;
+				CommunicationUtil.returnError(outputStream, Errors.UPLOAD_TOO_BIG);
+				return false;
+			}
+
+			// The client checks the whole file before it confirms the upload, without an answer it can continue it later
+			if (!CommunicationUtil.uploadSuccessful(outputStream, inputStream)) {
+				keepPart = false;
+				return false;
+			}
+			long size = partFile.length();
+			Files.move(partFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			FileManager.touchFile(file);
+			if (userFile.commitPendingUpload(location, size)) {
+				Metrics.increment("upload.resumableCommitted");
+				LOG.trace("Amount of free bytes: " + userFile.getAmountOfFreeBytes());
+				return true;
+			}
+		} catch (IOException e) {
+			// What was received is kept, so the client can continue the upload on a new connection
+			LOG.error(e.getMessage());
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
+		} finally {
+			if (keepPart) {
+				// The client may continue the upload later
+				userFile.chargePendingUpload(location, partFile.length());
+			} else {
+				partFile.delete();
+				if (!userFile.checkOwned(location)) {
+					file.delete();
+					userFile.removePendingUploads(Collections.singleton(location));
+				}
+			}
+			// What was received is charged now
+			reservation.close();
+		}
+		return false;
+	}
+
 	/**
 	 * Update a file belonging to the user with the inputStream as its new contents
 	 * 
@@ -205,6 +762,150 @@ public class ClientFileConnector {
 		return false;
 	}
 
+	/**
+	 * Writes changed ranges into a file belonging to the user, so the client only sends what changed instead of the
+	 * whole file. The request holds the offsets of the ranges and optionally the new size of the file, after the
+	 * successful response the content of every range follows. The ranges are collected in a journal which is written
+	 * into the file when the client confirms the update.
+	 * 
+	 * @param inputStream
+	 *            The stream to read the ranges from
+	 * @param updateRequest
+	 *            The request containing the location, the offsets and the size
+	 * @param outputStream
+	 *            The stream to write the responses to
+	 * @return Whether the ranges were written into the file
+	 */
+	public boolean updateFileRange(DataInputStream inputStream, JsonObject updateRequest, DataOutputStream outputStream) {
+		String location = JsonObjectHandler.getProperty(updateRequest, Actions.Properties.LOCATION);
+		if (StringUtils.isBlank(location)) {
+			CommunicationUtil.returnError(outputStream, Errors.NO_FILE_LOCATION);
+			return false;
+		}
+		if (!userFile.checkOwned(location)) {
+			CommunicationUtil.returnError(outputStream, Errors.FILE_WITHOUT_OWNERSHIP);
+			return false;
+		}
+		File file = new File(PropertiesManager.getInstance().getDataDir(), location);
+		if (!file.exists()) {
+			CommunicationUtil.returnError(outputStream, Errors.FILE_NOT_FOUND);
+			return false;
+		}
+
+		List<String> offsetList = JsonObjectHandler.getStringList(updateRequest, ServerActions.OFFSETS);
+		if (offsetList == null || offsetList.isEmpty() || offsetList.size() > PropertiesManager.getInstance().getMaxRangesPerUpdate()) {
+			CommunicationUtil.returnError(outputStream, Errors.INVALID_AMOUNT);
+			return false;
+		}
+		// The ranges start within the file with the new size, a part of a larger size which no range covers is zeros
+		long baseSize = file.length();
+		long[] offsets = new long[offsetList.size()];
+		try {
+			if (updateRequest.has(ServerActions.SIZE)) {
+				baseSize = Long.parseLong(JsonObjectHandler.getProperty(updateRequest, ServerActions.SIZE));
+			}
+			for (int i = 0; i < offsets.length; i++) {
+				offsets[i] = Long.parseLong(offsetList.get(i));
+				if (offsets[i] < 0 || offsets[i] > baseSize) {
+					baseSize = -1;
+				}
+			}
+		} catch (NumberFormatException e) {
+			baseSize = -1;
+		}
+		if (baseSize < 0) {
+			CommunicationUtil.returnError(outputStream, Errors.INVALID_RANGE);
+			return false;
+		}
+
+		if (!ACTIVE_UPLOADS.add(location)) {
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_IN_PROGRESS);
+			return false;
+		}
+		try {
+			return writeRanges(inputStream, file, offsets, baseSize, outputStream);
+		} finally {
+			ACTIVE_UPLOADS.remove(location);
+		}
+	}
+
+	/**
+	 * Receives the ranges of an update into the journal of the file, and writes them into the file when the client
+	 * confirms the update. The space the file uses is changed by the difference in size.
+	 * 
+	 * @param inputStream
+	 *            The stream to read the ranges from
+	 * @param file
+	 *            The file to update
+	 * @param offsets
+	 *            The offsets of the ranges
+	 * @param baseSize
+	 *            The size of the file before the ranges are written
+	 * @param outputStream
+	 *            The stream to write the responses to
+	 * @return Whether the update was committed, its ranges are written into the file even if that failed at once
+	 */
+	private boolean writeRanges(DataInputStream inputStream, File file, long[] offsets, long baseSize, DataOutputStream outputStream) {
+		long currentSize = file.length();
+		FileJournal journal = null;
+		boolean committed = false;
+		SpaceReservation reservation = new SpaceReservation(userFile, currentSize);
+		try {
+			journal = new FileJournal(file);
+			CommunicationUtil.returnSuccessful(outputStream);
+
+			// Like an update of the whole file, the ranges may use the free space plus the size of the file
+			long allowedAmountOfBytes = userFile.getAmountOfFreeBytes() + currentSize;
+			boolean fits = true;
+			for (long offset : offsets) {
+				try (InputStream virtualInputStream = new VirtualInputStream(inputStream)) {
+					if (fits && journal.addRange(offset, virtualInputStream, allowedAmountOfBytes) == -1) {
+						fits = false;
+					}
+					// Skip what is left of a range that didn't fit, the next range follows it
+					IOUtils.copy(virtualInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
+				}
+			}
+			long newSize = Math.max(baseSize, journal.getEnd());
+			if (!fits || !reservation.take(newSize)) {
+				CommunicationUtil.returnError(outputStream, Errors.UPLOAD_TOO_BIG);
+				return false;
+			}
+
+			if (CommunicationUtil.uploadSuccessful(outputStream, inputStream)) {
+				// From here on the ranges are written into the file, even after a crash
+				journal.commit(baseSize);
+				journal.close();
+				committed = true;
+				if (newSize > currentSize) {
+					userFile.addAmountOfBytes(newSize - currentSize);
+				} else if (newSize < currentSize) {
+					userFile.removeAmountOfBytes(currentSize - newSize);
+				}
+				try {
+					FileJournal.apply(file);
+					FileManager.touchFile(file);
+				} catch (IOException e) {
+					// The update has taken place, the committed journal is applied by the next update or when the server
+					// starts
+					LOG.error("Committed journal of " + file.getName() + " could not be applied yet", e);
+				}
+				Metrics.add("update.ranges", offsets.length);
+				LOG.trace("Amount of free bytes: " + userFile.getAmountOfFreeBytes());
+				return true;
+			}
+		} catch (IOException e) {
+			LOG.error(e.getMessage());
+			CommunicationUtil.returnError(outputStream, Errors.UPLOAD_FAILED);
+		} finally {
+			if (journal != null && !committed) {
+				journal.discard();
+			}
+			reservation.close();
+		}
+		return false;
+	}
+
 	/**
 	 * Remove a file belonging to the user
 	 * 
@@ -252,6 +953,62 @@ public class ClientFileConnector {
 		return false;
 	}
 
+	/**
+	 * Removes several files belonging to the user. The userfile is changed and saved once, after which the user gets
+	 * the locations that were removed right away. The files themselves are deleted in the background.
+	 * 
+	 * @param removeRequest
+	 *            The request containing the locations of the files that need to be removed
+	 * @param outputStream
+	 *            The stream to write responses to
+	 * @return whether the remove was successful or not
+	 */
+	public boolean removeFiles(JsonObject removeRequest, DataOutputStream outputStream) {
+		List<String> locations = JsonObjectHandler.getStringList(removeRequest, Responses.LOCATIONS);
+		if (locations == null || locations.isEmpty()) {
+			CommunicationUtil.returnError(outputStream, Errors.NO_FILE_LOCATION);
+			return false;
+		}
+
+		// Only the files of the user are removed, a location which isn't owned is left out of the response
+		String dataDir = PropertiesManager.getInstance().getDataDir();
+		Map<String, Long> sizes = new HashMap<>();
+		for (String location : locations) {
+			if (!StringUtils.isBlank(location) && userFile.checkOwned(location)) {
+				sizes.put(location, new File(dataDir, location).length());
+			}
+		}
+		Metrics.add("remove.batchFiles", locations.size());
+
+		List<String> removed = userFile.removeFiles(sizes);
+		if (removed == null) {
+			CommunicationUtil.returnError(outputStream, Errors.CANNOT_SAVE_USER_FILE);
+			return false;
+		}
+
+		boolean result = false;
+		try {
+			JsonArray locationArray = new JsonArray();
+			for (String location : removed) {
+				locationArray.add(new JsonPrimitive(location));
+			}
+			Map<String, Object> properties = new HashMap<>();
+			properties.put(Responses.LOCATIONS, locationArray);
+			CommunicationUtil.returnSuccessfulWithProperties(outputStream, properties);
+			result = true;
+		} catch (IOException e) {
+			LOG.debug("IOException when returning the successful delete: ", e);
+		}
+
+		// The files no longer belong to the user, so they are deleted even when the response could not be sent
+		List<File> files = new ArrayList<>();
+		for (String location : removed) {
+			files.add(new File(dataDir, location));
+		}
+		DeletionQueue.delete(files);
+		return result;
+	}
+
 	/**
 	 * Updates the keyfile with the inputStream as its content.
 	 * 
@@ -275,7 +1032,7 @@ public class ClientFileConnector {
 
 			} else {
 				LOG.error("User's keyfile doesn't exist");
-				CommunicationUtil.returnError(outputStream, "User keyfile could not be found (Please contact a server administrator)");
+				CommunicationUtil.returnError(outputStream, Errors.KEY_FILE_NOT_FOUND);
 			}
 		}
 		return false;
@@ -0,0 +1,80 @@
+package org.fides.server;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of the clients which are being handled, so they can be drained when the server shuts down
+ */
+class ClientRegistry {
+
+	private final Set<Client> clients = Collections.newSetFromMap(new ConcurrentHashMap<Client, Boolean>());
+
+	private volatile boolean draining;
+
+	/**
+	 * Registers a client which starts being handled
+	 *
+	 * @param client
+	 *            The client
+	 * @return false if the server is shutting down and the client shouldn't be handled
+	 */
+	boolean register(Client client) {
+		clients.add(client);
+		if (draining) {
+			clients.remove(client);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a client which isn't handled anymore
+	 *
+	 * @param client
+	 *            The client
+	 */
+	void unregister(Client client) {
+		clients.remove(client);
+	}
+
+	/**
+	 * Stops registering new clients and lets the registered clients finish their current action
+	 *
+	 * @return The amount of clients which were handling an action, the other clients are disconnected
+	 */
+	int drain() {
+		draining = true;
+		int busy = 0;
+		for (Client client : clients) {
+			if (client.drain()) {
+				busy++;
+			}
+		}
+		return busy;
+	}
+
+	/**
+	 * Closes the connections of the clients which are still registered
+	 *
+	 * @return The amount of closed connections
+	 */
+	int abort() {
+		int aborted = 0;
+		for (Client client : clients) {
+			client.abort();
+			aborted++;
+		}
+		return aborted;
+	}
+
+	/**
+	 * Returns the amount of registered clients
+	 *
+	 * @return The amount of clients
+	 */
+	int size() {
+		return clients.size();
+	}
+}
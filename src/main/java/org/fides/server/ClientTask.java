@@ -0,0 +1,83 @@
+package org.fides.server;
+
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.IOUtils;
+import org.fides.server.tools.ConnectionLimiter;
+import org.fides.server.tools.Metrics;
+
+/**
+ * Wraps the handling of a single connection so the time it waits for a thread and the time it is handled can be
+ * measured.
+ */
+class ClientTask implements Runnable {
+
+	private final Client client;
+
+	private final Socket socket;
+
+	private final ConnectionLimiter connectionLimiter;
+
+	private final ClientRegistry clientRegistry;
+
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	private final long createdAt = System.nanoTime();
+
+	/**
+	 * Constructor for ClientTask
+	 *
+	 * @param client
+	 *            The client to run
+	 * @param socket
+	 *            The socket of the connection with the client
+	 * @param connectionLimiter
+	 *            The limiter which admitted the connection
+	 * @param clientRegistry
+	 *            The registry of the clients which are being handled
+	 */
+	ClientTask(Client client, Socket socket, ConnectionLimiter connectionLimiter, ClientRegistry clientRegistry) {
+		this.client = client;
+		this.socket = socket;
+		this.connectionLimiter = connectionLimiter;
+		this.clientRegistry = clientRegistry;
+	}
+
+	/**
+	 * Returns the socket of the connection that is handled by this task
+	 *
+	 * @return The socket
+	 */
+	Socket getSocket() {
+		return socket;
+	}
+
+	@Override
+	public void run() {
+		long startedAt = System.nanoTime();
+		Metrics.histogram("worker.queueMicros").record((startedAt - createdAt) / 1000);
+		if (!clientRegistry.register(client)) {
+			// The server is shutting down
+			IOUtils.closeQuietly(socket);
+			release();
+			return;
+		}
+		try {
+			client.run();
+		} finally {
+			clientRegistry.unregister(client);
+			Metrics.histogram("worker.taskMicros").record((System.nanoTime() - startedAt) / 1000);
+			release();
+		}
+	}
+
+	/**
+	 * Releases the admission of the connection, this happens once even if it is called multiple times
+	 */
+	void release() {
+		if (released.compareAndSet(false, true)) {
+			connectionLimiter.release(socket.getInetAddress());
+		}
+	}
+}
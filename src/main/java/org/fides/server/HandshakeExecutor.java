@@ -0,0 +1,216 @@
+package org.fides.server;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.ConnectionLimiter;
+import org.fides.server.tools.Metrics;
+
+/**
+ * Runs the TLS handshakes of new connections on a pool sized to the amount of processors, so the expensive key exchange
+ * doesn't compete with the file transfers of the clients. A handshake which doesn't finish before the deadline is
+ * aborted by closing the connection, so a client which sends its handshake slowly can't hold a thread.
+ */
+public class HandshakeExecutor {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(HandshakeExecutor.class);
+
+	/** The maximum amount of connections waiting for their handshake, others are refused */
+	private static final int HANDSHAKE_QUEUE_SIZE = 1024;
+
+	private final ThreadPoolExecutor handshakePool;
+
+	private final ScheduledThreadPoolExecutor deadlineTimer;
+
+	private final int timeoutMillis;
+
+	/**
+	 * Constructor for HandshakeExecutor
+	 *
+	 * @param threads
+	 *            The amount of handshake threads, 0 to use one per processor
+	 * @param timeoutInSeconds
+	 *            The time a client gets to finish the handshake, 0 to wait forever
+	 */
+	public HandshakeExecutor(int threads, int timeoutInSeconds) {
+		int amountOfThreads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+		handshakePool = new ThreadPoolExecutor(amountOfThreads, amountOfThreads, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(HANDSHAKE_QUEUE_SIZE),
+			new ClientExecutor.NamedThreadFactory("Handshake"), new ThreadPoolExecutor.AbortPolicy());
+		deadlineTimer = new ScheduledThreadPoolExecutor(1, new ClientExecutor.NamedThreadFactory("HandshakeDeadline"));
+		deadlineTimer.setRemoveOnCancelPolicy(true);
+		timeoutMillis = Math.max(0, timeoutInSeconds) * 1000;
+
+		Metrics.registerGauge("tls.handshakeQueueDepth", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return handshakePool.getQueue().size();
+			}
+		});
+		Metrics.registerGauge("tls.resumptionHitRatePercent", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				long resumed = Metrics.getCount("tls.handshakes.resumed");
+				long total = resumed + Metrics.getCount("tls.handshakes.full");
+				return total == 0 ? 0 : resumed * 100 / total;
+			}
+		});
+		LOG.debug("Using " + amountOfThreads + " handshake threads with a deadline of " + timeoutInSeconds + " seconds");
+	}
+
+	/**
+	 * Returns the executor which runs the expensive parts of a handshake
+	 *
+	 * @return The executor of the handshake threads
+	 */
+	public Executor getTaskExecutor() {
+		return handshakePool;
+	}
+
+	/**
+	 * Schedules the action which aborts a handshake at its deadline
+	 *
+	 * @param onTimeout
+	 *            The action which aborts the handshake
+	 * @return The scheduled deadline which has to be cancelled when the handshake finishes, null if there is no deadline
+	 */
+	public ScheduledFuture<?> scheduleDeadline(Runnable onTimeout) {
+		if (timeoutMillis == 0) {
+			return null;
+		}
+		return deadlineTimer.schedule(onTimeout, timeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Records the duration of a finished handshake and whether it resumed an earlier session. A resumed session was
+	 * created before the handshake started, a full handshake creates a new session.
+	 *
+	 * @param startTime
+	 *            The time the handshake started, from {@link System#nanoTime()}
+	 * @param startMillis
+	 *            The time the handshake started, from {@link System#currentTimeMillis()}
+	 * @param session
+	 *            The session negotiated by the handshake
+	 */
+	public static void recordHandshake(long startTime, long startMillis, SSLSession session) {
+		long micros = (System.nanoTime() - startTime) / 1000;
+		Metrics.histogram("tls.handshakeMicros").record(micros);
+		if (session.getCreationTime() < startMillis) {
+			Metrics.increment("tls.handshakes.resumed");
+			Metrics.histogram("tls.resumedHandshakeMicros").record(micros);
+		} else {
+			Metrics.increment("tls.handshakes.full");
+			Metrics.histogram("tls.fullHandshakeMicros").record(micros);
+		}
+	}
+
+	/**
+	 * Performs the handshake of an accepted connection on a handshake thread and hands the connection to the client
+	 * executor when the handshake succeeded
+	 *
+	 * @param socket
+	 *            The accepted connection
+	 * @param connectionLimiter
+	 *            The limiter which admitted the connection
+	 * @param clientRegistry
+	 *            The registry of the clients which are being handled
+	 * @param clientExecutor
+	 *            The executor which handles the client
+	 */
+	void handshake(final SSLSocket socket, final ConnectionLimiter connectionLimiter, final ClientRegistry clientRegistry, final Executor clientExecutor) {
+		try {
+			handshakePool.execute(new Runnable() {
+				@Override
+				public void run() {
+					runHandshake(socket, connectionLimiter, clientRegistry, clientExecutor);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.debug("Too many pending handshakes, refusing " + socket.getRemoteSocketAddress());
+			Metrics.increment("tls.handshakeRejected");
+			Server.refuse(socket);
+			connectionLimiter.release(socket.getInetAddress());
+		}
+	}
+
+	/**
+	 * Performs the handshake of a connection, runs on a handshake thread
+	 *
+	 * @param socket
+	 *            The accepted connection
+	 * @param connectionLimiter
+	 *            The limiter which admitted the connection
+	 * @param clientRegistry
+	 *            The registry of the clients which are being handled
+	 * @param clientExecutor
+	 *            The executor which handles the client
+	 */
+	private void runHandshake(final SSLSocket socket, ConnectionLimiter connectionLimiter, ClientRegistry clientRegistry, Executor clientExecutor) {
+		long startTime = System.nanoTime();
+		long startMillis = System.currentTimeMillis();
+		ScheduledFuture<?> deadline = scheduleDeadline(new Runnable() {
+			@Override
+			public void run() {
+				IOUtils.closeQuietly(socket);
+			}
+		});
+
+		boolean handshaken = false;
+		boolean timedOut = false;
+		try {
+			socket.setSoTimeout(timeoutMillis);
+			socket.startHandshake();
+			socket.setSoTimeout(0);
+			handshaken = true;
+		} catch (SocketTimeoutException e) {
+			timedOut = true;
+		} catch (IOException e) {
+			LOG.debug("Handshake with " + socket.getRemoteSocketAddress() + " failed", e);
+		}
+		// When the deadline already passed the socket is closed, even if the handshake just finished
+		if (deadline != null && !deadline.cancel(false)) {
+			timedOut = true;
+		}
+
+		if (!handshaken || timedOut) {
+			Metrics.increment(timedOut ? "tls.handshakeTimeouts" : "tls.handshakeFailures");
+			IOUtils.closeQuietly(socket);
+			connectionLimiter.release(socket.getInetAddress());
+			return;
+		}
+		recordHandshake(startTime, startMillis, socket.getSession());
+
+		// Let the executor handle the client
+		ClientTask task = new ClientTask(new Client(socket), socket, connectionLimiter, clientRegistry);
+		try {
+			clientExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			LOG.error("Client could not be handled", e);
+			IOUtils.closeQuietly(socket);
+			task.release();
+		}
+	}
+
+	/**
+	 * Stops the handshake threads
+	 */
+	public void shutdown() {
+		handshakePool.shutdown();
+		deadlineTimer.shutdownNow();
+	}
+}
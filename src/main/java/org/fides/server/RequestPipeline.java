@@ -0,0 +1,272 @@
+package org.fides.server;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.components.Actions;
+import org.fides.server.protocol.MessageCodecs;
+import org.fides.server.protocol.ProtocolInputStream;
+import org.fides.server.tools.JsonObjectHandler;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.ServerActions;
+import org.fides.server.tools.VirtualThreads;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Reads the requests of a connection ahead while the earlier requests are handled, so a client can send several
+ * requests without waiting for the answers. The requests are handled one by one in the order they were sent, so the
+ * answers keep the order of the requests as well.
+ *
+ * At most a limited amount of requests is in flight: read but not yet handled. After an action which reads more from
+ * the connection than its request, such as an upload, the reader waits until the action is finished, because the bytes
+ * which follow the request belong to the action.
+ *
+ * The requests are decoded with a codec of their own, because the codec of the connection encodes the answers on the
+ * thread which handles the actions at the same time.
+ */
+class RequestPipeline implements Runnable {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(RequestPipeline.class);
+
+	/** The actions which read more from the connection than their request */
+	private static final Set<String> STREAMING_ACTIONS = new HashSet<>(Arrays.asList(Actions.UPLOAD_FILE, Actions.UPDATE_FILE, Actions.UPDATE_KEY_FILE,
+		ServerActions.MULTIPLEX, ServerActions.UPLOAD_FILES, ServerActions.RESUMABLE_UPLOAD, ServerActions.UPDATE_FILE_RANGE));
+
+	/** Stands for an empty request, the queue can't hold null */
+	private static final Object EMPTY_REQUEST = new Object();
+
+	private final RequestReader requestReader;
+
+	private final Semaphore slots;
+
+	private final Semaphore resume = new Semaphore(0);
+
+	/** The requests which were read and the failure that stopped the reader */
+	private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile boolean stopped;
+
+	private Thread thread;
+
+	/**
+	 * Constructor for RequestPipeline
+	 *
+	 * @param maxRequests
+	 *            The maximum amount of requests in flight
+	 * @param requestReader
+	 *            Reads the next request from the connection
+	 */
+	RequestPipeline(int maxRequests, RequestReader requestReader) {
+		this.slots = new Semaphore(maxRequests);
+		this.requestReader = requestReader;
+	}
+
+	/**
+	 * Starts reading the requests, on a virtual thread when the connection is handled by one
+	 */
+	void start() {
+		thread = VirtualThreads.newHelperThread(this, "RequestReader");
+		thread.start();
+	}
+
+	/**
+	 * Stops reading the requests. A read which is blocked on the connection ends when the connection is closed.
+	 */
+	void stop() {
+		stopped = true;
+		resume.release();
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Returns whether no request is waiting to be handled, the answers should then be sent before waiting for one
+	 *
+	 * @return true if the next request hasn't been read yet
+	 */
+	boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	/**
+	 * Waits for the next request
+	 *
+	 * @return The request
+	 * @throws IOException
+	 *             if the connection failed or the client disconnected while the request was read
+	 */
+	JsonObject take() throws IOException {
+		Object next;
+		try {
+			next = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a request", e);
+		}
+		if (next instanceof JsonObject) {
+			return (JsonObject) next;
+		}
+		if (next == EMPTY_REQUEST) {
+			return null;
+		}
+		// Keep the failure for a following call
+		queue.add(next);
+		if (next instanceof IOException) {
+			throw (IOException) next;
+		}
+		throw (RuntimeException) next;
+	}
+
+	/**
+	 * Marks the end of the action of a request, the reader may read the next one
+	 *
+	 * @param request
+	 *            The request that was handled
+	 */
+	void finished(JsonObject request) {
+		inFlight.decrementAndGet();
+		slots.release();
+		if (isStreaming(request)) {
+			resume.release();
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!stopped) {
+				slots.acquire();
+				JsonObject request = readRequest();
+				if (inFlight.getAndIncrement() > 0) {
+					Metrics.increment("pipeline.readAhead");
+				}
+				queue.add(request == null ? EMPTY_REQUEST : request);
+				if (request != null && Actions.DISCONNECT.equals(JsonObjectHandler.getProperty(request, Actions.ACTION))) {
+					return;
+				}
+				if (isStreaming(request)) {
+					// The bytes after the request belong to the action
+					resume.acquire();
+				}
+			}
+		} catch (InterruptedException e) {
+			LOG.trace("Request reader stopped");
+		} catch (IOException | RuntimeException e) {
+			queue.add(e);
+		}
+	}
+
+	/**
+	 * Reads the next request. A client which waits for the answers to its requests isn't idle, so the idle timeout only
+	 * ends the session when no request is in flight. Only the wait for the first byte is retried, a timeout after a part
+	 * of the request was read ends the session because the rest of the request can't be found anymore.
+	 *
+	 * @return The request
+	 * @throws IOException
+	 *             if the request could not be read
+	 */
+	private JsonObject readRequest() throws IOException {
+		while (true) {
+			try {
+				requestReader.awaitRequest();
+				break;
+			} catch (SocketTimeoutException e) {
+				if (stopped || inFlight.get() == 0) {
+					Metrics.increment("session.idleTimeouts");
+					throw e;
+				}
+			}
+		}
+		return requestReader.readRequest();
+	}
+
+	/**
+	 * Checks whether the action of a request reads more from the connection than the request
+	 *
+	 * @param request
+	 *            The request
+	 * @return true if the reader has to wait until the action is finished
+	 */
+	private static boolean isStreaming(JsonObject request) {
+		return request != null && STREAMING_ACTIONS.contains(JsonObjectHandler.getProperty(request, Actions.ACTION));
+	}
+
+	/**
+	 * Reads the requests of a connection for a pipeline
+	 */
+	interface RequestReader {
+
+		/**
+		 * Waits until the first byte of the next request arrives, without consuming it
+		 *
+		 * @throws SocketTimeoutException
+		 *             if nothing arrived within the timeout, the wait may be tried again
+		 * @throws IOException
+		 *             if the connection failed or the client disconnected
+		 */
+		void awaitRequest() throws IOException;
+
+		/**
+		 * Reads the request that arrived
+		 *
+		 * @return The request
+		 * @throws IOException
+		 *             if the request could not be read or isn't valid
+		 */
+		JsonObject readRequest() throws IOException;
+	}
+
+	/**
+	 * Reads the requests from the input of a connection with a codec of the same kind as the codec of the connection
+	 */
+	static class StreamRequestReader implements RequestReader {
+
+		private final PushbackInputStream requestStart;
+
+		private final DataInputStream requestIn;
+
+		/**
+		 * Constructor for StreamRequestReader
+		 *
+		 * @param in
+		 *            The input of the connection
+		 */
+		StreamRequestReader(DataInputStream in) {
+			this.requestStart = new PushbackInputStream(in, 1);
+			this.requestIn = new ProtocolInputStream(requestStart, MessageCodecs.createLike(in));
+		}
+
+		@Override
+		public void awaitRequest() throws IOException {
+			int first = requestStart.read();
+			if (first < 0) {
+				throw new EOFException();
+			}
+			requestStart.unread(first);
+		}
+
+		@Override
+		public JsonObject readRequest() throws IOException {
+			return MessageCodecs.read(requestIn);
+		}
+	}
+}
@@ -1,20 +1,45 @@
 package org.fides.server;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.security.KeyStore;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
-import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLServerSocket;
 import javax.net.ssl.SSLServerSocketFactory;
 import javax.net.ssl.SSLSocket;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.fides.server.files.DeletionQueue;
+import org.fides.server.files.FileJournal;
+import org.fides.server.nio.NioServer;
+import org.fides.server.tools.BlockingMonitor;
+import org.fides.server.tools.ConnectionLimiter;
+import org.fides.server.tools.Metrics;
 import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.SocketTuning;
+import org.fides.server.tools.SslContextFactory;
+import org.fides.server.tools.TlsProfile;
 import org.fides.server.tools.UserLocker;
+import org.fides.server.tools.VirtualThreads;
 
 /**
  * This class represents the Server
@@ -25,10 +50,27 @@ public class Server implements Runnable {
 	 */
 	private static final Logger LOG = LogManager.getLogger(Server.class);
 
-	private SSLServerSocket sslServerSocket;
+	private final List<SSLServerSocket> sslServerSockets = new ArrayList<>();
+
+	private int acceptorThreads = 1;
+
+	private NioServer nioServer;
+
+	private ServerSocket plainServerSocket;
+
+	/** The interval in which the shutdown checks whether all connections are drained */
+	private static final long DRAIN_POLL_MILLIS = 100;
 
 	private volatile boolean isRunning = true;
 
+	private final Executor clientExecutor;
+
+	private final ConnectionLimiter connectionLimiter;
+
+	private final HandshakeExecutor handshakeExecutor;
+
+	private final ClientRegistry clientRegistry = new ClientRegistry();
+
 	/**
 	 * Constructor to create a new server socket
 	 *
@@ -38,24 +80,54 @@ public class Server implements Runnable {
 		// Instantiating the PropertiesManager
 		PropertiesManager propertiesManager = PropertiesManager.getInstance();
 		UserLocker.clearAllLocks();
+		String dataDir = propertiesManager.getDataDir();
+		if (StringUtils.isNotEmpty(dataDir)) {
+			int recovered = FileJournal.recover(new File(dataDir));
+			if (recovered > 0) {
+				LOG.info("Applied " + recovered + " range updates which were committed before the server stopped");
+			}
+		}
+		SocketTuning.configure(propertiesManager);
+		clientExecutor = createClientExecutor(propertiesManager);
+		connectionLimiter = new ConnectionLimiter(propertiesManager.getMaxConnections(), propertiesManager.getMaxConnectionsPerAddress(),
+			propertiesManager.getMaxAcceptsPerSecond());
+		handshakeExecutor = new HandshakeExecutor(propertiesManager.getHandshakeThreads(), propertiesManager.getHandshakeTimeoutInSeconds());
 		try {
-			// Set up the key manager for server authentication
-			SSLContext sslContext = SSLContext.getInstance("TLS");
-			KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
-			KeyStore keyStore = KeyStore.getInstance("JKS");
-
-			// Load the given keystore with the given password
-			keyStore.load(new FileInputStream(propertiesManager.getKeystorePath()), propertiesManager.getKeystorePassword());
-			keyManagerFactory.init(keyStore, propertiesManager.getKeystorePassword());
+			SSLContext sslContext = SslContextFactory.createSslContext();
+			TlsProfile tlsProfile = TlsProfile.forName(propertiesManager.getTlsProfile(), sslContext);
+			LOG.debug("Using TLS profile: " + tlsProfile);
 
-			// Load the KeyManagers in the sslContext
-			sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+			if (PropertiesManager.TRANSPORT_NIO.equals(propertiesManager.getTransport())) {
+				// Use the non blocking transport
+				nioServer = new NioServer(sslContext, tlsProfile, clientExecutor, handshakeExecutor, connectionLimiter, propertiesManager.getPort(), propertiesManager.getAcceptBacklog(),
+					propertiesManager.getEventLoopThreads());
+			} else {
+				// Create a SSLServerSocketFactory from the SSLContext
+				SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
+				acceptorThreads = Math.max(1, propertiesManager.getAcceptorThreads());
 
-			// Create a SSLServerSocketFactory from the SSLContext
-			SSLServerSocketFactory sslServerSocketFactory = sslContext.getServerSocketFactory();
+				// Create the SSLServerSocket from the factory on the given port, with SO_REUSEPORT every acceptor gets
+				// its own listening socket and the kernel divides the connections between them. It also lets a new
+				// process bind the port while this one drains its connections.
+				SSLServerSocket firstSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket();
+				boolean reusePort = propertiesManager.isReusePort() && enableReusePort(firstSocket);
+				if (propertiesManager.isReusePort() && !reusePort) {
+					LOG.warn("SO_REUSEPORT is not supported, the acceptors share a single listening socket");
+				}
+				sslServerSockets.add(bindServerSocket(firstSocket, tlsProfile, propertiesManager));
+				if (reusePort) {
+					for (int i = 1; i < acceptorThreads; i++) {
+						SSLServerSocket socket = (SSLServerSocket) sslServerSocketFactory.createServerSocket();
+						enableReusePort(socket);
+						sslServerSockets.add(bindServerSocket(socket, tlsProfile, propertiesManager));
+					}
+				}
+				LOG.debug("Using " + acceptorThreads + " acceptors on " + sslServerSockets.size() + " listening sockets");
+			}
 
-			// Create the SSLServerSocket from the factory on the given port
-			sslServerSocket = (SSLServerSocket) sslServerSocketFactory.createServerSocket(propertiesManager.getPort());
+			if (propertiesManager.getPlainPort() > 0) {
+				plainServerSocket = createPlainServerSocket(propertiesManager);
+			}
 
 			LOG.debug("Server started on port: " + propertiesManager.getPort());
 			LOG.debug("Using user directory: " + propertiesManager.getUserDir());
@@ -67,10 +139,116 @@ public class Server implements Runnable {
 		}
 	}
 
+	/**
+	 * Binds a listening socket to the configured port
+	 * 
+	 * @param socket
+	 *            The unbound socket
+	 * @param tlsProfile
+	 *            The profile with the protocols and cipher suites to enable
+	 * @param propertiesManager
+	 *            The properties containing the port and the backlog
+	 * @return The bound listening socket
+	 * @throws IOException
+	 *             if the socket could not be bound
+	 */
+	private static SSLServerSocket bindServerSocket(SSLServerSocket socket, TlsProfile tlsProfile, PropertiesManager propertiesManager) throws IOException {
+		tlsProfile.apply(socket);
+		socket.setReuseAddress(true);
+		SocketTuning.applyToListener(socket);
+		socket.bind(new InetSocketAddress(propertiesManager.getPort()), propertiesManager.getAcceptBacklog());
+		return socket;
+	}
+
+	/**
+	 * Creates the listening socket for plaintext connections from a local TLS terminator. The socket may only be bound
+	 * to a loopback address, because the connections aren't encrypted.
+	 * 
+	 * @param propertiesManager
+	 *            The properties containing the plaintext port and its address
+	 * @return The bound listening socket, null if the address isn't a loopback address
+	 * @throws IOException
+	 *             if the socket could not be bound
+	 */
+	private static ServerSocket createPlainServerSocket(PropertiesManager propertiesManager) throws IOException {
+		InetAddress bindAddress = InetAddress.getByName(propertiesManager.getPlainBindAddress());
+		if (!bindAddress.isLoopbackAddress()) {
+			LOG.error("The plaintext listener may only be bound to a loopback address, not to " + bindAddress);
+			return null;
+		}
+		ServerSocket socket = new ServerSocket();
+		socket.setReuseAddress(true);
+		SocketTuning.applyToListener(socket);
+		if (propertiesManager.isReusePort()) {
+			enableReusePort(socket);
+		}
+		socket.bind(new InetSocketAddress(bindAddress, propertiesManager.getPlainPort()), propertiesManager.getAcceptBacklog());
+		LOG.debug("Plaintext listener started on " + socket.getLocalSocketAddress());
+		return socket;
+	}
+
+	/**
+	 * Enables SO_REUSEPORT on an unbound listening socket. The option is only available from Java 9 on, so it is set
+	 * through reflection.
+	 * 
+	 * @param socket
+	 *            The unbound socket
+	 * @return Whether the option could be enabled
+	 */
+	private static boolean enableReusePort(ServerSocket socket) {
+		try {
+			Object reusePort = StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+			Method setOption = ServerSocket.class.getMethod("setOption", SocketOption.class, Object.class);
+			setOption.invoke(socket, reusePort, Boolean.TRUE);
+			return true;
+		} catch (NoSuchFieldException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+			LOG.debug("SO_REUSEPORT could not be enabled", e);
+			return false;
+		}
+	}
+
 	/**
 	 * Accepting client connections
 	 */
 	public void run() {
+		if (plainServerSocket != null) {
+			Thread plainAcceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					acceptPlain();
+				}
+			}, "PlainAcceptor");
+			plainAcceptor.start();
+		}
+
+		if (nioServer != null) {
+			nioServer.run();
+			return;
+		}
+
+		// Start the extra acceptors, the first acceptor runs on this thread
+		for (int i = 1; i < acceptorThreads; i++) {
+			final int index = i;
+			Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					accept(index);
+				}
+			}, "Acceptor-" + index);
+			acceptor.start();
+		}
+		accept(0);
+	}
+
+	/**
+	 * Accepts client connections on the listening socket of the given acceptor
+	 * 
+	 * @param index
+	 *            The number of the acceptor
+	 */
+	private void accept(int index) {
+		SSLServerSocket sslServerSocket = sslServerSockets.get(index % sslServerSockets.size());
+		String acceptedCounter = "acceptor." + index + ".accepted";
 
 		while (isRunning) {
 			try {
@@ -78,17 +256,185 @@ public class Server implements Runnable {
 				// The SSLSocket that will handle the connection
 				// Listens for a connection to be made to this socket and accepts
 				SSLSocket sslsocket = (SSLSocket) sslServerSocket.accept();
+				Metrics.increment(acceptedCounter);
+				SocketTuning.apply(sslsocket);
+
+				// Refuse the connection before the TLS handshake when a limit is reached
+				if (!connectionLimiter.tryAcquire(sslsocket.getInetAddress())) {
+					refuse(sslsocket);
+					continue;
+				}
+
+				// Perform the handshake on the handshake threads, they hand the connection to the client executor
+				handshakeExecutor.handshake(sslsocket, connectionLimiter, clientRegistry, clientExecutor);
+
+			} catch (IOException e) {
+				if (isRunning) {
+					LOG.error("IOException on socket listen", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Accepts the plaintext connections of a local TLS terminator, they don't need a handshake so they are handed to the
+	 * client executor directly
+	 */
+	private void acceptPlain() {
+		while (isRunning) {
+			try {
+				Socket socket = plainServerSocket.accept();
+				Metrics.increment("plain.accepted");
+				SocketTuning.apply(socket);
 
-				// Create a client object from the connection
-				Client client = new Client(sslsocket);
-				// Start a thread with the created Client
-				Thread t = new Thread(client);
-				t.start();
+				if (!connectionLimiter.tryAcquire(socket.getInetAddress())) {
+					refuse(socket);
+					continue;
+				}
 
+				// Let the executor handle the client
+				ClientTask task = new ClientTask(new Client(socket), socket, connectionLimiter, clientRegistry);
+				try {
+					clientExecutor.execute(task);
+				} catch (RejectedExecutionException e) {
+					LOG.error("Client could not be handled", e);
+					IOUtils.closeQuietly(socket);
+					task.release();
+				}
 			} catch (IOException e) {
-				LOG.error("IOException on socket listen", e);
+				if (isRunning) {
+					LOG.error("IOException on plaintext socket listen", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes a connection which isn't admitted. The connection is reset, so it doesn't linger in the TIME_WAIT state
+	 * on the server.
+	 * 
+	 * @param socket
+	 *            The socket of the refused connection
+	 */
+	static void refuse(Socket socket) {
+		try {
+			socket.setSoLinger(true, 0);
+		} catch (SocketException e) {
+			LOG.debug("Could not reset the refused connection", e);
+		}
+		IOUtils.closeQuietly(socket);
+	}
+
+	/**
+	 * Creates the executor which runs the clients, based on the configured connection mode
+	 * 
+	 * @param propertiesManager
+	 *            The properties containing the connection mode
+	 * @return The executor for the clients
+	 */
+	private static Executor createClientExecutor(PropertiesManager propertiesManager) {
+		if (propertiesManager.isVirtualThreadDiagnostics()) {
+			// Let the JVM print the stack of every virtual thread that pins its carrier thread
+			if (System.getProperty("jdk.tracePinnedThreads") == null) {
+				System.setProperty("jdk.tracePinnedThreads", "full");
+			}
+			BlockingMonitor.setEnabled(true);
+			LOG.info("Virtual thread diagnostics enabled, " + Runtime.getRuntime().availableProcessors() + " processors available for carrier threads");
+		}
+
+		if (PropertiesManager.CONNECTION_MODE_VIRTUAL.equals(propertiesManager.getConnectionMode())) {
+			final ThreadFactory virtualThreadFactory = VirtualThreads.createFactory("VirtualClient");
+			if (virtualThreadFactory != null) {
+				LOG.debug("Using a virtual thread for every client");
+				return new Executor() {
+					@Override
+					public void execute(Runnable command) {
+						virtualThreadFactory.newThread(command).start();
+					}
+				};
 			}
+			LOG.warn("Virtual threads require Java 21 or newer, starting a thread for every client instead");
 		}
+
+		if (PropertiesManager.CONNECTION_MODE_POOL.equals(propertiesManager.getConnectionMode())) {
+			LOG.debug("Using a worker pool of " + propertiesManager.getWorkerCoreSize() + " to " + propertiesManager.getWorkerMaxSize() + " threads with a queue of "
+				+ propertiesManager.getWorkerQueueSize());
+			return new ClientExecutor(propertiesManager.getWorkerCoreSize(), propertiesManager.getWorkerMaxSize(), propertiesManager.getWorkerQueueSize());
+		}
+
+		// Start a new thread for every client
+		return new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				new Thread(command).start();
+			}
+		};
+	}
+
+	/**
+	 * Shuts the server down gracefully. It stops accepting connections, so a new process can take over the port.
+	 * Clients which are idle between actions are disconnected, and clients which are handling an action may finish it
+	 * until the deadline. Connections which are still open at the deadline are closed.
+	 * 
+	 * @param drainTimeoutInSeconds
+	 *            The time the clients get to finish their current action
+	 */
+	public void shutdown(int drainTimeoutInSeconds) {
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(Math.max(0, drainTimeoutInSeconds));
+		isRunning = false;
+
+		// Stop accepting new connections
+		for (SSLServerSocket sslServerSocket : sslServerSockets) {
+			IOUtils.closeQuietly(sslServerSocket);
+		}
+		IOUtils.closeQuietly(plainServerSocket);
+		handshakeExecutor.shutdown();
+
+		// Disconnect the idle clients and let the others finish their action
+		int connections = clientRegistry.size();
+		int busy = clientRegistry.drain();
+		try {
+			if (nioServer != null) {
+				connections += nioServer.getConnections();
+				busy += nioServer.drain();
+			}
+			while (clientRegistry.size() + getNioConnections() > 0 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(DRAIN_POLL_MILLIS);
+			}
+		} catch (InterruptedException e) {
+			LOG.warn("Interrupted while draining the connections");
+			Thread.currentThread().interrupt();
+		}
+
+		// Close what is left
+		int aborted = clientRegistry.abort() + getNioConnections();
+		if (nioServer != null) {
+			nioServer.kill();
+		}
+		if (clientExecutor instanceof ExecutorService) {
+			((ExecutorService) clientExecutor).shutdown();
+		}
+
+		// The removed files which are still queued are deleted before the process stops
+		int deleted = DeletionQueue.flush();
+		if (deleted > 0) {
+			LOG.info("Deleted " + deleted + " removed files at shutdown");
+		}
+
+		Metrics.add("shutdown.idleClosed", Math.max(0, connections - busy));
+		Metrics.add("shutdown.drained", Math.max(0, busy - aborted));
+		Metrics.add("shutdown.aborted", aborted);
+		LOG.info("Server shut down: " + Math.max(0, connections - busy) + " idle connections closed, " + Math.max(0, busy - aborted)
+			+ " connections finished their action, " + aborted + " connections closed at the deadline");
+	}
+
+	/**
+	 * Returns the amount of open connections of the non blocking transport
+	 * 
+	 * @return The amount of connections, 0 if the blocking transport is used
+	 */
+	private int getNioConnections() {
+		return nioServer == null ? 0 : nioServer.getConnections();
 	}
 
 	/**
@@ -96,7 +442,17 @@ public class Server implements Runnable {
 	 */
 	public void kill() {
 		isRunning = false;
-		IOUtils.closeQuietly(sslServerSocket);
+		for (SSLServerSocket sslServerSocket : sslServerSockets) {
+			IOUtils.closeQuietly(sslServerSocket);
+		}
+		IOUtils.closeQuietly(plainServerSocket);
+		if (nioServer != null) {
+			nioServer.kill();
+		}
+		handshakeExecutor.shutdown();
+		if (clientExecutor instanceof ExecutorService) {
+			((ExecutorService) clientExecutor).shutdown();
+		}
 
 	}
 }
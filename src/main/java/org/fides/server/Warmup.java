@@ -0,0 +1,208 @@
+package org.fides.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.files.FileManager;
+import org.fides.server.files.UserFile;
+import org.fides.server.files.UserManager;
+import org.fides.server.protocol.MessageCodecs;
+import org.fides.server.tools.CommunicationUtil;
+import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.SslContextFactory;
+import org.fides.server.tools.UserLocker;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Warms up the expensive code paths before the server accepts clients, so the first logins after a restart aren't
+ * slowed down by code which isn't compiled yet. Every round saves and unlocks a synthetic userfile (PBKDF2 and the
+ * cipher streams), performs a TLS handshake over the loopback interface, copies a block of data and encodes a response.
+ * The rounds stop when their duration has settled or the maximum time has passed.
+ */
+public final class Warmup {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(Warmup.class);
+
+	/** The amount of data copied every round */
+	private static final int COPY_SIZE = 1024 * 1024;
+
+	/** The minimum amount of rounds, the first rounds are always slow */
+	private static final int MIN_ROUNDS = 5;
+
+	/** The amount of recent rounds which have to be close to each other */
+	private static final int SETTLED_ROUNDS = 3;
+
+	/** The maximum relative difference between the recent rounds */
+	private static final double SETTLED_DEVIATION = 0.1;
+
+	private Warmup() {
+	}
+
+	/**
+	 * Runs the warm-up
+	 * 
+	 * @param maxSeconds
+	 *            The maximum duration of the warm-up
+	 */
+	public static void run(int maxSeconds) {
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.SECONDS.toNanos(maxSeconds);
+		String username = "warmup-" + UUID.randomUUID().toString();
+		String passwordHash = UUID.randomUUID().toString();
+		UserFile userFile = null;
+		SSLServerSocket serverSocket = null;
+
+		try {
+			SSLContext serverContext = SslContextFactory.createSslContext();
+			SSLContext clientContext = SslContextFactory.createLoopbackClientContext();
+			serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket();
+			serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			startHandshakeServer(serverSocket);
+
+			userFile = new UserFile(username, passwordHash);
+			byte[] data = new byte[COPY_SIZE];
+			new Random().nextBytes(data);
+
+			List<Long> latencies = new ArrayList<>();
+			do {
+				long roundStart = System.nanoTime();
+				runRound(userFile, passwordHash, clientContext, serverSocket.getLocalPort(), data);
+				latencies.add(System.nanoTime() - roundStart);
+			} while (!isSettled(latencies) && System.nanoTime() < deadline);
+
+			LOG.info("Warm-up finished after " + latencies.size() + " rounds in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+				+ " ms, a round took " + TimeUnit.NANOSECONDS.toMillis(latencies.get(0)) + " ms at first and "
+				+ TimeUnit.NANOSECONDS.toMillis(latencies.get(latencies.size() - 1)) + " ms at last");
+		} catch (GeneralSecurityException | IOException e) {
+			LOG.error("Warm-up failed", e);
+		} finally {
+			IOUtils.closeQuietly(serverSocket);
+			cleanUp(username, userFile);
+		}
+	}
+
+	/**
+	 * Runs a single round of the warm-up
+	 * 
+	 * @param userFile
+	 *            The synthetic userfile
+	 * @param passwordHash
+	 *            The password hash of the synthetic user
+	 * @param clientContext
+	 *            The context to perform the handshake with
+	 * @param port
+	 *            The port of the loopback listener
+	 * @param data
+	 *            The data to copy
+	 * @throws IOException
+	 *             if a step of the round failed
+	 */
+	private static void runRound(UserFile userFile, String passwordHash, SSLContext clientContext, int port, byte[] data) throws IOException {
+		// Encrypt and decrypt the userfile
+		if (!UserManager.saveUserFile(userFile)) {
+			throw new IOException("The synthetic userfile could not be saved");
+		}
+		UserFile unlocked = UserManager.unlockUserFile(userFile.getUsernameHash(), passwordHash);
+		if (unlocked == null) {
+			throw new IOException("The synthetic userfile could not be unlocked");
+		}
+		UserLocker.unlock(userFile.getUsernameHash());
+
+		// Perform a full handshake
+		try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory().createSocket(InetAddress.getLoopbackAddress(), port)) {
+			socket.startHandshake();
+			socket.getSession().invalidate();
+		}
+
+		// Copy a block of data and encode a response
+		ByteArrayOutputStream output = new ByteArrayOutputStream(COPY_SIZE + 1024);
+		FileManager.copyLarge(new ByteArrayInputStream(data), output, data.length);
+		CommunicationUtil.returnSuccessful(new DataOutputStream(output));
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		MessageCodecs.write(new DataOutputStream(message), new JsonObject());
+		MessageCodecs.read(new DataInputStream(new ByteArrayInputStream(message.toByteArray())));
+	}
+
+	/**
+	 * Starts a thread which performs the server side of the handshakes
+	 * 
+	 * @param serverSocket
+	 *            The loopback listener
+	 */
+	private static void startHandshakeServer(final SSLServerSocket serverSocket) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try (SSLSocket socket = (SSLSocket) serverSocket.accept()) {
+						socket.startHandshake();
+					} catch (IOException e) {
+						LOG.trace("Warm-up handshake ended", e);
+					}
+				}
+			}
+		}, "WarmupHandshake");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Checks whether the duration of the recent rounds is close enough to each other
+	 * 
+	 * @param latencies
+	 *            The durations of the rounds
+	 * @return true if the durations have settled
+	 */
+	private static boolean isSettled(List<Long> latencies) {
+		if (latencies.size() < MIN_ROUNDS) {
+			return false;
+		}
+		long min = Long.MAX_VALUE;
+		long max = 0;
+		for (long latency : latencies.subList(latencies.size() - SETTLED_ROUNDS, latencies.size())) {
+			min = Math.min(min, latency);
+			max = Math.max(max, latency);
+		}
+		return max - min <= min * SETTLED_DEVIATION;
+	}
+
+	/**
+	 * Removes the files of the synthetic user
+	 * 
+	 * @param username
+	 *            The name of the synthetic user
+	 * @param userFile
+	 *            The synthetic userfile, null if it wasn't created
+	 */
+	private static void cleanUp(String username, UserFile userFile) {
+		PropertiesManager propertiesManager = PropertiesManager.getInstance();
+		UserLocker.unlock(username);
+		new File(propertiesManager.getUserDir(), username).delete();
+		if (userFile != null && userFile.getKeyFileLocation() != null) {
+			new File(propertiesManager.getDataDir(), userFile.getKeyFileLocation()).delete();
+		}
+	}
+}
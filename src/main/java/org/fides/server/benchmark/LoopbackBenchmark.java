@@ -0,0 +1,239 @@
+package org.fides.server.benchmark;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.commons.io.IOUtils;
+import org.fides.server.files.FileManager;
+import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.SslContextFactory;
+import org.fides.server.tools.TlsProfile;
+
+/**
+ * Measures the TLS handshakes per second and the download throughput of every TLS profile over the loopback interface,
+ * and compares them with the plaintext listener for a local TLS terminator. It uses the keystores of config.properties,
+ * so an ECDSA keystore is measured as well when it is configured.
+ * 
+ * Usage: LoopbackBenchmark [handshakes] [megabytes]
+ */
+public final class LoopbackBenchmark {
+
+	private static final int DEFAULT_HANDSHAKES = 500;
+
+	private static final int DEFAULT_MEGABYTES = 256;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final String[] PROFILES = { PropertiesManager.TLS_PROFILE_DEFAULT, PropertiesManager.TLS_PROFILE_COMPATIBLE,
+		PropertiesManager.TLS_PROFILE_PERFORMANCE };
+
+	private LoopbackBenchmark() {
+	}
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param args
+	 *            The amount of handshakes and the amount of megabytes to transfer per profile
+	 * @throws Exception
+	 *             if the benchmark could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		int handshakes = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_HANDSHAKES;
+		int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MEGABYTES;
+
+		SSLContext serverContext = SslContextFactory.createSslContext();
+		SSLContext clientContext = SslContextFactory.createLoopbackClientContext();
+		File file = createFile(megabytes);
+
+		System.out.println(String.format(Locale.ROOT, "%-12s %-8s %-45s %-5s %12s %10s", "profile", "protocol", "cipher suite", "key", "handshakes/s", "MB/s"));
+		for (String name : PROFILES) {
+			TlsProfile profile = TlsProfile.forName(name, serverContext);
+			SSLServerSocket serverSocket = (SSLServerSocket) serverContext.getServerSocketFactory().createServerSocket();
+			try {
+				profile.apply(serverSocket);
+				serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+				Thread server = startServer(serverSocket, file, false);
+
+				// Warm up the code paths before measuring
+				SocketFactory socketFactory = clientContext.getSocketFactory();
+				measureHandshakes(socketFactory, serverSocket.getLocalPort(), Math.max(1, handshakes / 10));
+				double handshakesPerSecond = measureHandshakes(socketFactory, serverSocket.getLocalPort(), handshakes);
+
+				SSLSocket socket = (SSLSocket) connect(socketFactory, serverSocket.getLocalPort());
+				String protocol = socket.getSession().getProtocol();
+				String cipherSuite = socket.getSession().getCipherSuite();
+				String keyAlgorithm = socket.getSession().getPeerCertificates()[0].getPublicKey().getAlgorithm();
+				double megabytesPerSecond = measureThroughput(socket);
+
+				System.out.println(String.format(Locale.ROOT, "%-12s %-8s %-45s %-5s %12.1f %10.1f", name, protocol, cipherSuite, keyAlgorithm, handshakesPerSecond,
+					megabytesPerSecond));
+				server.interrupt();
+			} finally {
+				IOUtils.closeQuietly(serverSocket);
+			}
+		}
+
+		// The plaintext listener, the connections per second replace the handshakes per second
+		try (ServerSocket serverSocket = new ServerSocket()) {
+			serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+			startServer(serverSocket, file, true);
+			SocketFactory socketFactory = SocketFactory.getDefault();
+			measureHandshakes(socketFactory, serverSocket.getLocalPort(), Math.max(1, handshakes / 10));
+			double connectionsPerSecond = measureHandshakes(socketFactory, serverSocket.getLocalPort(), handshakes);
+			double megabytesPerSecond = measureThroughput(connect(socketFactory, serverSocket.getLocalPort()));
+			System.out.println(String.format(Locale.ROOT, "%-12s %-8s %-45s %-5s %12.1f %10.1f", "plaintext", "-", "-", "-", connectionsPerSecond, megabytesPerSecond));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Creates a temporary file to download
+	 * 
+	 * @param megabytes
+	 *            The size of the file in megabytes
+	 * @return The file
+	 * @throws IOException
+	 *             if the file could not be written
+	 */
+	private static File createFile(int megabytes) throws IOException {
+		File file = File.createTempFile("benchmark", ".tmp");
+		file.deleteOnExit();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		new Random().nextBytes(buffer);
+		try (OutputStream out = new FileOutputStream(file)) {
+			for (long written = 0; written < (long) megabytes * 1024 * 1024; written += buffer.length) {
+				out.write(buffer);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Starts a thread which accepts the connections of the benchmark. A connection which sends a byte after the
+	 * handshake downloads the file the same way a client does, other connections are closed after the handshake.
+	 * 
+	 * @param serverSocket
+	 *            The listening socket
+	 * @param file
+	 *            The file to download
+	 * @param plaintext
+	 *            Whether the listening socket is the plaintext listener
+	 * @return The started thread
+	 */
+	private static Thread startServer(final ServerSocket serverSocket, final File file, final boolean plaintext) {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (!serverSocket.isClosed()) {
+					try (Socket socket = serverSocket.accept()) {
+						if (socket instanceof SSLSocket) {
+							((SSLSocket) socket).startHandshake();
+						}
+						if (socket.getInputStream().read() < 0) {
+							continue;
+						}
+						DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+						FileManager.copyFileToStream(file, out, plaintext);
+						out.flush();
+					} catch (IOException e) {
+						if (!serverSocket.isClosed()) {
+							System.err.println("Benchmark connection failed: " + e);
+						}
+					}
+				}
+			}
+		}, "BenchmarkServer");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Performs full handshakes one after another. The session of every connection is invalidated so the next
+	 * connection can't resume it.
+	 * 
+	 * @param socketFactory
+	 *            The factory of the client sockets
+	 * @param port
+	 *            The port of the server
+	 * @param handshakes
+	 *            The amount of handshakes
+	 * @return The amount of handshakes per second
+	 * @throws IOException
+	 *             if a handshake failed
+	 */
+	private static double measureHandshakes(SocketFactory socketFactory, int port, int handshakes) throws IOException {
+		long start = System.nanoTime();
+		for (int i = 0; i < handshakes; i++) {
+			Socket socket = connect(socketFactory, port);
+			if (socket instanceof SSLSocket) {
+				((SSLSocket) socket).getSession().invalidate();
+			}
+			socket.close();
+		}
+		return handshakes / ((System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Lets the server send the file and reads it
+	 * 
+	 * @param socket
+	 *            The connection with the server
+	 * @return The throughput in megabytes per second
+	 * @throws IOException
+	 *             if the transfer failed
+	 */
+	private static double measureThroughput(Socket socket) throws IOException {
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long start = System.nanoTime();
+			socket.getOutputStream().write(1);
+			socket.getOutputStream().flush();
+			InputStream in = socket.getInputStream();
+			long received = 0;
+			int read;
+			while ((read = in.read(buffer)) >= 0) {
+				received += read;
+			}
+			return received / (1024.0 * 1024.0) / ((System.nanoTime() - start) / 1e9);
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Connects to the server and performs the handshake
+	 * 
+	 * @param socketFactory
+	 *            The factory of the client sockets
+	 * @param port
+	 *            The port of the server
+	 * @return The connected socket
+	 * @throws IOException
+	 *             if the connection or the handshake failed
+	 */
+	private static Socket connect(SocketFactory socketFactory, int port) throws IOException {
+		Socket socket = socketFactory.createSocket(InetAddress.getLoopbackAddress(), port);
+		if (socket instanceof SSLSocket) {
+			((SSLSocket) socket).startHandshake();
+		}
+		return socket;
+	}
+}
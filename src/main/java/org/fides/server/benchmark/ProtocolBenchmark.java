@@ -0,0 +1,210 @@
+package org.fides.server.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.fides.components.Actions;
+import org.fides.components.Responses;
+import org.fides.server.protocol.BinaryCodec;
+import org.fides.server.protocol.JsonCodec;
+import org.fides.server.protocol.MessageCodec;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * Compares the JSON messages with the binary frames. For a set of typical requests and responses it measures the size
+ * on the wire, and the CPU time and the memory it takes to write and read a message. The allocated memory is only
+ * reported on a JVM which can measure it per thread. The successful response is also measured as it used to be written,
+ * built and encoded for every response, next to its pre-encoded frame.
+ *
+ * Usage: ProtocolBenchmark [iterations]
+ */
+public final class ProtocolBenchmark {
+
+	private static final int DEFAULT_ITERATIONS = 200000;
+
+	private static final int LOCATIONS = 50;
+
+	private ProtocolBenchmark() {
+	}
+
+	/**
+	 * Runs the benchmark
+	 *
+	 * @param args
+	 *            The amount of times every message is written and read per codec
+	 * @throws Exception
+	 *             if the benchmark could not be run
+	 */
+	public static void main(String[] args) throws Exception {
+		int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+		String[] names = { "login", "getFile", "successful", "error", "locations" };
+		JsonObject[] messages = createMessages();
+		MessageCodec[] codecs = { new JsonCodec(), new BinaryCodec() };
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		System.out.println(String.format(Locale.ROOT, "%-12s %-8s %8s %14s %14s %14s %14s", "message", "codec", "bytes", "write ns/msg", "read ns/msg", "write B/msg",
+			"read B/msg"));
+		for (int i = 0; i < messages.length; i++) {
+			for (MessageCodec codec : codecs) {
+				// Warm up the code paths before measuring
+				measure(codec, messages[i], iterations / 10, threads);
+				long[] result = measure(codec, messages[i], iterations, threads);
+				System.out.println(String.format(Locale.ROOT, "%-12s %-8s %8d %14d %14d %14d %14d", names[i], codec.getName(), result[0], result[1] / iterations,
+					result[2] / iterations, result[3] / iterations, result[4] / iterations));
+			}
+		}
+
+		System.out.println();
+		System.out.println(String.format(Locale.ROOT, "%-12s %-8s %14s %14s %14s %14s", "response", "codec", "built ns/msg", "encoded ns/msg", "built B/msg",
+			"encoded B/msg"));
+		for (MessageCodec codec : codecs) {
+			measureSuccessful(codec, iterations / 10, threads);
+			long[] result = measureSuccessful(codec, iterations, threads);
+			System.out.println(String.format(Locale.ROOT, "%-12s %-8s %14d %14d %14d %14d", "successful", codec.getName(), result[0] / iterations, result[1] / iterations,
+				result[2] / iterations, result[3] / iterations));
+		}
+	}
+
+	/**
+	 * Writes and reads a message with a codec
+	 *
+	 * @param codec
+	 *            The codec to measure
+	 * @param message
+	 *            The message to write and read
+	 * @param iterations
+	 *            The amount of times the message is written and read
+	 * @param threads
+	 *            The bean which measures the CPU time of the thread
+	 * @return The size of the message, the CPU time of the writes and the reads in nanoseconds and the memory the writes
+	 *         and the reads allocated in bytes
+	 * @throws IOException
+	 *             if a message could not be written or read
+	 */
+	private static long[] measure(MessageCodec codec, JsonObject message, int iterations, ThreadMXBean threads) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		codec.writeMessage(out, message);
+		int size = bytes.size();
+
+		long allocated = getAllocatedBytes(threads);
+		long start = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < iterations; i++) {
+			bytes.reset();
+			codec.writeMessage(out, message);
+		}
+		long writeTime = threads.getCurrentThreadCpuTime() - start;
+		long writeAllocated = getAllocatedBytes(threads) - allocated;
+
+		byte[] frame = bytes.toByteArray();
+		ByteArrayInputStream input = new ByteArrayInputStream(frame);
+		DataInputStream in = new DataInputStream(input);
+		allocated = getAllocatedBytes(threads);
+		start = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < iterations; i++) {
+			input.reset();
+			codec.readMessage(in);
+		}
+		long readTime = threads.getCurrentThreadCpuTime() - start;
+		long readAllocated = getAllocatedBytes(threads) - allocated;
+		return new long[] { size, writeTime, readTime, writeAllocated, readAllocated };
+	}
+
+	/**
+	 * Writes the successful response by building it and by its pre-encoded frame
+	 *
+	 * @param codec
+	 *            The codec to measure
+	 * @param iterations
+	 *            The amount of times the response is written
+	 * @param threads
+	 *            The bean which measures the CPU time of the thread
+	 * @return The CPU time of the built and the pre-encoded responses in nanoseconds and the memory they allocated in
+	 *         bytes
+	 * @throws IOException
+	 *             if a response could not be written
+	 */
+	private static long[] measureSuccessful(MessageCodec codec, int iterations, ThreadMXBean threads) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+
+		long allocated = getAllocatedBytes(threads);
+		long start = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < iterations; i++) {
+			bytes.reset();
+			JsonObject successful = new JsonObject();
+			successful.addProperty(Responses.SUCCESSFUL, true);
+			codec.writeMessage(out, successful);
+		}
+		long builtTime = threads.getCurrentThreadCpuTime() - start;
+		long builtAllocated = getAllocatedBytes(threads) - allocated;
+
+		allocated = getAllocatedBytes(threads);
+		start = threads.getCurrentThreadCpuTime();
+		for (int i = 0; i < iterations; i++) {
+			bytes.reset();
+			codec.writeSuccessful(out);
+		}
+		long encodedTime = threads.getCurrentThreadCpuTime() - start;
+		long encodedAllocated = getAllocatedBytes(threads) - allocated;
+		return new long[] { builtTime, encodedTime, builtAllocated, encodedAllocated };
+	}
+
+	/**
+	 * Returns the amount of memory the current thread allocated so far
+	 *
+	 * @param threads
+	 *            The bean which measures the threads
+	 * @return The allocated bytes, 0 if the JVM can't measure it
+	 */
+	private static long getAllocatedBytes(ThreadMXBean threads) {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return 0;
+	}
+
+	/**
+	 * Creates the typical messages of a session
+	 *
+	 * @return The messages
+	 */
+	private static JsonObject[] createMessages() {
+		JsonObject login = new JsonObject();
+		login.addProperty(Actions.ACTION, Actions.LOGIN);
+		login.addProperty(Actions.Properties.USERNAME_HASH, "3b4c7f1e8a2d9c6b5e0f1a2b3c4d5e6f7a8b9c0d1e2f3a4b5c6d7e8f9a0b1c2d");
+		login.addProperty(Actions.Properties.PASSWORD_HASH, "9f8e7d6c5b4a39281706f5e4d3c2b1a09f8e7d6c5b4a39281706f5e4d3c2b1a0");
+
+		JsonObject getFile = new JsonObject();
+		getFile.addProperty(Actions.ACTION, Actions.GET_FILE);
+		getFile.addProperty(Actions.Properties.LOCATION, UUID.randomUUID().toString());
+
+		JsonObject successful = new JsonObject();
+		successful.addProperty(Responses.SUCCESSFUL, true);
+
+		JsonObject error = new JsonObject();
+		error.addProperty(Responses.SUCCESSFUL, false);
+		error.addProperty(Responses.ERROR, "File not found");
+
+		JsonArray locations = new JsonArray();
+		for (int i = 0; i < LOCATIONS; i++) {
+			locations.add(new JsonPrimitive(UUID.randomUUID().toString()));
+		}
+		JsonObject locationsResponse = new JsonObject();
+		locationsResponse.addProperty(Responses.SUCCESSFUL, true);
+		locationsResponse.add(Responses.LOCATIONS, locations);
+
+		return new JsonObject[] { login, getFile, successful, error, locationsResponse };
+	}
+}
@@ -0,0 +1,129 @@
+package org.fides.server.files;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.Metrics;
+
+/**
+ * A static tool which deletes files in the background, so a client doesn't wait for the disk when it removes files.
+ * The files are no longer owned by a user when they are queued. A file which is still queued when the process stops
+ * unexpectedly is no longer touched by its user, so the cleaner removes it when it expires.
+ */
+public final class DeletionQueue {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(DeletionQueue.class);
+
+	private static final BlockingQueue<File> QUEUE = new LinkedBlockingQueue<>();
+
+	/** Guards the amount of files which are queued or being deleted */
+	private static final Object LOCK = new Object();
+
+	private static int pending;
+
+	private static Thread worker;
+
+	static {
+		Metrics.registerGauge("deletion.queueDepth", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return QUEUE.size();
+			}
+		});
+	}
+
+	private DeletionQueue() {
+	}
+
+	/**
+	 * Queues files to be deleted
+	 *
+	 * @param files
+	 *            The files to delete
+	 */
+	public static void delete(Collection<File> files) {
+		synchronized (LOCK) {
+			pending += files.size();
+		}
+		QUEUE.addAll(files);
+		Metrics.add("deletion.queued", files.size());
+		startWorker();
+	}
+
+	/**
+	 * Deletes the files which are still queued on the calling thread and waits for the file the background thread is
+	 * deleting, used when the server shuts down
+	 *
+	 * @return The amount of files that were deleted by the calling thread
+	 */
+	public static int flush() {
+		List<File> files = new ArrayList<>();
+		QUEUE.drainTo(files);
+		for (File file : files) {
+			deleteFile(file);
+		}
+		synchronized (LOCK) {
+			try {
+				while (pending > 0) {
+					LOCK.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return files.size();
+	}
+
+	/**
+	 * Starts the thread which deletes the queued files, if it isn't running yet
+	 */
+	private static synchronized void startWorker() {
+		if (worker != null) {
+			return;
+		}
+		worker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					while (true) {
+						deleteFile(QUEUE.take());
+					}
+				} catch (InterruptedException e) {
+					LOG.trace("Deletion queue stopped");
+				}
+			}
+		}, "DeletionQueue");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	/**
+	 * Deletes a file
+	 *
+	 * @param file
+	 *            The file to delete
+	 */
+	private static void deleteFile(File file) {
+		if (file.delete() || !file.exists()) {
+			Metrics.increment("deletion.deleted");
+		} else {
+			LOG.error("File " + file.getName() + " could not be deleted");
+			Metrics.increment("deletion.failed");
+		}
+		synchronized (LOCK) {
+			pending--;
+			if (pending == 0) {
+				LOCK.notifyAll();
+			}
+		}
+	}
+}
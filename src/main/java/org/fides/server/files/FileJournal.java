@@ -0,0 +1,282 @@
+package org.fides.server.files;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.BlockingMonitor;
+
+/**
+ * Collects changed ranges of a file next to it, so a few changed blocks of a large file can be written without copying
+ * the whole file. The ranges are only written into the file after the journal was committed and forced to the disk. A
+ * committed journal which wasn't applied yet when the server stopped is applied when the server starts, a journal which
+ * wasn't committed is thrown away. Applying a journal again gives the same file, so a crash while applying is harmless.
+ * <p>
+ * The journal holds a record per range with its offset, its length and its content, followed by a commit record with
+ * the size the file has before the ranges are written.
+ */
+public class FileJournal implements Closeable {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(FileJournal.class);
+
+	/** The suffix of the journal of a file */
+	public static final String SUFFIX = ".journal";
+
+	/** The offset of the commit record, a range can't have a negative offset */
+	private static final long COMMIT = -1;
+
+	/** The size of the offset and the length in front of a range */
+	private static final int RECORD_HEADER_SIZE = 16;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File journalFile;
+
+	private final RandomAccessFile journal;
+
+	private long rangeBytes;
+
+	private long end;
+
+	/**
+	 * Creates an empty journal for a file, a committed journal which was left by an earlier update is applied first
+	 *
+	 * @param file
+	 *            The file the ranges belong to
+	 * @throws IOException
+	 */
+	public FileJournal(File file) throws IOException {
+		journalFile = getJournalFile(file);
+		if (journalFile.exists()) {
+			apply(file);
+		}
+		journal = new RandomAccessFile(journalFile, "rw");
+		journal.setLength(0);
+	}
+
+	/**
+	 * Adds a range to the journal, its length is the length of the content
+	 *
+	 * @param offset
+	 *            The position of the range in the file
+	 * @param content
+	 *            The content of the range
+	 * @param bytesAllowedToCopy
+	 *            The maximum amount of bytes of all the ranges together
+	 * @return The length of the range, -1 if the ranges don't fit in the amount of bytes that was allowed
+	 * @throws IOException
+	 */
+	public long addRange(long offset, InputStream content, long bytesAllowedToCopy) throws IOException {
+		long recordStart = journal.getFilePointer();
+		journal.writeLong(offset);
+		journal.writeLong(0);
+
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long length = 0;
+		int n;
+		while ((n = content.read(buffer)) != -1) {
+			length += n;
+			if (rangeBytes + length > bytesAllowedToCopy) {
+				return -1;
+			}
+			journal.write(buffer, 0, n);
+		}
+
+		// Fill in the length now that it is known
+		long recordEnd = journal.getFilePointer();
+		journal.seek(recordStart + RECORD_HEADER_SIZE / 2);
+		journal.writeLong(length);
+		journal.seek(recordEnd);
+
+		rangeBytes += length;
+		end = Math.max(end, offset + length);
+		return length;
+	}
+
+	/**
+	 * Returns the position after the last byte of the ranges
+	 *
+	 * @return The end of the ranges
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * Commits the ranges and forces the journal to the disk, from now on the ranges are written into the file even
+	 * when the server stops before {@link #apply(File)} is done. The ranges are forced to the disk before the commit
+	 * record is written, so a commit record on the disk is never followed by ranges which were lost.
+	 *
+	 * @param baseSize
+	 *            The size of the file before the ranges are written
+	 * @throws IOException
+	 */
+	public void commit(long baseSize) throws IOException {
+		long blockingStart = BlockingMonitor.start();
+		try {
+			journal.getChannel().force(false);
+			journal.writeLong(COMMIT);
+			journal.writeLong(baseSize);
+			journal.getChannel().force(false);
+		} finally {
+			BlockingMonitor.end("fileSync", blockingStart);
+		}
+	}
+
+	@Override
+	public void close() {
+		IOUtils.closeQuietly(journal);
+	}
+
+	/**
+	 * Closes the journal and throws it away
+	 */
+	public void discard() {
+		close();
+		journalFile.delete();
+	}
+
+	/**
+	 * Writes the ranges of the committed journal of a file into the file and removes the journal. A journal which
+	 * wasn't committed is removed without changing the file. The file isn't read while the ranges are written, see
+	 * {@link FileLocks}.
+	 *
+	 * @param file
+	 *            The file the journal belongs to
+	 * @return Whether the journal was committed and applied
+	 * @throws IOException
+	 *             if the file could not be written, the journal is kept so it can be applied again
+	 */
+	public static boolean apply(File file) throws IOException {
+		File journalFile = getJournalFile(file);
+		long baseSize = readBaseSize(journalFile);
+		if (baseSize < 0) {
+			journalFile.delete();
+			return false;
+		}
+
+		Lock writeLock = FileLocks.writeLock(file);
+		writeLock.lock();
+		long blockingStart = BlockingMonitor.start();
+		try (DataInputStream in = new DataInputStream(new FileInputStream(journalFile));
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+			// The file gets its size from before the ranges, a larger size is filled with zeros
+			if (channel.size() > baseSize) {
+				channel.truncate(baseSize);
+			} else if (channel.size() < baseSize) {
+				channel.write(ByteBuffer.allocate(1), baseSize - 1);
+			}
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long offset;
+			while ((offset = in.readLong()) != COMMIT) {
+				long position = offset;
+				long remaining = in.readLong();
+				while (remaining > 0) {
+					int n = (int) Math.min(buffer.length, remaining);
+					in.readFully(buffer, 0, n);
+					ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, n);
+					while (byteBuffer.hasRemaining()) {
+						position += channel.write(byteBuffer, position);
+					}
+					remaining -= n;
+				}
+			}
+			channel.force(false);
+		} finally {
+			BlockingMonitor.end("fileSync", blockingStart);
+			writeLock.unlock();
+		}
+		journalFile.delete();
+		return true;
+	}
+
+	/**
+	 * Applies the committed journals which were left in a directory when the server stopped, and removes the journals
+	 * which weren't committed
+	 *
+	 * @param directory
+	 *            The directory of the files
+	 * @return The amount of journals that were applied
+	 */
+	public static int recover(File directory) {
+		if (!directory.isDirectory()) {
+			return 0;
+		}
+		Collection<File> journals = FileUtils.listFiles(directory, FileFilterUtils.suffixFileFilter(SUFFIX), null);
+		int applied = 0;
+		for (File journalFile : journals) {
+			String name = journalFile.getName();
+			File file = new File(directory, name.substring(0, name.length() - SUFFIX.length()));
+			try {
+				if (file.exists() && apply(file)) {
+					applied++;
+				} else {
+					journalFile.delete();
+				}
+			} catch (IOException e) {
+				LOG.error("Journal " + name + " could not be applied", e);
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * Returns the journal of a file
+	 *
+	 * @param file
+	 *            The file
+	 * @return The journal
+	 */
+	private static File getJournalFile(File file) {
+		return new File(file.getParentFile(), file.getName() + SUFFIX);
+	}
+
+	/**
+	 * Walks through the ranges of a journal to its commit record
+	 *
+	 * @param journalFile
+	 *            The journal
+	 * @return The size of the file before the ranges are written, -1 if the journal wasn't committed
+	 * @throws IOException
+	 */
+	private static long readBaseSize(File journalFile) throws IOException {
+		long length = journalFile.length();
+		try (DataInputStream in = new DataInputStream(new FileInputStream(journalFile))) {
+			long position = 0;
+			while (position + RECORD_HEADER_SIZE <= length) {
+				long offset = in.readLong();
+				long value = in.readLong();
+				position += RECORD_HEADER_SIZE;
+				if (offset == COMMIT) {
+					return value;
+				}
+				if (offset < 0 || value < 0 || value > length - position) {
+					break;
+				}
+				IOUtils.skipFully(in, value);
+				position += value;
+			}
+		} catch (EOFException e) {
+			LOG.debug("Journal " + journalFile.getName() + " ends in the middle of a record");
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,62 @@
+package org.fides.server.files;
+
+import java.io.File;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A static tool which keeps the reads of a file apart from the changes that are written into the file in place, so a
+ * download never sees a file of which only a part was changed. The files share a fixed amount of locks by the hash of
+ * their name, so no lock has to be created or forgotten for every file. A writer doesn't wait behind reads which started
+ * after it.
+ */
+public final class FileLocks {
+
+	/** The amount of locks the files share */
+	private static final int STRIPES = 64;
+
+	private static final ReadWriteLock[] LOCKS = new ReadWriteLock[STRIPES];
+
+	static {
+		for (int i = 0; i < STRIPES; i++) {
+			LOCKS[i] = new ReentrantReadWriteLock(true);
+		}
+	}
+
+	private FileLocks() {
+	}
+
+	/**
+	 * Returns the lock which is held while a file is read
+	 *
+	 * @param file
+	 *            The file
+	 * @return The lock, it isn't locked yet
+	 */
+	public static Lock readLock(File file) {
+		return getLock(file).readLock();
+	}
+
+	/**
+	 * Returns the lock which is held while a file is changed in place
+	 *
+	 * @param file
+	 *            The file
+	 * @return The lock, it isn't locked yet
+	 */
+	public static Lock writeLock(File file) {
+		return getLock(file).writeLock();
+	}
+
+	/**
+	 * Returns the lock a file shares with the other files of its stripe
+	 *
+	 * @param file
+	 *            The file
+	 * @return The lock
+	 */
+	private static ReadWriteLock getLock(File file) {
+		return LOCKS[(file.getName().hashCode() & Integer.MAX_VALUE) % STRIPES];
+	}
+}
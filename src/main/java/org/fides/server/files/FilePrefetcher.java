@@ -0,0 +1,188 @@
+package org.fides.server.files;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Lock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.VirtualThreads;
+
+/**
+ * Reads a list of files from the disk ahead of the connection, so the next files of a batch are read while the earlier
+ * ones are still being sent. The files are handed over in the order of the list. The content which is read ahead is
+ * limited, a file which doesn't fit in the limit at all is left to the connection to read itself.
+ */
+public class FilePrefetcher implements Runnable {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(FilePrefetcher.class);
+
+	private final List<File> files;
+
+	private final int maxBufferedBytes;
+
+	/** The bytes which may still be read ahead */
+	private final Semaphore bufferedBytes;
+
+	/** The files that were read, in the order of the list */
+	private final BlockingQueue<Prefetched> queue = new LinkedBlockingQueue<>();
+
+	private Thread thread;
+
+	/**
+	 * Constructor for FilePrefetcher
+	 *
+	 * @param files
+	 *            The files to read, in the order they are needed
+	 * @param maxBufferedBytes
+	 *            The maximum amount of content which is read ahead
+	 */
+	public FilePrefetcher(List<File> files, int maxBufferedBytes) {
+		this.files = files;
+		this.maxBufferedBytes = maxBufferedBytes;
+		this.bufferedBytes = new Semaphore(maxBufferedBytes);
+	}
+
+	/**
+	 * Starts reading the files, on a virtual thread when the connection is handled by one
+	 */
+	public void start() {
+		thread = VirtualThreads.newHelperThread(this, "FilePrefetcher");
+		thread.start();
+	}
+
+	/**
+	 * Stops reading the files
+	 */
+	public void stop() {
+		if (thread != null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Waits for the next file of the list. The content of the file has to be released with
+	 * {@link #release(Prefetched)} when it has been sent.
+	 *
+	 * @return The next file
+	 * @throws IOException
+	 *             if the wait was interrupted
+	 */
+	public Prefetched take() throws IOException {
+		try {
+			return queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for a file", e);
+		}
+	}
+
+	/**
+	 * Lets the prefetcher read ahead the space of a file which has been sent
+	 *
+	 * @param prefetched
+	 *            The file
+	 */
+	public void release(Prefetched prefetched) {
+		bufferedBytes.release(prefetched.permits);
+	}
+
+	@Override
+	public void run() {
+		try {
+			for (File file : files) {
+				queue.add(read(file));
+			}
+		} catch (InterruptedException e) {
+			LOG.trace("File prefetcher stopped");
+		}
+	}
+
+	/**
+	 * Reads a file if it fits in the limit
+	 *
+	 * @param file
+	 *            The file
+	 * @return The content of the file, the file itself if it is too large or the failure
+	 * @throws InterruptedException
+	 *             if the prefetcher was stopped while it waited for space
+	 */
+	private Prefetched read(File file) throws InterruptedException {
+		long length = file.length();
+		if (length > maxBufferedBytes) {
+			return new Prefetched(file, null, null, 0);
+		}
+		int permits = (int) length;
+		bufferedBytes.acquire(permits);
+		Lock readLock = FileLocks.readLock(file);
+		readLock.lock();
+		try {
+			byte[] content = Files.readAllBytes(file.toPath());
+			Metrics.increment("download.prefetched");
+			return new Prefetched(file, content, null, permits);
+		} catch (IOException e) {
+			bufferedBytes.release(permits);
+			return new Prefetched(file, null, e, 0);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * A file of the list: its content when it was read ahead, the failure when it could not be read, or only the file
+	 * when the connection has to read it itself
+	 */
+	public static final class Prefetched {
+
+		private final File file;
+
+		private final byte[] content;
+
+		private final IOException failure;
+
+		private final int permits;
+
+		private Prefetched(File file, byte[] content, IOException failure, int permits) {
+			this.file = file;
+			this.content = content;
+			this.failure = failure;
+			this.permits = permits;
+		}
+
+		/**
+		 * Returns the file
+		 *
+		 * @return The file
+		 */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Returns the content of the file
+		 *
+		 * @return The content, null if the file wasn't read ahead
+		 */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * Returns the reason the file could not be read
+		 *
+		 * @return The failure, null if the file could be read or wasn't read ahead
+		 */
+		public IOException getFailure() {
+			return failure;
+		}
+	}
+}
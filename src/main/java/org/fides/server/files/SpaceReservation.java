@@ -0,0 +1,93 @@
+package org.fides.server.files;
+
+import java.io.Closeable;
+
+/**
+ * The space of a user which an upload takes while it is received. The space is reserved in the userfile before it is
+ * written, so the uploads of a user which run at the same time can't together take more than the free space. The
+ * space is reserved in chunks, so the userfile isn't locked for every buffer.
+ *
+ * After the upload was added to the used space of the user the reservation is closed, which makes what is left free
+ * again. Until then the space of the upload is counted twice, so it is never free in between.
+ */
+public final class SpaceReservation implements Closeable {
+
+	/** The space that is reserved at once when there is enough of it */
+	private static final long CHUNK_SIZE = 1024 * 1024;
+
+	private final UserFile userFile;
+
+	/** The space the upload may take without a reservation, the size of the file it replaces */
+	private final long ownedBytes;
+
+	/** The space that was reserved in the userfile */
+	private long reservedBytes;
+
+	/** The space the upload has taken */
+	private long takenBytes;
+
+	/**
+	 * Constructor for SpaceReservation
+	 *
+	 * @param userFile
+	 *            The userfile to reserve the space in
+	 */
+	public SpaceReservation(UserFile userFile) {
+		this(userFile, 0);
+	}
+
+	/**
+	 * Constructor for SpaceReservation of an upload which replaces a file
+	 *
+	 * @param userFile
+	 *            The userfile to reserve the space in
+	 * @param ownedBytes
+	 *            The size of the file which is replaced, its space is already used by the user
+	 */
+	public SpaceReservation(UserFile userFile, long ownedBytes) {
+		this.userFile = userFile;
+		this.ownedBytes = ownedBytes;
+	}
+
+	/**
+	 * Takes space for the next bytes of the upload, and reserves more of it when needed
+	 *
+	 * @param amountOfBytes
+	 *            The amount of bytes
+	 * @return false if the user doesn't have enough free space, nothing is taken then
+	 */
+	public boolean take(long amountOfBytes) {
+		long missing = takenBytes + amountOfBytes - ownedBytes - reservedBytes;
+		if (missing > 0) {
+			if (userFile.reserveBytes(Math.max(missing, CHUNK_SIZE))) {
+				reservedBytes += Math.max(missing, CHUNK_SIZE);
+			} else if (userFile.reserveBytes(missing)) {
+				reservedBytes += missing;
+			} else {
+				return false;
+			}
+		}
+		takenBytes += amountOfBytes;
+		return true;
+	}
+
+	/**
+	 * Gives back space which was taken for bytes that aren't kept, such as a file of a batch which failed
+	 *
+	 * @param amountOfBytes
+	 *            The amount of bytes
+	 */
+	public void giveBack(long amountOfBytes) {
+		takenBytes -= amountOfBytes;
+	}
+
+	/**
+	 * Makes the reserved space free again
+	 */
+	@Override
+	public void close() {
+		userFile.releaseBytes(reservedBytes);
+		reservedBytes = 0;
+		takenBytes = 0;
+	}
+}
@@ -1,10 +1,17 @@
 package org.fides.server.files;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.fides.server.tools.PropertiesManager;
@@ -34,6 +41,24 @@ public class UserFile implements Serializable {
 
 	private long amountOfUsedBytes;
 
+	/**
+	 * The locations of the resumable uploads which aren't finished yet, with the time they were started. A userfile
+	 * which was saved before resumable uploads existed has none, so it is created when it is needed.
+	 */
+	private Map<String, Long> pendingUploads;
+
+	/**
+	 * The bytes of the resumable uploads which aren't finished yet that are counted in the used space, created when it
+	 * is needed like the pending uploads
+	 */
+	private Map<String, Long> pendingUploadBytes;
+
+	/**
+	 * The space which is reserved for the uploads that are being received, see {@link SpaceReservation}. It only lives
+	 * as long as the uploads, so it isn't saved.
+	 */
+	private transient long reservedBytes;
+
 	/**
 	 * Constructor for the user file
 	 * 
@@ -82,7 +107,7 @@ public class UserFile implements Serializable {
 	 *            of the file
 	 * @return true if the user contains the file at the given location, false otherwise
 	 */
-	public boolean checkOwned(String location) {
+	public synchronized boolean checkOwned(String location) {
 		return userFiles.contains(location);
 	}
 
@@ -92,29 +117,204 @@ public class UserFile implements Serializable {
 	 * @param location
 	 *            the location of the new file
 	 */
-	public void addFile(String location) {
+	public synchronized void addFile(String location) {
 		userFiles.add(location);
 		UserManager.saveUserFile(this);
 	}
 
+	/**
+	 * Adds the locations of several files together with the space they use, and saves itself once. When the userfile
+	 * can't be saved nothing is added, so the caller may delete the files.
+	 * 
+	 * @param locations
+	 *            the locations of the new files
+	 * @param amountOfBytes
+	 *            the space the new files use
+	 * @return if the userfile was saved
+	 */
+	public synchronized boolean addFiles(Collection<String> locations, long amountOfBytes) {
+		List<String> added = new ArrayList<>();
+		for (String location : locations) {
+			if (userFiles.add(location)) {
+				added.add(location);
+			}
+		}
+		amountOfUsedBytes += amountOfBytes;
+		if (!UserManager.saveUserFile(this)) {
+			userFiles.removeAll(added);
+			amountOfUsedBytes -= amountOfBytes;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the files which still belong to the user together with the space they use, and saves itself once. When
+	 * the userfile can't be saved nothing is removed, so the caller must not delete any of the files.
+	 * 
+	 * @param sizes
+	 *            the locations of the files to remove with their size in bytes
+	 * @return the locations that were removed, null if the userfile couldn't be saved
+	 */
+	public synchronized List<String> removeFiles(Map<String, Long> sizes) {
+		List<String> removed = new ArrayList<>();
+		long removedBytes = 0;
+		for (Map.Entry<String, Long> entry : sizes.entrySet()) {
+			if (userFiles.remove(entry.getKey())) {
+				removed.add(entry.getKey());
+				removedBytes += entry.getValue();
+			}
+		}
+		if (removed.isEmpty()) {
+			return removed;
+		}
+		amountOfUsedBytes -= removedBytes;
+		if (!UserManager.saveUserFile(this)) {
+			userFiles.addAll(removed);
+			amountOfUsedBytes += removedBytes;
+			return null;
+		}
+		return removed;
+	}
+
 	/**
 	 * Removes the file at the given location and saves itself
 	 * 
 	 * @param location
 	 *            the location of the removed file
 	 */
-	public void removeFile(String location) {
+	public synchronized void removeFile(String location) {
 		userFiles.remove(location);
 		UserManager.saveUserFile(this);
 	}
 
 	/**
-	 * Returns the list of file locations that belong to the user, it is returned as and unmodifiable set
+	 * Adds the location of a resumable upload which was started and saves itself
+	 * 
+	 * @param location
+	 *            the location the upload will be written to
+	 * @return if the userfile was saved
+	 */
+	public synchronized boolean addPendingUpload(String location) {
+		if (pendingUploads == null) {
+			pendingUploads = new HashMap<>();
+		}
+		pendingUploads.put(location, System.currentTimeMillis());
+		return UserManager.saveUserFile(this);
+	}
+
+	/**
+	 * Check if a resumable upload of the user is waiting to be finished at the location
+	 * 
+	 * @param location
+	 *            the location of the upload
+	 * @return if the upload belongs to the user and isn't finished yet
+	 */
+	public synchronized boolean checkPendingUpload(String location) {
+		return pendingUploads != null && pendingUploads.containsKey(location);
+	}
+
+	/**
+	 * Returns the locations of the resumable uploads which aren't finished yet
+	 * 
+	 * @return The locations as an unmodifiable set
+	 */
+	public synchronized Set<String> getPendingUploads() {
+		if (pendingUploads == null) {
+			return Collections.emptySet();
+		}
+		return Collections.unmodifiableSet(new HashSet<>(pendingUploads.keySet()));
+	}
+
+	/**
+	 * Counts the bytes a resumable upload received so far in the used space and saves itself when they changed, so the
+	 * uploads which aren't finished can't take more space than the user has
+	 * 
+	 * @param location
+	 *            the location of the upload
+	 * @param amountOfBytes
+	 *            the bytes the upload received so far
+	 * @return if the userfile was saved or didn't change
+	 */
+	public synchronized boolean chargePendingUpload(String location, long amountOfBytes) {
+		if (!checkPendingUpload(location)) {
+			return true;
+		}
+		long charged = releasePendingUploadBytes(location);
+		if (amountOfBytes > 0) {
+			pendingUploadBytes.put(location, amountOfBytes);
+		}
+		amountOfUsedBytes += amountOfBytes - charged;
+		if (amountOfBytes == charged) {
+			return true;
+		}
+		return UserManager.saveUserFile(this);
+	}
+
+	/**
+	 * Removes resumable uploads which were abandoned together with the space they were charged, and saves itself
+	 * 
+	 * @param locations
+	 *            the locations of the uploads
+	 * @return if the userfile was saved
+	 */
+	public synchronized boolean removePendingUploads(Collection<String> locations) {
+		if (pendingUploads == null) {
+			return true;
+		}
+		for (String location : locations) {
+			if (pendingUploads.remove(location) != null) {
+				amountOfUsedBytes -= releasePendingUploadBytes(location);
+			}
+		}
+		return UserManager.saveUserFile(this);
+	}
+
+	/**
+	 * Turns a finished resumable upload into a file of the user together with the space it uses, and saves itself once
+	 * 
+	 * @param location
+	 *            the location of the upload
+	 * @param amountOfBytes
+	 *            the space the file uses
+	 * @return if the userfile was saved
+	 */
+	public synchronized boolean commitPendingUpload(String location, long amountOfBytes) {
+		if (pendingUploads != null) {
+			pendingUploads.remove(location);
+		}
+		userFiles.add(location);
+		// The bytes which were charged while the upload was pending are part of the file
+		amountOfUsedBytes += amountOfBytes - releasePendingUploadBytes(location);
+		return UserManager.saveUserFile(this);
+	}
+
+	/**
+	 * Stops counting the bytes of a resumable upload separately, the caller changes the used space
+	 * 
+	 * @param location
+	 *            the location of the upload
+	 * @return the bytes that were charged for the upload
+	 */
+	private long releasePendingUploadBytes(String location) {
+		if (pendingUploadBytes == null) {
+			pendingUploadBytes = new HashMap<>();
+		}
+		Long charged = pendingUploadBytes.remove(location);
+		if (charged == null) {
+			return 0;
+		}
+		return charged;
+	}
+
+	/**
+	 * Returns the list of file locations that belong to the user, it is returned as an unmodifiable copy because the
+	 * actions of a multiplexed session may change the list at the same time
 	 * 
 	 * @return The list of file locations as an unmodifiable set
 	 */
-	public Set<String> getLocations() {
-		return Collections.unmodifiableSet(userFiles);
+	public synchronized Set<String> getLocations() {
+		return Collections.unmodifiableSet(new HashSet<>(userFiles));
 	}
 
 	/**
@@ -122,7 +322,7 @@ public class UserFile implements Serializable {
 	 * 
 	 * @return The location of the keyfile.
 	 */
-	public String getKeyFileLocation() {
+	public synchronized String getKeyFileLocation() {
 		return keyFile;
 	}
 
@@ -132,11 +332,11 @@ public class UserFile implements Serializable {
 	 * @param location
 	 *            The location of the keyfile.
 	 */
-	public void setKeyFileLocation(String location) {
+	public synchronized void setKeyFileLocation(String location) {
 		keyFile = location;
 	}
 
-	protected GregorianCalendar getLastRefreshed() {
+	protected synchronized GregorianCalendar getLastRefreshed() {
 		return lastRefreshed;
 	}
 
@@ -146,7 +346,7 @@ public class UserFile implements Serializable {
 	 * @param lastRefreshed
 	 *            as gregorian calendar
 	 */
-	protected void setLastRefreshed(GregorianCalendar lastRefreshed) {
+	protected synchronized void setLastRefreshed(GregorianCalendar lastRefreshed) {
 		this.lastRefreshed = lastRefreshed;
 		UserManager.saveUserFile(this);
 	}
@@ -158,7 +358,7 @@ public class UserFile implements Serializable {
 	 *            of bytes
 	 * @return if succeeded
 	 */
-	public boolean changeMaxAmountOfUsedBytes(long newMaxAmountOfUsedBytes) {
+	public synchronized boolean changeMaxAmountOfUsedBytes(long newMaxAmountOfUsedBytes) {
 		maxAmountOfUsedBytes = newMaxAmountOfUsedBytes;
 		return UserManager.saveUserFile(this);
 	}
@@ -168,7 +368,7 @@ public class UserFile implements Serializable {
 	 * 
 	 * @return amount of max bytes
 	 */
-	public long getMaxAmountOfBytes() {
+	public synchronized long getMaxAmountOfBytes() {
 		return maxAmountOfUsedBytes;
 	}
 
@@ -177,11 +377,37 @@ public class UserFile implements Serializable {
 	 * 
 	 * @return amount of free bytes
 	 */
-	public long getAmountOfFreeBytes() {
-		if (maxAmountOfUsedBytes - amountOfUsedBytes <= 0) {
+	public synchronized long getAmountOfFreeBytes() {
+		if (maxAmountOfUsedBytes - amountOfUsedBytes - reservedBytes <= 0) {
 			return 0;
 		}
-		return maxAmountOfUsedBytes - amountOfUsedBytes;
+		return maxAmountOfUsedBytes - amountOfUsedBytes - reservedBytes;
+	}
+
+	/**
+	 * Reserves free space for an upload which is being received. Several uploads of a user can run at the same time,
+	 * the space they write is reserved first so together they can't take more than the free space.
+	 * 
+	 * @param amountOfBytes
+	 *            the bytes to reserve
+	 * @return if there was enough free space, nothing is reserved otherwise
+	 */
+	public synchronized boolean reserveBytes(long amountOfBytes) {
+		if (amountOfBytes > getAmountOfFreeBytes()) {
+			return false;
+		}
+		reservedBytes += amountOfBytes;
+		return true;
+	}
+
+	/**
+	 * Makes reserved space free again, after the upload was added to the used space or failed
+	 * 
+	 * @param amountOfBytes
+	 *            the reserved bytes
+	 */
+	public synchronized void releaseBytes(long amountOfBytes) {
+		reservedBytes -= amountOfBytes;
 	}
 
 	/**
@@ -190,7 +416,7 @@ public class UserFile implements Serializable {
 	 * @param amountOfBytes
 	 *            of used space
 	 */
-	public void addAmountOfBytes(long amountOfBytes) {
+	public synchronized void addAmountOfBytes(long amountOfBytes) {
 		amountOfUsedBytes += amountOfBytes;
 		UserManager.saveUserFile(this);
 	}
@@ -201,7 +427,7 @@ public class UserFile implements Serializable {
 	 * @param amountOfBytes
 	 *            of used space
 	 */
-	public void removeAmountOfBytes(long amountOfBytes) {
+	public synchronized void removeAmountOfBytes(long amountOfBytes) {
 		amountOfUsedBytes -= amountOfBytes;
 		UserManager.saveUserFile(this);
 	}
@@ -209,7 +435,7 @@ public class UserFile implements Serializable {
 	/**
 	 * Touch files
 	 */
-	public void touch() {
+	public synchronized void touch() {
 		Calendar calendar = Calendar.getInstance();
 		GregorianCalendar thisMonth = new GregorianCalendar(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH), calendar.get(Calendar.DAY_OF_MONTH));
 		if (lastRefreshed.before(thisMonth)) {
@@ -227,4 +453,15 @@ public class UserFile implements Serializable {
 		}
 
 	}
+
+	/**
+	 * Writes the userfile while no other thread changes it
+	 * 
+	 * @param out
+	 *            The stream to write to
+	 * @throws IOException
+	 */
+	private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+	}
 }
@@ -21,6 +21,7 @@ import org.apache.logging.log4j.Logger;
 import org.fides.components.Actions;
 import org.fides.encryption.EncryptionUtils;
 import org.fides.encryption.KeyGenerator;
+import org.fides.server.tools.BlockingMonitor;
 import org.fides.server.tools.CommunicationUtil;
 import org.fides.server.tools.Errors;
 import org.fides.server.tools.JsonObjectHandler;
@@ -65,6 +66,7 @@ public final class UserManager {
 		InputStream in = null;
 		// Check if the username is in the folder and if the file isn't locked
 		if (checkIfUserExists(username) && UserLocker.lock(username)) {
+			long blockingStart = BlockingMonitor.start();
 			try {
 				in = new FileInputStream(file);
 				din = new DataInputStream(in);
@@ -102,6 +104,7 @@ public final class UserManager {
 				IOUtils.closeQuietly(inDecrypted);
 				IOUtils.closeQuietly(din);
 				IOUtils.closeQuietly(in);
+				BlockingMonitor.end("userFileRead", blockingStart);
 			}
 		}
 		return null;
@@ -123,6 +126,7 @@ public final class UserManager {
 
 		File userFileLocation = new File(PropertiesManager.getInstance().getUserDir(), userFile.getUsernameHash());
 
+		long blockingStart = BlockingMonitor.start();
 		try {
 
 			if (userFileLocation.getName().equals(userFile.getUsernameHash())) {
@@ -161,6 +165,7 @@ public final class UserManager {
 			IOUtils.closeQuietly(outEncrypted);
 			IOUtils.closeQuietly(dout);
 			IOUtils.closeQuietly(fos);
+			BlockingMonitor.end("userFileWrite", blockingStart);
 
 		}
 
@@ -232,6 +237,22 @@ public final class UserManager {
 	 * @return if user is authenticated or not
 	 */
 	public static UserFile authenticateUser(JsonObject userObject, DataOutputStream out) throws IOException {
+		return authenticateUser(userObject, out, true);
+	}
+
+	/**
+	 * Authenticate user based on jsonobject with username and password, an action which answers with more than the
+	 * login itself sends its own successful response
+	 * 
+	 * @param userObject
+	 *            json object with at least username and password
+	 * @param out
+	 *            output stream to client to write error message
+	 * @param returnSuccessful
+	 *            whether the successful response is written when the user is authenticated
+	 * @return if user is authenticated or not
+	 */
+	public static UserFile authenticateUser(JsonObject userObject, DataOutputStream out, boolean returnSuccessful) throws IOException {
 		UserFile userFile = null;
 		String usernameHash = HashUtils.hash(JsonObjectHandler.getProperty(userObject, Actions.Properties.USERNAME_HASH));
 		String passwordHash = JsonObjectHandler.getProperty(userObject, Actions.Properties.PASSWORD_HASH);
@@ -242,7 +263,9 @@ public final class UserManager {
 
 				if (userFile != null) {
 					LOG.trace("AuthenticateUser Successful");
-					CommunicationUtil.returnSuccessful(out);
+					if (returnSuccessful) {
+						CommunicationUtil.returnSuccessful(out);
+					}
 				} else {
 					LOG.error(Errors.USERNAME_OR_PASSWORD_INCORRECT);
 					CommunicationUtil.returnError(out, Errors.USERNAME_OR_PASSWORD_INCORRECT);
@@ -0,0 +1,497 @@
+package org.fides.server.mux;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.VirtualThreads;
+
+/**
+ * Carries several logical streams over one connection, so the actions of a logged in client can run at the same time
+ * without a connection and a login for each of them. After the multiplex action the connection only carries frames:
+ *
+ * <pre>
+ * frame = streamId:int32 type:byte length:int32 payload
+ * </pre>
+ *
+ * The client opens a stream with {@link #OPEN} and sends the normal requests of the connection in {@link #DATA}
+ * frames, with the codec of the connection. Every stream is handled on its own thread, so an upload on one stream
+ * doesn't hold up the others. Each direction of a stream has a window: a side may only send as much data as the other
+ * side allowed, {@link #WINDOW_UPDATE} opens the window again. {@link #CLOSE} ends the data of one side, a close of
+ * stream 0 ends the session. {@link #RESET} aborts a stream, the server resets the streams it refuses.
+ *
+ * The session ends when no frame arrived within the timeout of the connection, also when streams are open. When the
+ * server shuts down it closes stream 0, resets the streams which are between actions and closes the connection after
+ * the last busy stream is done.
+ */
+public class MuxSession {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(MuxSession.class);
+
+	/** Opens a stream */
+	public static final int OPEN = 0;
+
+	/** Data of a stream */
+	public static final int DATA = 1;
+
+	/** Allows the other side to send more data, the payload is the increment as int32 */
+	public static final int WINDOW_UPDATE = 2;
+
+	/** Ends the data of a side of a stream, or the session for stream 0 */
+	public static final int CLOSE = 3;
+
+	/** Aborts a stream */
+	public static final int RESET = 4;
+
+	/** The size of the header of a frame */
+	public static final int HEADER_SIZE = 9;
+
+	/** The largest payload of a frame, it fits a TLS record together with its header */
+	public static final int MAX_PAYLOAD_SIZE = 16 * 1024 - HEADER_SIZE;
+
+	/** The time after which a handler that is still busy when the session ends is logged */
+	private static final long HANDLER_WARN_MILLIS = 5000;
+
+	/** The time the session waits for its handlers after the connection was closed */
+	private static final long HANDLER_JOIN_MILLIS = 60000;
+
+	private final DataInputStream in;
+
+	private final DataOutputStream out;
+
+	private final Closeable connection;
+
+	private final StreamHandler handler;
+
+	private final int maxStreams;
+
+	private final int windowSize;
+
+	private final int timeoutMillis;
+
+	/** The open streams by their id, guarded by itself */
+	private final Map<Integer, MuxStream> streams = new HashMap<>();
+
+	/** The threads of the handlers, guarded by the streams */
+	private final List<Thread> handlers = new ArrayList<>();
+
+	/** The payload of the frame which is read, only used by the thread which reads the frames */
+	private final byte[] payload = new byte[MAX_PAYLOAD_SIZE];
+
+	/** The header of the frame which is written, guarded by the output */
+	private final byte[] header = new byte[HEADER_SIZE];
+
+	private volatile boolean closed;
+
+	private volatile boolean draining;
+
+	/** Whether the close of stream 0 was sent to the client of a drained session, guarded by the streams */
+	private boolean drainSent;
+
+	/**
+	 * Constructor for MuxSession
+	 *
+	 * @param in
+	 *            The input of the connection
+	 * @param out
+	 *            The output of the connection
+	 * @param connection
+	 *            The connection, it is closed when the session ends so no handler stays blocked on it. Null when the
+	 *            transport unblocks the handlers itself.
+	 * @param handler
+	 *            Handles the streams
+	 * @param maxStreams
+	 *            The maximum amount of open streams
+	 * @param windowSize
+	 *            The initial window of a stream in both directions
+	 * @param timeoutMillis
+	 *            The time a stream may wait for data or for its window, 0 for no limit
+	 */
+	public MuxSession(DataInputStream in, DataOutputStream out, Closeable connection, StreamHandler handler, int maxStreams, int windowSize,
+		int timeoutMillis) {
+		this.in = in;
+		this.out = out;
+		this.connection = connection;
+		this.handler = handler;
+		this.maxStreams = maxStreams;
+		this.windowSize = windowSize;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Reads the frames of the connection until the client ends the session, or until a drained session is done
+	 *
+	 * @throws IOException
+	 *             if the connection failed, the client sent an invalid frame or the session was idle for too long
+	 */
+	public void run() throws IOException {
+		Metrics.increment("mux.sessions");
+		try {
+			while (readFrame()) {
+				// Handle the next frame
+			}
+		} catch (IOException e) {
+			if (!draining) {
+				throw e;
+			}
+			LOG.debug("Drained session ended", e);
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * Lets the server shut down the session. The client is told that no new streams are accepted and the streams which
+	 * are waiting for a request are reset. The connection is closed when the last busy stream is done. This doesn't
+	 * wait for the client, the close of stream 0 is sent on a thread of its own.
+	 */
+	public void drain() {
+		draining = true;
+		int idle = 0;
+		synchronized (streams) {
+			for (MuxStream stream : streams.values()) {
+				// The handler of a reset stream sends the reset to the client
+				if (stream.resetIfIdle()) {
+					idle++;
+				}
+			}
+		}
+		Metrics.add("mux.drainedStreams", idle);
+		VirtualThreads.newHelperThread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					writeFrame(0, CLOSE, null, 0, 0);
+					flush();
+				} catch (IOException e) {
+					LOG.debug("The close of the drained session could not be sent", e);
+				}
+				synchronized (streams) {
+					drainSent = true;
+				}
+				closeIfDrained();
+			}
+		}, "MuxDrain").start();
+	}
+
+	/**
+	 * Checks whether the server is shutting down the session
+	 *
+	 * @return true if the session is being drained
+	 */
+	boolean isDraining() {
+		return draining;
+	}
+
+	/**
+	 * Reads and handles a frame
+	 *
+	 * @return false if the client ended the session
+	 * @throws IOException
+	 *             if the connection failed or the frame isn't valid
+	 */
+	private boolean readFrame() throws IOException {
+		int first;
+		try {
+			first = in.read();
+		} catch (SocketTimeoutException e) {
+			// A client with open streams sends window updates or data while they are used
+			Metrics.increment("session.idleTimeouts");
+			throw e;
+		}
+		if (first < 0) {
+			return false;
+		}
+		int streamId = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+		int type = in.readUnsignedByte();
+		int length = in.readInt();
+		if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+			throw new IOException("Invalid frame length " + length);
+		}
+		in.readFully(payload, 0, length);
+
+		if (type == OPEN) {
+			open(streamId);
+			return true;
+		}
+		if (type == CLOSE && streamId == 0) {
+			return false;
+		}
+
+		MuxStream stream = getStream(streamId);
+		switch (type) {
+		case DATA:
+			if (stream != null && !stream.receive(payload, length)) {
+				LOG.debug("Stream " + streamId + " exceeded its window");
+				Metrics.increment("mux.flowControlErrors");
+				reset(stream);
+			}
+			break;
+		case WINDOW_UPDATE:
+			if (length != 4) {
+				throw new IOException("Invalid window update");
+			}
+			int increment = ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16) | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+			if (stream != null && increment > 0) {
+				stream.addSendWindow(increment);
+			}
+			break;
+		case CLOSE:
+			if (stream != null) {
+				stream.remoteClose();
+			}
+			break;
+		case RESET:
+			if (stream != null) {
+				removeStream(stream);
+				stream.reset();
+			}
+			break;
+		default:
+			throw new IOException("Unknown frame type " + type);
+		}
+		return true;
+	}
+
+	/**
+	 * Opens a stream and starts its handler, or refuses it when too many streams are open
+	 *
+	 * @param streamId
+	 *            The id the client chose
+	 * @throws IOException
+	 *             if the refusal could not be written
+	 */
+	private void open(final int streamId) throws IOException {
+		final MuxStream stream = new MuxStream(this, streamId, windowSize, timeoutMillis);
+		boolean accepted;
+		synchronized (streams) {
+			accepted = !draining && streamId > 0 && !streams.containsKey(streamId) && streams.size() < maxStreams;
+			if (accepted) {
+				streams.put(streamId, stream);
+			}
+		}
+		if (!accepted) {
+			Metrics.increment("mux.refused");
+			writeFrame(streamId, RESET, null, 0, 0);
+			return;
+		}
+
+		Metrics.increment("mux.streams");
+		Thread thread = VirtualThreads.newHelperThread(new Runnable() {
+			@Override
+			public void run() {
+				handle(stream);
+			}
+		}, "MuxStream-" + streamId);
+		synchronized (streams) {
+			handlers.add(thread);
+		}
+		thread.start();
+	}
+
+	/**
+	 * Runs the handler of a stream and closes the stream when the handler is done
+	 *
+	 * @param stream
+	 *            The stream
+	 */
+	private void handle(MuxStream stream) {
+		try {
+			handler.handleStream(stream.getInputStream(), stream.getOutputStream(), stream);
+			stream.getOutputStream().flush();
+			writeFrame(stream.getId(), CLOSE, null, 0, 0);
+			flush();
+		} catch (IOException | RuntimeException e) {
+			if (!closed) {
+				LOG.debug("Stream " + stream.getId() + " failed", e);
+				reset(stream);
+			}
+		} finally {
+			removeStream(stream);
+			synchronized (streams) {
+				handlers.remove(Thread.currentThread());
+			}
+			closeIfDrained();
+		}
+	}
+
+	/**
+	 * Closes the connection of a drained session when the client was told and the last stream is done, the reading of
+	 * the frames then ends
+	 */
+	private void closeIfDrained() {
+		synchronized (streams) {
+			if (!draining || !drainSent || !streams.isEmpty()) {
+				return;
+			}
+		}
+		IOUtils.closeQuietly(connection);
+	}
+
+	/**
+	 * Aborts a stream and lets the client know
+	 *
+	 * @param stream
+	 *            The stream
+	 */
+	private void reset(MuxStream stream) {
+		removeStream(stream);
+		stream.reset();
+		try {
+			writeFrame(stream.getId(), RESET, null, 0, 0);
+			flush();
+		} catch (IOException e) {
+			LOG.debug("The reset of stream " + stream.getId() + " could not be sent", e);
+		}
+	}
+
+	/**
+	 * Lets the client send more data on a stream
+	 *
+	 * @param streamId
+	 *            The id of the stream
+	 * @param increment
+	 *            The amount of bytes
+	 * @throws IOException
+	 *             if the update could not be written
+	 */
+	void sendWindowUpdate(int streamId, int increment) throws IOException {
+		byte[] update = { (byte) (increment >>> 24), (byte) (increment >>> 16), (byte) (increment >>> 8), (byte) increment };
+		writeFrame(streamId, WINDOW_UPDATE, update, 0, update.length);
+		flush();
+	}
+
+	/**
+	 * Writes a frame to the connection
+	 *
+	 * @param streamId
+	 *            The id of the stream
+	 * @param type
+	 *            The type of the frame
+	 * @param data
+	 *            The payload, null for an empty payload
+	 * @param offset
+	 *            The start of the payload
+	 * @param length
+	 *            The length of the payload
+	 * @throws IOException
+	 *             if the frame could not be written
+	 */
+	void writeFrame(int streamId, int type, byte[] data, int offset, int length) throws IOException {
+		synchronized (out) {
+			header[0] = (byte) (streamId >>> 24);
+			header[1] = (byte) (streamId >>> 16);
+			header[2] = (byte) (streamId >>> 8);
+			header[3] = (byte) streamId;
+			header[4] = (byte) type;
+			header[5] = (byte) (length >>> 24);
+			header[6] = (byte) (length >>> 16);
+			header[7] = (byte) (length >>> 8);
+			header[8] = (byte) length;
+			out.write(header);
+			if (length > 0) {
+				out.write(data, offset, length);
+			}
+		}
+	}
+
+	/**
+	 * Sends the written frames
+	 *
+	 * @throws IOException
+	 *             if the frames could not be sent
+	 */
+	void flush() throws IOException {
+		synchronized (out) {
+			out.flush();
+		}
+	}
+
+	/**
+	 * Returns an open stream
+	 *
+	 * @param streamId
+	 *            The id of the stream
+	 * @return The stream, or null if it isn't open
+	 */
+	private MuxStream getStream(int streamId) {
+		synchronized (streams) {
+			return streams.get(streamId);
+		}
+	}
+
+	/**
+	 * Forgets a stream
+	 *
+	 * @param stream
+	 *            The stream
+	 */
+	private void removeStream(MuxStream stream) {
+		synchronized (streams) {
+			if (streams.get(stream.getId()) == stream) {
+				streams.remove(stream.getId());
+			}
+		}
+	}
+
+	/**
+	 * Ends the session, aborts the open streams and waits until their handlers are finished. The handlers change the
+	 * userfile and the files of the user, so the user may only be unlocked after the last one is done. An aborted stream
+	 * no longer blocks its handler and the connection is closed, so a handler which writes to a client that stopped
+	 * reading fails as well. Only a handler which is busy with the disk can take a while, the session stops waiting for
+	 * it after {@link #HANDLER_JOIN_MILLIS}.
+	 */
+	private void close() {
+		closed = true;
+		List<Thread> running;
+		synchronized (streams) {
+			for (MuxStream stream : streams.values()) {
+				stream.reset();
+			}
+			streams.clear();
+			running = new ArrayList<>(handlers);
+		}
+		IOUtils.closeQuietly(connection);
+
+		long start = System.nanoTime();
+		long warnAt = start + TimeUnit.MILLISECONDS.toNanos(HANDLER_WARN_MILLIS);
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(HANDLER_JOIN_MILLIS);
+		boolean interrupted = false;
+		for (Thread thread : running) {
+			while (thread.isAlive()) {
+				long now = System.nanoTime();
+				if (now - deadline >= 0) {
+					LOG.error("The handler " + thread.getName() + " didn't finish, the session ends without it");
+					break;
+				}
+				try {
+					if (now - warnAt >= 0) {
+						LOG.warn("Waiting for the handler " + thread.getName() + " to finish before the session ends");
+						warnAt = deadline;
+					}
+					thread.join(Math.max(1, TimeUnit.NANOSECONDS.toMillis(Math.min(warnAt, deadline) - now)));
+				} catch (InterruptedException e) {
+					// The user is still in use by the handler, the interrupt is kept for later
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
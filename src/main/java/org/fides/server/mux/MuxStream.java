@@ -0,0 +1,411 @@
+package org.fides.server.mux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A logical stream of a {@link MuxSession}. The received data is kept in a buffer of the size of the window, so the
+ * session never waits for the handler of a stream. The client may only send as much as the window allows, the window
+ * is opened again when the handler has read half of it. The server may send as much as the client allowed with its
+ * window updates.
+ */
+final class MuxStream implements StreamHandler.ActionTracker {
+
+	private final MuxSession session;
+
+	private final int id;
+
+	private final long timeoutNanos;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** Signalled when data arrives, the client closes the stream or the stream is reset */
+	private final Condition readable = lock.newCondition();
+
+	/** Signalled when the client opens the window or the stream is reset */
+	private final Condition writable = lock.newCondition();
+
+	/** The received data which hasn't been read yet, a ring buffer */
+	private final byte[] buffer;
+
+	private int start;
+
+	private int count;
+
+	/** The bytes read since the last window update */
+	private int consumed;
+
+	private int sendWindow;
+
+	private boolean remoteClosed;
+
+	private boolean reset;
+
+	/** Whether the handler is busy with an action */
+	private boolean busy;
+
+	private final InputStream input = new StreamInputStream();
+
+	private final StreamOutputStream output = new StreamOutputStream();
+
+	/**
+	 * Constructor for MuxStream
+	 *
+	 * @param session
+	 *            The session of the stream
+	 * @param id
+	 *            The id the client chose for the stream
+	 * @param windowSize
+	 *            The initial window in both directions
+	 * @param timeoutMillis
+	 *            The time a read or a write may wait for the client, 0 for no limit
+	 */
+	MuxStream(MuxSession session, int id, int windowSize, int timeoutMillis) {
+		this.session = session;
+		this.id = id;
+		this.buffer = new byte[windowSize];
+		this.sendWindow = windowSize;
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	}
+
+	/**
+	 * Returns the id of the stream
+	 *
+	 * @return The id
+	 */
+	int getId() {
+		return id;
+	}
+
+	/**
+	 * Returns the input of the stream for its handler
+	 *
+	 * @return The input
+	 */
+	InputStream getInputStream() {
+		return input;
+	}
+
+	/**
+	 * Returns the output of the stream for its handler
+	 *
+	 * @return The output
+	 */
+	OutputStream getOutputStream() {
+		return output;
+	}
+
+	/**
+	 * Adds data the client sent on the stream
+	 *
+	 * @param data
+	 *            The buffer with the data
+	 * @param length
+	 *            The amount of data
+	 * @return false if the data doesn't fit in the window
+	 */
+	boolean receive(byte[] data, int length) {
+		lock.lock();
+		try {
+			if (reset || remoteClosed) {
+				// The data arrived after the end of the stream, it is ignored
+				return true;
+			}
+			if (length > buffer.length - count) {
+				return false;
+			}
+			int end = (start + count) % buffer.length;
+			int first = Math.min(length, buffer.length - end);
+			System.arraycopy(data, 0, buffer, end, first);
+			System.arraycopy(data, first, buffer, 0, length - first);
+			count += length;
+			readable.signalAll();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Marks the end of the data of the client
+	 */
+	void remoteClose() {
+		lock.lock();
+		try {
+			remoteClosed = true;
+			readable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Aborts the stream, the handler fails on its next read or write
+	 */
+	void reset() {
+		lock.lock();
+		try {
+			reset = true;
+			readable.signalAll();
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean startAction() {
+		lock.lock();
+		try {
+			busy = !session.isDraining() && !reset;
+			return busy;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean endAction() {
+		lock.lock();
+		try {
+			busy = false;
+			return !session.isDraining();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Aborts the stream when its handler is waiting for the next request
+	 *
+	 * @return true if the stream was reset
+	 */
+	boolean resetIfIdle() {
+		lock.lock();
+		try {
+			if (!busy) {
+				reset();
+			}
+			return !busy;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Opens the window in which the server may send data
+	 *
+	 * @param increment
+	 *            The amount of bytes the client allows in addition
+	 */
+	void addSendWindow(int increment) {
+		lock.lock();
+		try {
+			sendWindow = (int) Math.min(Integer.MAX_VALUE, (long) sendWindow + increment);
+			writable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits for a condition of the stream. The lock must be held.
+	 *
+	 * @param condition
+	 *            The condition
+	 * @param remainingNanos
+	 *            The time that is left to wait
+	 * @return The time that is left
+	 * @throws IOException
+	 *             if the client didn't act in time or the wait was interrupted
+	 */
+	private long await(Condition condition, long remainingNanos) throws IOException {
+		try {
+			if (timeoutNanos <= 0) {
+				condition.await();
+				return remainingNanos;
+			}
+			if (remainingNanos <= 0) {
+				throw new SocketTimeoutException("Stream " + id + " timed out");
+			}
+			return condition.awaitNanos(remainingNanos);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for stream " + id);
+		}
+	}
+
+	/**
+	 * The data the client sent on the stream
+	 */
+	private class StreamInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (available() == 0) {
+				// The client may wait for the answer before it sends more
+				output.flush();
+			}
+			int read;
+			int update = 0;
+			lock.lock();
+			try {
+				long remaining = timeoutNanos;
+				while (count == 0 && !remoteClosed && !reset) {
+					remaining = await(readable, remaining);
+				}
+				if (reset) {
+					throw new IOException("Stream " + id + " was reset");
+				}
+				if (count == 0) {
+					return -1;
+				}
+				read = Math.min(len, count);
+				int first = Math.min(read, buffer.length - start);
+				System.arraycopy(buffer, start, b, off, first);
+				System.arraycopy(buffer, 0, b, off + first, read - first);
+				start = (start + read) % buffer.length;
+				count -= read;
+
+				consumed += read;
+				if (consumed >= buffer.length / 2) {
+					update = consumed;
+					consumed = 0;
+				}
+			} finally {
+				lock.unlock();
+			}
+			if (update > 0) {
+				session.sendWindowUpdate(id, update);
+			}
+			return read;
+		}
+
+		@Override
+		public int available() {
+			lock.lock();
+			try {
+				return count;
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The data the server sends on the stream. It is collected into frames which are sent when they are full, when the
+	 * handler flushes or when the handler waits for the client. The frames are split to fit in the window of the client.
+	 */
+	private class StreamOutputStream extends OutputStream {
+
+		/** The data of the next frame */
+		private final byte[] pending = new byte[MuxSession.MAX_PAYLOAD_SIZE];
+
+		private int size;
+
+		/** Whether frames were written since the last flush of the session */
+		private boolean written;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (size == pending.length) {
+				sendPending();
+			}
+			pending[size++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (size == 0 && len >= pending.length) {
+					// A full frame doesn't need to be copied
+					send(b, off, pending.length);
+					off += pending.length;
+					len -= pending.length;
+				} else {
+					int length = Math.min(len, pending.length - size);
+					System.arraycopy(b, off, pending, size, length);
+					size += length;
+					off += length;
+					len -= length;
+					if (size == pending.length) {
+						sendPending();
+					}
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			sendPending();
+			if (written) {
+				written = false;
+				session.flush();
+			}
+		}
+
+		/**
+		 * Sends the collected data
+		 *
+		 * @throws IOException
+		 *             if the data could not be sent
+		 */
+		private void sendPending() throws IOException {
+			if (size > 0) {
+				send(pending, 0, size);
+				size = 0;
+			}
+		}
+
+		/**
+		 * Sends data in frames which fit in the window of the client, waits when the window is closed
+		 *
+		 * @param b
+		 *            The buffer with the data
+		 * @param off
+		 *            The start of the data
+		 * @param len
+		 *            The amount of data
+		 * @throws IOException
+		 *             if the stream was reset, the client didn't open the window in time or the data could not be sent
+		 */
+		private void send(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				int length;
+				lock.lock();
+				try {
+					long remaining = timeoutNanos;
+					while (sendWindow == 0 && !reset) {
+						remaining = await(writable, remaining);
+					}
+					if (reset) {
+						throw new IOException("Stream " + id + " was reset");
+					}
+					length = Math.min(len, sendWindow);
+					sendWindow -= length;
+				} finally {
+					lock.unlock();
+				}
+				session.writeFrame(id, MuxSession.DATA, b, off, length);
+				written = true;
+				off += length;
+				len -= length;
+			}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.fides.server.mux;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Handles the actions of a logical stream of a {@link MuxSession}. Every stream is handled on its own thread.
+ */
+public interface StreamHandler {
+
+	/**
+	 * Handles the requests of a stream until the client closes it
+	 *
+	 * @param in
+	 *            The input of the stream
+	 * @param out
+	 *            The output of the stream
+	 * @param tracker
+	 *            Is told when the handler is busy with an action
+	 * @throws IOException
+	 *             if the stream failed, the stream is reset
+	 */
+	void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException;
+
+	/**
+	 * Tells the session which streams are busy with an action. When the server shuts down the streams which are between
+	 * actions are reset, the others may finish their current action.
+	 */
+	interface ActionTracker {
+
+		/**
+		 * Marks the start of an action, after its request was read
+		 *
+		 * @return false if the session is being drained and the action shouldn't be handled
+		 */
+		boolean startAction();
+
+		/**
+		 * Marks the end of an action
+		 *
+		 * @return false if the session is being drained and the stream should end
+		 */
+		boolean endAction();
+	}
+}
@@ -0,0 +1,157 @@
+package org.fides.server.nio;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A thread which waits for network events of its connections and lets the connections process them. It never blocks on
+ * a single connection, so a few event loops can serve a large amount of mostly idle connections.
+ */
+class EventLoop implements Runnable {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(EventLoop.class);
+
+	/** The interval at which the connections are checked for idleness */
+	private static final long SWEEP_INTERVAL_MILLIS = 1000;
+
+	private final Selector selector;
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private volatile boolean isRunning = true;
+
+	private volatile Thread thread;
+
+	private long lastSweep = System.nanoTime();
+
+	/**
+	 * Constructor for EventLoop
+	 *
+	 * @throws IOException
+	 *             if the selector could not be opened
+	 */
+	EventLoop() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Returns the selector of this event loop
+	 *
+	 * @return The selector
+	 */
+	Selector getSelector() {
+		return selector;
+	}
+
+	/**
+	 * Checks whether the current thread is the thread of this event loop
+	 *
+	 * @return true if called from the event loop
+	 */
+	boolean inEventLoop() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Runs the given task on the thread of the event loop
+	 *
+	 * @param task
+	 *            The task to run
+	 */
+	void execute(Runnable task) {
+		tasks.add(task);
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		thread = Thread.currentThread();
+		while (isRunning) {
+			try {
+				selector.select(SWEEP_INTERVAL_MILLIS);
+			} catch (IOException e) {
+				LOG.error("IOException on select", e);
+				continue;
+			}
+
+			Runnable task;
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					LOG.error("Event loop task failed", e);
+				}
+			}
+
+			Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+			while (keys.hasNext()) {
+				SelectionKey key = keys.next();
+				keys.remove();
+				NioConnection connection = (NioConnection) key.attachment();
+				try {
+					if (key.isValid() && key.isWritable()) {
+						connection.onWritable();
+					}
+					if (key.isValid() && key.isReadable()) {
+						connection.onReadable();
+					}
+				} catch (CancelledKeyException e) {
+					connection.close();
+				} catch (IOException | RuntimeException e) {
+					LOG.debug("Closing connection after error", e);
+					connection.close();
+				}
+			}
+
+			long now = System.nanoTime();
+			if (now - lastSweep >= TimeUnit.MILLISECONDS.toNanos(SWEEP_INTERVAL_MILLIS)) {
+				lastSweep = now;
+				for (SelectionKey key : selector.keys()) {
+					((NioConnection) key.attachment()).checkIdle(now);
+				}
+			}
+		}
+
+		for (SelectionKey key : selector.keys()) {
+			((NioConnection) key.attachment()).close();
+		}
+		IOUtils.closeQuietly(selector);
+	}
+
+	/**
+	 * Closes the idle connections and lets the other connections finish their current request, must be called on the
+	 * event loop
+	 *
+	 * @return The amount of connections which were handling a request
+	 */
+	int drain() {
+		int busy = 0;
+		for (SelectionKey key : selector.keys()) {
+			if (((NioConnection) key.attachment()).drain()) {
+				busy++;
+			}
+		}
+		return busy;
+	}
+
+	/**
+	 * Stops the event loop and closes its connections
+	 */
+	void kill() {
+		isRunning = false;
+		selector.wakeup();
+	}
+}
@@ -0,0 +1,954 @@
+package org.fides.server.nio;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.Client;
+import org.fides.server.HandshakeExecutor;
+import org.fides.server.protocol.BinaryCodec;
+import org.fides.server.protocol.MessageCodec;
+import org.fides.server.protocol.MessageCodecs;
+import org.fides.server.protocol.ProtocolInputStream;
+import org.fides.server.protocol.ProtocolOutputStream;
+import org.fides.server.tools.CoalescingOutputStream;
+import org.fides.server.tools.FlushingInputStream;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.TransferMonitor;
+
+import com.google.gson.JsonObject;
+
+/**
+ * A non blocking TLS connection with a client. The event loop reads and decrypts the incoming data. As soon as a
+ * complete request has arrived, the request is handed to a worker which runs the same handlers as the blocking
+ * transport. While a request is handled, the worker reads the rest of the input (for example an uploaded file) through
+ * a stream which waits for the event loop. Between requests the connection doesn't occupy a thread and keeps no
+ * buffers.
+ */
+class NioConnection {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(NioConnection.class);
+
+	/** The maximum size of a request of any codec, including its header */
+	private static final int MAX_REQUEST_SIZE = BinaryCodec.HEADER_SIZE + BinaryCodec.MAX_FRAME_SIZE;
+
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+	private final SocketChannel channel;
+
+	private final InetAddress address;
+
+	private final SSLEngine engine;
+
+	private final EventLoop eventLoop;
+
+	private final Executor executor;
+
+	private final HandshakeExecutor handshakeExecutor;
+
+	private final Client client = new Client();
+
+	private final NioServer server;
+
+	private final TransferMonitor transferMonitor;
+
+	/** Guards the incoming buffers and the state of the connection */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition readable = lock.newCondition();
+
+	/** Guards the outgoing buffer and the wrapping of data by the engine */
+	private final ReentrantLock writeLock = new ReentrantLock();
+
+	private final Condition writable = writeLock.newCondition();
+
+	private SelectionKey key;
+
+	/** Encrypted data from the network, in write mode */
+	private ByteBuffer netIn;
+
+	/** Decrypted data from the client, in write mode */
+	private ByteBuffer appIn;
+
+	/** Encrypted data for the network, in write mode */
+	private ByteBuffer netOut;
+
+	private boolean handshaking = true;
+
+	/** Whether the expensive tasks of the handshake are running on a handshake thread */
+	private boolean delegating;
+
+	private long handshakeStart;
+
+	private long handshakeStartMillis;
+
+	private volatile ScheduledFuture<?> handshakeDeadline;
+
+	private boolean busy;
+
+	private boolean endOfInput;
+
+	private boolean draining;
+
+	private boolean readInterest = true;
+
+	/** The codec chosen by the first bytes of the client, null until they have arrived */
+	private MessageCodec codec;
+
+	/** Whether the preamble of a binary client still has to be answered */
+	private boolean acknowledgePending;
+
+	/** The time data arrived or a request was finished, to detect idle connections */
+	private long lastActivity = System.nanoTime();
+
+	private volatile boolean closed;
+
+	/**
+	 * Constructor for NioConnection
+	 *
+	 * @param channel
+	 *            The non blocking channel of the connection
+	 * @param address
+	 *            The address of the client
+	 * @param engine
+	 *            The engine to encrypt and decrypt the data with
+	 * @param eventLoop
+	 *            The event loop which handles the network events of the connection
+	 * @param executor
+	 *            The executor which handles the requests
+	 * @param handshakeExecutor
+	 *            The executor which runs the expensive parts of the handshake and guards its deadline
+	 * @param server
+	 *            The server which accepted the connection
+	 */
+	NioConnection(SocketChannel channel, InetAddress address, SSLEngine engine, EventLoop eventLoop, Executor executor, HandshakeExecutor handshakeExecutor,
+		NioServer server) {
+		this.channel = channel;
+		this.address = address;
+		this.engine = engine;
+		this.eventLoop = eventLoop;
+		this.executor = executor;
+		this.handshakeExecutor = handshakeExecutor;
+		this.server = server;
+		this.transferMonitor = new TransferMonitor(channel.socket());
+	}
+
+	/**
+	 * Registers the connection with its event loop, must be called on the event loop
+	 *
+	 * @throws IOException
+	 *             if the channel could not be registered
+	 */
+	void register() throws IOException {
+		key = channel.register(eventLoop.getSelector(), SelectionKey.OP_READ, this);
+		handshakeStart = System.nanoTime();
+		handshakeStartMillis = System.currentTimeMillis();
+		handshakeDeadline = handshakeExecutor.scheduleDeadline(new Runnable() {
+			@Override
+			public void run() {
+				eventLoop.execute(new Runnable() {
+					@Override
+					public void run() {
+						expireHandshake();
+					}
+				});
+			}
+		});
+		engine.beginHandshake();
+		lock.lock();
+		try {
+			processInput();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Reads the available data from the network and processes it, called by the event loop
+	 *
+	 * @throws IOException
+	 *             if the connection failed
+	 */
+	void onReadable() throws IOException {
+		lock.lock();
+		try {
+			if (netIn == null) {
+				netIn = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			}
+			int read = channel.read(netIn);
+			if (read < 0) {
+				endOfInput = true;
+			} else if (read > 0) {
+				lastActivity = System.nanoTime();
+			}
+			processInput();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Continues a blocked write or handshake, called by the event loop
+	 *
+	 * @throws IOException
+	 *             if the connection failed
+	 */
+	void onWritable() throws IOException {
+		setInterest(SelectionKey.OP_WRITE, false);
+		boolean continueHandshake = false;
+		writeLock.lock();
+		try {
+			if (handshaking) {
+				continueHandshake = flushNonBlocking();
+			}
+			writable.signalAll();
+		} finally {
+			writeLock.unlock();
+		}
+
+		if (continueHandshake) {
+			lock.lock();
+			try {
+				processInput();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Drives the handshake, decrypts the available network data and dispatches a complete request. The lock must be
+	 * held.
+	 *
+	 * @throws IOException
+	 *             if the connection failed
+	 */
+	private void processInput() throws IOException {
+		if (delegating) {
+			// The handshake continues when the delegated tasks are done
+			return;
+		}
+		boolean progress = true;
+		while (progress && !closed) {
+			HandshakeStatus status = engine.getHandshakeStatus();
+			if (status == HandshakeStatus.NEED_TASK) {
+				if (delegateTasks()) {
+					return;
+				}
+			} else if (status == HandshakeStatus.NEED_WRAP) {
+				if (!wrapHandshake()) {
+					// Wait until the channel is writable
+					return;
+				}
+			} else {
+				progress = unwrap();
+			}
+		}
+
+		if (handshaking && engine.getHandshakeStatus() == HandshakeStatus.NOT_HANDSHAKING) {
+			handshaking = false;
+			cancelHandshakeDeadline();
+			HandshakeExecutor.recordHandshake(handshakeStart, handshakeStartMillis, engine.getSession());
+			Metrics.increment("nio.handshakes");
+		}
+
+		if (busy) {
+			readable.signalAll();
+		} else if (endOfInput) {
+			close();
+			return;
+		} else if (!handshaking && hasCompleteRequest()) {
+			dispatch();
+		}
+		updateReadInterest();
+		releaseIdleBuffers();
+	}
+
+	/**
+	 * Decrypts the data in the network buffer into the application buffer. The lock must be held.
+	 *
+	 * @return Whether the engine made progress
+	 * @throws SSLException
+	 *             if the data could not be decrypted
+	 */
+	private boolean unwrap() throws SSLException {
+		if (netIn == null || netIn.position() == 0 || !ensureApplicationRoom()) {
+			return false;
+		}
+
+		netIn.flip();
+		SSLEngineResult result;
+		try {
+			result = engine.unwrap(netIn, appIn);
+		} finally {
+			netIn.compact();
+		}
+
+		switch (result.getStatus()) {
+		case BUFFER_UNDERFLOW:
+			// A record is incomplete, make sure it fits once the rest arrives
+			int packetSize = engine.getSession().getPacketBufferSize();
+			if (netIn.capacity() < packetSize) {
+				ByteBuffer larger = ByteBuffer.allocate(packetSize);
+				netIn.flip();
+				larger.put(netIn);
+				netIn = larger;
+			}
+			return false;
+		case CLOSED:
+			endOfInput = true;
+			return false;
+		case BUFFER_OVERFLOW:
+			return false;
+		default:
+			return result.bytesConsumed() > 0 || result.bytesProduced() > 0;
+		}
+	}
+
+	/**
+	 * Makes sure the application buffer can hold a decrypted record. When a worker is busy the buffer doesn't grow, the
+	 * event loop stops reading until the worker has consumed the data. The lock must be held.
+	 *
+	 * @return Whether there is enough room to decrypt a record
+	 */
+	private boolean ensureApplicationRoom() {
+		int applicationSize = engine.getSession().getApplicationBufferSize();
+		if (appIn == null) {
+			appIn = ByteBuffer.allocate(applicationSize);
+		}
+		if (appIn.remaining() >= applicationSize) {
+			return true;
+		}
+		if (busy || appIn.capacity() >= MAX_REQUEST_SIZE + applicationSize) {
+			return false;
+		}
+
+		// A large request doesn't fit yet
+		ByteBuffer larger = ByteBuffer.allocate(Math.min(appIn.capacity() * 2, MAX_REQUEST_SIZE + applicationSize));
+		appIn.flip();
+		larger.put(appIn);
+		appIn = larger;
+		return appIn.remaining() >= applicationSize;
+	}
+
+	/**
+	 * Runs the expensive tasks of the handshake on a handshake thread, so the event loop can continue with the other
+	 * connections. The connection doesn't read until the tasks are done. The lock must be held.
+	 *
+	 * @return Whether the tasks were delegated, false if they ran on the current thread
+	 */
+	private boolean delegateTasks() {
+		delegating = true;
+		readInterest = false;
+		setInterest(SelectionKey.OP_READ, false);
+		try {
+			handshakeExecutor.getTaskExecutor().execute(new Runnable() {
+				@Override
+				public void run() {
+					runDelegatedTasks();
+					eventLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							continueHandshake();
+						}
+					});
+				}
+			});
+			return true;
+		} catch (RejectedExecutionException e) {
+			delegating = false;
+			runDelegatedTasks();
+			return false;
+		}
+	}
+
+	/**
+	 * Runs the expensive tasks of the handshake
+	 */
+	private void runDelegatedTasks() {
+		Runnable task;
+		while ((task = engine.getDelegatedTask()) != null) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Continues the handshake after the delegated tasks are done, runs on the event loop
+	 */
+	private void continueHandshake() {
+		lock.lock();
+		try {
+			delegating = false;
+			processInput();
+		} catch (IOException e) {
+			LOG.debug("Handshake failed", e);
+			close();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the connection when the handshake didn't finish before its deadline, runs on the event loop
+	 */
+	private void expireHandshake() {
+		lock.lock();
+		try {
+			if (handshaking && !closed) {
+				LOG.debug("Handshake did not finish in time, closing the connection");
+				Metrics.increment("tls.handshakeTimeouts");
+				close();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Cancels the deadline of the handshake
+	 */
+	private void cancelHandshakeDeadline() {
+		ScheduledFuture<?> deadline = handshakeDeadline;
+		if (deadline != null) {
+			deadline.cancel(false);
+		}
+	}
+
+	/**
+	 * Lets the engine produce handshake data and writes it to the network
+	 *
+	 * @return Whether all data could be written
+	 * @throws IOException
+	 *             if the data could not be written
+	 */
+	private boolean wrapHandshake() throws IOException {
+		writeLock.lock();
+		try {
+			if (netOut == null) {
+				netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+			}
+			if (netOut.position() > 0 && !flushNonBlocking()) {
+				return false;
+			}
+			SSLEngineResult result = engine.wrap(EMPTY, netOut);
+			if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+				endOfInput = true;
+			}
+			return flushNonBlocking();
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Writes as much of the outgoing buffer to the network as possible without blocking. The write lock must be held.
+	 *
+	 * @return Whether the buffer was written completely
+	 * @throws IOException
+	 *             if the data could not be written
+	 */
+	private boolean flushNonBlocking() throws IOException {
+		if (netOut == null) {
+			return true;
+		}
+		netOut.flip();
+		try {
+			channel.write(netOut);
+			if (netOut.hasRemaining()) {
+				setInterest(SelectionKey.OP_WRITE, true);
+				return false;
+			}
+			return true;
+		} finally {
+			netOut.compact();
+		}
+	}
+
+	/**
+	 * Checks whether the application buffer contains a complete request, or a preamble which has to be answered. The
+	 * first bytes of the connection choose its codec. The lock must be held.
+	 *
+	 * @return true if a complete request is available
+	 * @throws IOException
+	 *             if the header of the request isn't valid
+	 */
+	private boolean hasCompleteRequest() throws IOException {
+		if (appIn == null) {
+			return false;
+		}
+		if (codec == null) {
+			int preambleSize = MessageCodecs.detect(appIn);
+			if (preambleSize < 0) {
+				return false;
+			}
+			codec = MessageCodecs.create(preambleSize > 0);
+			if (preambleSize > 0) {
+				appIn.flip();
+				appIn.position(preambleSize);
+				appIn.compact();
+				acknowledgePending = true;
+			}
+		}
+		if (acknowledgePending) {
+			return true;
+		}
+		int length = codec.getFrameLength(appIn);
+		return length > 0 && appIn.position() >= length;
+	}
+
+	/**
+	 * Checks whether the client sent another request which will be handled after the current one
+	 *
+	 * @return true if a complete request is waiting and the server isn't shutting down
+	 * @throws IOException
+	 *             if the buffered input isn't valid
+	 */
+	private boolean hasPendingRequest() throws IOException {
+		lock.lock();
+		try {
+			return !closed && !draining && hasCompleteRequest();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Takes the complete request from the application buffer. The lock must be held.
+	 *
+	 * @return The request with its header
+	 * @throws IOException
+	 *             if the header of the request isn't valid
+	 */
+	private byte[] takeRequest() throws IOException {
+		byte[] request = new byte[codec.getFrameLength(appIn)];
+		appIn.flip();
+		appIn.get(request);
+		appIn.compact();
+		return request;
+	}
+
+	/**
+	 * Hands the available requests to a worker. The lock must be held.
+	 */
+	private void dispatch() {
+		busy = true;
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					handleRequests();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOG.debug("No worker available, closing the connection");
+			Metrics.increment("nio.rejected");
+			busy = false;
+			close();
+		}
+	}
+
+	/**
+	 * Handles the requests of the client until there are no complete requests left, runs on a worker
+	 */
+	private void handleRequests() {
+		DataInputStream in;
+		DataOutputStream out;
+		boolean acknowledge;
+		lock.lock();
+		try {
+			// A response is collected and encrypted as a whole when the request has been handled
+			CoalescingOutputStream output = new CoalescingOutputStream(transferMonitor.wrap(new ConnectionOutputStream()));
+			in = new ProtocolInputStream(new FlushingInputStream(transferMonitor.wrap(new ConnectionInputStream()), output), codec);
+			out = new ProtocolOutputStream(output, codec);
+			acknowledge = acknowledgePending;
+			acknowledgePending = false;
+		} finally {
+			lock.unlock();
+		}
+
+		boolean connected = true;
+		try {
+			if (acknowledge) {
+				out.write(MessageCodecs.createPreamble());
+				out.flush();
+			}
+			while (connected) {
+				byte[] request = null;
+				boolean drain;
+				lock.lock();
+				try {
+					if (closed) {
+						return;
+					}
+					drain = draining;
+					if (!drain) {
+						if (!hasCompleteRequest()) {
+							// Decrypt what is left, this dispatches the next request or closes the connection
+							busy = false;
+							lastActivity = System.nanoTime();
+							processInput();
+							return;
+						}
+						request = takeRequest();
+					}
+				} finally {
+					lock.unlock();
+				}
+
+				if (drain) {
+					// The server is shutting down, close the connection after the handled request. The answers are sent
+					// outside the lock, the event loop needs it to signal that the network is writable.
+					out.flush();
+					break;
+				}
+
+				Metrics.increment("nio.requests");
+				transferMonitor.startAction();
+				try {
+					JsonObject requestObject = codec.readMessage(new DataInputStream(new ByteArrayInputStream(request)));
+					connected = client.handleRequest(requestObject, in, out);
+					// The answers to pipelined requests are sent together, after the last request that was received
+					if (!connected || !hasPendingRequest()) {
+						out.flush();
+					}
+				} finally {
+					transferMonitor.endAction();
+				}
+			}
+		} catch (EOFException e) {
+			LOG.debug("Closed by client don't throw an error message");
+		} catch (SocketTimeoutException e) {
+			LOG.debug("Client stopped sending data during a request", e);
+			if (client.isLoggedIn()) {
+				Metrics.increment("session.reclaimed");
+			}
+		} catch (IOException | RuntimeException e) {
+			LOG.error("Exception while handling a request", e);
+		}
+
+		// The client disconnected or the request failed
+		lock.lock();
+		try {
+			busy = false;
+			close();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Makes sure the event loop only reads when the decrypted data can be stored. The lock must be held.
+	 */
+	private void updateReadInterest() {
+		boolean full = busy && appIn != null && appIn.remaining() < engine.getSession().getApplicationBufferSize();
+		boolean interest = !full && !endOfInput;
+		if (interest != readInterest) {
+			readInterest = interest;
+			setInterest(SelectionKey.OP_READ, interest);
+		}
+	}
+
+	/**
+	 * Checks whether there is encrypted data which hasn't been decrypted yet. The lock must be held.
+	 *
+	 * @return true if the network buffer contains data
+	 */
+	private boolean hasPendingNetworkData() {
+		return netIn != null && netIn.position() > 0;
+	}
+
+	/**
+	 * Releases the buffers of an idle connection, they are allocated again when data arrives. The lock must be held.
+	 */
+	private void releaseIdleBuffers() {
+		if (busy || handshaking) {
+			return;
+		}
+		if (netIn != null && netIn.position() == 0) {
+			netIn = null;
+		}
+		if (appIn != null && appIn.position() == 0) {
+			appIn = null;
+		}
+		if (writeLock.tryLock()) {
+			try {
+				if (netOut != null && netOut.position() == 0) {
+					netOut = null;
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Changes the operations the event loop waits for
+	 *
+	 * @param operation
+	 *            The operation to change
+	 * @param enabled
+	 *            Whether the event loop should wait for the operation
+	 */
+	private void setInterest(final int operation, final boolean enabled) {
+		if (eventLoop.inEventLoop()) {
+			if (key != null && key.isValid()) {
+				int ops = key.interestOps();
+				key.interestOps(enabled ? ops | operation : ops & ~operation);
+			}
+		} else {
+			eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					setInterest(operation, enabled);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Lets the server shut down the connection. An idle connection is closed right away, a connection which is handling
+	 * a request is closed when the request is finished.
+	 *
+	 * @return Whether a request was being handled
+	 */
+	boolean drain() {
+		lock.lock();
+		try {
+			draining = true;
+			if (busy) {
+				// A multiplexed session keeps the request busy until its streams are done
+				client.drain();
+				return true;
+			}
+			close();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the connection when it has been idle for longer than the idle timeout of the client, called by the event
+	 * loop
+	 *
+	 * @param now
+	 *            The current time in nanoseconds
+	 */
+	void checkIdle(long now) {
+		int idleTimeoutMillis = client.getIdleTimeoutMillis();
+		if (idleTimeoutMillis <= 0) {
+			return;
+		}
+		lock.lock();
+		try {
+			if (closed || busy || handshaking || delegating || now - lastActivity < TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis)) {
+				return;
+			}
+			LOG.debug("Connection was idle for too long, closing it");
+			Metrics.increment("session.idleTimeouts");
+			if (client.isLoggedIn()) {
+				Metrics.increment("session.reclaimed");
+			}
+			close();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Closes the connection and releases the user of the client
+	 */
+	void close() {
+		lock.lock();
+		try {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			readable.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		writeLock.lock();
+		try {
+			writable.signalAll();
+		} finally {
+			writeLock.unlock();
+		}
+
+		cancelHandshakeDeadline();
+		if (key != null) {
+			key.cancel();
+		}
+		engine.closeOutbound();
+		IOUtils.closeQuietly(channel);
+		client.release();
+		transferMonitor.close();
+		server.connectionClosed(address);
+	}
+
+	/**
+	 * The input which follows a request, read by the worker from the decrypted data of the event loop
+	 */
+	private class ConnectionInputStream extends InputStream {
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			if (read(single, 0, 1) < 0) {
+				return -1;
+			}
+			return single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(client.getReadTimeoutMillis());
+			lock.lock();
+			try {
+				while (appIn == null || appIn.position() == 0) {
+					if (hasPendingNetworkData()) {
+						processInput();
+					}
+					if (appIn != null && appIn.position() > 0) {
+						break;
+					}
+					if (endOfInput || closed) {
+						return -1;
+					}
+					updateReadInterest();
+					timeoutNanos = awaitReadable(timeoutNanos);
+				}
+				appIn.flip();
+				int read = Math.min(length, appIn.remaining());
+				appIn.get(buffer, offset, read);
+				appIn.compact();
+				if (hasPendingNetworkData()) {
+					// The event loop stopped reading when the buffer was full, decrypt the rest now there is room
+					processInput();
+				}
+				updateReadInterest();
+				return read;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		/**
+		 * Waits until the event loop has decrypted data or the connection is closed. The lock must be held.
+		 *
+		 * @param timeoutNanos
+		 *            The time left to wait, 0 for no limit
+		 * @return The time left to wait
+		 * @throws SocketTimeoutException
+		 *             if the read timeout expired
+		 */
+		private long awaitReadable(long timeoutNanos) throws SocketTimeoutException {
+			if (timeoutNanos <= 0) {
+				readable.awaitUninterruptibly();
+				return 0;
+			}
+			try {
+				long left = readable.awaitNanos(timeoutNanos);
+				if (left <= 0) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				return left;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SocketTimeoutException("Read interrupted");
+			}
+		}
+
+		@Override
+		public int available() {
+			lock.lock();
+			try {
+				return appIn == null ? 0 : appIn.position();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * The output of a request, encrypted and written to the network by the worker
+	 */
+	private class ConnectionOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] buffer, int offset, int length) throws IOException {
+			ByteBuffer source = ByteBuffer.wrap(buffer, offset, length);
+			writeLock.lock();
+			try {
+				while (source.hasRemaining()) {
+					if (closed) {
+						throw new ClosedChannelException();
+					}
+					if (netOut == null) {
+						netOut = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
+					}
+					SSLEngineResult result = engine.wrap(source, netOut);
+					if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+						throw new ClosedChannelException();
+					}
+					flushBlocking();
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+
+		/**
+		 * Writes the outgoing buffer to the network, waits for the event loop when the network is congested. The write
+		 * lock must be held.
+		 *
+		 * @throws IOException
+		 *             if the data could not be written
+		 */
+		private void flushBlocking() throws IOException {
+			while (!flushNonBlocking()) {
+				if (closed) {
+					throw new ClosedChannelException();
+				}
+				writable.awaitUninterruptibly();
+			}
+		}
+	}
+}
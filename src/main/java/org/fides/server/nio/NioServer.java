@@ -0,0 +1,224 @@
+package org.fides.server.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.fides.server.HandshakeExecutor;
+import org.fides.server.tools.ConnectionLimiter;
+import org.fides.server.tools.Metrics;
+import org.fides.server.tools.SocketTuning;
+import org.fides.server.tools.TlsProfile;
+
+/**
+ * A transport which accepts TLS connections on a non blocking channel. The connections are divided over a few event
+ * loops, so idle clients don't occupy a thread.
+ */
+public class NioServer implements Runnable {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(NioServer.class);
+
+	private final SSLContext sslContext;
+
+	private final TlsProfile tlsProfile;
+
+	private final Executor executor;
+
+	private final HandshakeExecutor handshakeExecutor;
+
+	private final ConnectionLimiter connectionLimiter;
+
+	private final ServerSocketChannel serverChannel;
+
+	private final EventLoop[] eventLoops;
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private volatile boolean isRunning = true;
+
+	private int nextEventLoop;
+
+	/**
+	 * Constructor for NioServer, binds the listening channel and starts the event loops
+	 *
+	 * @param sslContext
+	 *            The context to create the SSLEngines with
+	 * @param tlsProfile
+	 *            The profile with the protocols and cipher suites to enable
+	 * @param executor
+	 *            The executor which handles the requests
+	 * @param handshakeExecutor
+	 *            The executor which runs the expensive parts of the handshakes and guards their deadline
+	 * @param connectionLimiter
+	 *            The limiter which decides whether a connection is admitted
+	 * @param port
+	 *            The port to listen on
+	 * @param backlog
+	 *            The maximum amount of connections waiting to be accepted
+	 * @param eventLoopThreads
+	 *            The amount of event loops, 0 to use one per processor
+	 * @throws IOException
+	 *             if the channel could not be bound or the event loops could not be opened
+	 */
+	public NioServer(SSLContext sslContext, TlsProfile tlsProfile, Executor executor, HandshakeExecutor handshakeExecutor, ConnectionLimiter connectionLimiter,
+		int port, int backlog, int eventLoopThreads) throws IOException {
+		this.sslContext = sslContext;
+		this.tlsProfile = tlsProfile;
+		this.executor = executor;
+		this.handshakeExecutor = handshakeExecutor;
+		this.connectionLimiter = connectionLimiter;
+
+		int amountOfEventLoops = eventLoopThreads > 0 ? eventLoopThreads : Runtime.getRuntime().availableProcessors();
+		eventLoops = new EventLoop[amountOfEventLoops];
+		for (int i = 0; i < amountOfEventLoops; i++) {
+			eventLoops[i] = new EventLoop();
+			Thread thread = new Thread(eventLoops[i], "EventLoop-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		SocketTuning.applyToListener(serverChannel.socket());
+		serverChannel.bind(new InetSocketAddress(port), backlog);
+
+		Metrics.registerGauge("nio.connections", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return connections.get();
+			}
+		});
+		LOG.debug("Non blocking transport uses " + amountOfEventLoops + " event loops");
+	}
+
+	/**
+	 * Accepting client connections
+	 */
+	@Override
+	public void run() {
+		while (isRunning) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				Metrics.increment("nio.accepted");
+
+				// Refuse the connection before the TLS handshake when a limit is reached
+				final InetAddress address = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+				if (!connectionLimiter.tryAcquire(address)) {
+					channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+					IOUtils.closeQuietly(channel);
+					continue;
+				}
+
+				try {
+					channel.configureBlocking(false);
+					SocketTuning.apply(channel.socket());
+
+					SSLEngine engine = sslContext.createSSLEngine();
+					engine.setUseClientMode(false);
+					tlsProfile.apply(engine);
+
+					final EventLoop eventLoop = eventLoops[nextEventLoop];
+					nextEventLoop = (nextEventLoop + 1) % eventLoops.length;
+
+					final NioConnection connection = new NioConnection(channel, address, engine, eventLoop, executor, handshakeExecutor, this);
+					connections.incrementAndGet();
+					eventLoop.execute(new Runnable() {
+						@Override
+						public void run() {
+							try {
+								connection.register();
+							} catch (IOException e) {
+								LOG.debug("Could not register the connection", e);
+								connection.close();
+							}
+						}
+					});
+				} catch (IOException e) {
+					IOUtils.closeQuietly(channel);
+					connectionLimiter.release(address);
+					throw e;
+				}
+			} catch (IOException e) {
+				if (isRunning) {
+					LOG.error("IOException on socket listen", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Called by a connection when it is closed
+	 * 
+	 * @param address
+	 *            The address of the client
+	 */
+	void connectionClosed(InetAddress address) {
+		connections.decrementAndGet();
+		connectionLimiter.release(address);
+	}
+
+	/**
+	 * Stops accepting connections, closes the idle connections and lets the other connections finish their current
+	 * request
+	 *
+	 * @return The amount of connections which were handling a request
+	 * @throws InterruptedException
+	 *             if the thread was interrupted while waiting for the event loops
+	 */
+	public int drain() throws InterruptedException {
+		isRunning = false;
+		IOUtils.closeQuietly(serverChannel);
+
+		final AtomicInteger busy = new AtomicInteger();
+		final CountDownLatch drained = new CountDownLatch(eventLoops.length);
+		for (final EventLoop eventLoop : eventLoops) {
+			eventLoop.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						busy.addAndGet(eventLoop.drain());
+					} finally {
+						drained.countDown();
+					}
+				}
+			});
+		}
+		drained.await();
+		return busy.get();
+	}
+
+	/**
+	 * Returns the amount of open connections
+	 *
+	 * @return The amount of connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Stops accepting connections and closes the connections of the event loops
+	 */
+	public void kill() {
+		isRunning = false;
+		IOUtils.closeQuietly(serverChannel);
+		for (EventLoop eventLoop : eventLoops) {
+			eventLoop.kill();
+		}
+	}
+}
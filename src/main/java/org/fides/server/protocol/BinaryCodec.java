@@ -0,0 +1,506 @@
+package org.fides.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.fides.components.Actions;
+import org.fides.components.Responses;
+import org.fides.server.tools.ServerActions;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * A compact binary framing of the messages, which a client chooses with the preamble of {@link MessageCodecs}. A
+ * frame consists of:
+ *
+ * <pre>
+ * frame  = length:int32 code:byte field*
+ * field  = key:varint [name:string if the key is 0] type:byte value
+ * string = length:varint UTF-8 bytes
+ * </pre>
+ *
+ * The code is the action of a request, {@link #CODE_SUCCESSFUL} or {@link #CODE_ERROR} for a response, or
+ * {@link #CODE_MESSAGE} for anything else. The known property names are sent as a number. The numbers belong to the
+ * protocol version, new actions and properties may only be appended to the tables.
+ *
+ * A codec keeps a buffer for the frames, so it is used by one thread at a time. A connection which reads its requests
+ * ahead decodes them with a second codec.
+ */
+public class BinaryCodec implements MessageCodec {
+
+	/** The version of the frame format */
+	public static final byte VERSION = 1;
+
+	/** The maximum size of the payload of a frame */
+	public static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+	/** The size of the length of a frame */
+	public static final int HEADER_SIZE = 4;
+
+	/** A message of which the successful and action properties are sent as fields */
+	static final int CODE_MESSAGE = 0;
+
+	/** A message with successful set to true */
+	static final int CODE_SUCCESSFUL = 1;
+
+	/** A message with successful set to false */
+	static final int CODE_ERROR = 2;
+
+	/** The code of the first action in {@link #ACTIONS} */
+	private static final int FIRST_ACTION_CODE = 16;
+
+	private static final String[] ACTIONS = { Actions.CREATE_USER, Actions.LOGIN, Actions.DISCONNECT, Actions.GET_KEY_FILE, Actions.UPDATE_KEY_FILE, Actions.UPLOAD_FILE,
+		Actions.GET_FILE, Actions.UPDATE_FILE, Actions.REMOVE_FILE, Actions.REQUEST_LOCATIONS, ServerActions.PING, ServerActions.MULTIPLEX,
+		ServerActions.GET_FILES, ServerActions.UPLOAD_FILES, ServerActions.REMOVE_FILES,
+		ServerActions.BOOTSTRAP, ServerActions.RESUMABLE_UPLOAD,
+		ServerActions.UPDATE_FILE_RANGE };
+
+	/** The known property names, key 0 is followed by the name itself */
+	private static final String[] KEYS = { null, Actions.ACTION, Responses.SUCCESSFUL, Responses.ERROR, Responses.LOCATIONS, Actions.Properties.LOCATION,
+		Actions.Properties.USERNAME_HASH, Actions.Properties.PASSWORD_HASH };
+
+	private static final int TYPE_NULL = 0;
+
+	private static final int TYPE_STRING = 1;
+
+	private static final int TYPE_TRUE = 2;
+
+	private static final int TYPE_FALSE = 3;
+
+	private static final int TYPE_LONG = 4;
+
+	private static final int TYPE_DOUBLE = 5;
+
+	private static final int TYPE_STRING_ARRAY = 6;
+
+	private static final int TYPE_JSON = 7;
+
+	private static final int INITIAL_BUFFER_SIZE = 512;
+
+	/** A larger buffer is released after the frame, so an idle connection doesn't keep it */
+	private static final int RETAINED_BUFFER_SIZE = 64 * 1024;
+
+	private static final Map<String, Integer> ACTION_CODES = new HashMap<>();
+
+	private static final Map<String, Integer> KEY_CODES = new HashMap<>();
+
+	static {
+		for (int i = ACTIONS.length - 1; i >= 0; i--) {
+			ACTION_CODES.put(ACTIONS[i], FIRST_ACTION_CODE + i);
+		}
+		for (int i = KEYS.length - 1; i > 0; i--) {
+			KEY_CODES.put(KEYS[i], i);
+		}
+	}
+
+	/** Created after the tables, it encodes its frames with them */
+	private static final PreEncodedResponses RESPONSES = new PreEncodedResponses(new BinaryCodec());
+
+	private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+
+	private int size;
+
+	@Override
+	public JsonObject readMessage(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		checkFrameLength(length);
+		ensureCapacity(length);
+		in.readFully(buffer, 0, length);
+		try {
+			return decode(ByteBuffer.wrap(buffer, 0, length));
+		} finally {
+			releaseBuffer();
+		}
+	}
+
+	@Override
+	public void writeMessage(DataOutputStream out, JsonObject message) throws IOException {
+		try {
+			encodeFrame(message);
+			out.write(buffer, 0, size);
+		} finally {
+			releaseBuffer();
+		}
+	}
+
+	@Override
+	public byte[] encode(JsonObject message) throws IOException {
+		try {
+			encodeFrame(message);
+			return Arrays.copyOf(buffer, size);
+		} finally {
+			releaseBuffer();
+		}
+	}
+
+	@Override
+	public void writeSuccessful(DataOutputStream out) throws IOException {
+		out.write(RESPONSES.getSuccessful());
+	}
+
+	@Override
+	public void writeError(DataOutputStream out, String errorMessage) throws IOException {
+		out.write(RESPONSES.getError(errorMessage));
+	}
+
+	@Override
+	public int getFrameLength(ByteBuffer frames) throws IOException {
+		if (frames.position() < HEADER_SIZE) {
+			return -1;
+		}
+		int length = frames.getInt(0);
+		checkFrameLength(length);
+		return HEADER_SIZE + length;
+	}
+
+	@Override
+	public String getName() {
+		return "binary";
+	}
+
+	/**
+	 * Encodes a message with its header into the buffer
+	 *
+	 * @param message
+	 *            The message
+	 * @throws IOException
+	 *             if the message is too large
+	 */
+	private void encodeFrame(JsonObject message) throws IOException {
+		size = HEADER_SIZE;
+		encodeMessage(message);
+		int length = size - HEADER_SIZE;
+		if (length > MAX_FRAME_SIZE) {
+			throw new IOException("Message of " + length + " bytes is too large");
+		}
+		buffer[0] = (byte) (length >>> 24);
+		buffer[1] = (byte) (length >>> 16);
+		buffer[2] = (byte) (length >>> 8);
+		buffer[3] = (byte) length;
+	}
+
+	/**
+	 * Encodes the code and the fields of a message into the buffer
+	 *
+	 * @param message
+	 *            The message
+	 */
+	private void encodeMessage(JsonObject message) {
+		String encodedKey = null;
+		JsonElement action = message.get(Actions.ACTION);
+		JsonElement successful = message.get(Responses.SUCCESSFUL);
+		Integer actionCode = action != null && action.isJsonPrimitive() && action.getAsJsonPrimitive().isString() ? ACTION_CODES.get(action.getAsString()) : null;
+		if (actionCode != null) {
+			putByte(actionCode);
+			encodedKey = Actions.ACTION;
+		} else if (successful != null && successful.isJsonPrimitive() && successful.getAsJsonPrimitive().isBoolean()) {
+			putByte(successful.getAsBoolean() ? CODE_SUCCESSFUL : CODE_ERROR);
+			encodedKey = Responses.SUCCESSFUL;
+		} else {
+			putByte(CODE_MESSAGE);
+		}
+
+		for (Map.Entry<String, JsonElement> entry : message.entrySet()) {
+			if (!entry.getKey().equals(encodedKey)) {
+				putField(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Encodes a property of a message
+	 *
+	 * @param key
+	 *            The name of the property
+	 * @param value
+	 *            The value of the property
+	 */
+	private void putField(String key, JsonElement value) {
+		Integer keyCode = KEY_CODES.get(key);
+		if (keyCode != null) {
+			putVarint(keyCode);
+		} else {
+			putVarint(0);
+			putString(key);
+		}
+
+		if (value.isJsonNull()) {
+			putByte(TYPE_NULL);
+		} else if (value.isJsonPrimitive()) {
+			JsonPrimitive primitive = value.getAsJsonPrimitive();
+			if (primitive.isBoolean()) {
+				putByte(primitive.getAsBoolean() ? TYPE_TRUE : TYPE_FALSE);
+			} else if (primitive.isNumber()) {
+				putNumber(primitive);
+			} else {
+				putByte(TYPE_STRING);
+				putString(primitive.getAsString());
+			}
+		} else if (isStringArray(value)) {
+			JsonArray array = value.getAsJsonArray();
+			putByte(TYPE_STRING_ARRAY);
+			putVarint(array.size());
+			for (JsonElement element : array) {
+				putString(element.getAsString());
+			}
+		} else {
+			putByte(TYPE_JSON);
+			putString(value.toString());
+		}
+	}
+
+	/**
+	 * Encodes a number, whole numbers as a variable length integer and other numbers as a double
+	 *
+	 * @param number
+	 *            The number
+	 */
+	private void putNumber(JsonPrimitive number) {
+		long value;
+		try {
+			value = Long.parseLong(number.getAsString());
+		} catch (NumberFormatException e) {
+			putByte(TYPE_DOUBLE);
+			long bits = Double.doubleToLongBits(number.getAsDouble());
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				putByte((int) (bits >>> shift));
+			}
+			return;
+		}
+		putByte(TYPE_LONG);
+		// Zigzag encoding keeps small negative numbers short
+		putVarint((value << 1) ^ (value >> 63));
+	}
+
+	/**
+	 * Decodes a frame without its length
+	 *
+	 * @param frame
+	 *            The payload of the frame
+	 * @return The message
+	 * @throws IOException
+	 *             if the frame isn't valid
+	 */
+	private static JsonObject decode(ByteBuffer frame) throws IOException {
+		JsonObject message = new JsonObject();
+		try {
+			int code = frame.get() & 0xFF;
+			if (code == CODE_SUCCESSFUL) {
+				message.addProperty(Responses.SUCCESSFUL, true);
+			} else if (code == CODE_ERROR) {
+				message.addProperty(Responses.SUCCESSFUL, false);
+			} else if (code >= FIRST_ACTION_CODE && code < FIRST_ACTION_CODE + ACTIONS.length) {
+				message.addProperty(Actions.ACTION, ACTIONS[code - FIRST_ACTION_CODE]);
+			} else if (code != CODE_MESSAGE) {
+				throw new IOException("Unknown message code " + code);
+			}
+
+			while (frame.hasRemaining()) {
+				int keyCode = (int) getVarint(frame);
+				String key;
+				if (keyCode == 0) {
+					key = getString(frame);
+				} else if (keyCode > 0 && keyCode < KEYS.length) {
+					key = KEYS[keyCode];
+				} else {
+					throw new IOException("Unknown property " + keyCode);
+				}
+				message.add(key, getValue(frame));
+			}
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Message is truncated", e);
+		}
+		return message;
+	}
+
+	/**
+	 * Decodes the value of a property
+	 *
+	 * @param frame
+	 *            The payload of the frame, positioned at the type of the value
+	 * @return The value
+	 * @throws IOException
+	 *             if the value isn't valid
+	 */
+	private static JsonElement getValue(ByteBuffer frame) throws IOException {
+		int type = frame.get();
+		switch (type) {
+		case TYPE_NULL:
+			return JsonNull.INSTANCE;
+		case TYPE_STRING:
+			return new JsonPrimitive(getString(frame));
+		case TYPE_TRUE:
+			return new JsonPrimitive(true);
+		case TYPE_FALSE:
+			return new JsonPrimitive(false);
+		case TYPE_LONG:
+			long zigzag = getVarint(frame);
+			return new JsonPrimitive((zigzag >>> 1) ^ -(zigzag & 1));
+		case TYPE_DOUBLE:
+			return new JsonPrimitive(Double.longBitsToDouble(frame.getLong()));
+		case TYPE_STRING_ARRAY:
+			long count = getVarint(frame);
+			if (count > frame.remaining()) {
+				throw new IOException("Array of " + count + " strings doesn't fit in the message");
+			}
+			JsonArray array = new JsonArray();
+			for (long i = 0; i < count; i++) {
+				array.add(new JsonPrimitive(getString(frame)));
+			}
+			return array;
+		case TYPE_JSON:
+			return new JsonParser().parse(getString(frame));
+		default:
+			throw new IOException("Unknown type " + type);
+		}
+	}
+
+	/**
+	 * Decodes a UTF-8 string which is preceded by its length
+	 *
+	 * @param frame
+	 *            The payload of the frame, positioned at the length of the string
+	 * @return The string
+	 * @throws IOException
+	 *             if the string doesn't fit in the frame
+	 */
+	private static String getString(ByteBuffer frame) throws IOException {
+		long length = getVarint(frame);
+		if (length > frame.remaining()) {
+			throw new IOException("String of " + length + " bytes doesn't fit in the message");
+		}
+		String value = new String(frame.array(), frame.arrayOffset() + frame.position(), (int) length, StandardCharsets.UTF_8);
+		frame.position(frame.position() + (int) length);
+		return value;
+	}
+
+	/**
+	 * Decodes an unsigned variable length integer, 7 bits per byte with the highest bit set on all but the last byte
+	 *
+	 * @param frame
+	 *            The payload of the frame, positioned at the integer
+	 * @return The integer
+	 * @throws IOException
+	 *             if the integer is longer than 64 bits
+	 */
+	private static long getVarint(ByteBuffer frame) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = frame.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Integer is too long");
+	}
+
+	/**
+	 * Checks whether an array only contains strings
+	 *
+	 * @param value
+	 *            The value to check
+	 * @return true if the value is an array of strings
+	 */
+	private static boolean isStringArray(JsonElement value) {
+		if (!value.isJsonArray()) {
+			return false;
+		}
+		for (JsonElement element : value.getAsJsonArray()) {
+			if (!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isString()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks whether the length of a frame is allowed
+	 *
+	 * @param length
+	 *            The length of the payload
+	 * @throws IOException
+	 *             if the length isn't allowed
+	 */
+	private static void checkFrameLength(int length) throws IOException {
+		if (length < 1 || length > MAX_FRAME_SIZE) {
+			throw new IOException("Invalid frame length " + length);
+		}
+	}
+
+	/**
+	 * Appends a byte to the buffer
+	 *
+	 * @param value
+	 *            The byte in the lowest bits
+	 */
+	private void putByte(int value) {
+		ensureCapacity(size + 1);
+		buffer[size++] = (byte) value;
+	}
+
+	/**
+	 * Appends an unsigned variable length integer to the buffer
+	 *
+	 * @param value
+	 *            The integer
+	 */
+	private void putVarint(long value) {
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0) {
+			putByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		putByte((int) remaining);
+	}
+
+	/**
+	 * Appends a UTF-8 string preceded by its length to the buffer
+	 *
+	 * @param value
+	 *            The string
+	 */
+	private void putString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		putVarint(bytes.length);
+		ensureCapacity(size + bytes.length);
+		System.arraycopy(bytes, 0, buffer, size, bytes.length);
+		size += bytes.length;
+	}
+
+	/**
+	 * Makes sure the buffer can hold the given amount of bytes, the content is kept
+	 *
+	 * @param capacity
+	 *            The required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (buffer.length < capacity) {
+			byte[] larger = new byte[Math.max(capacity, buffer.length * 2)];
+			System.arraycopy(buffer, 0, larger, 0, size);
+			buffer = larger;
+		}
+	}
+
+	/**
+	 * Releases a buffer which grew for a large frame
+	 */
+	private void releaseBuffer() {
+		size = 0;
+		if (buffer.length > RETAINED_BUFFER_SIZE) {
+			buffer = new byte[INITIAL_BUFFER_SIZE];
+		}
+	}
+}
@@ -0,0 +1,295 @@
+package org.fides.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * The original protocol of the clients: every message is a JSON text written with
+ * {@link DataOutputStream#writeUTF(String)}, which limits a message to 64 KB.
+ *
+ * A message is decoded from a buffer of the codec into characters and parsed with a streaming reader, so no string of
+ * the whole message is created. A codec keeps these buffers, so it is used by one thread at a time. A connection which
+ * reads its requests ahead decodes them with a second codec.
+ */
+public class JsonCodec implements MessageCodec {
+
+	/** The size of the length prefix written by writeUTF */
+	private static final int LENGTH_PREFIX_SIZE = 2;
+
+	/** The largest message writeUTF can write */
+	private static final int MAX_MESSAGE_SIZE = 0xFFFF;
+
+	private static final int INITIAL_BUFFER_SIZE = 512;
+
+	/** A larger buffer is released after the message, so an idle connection doesn't keep it */
+	private static final int RETAINED_BUFFER_SIZE = 8 * 1024;
+
+	/** Gson is thread safe, creating it for every message is expensive */
+	private static final Gson GSON = new Gson();
+
+	private static final JsonParser PARSER = new JsonParser();
+
+	/** Created after Gson, it encodes its frames with it */
+	private static final PreEncodedResponses RESPONSES = new PreEncodedResponses(new JsonCodec());
+
+	private final MessageReader reader = new MessageReader();
+
+	private final StringBuilder text = new StringBuilder(INITIAL_BUFFER_SIZE);
+
+	private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+
+	private char[] chars = new char[INITIAL_BUFFER_SIZE];
+
+	@Override
+	public JsonObject readMessage(DataInputStream in) throws IOException {
+		int length = in.readUnsignedShort();
+		ensureCapacity(length);
+		in.readFully(bytes, 0, length);
+		try {
+			reader.reset(chars, decode(length));
+			JsonReader jsonReader = new JsonReader(reader);
+			// Gson parses leniently as well
+			jsonReader.setLenient(true);
+			return parse(jsonReader);
+		} finally {
+			releaseBuffers();
+		}
+	}
+
+	@Override
+	public void writeMessage(DataOutputStream out, JsonObject message) throws IOException {
+		try {
+			int size = encodeFrame(message);
+			out.write(bytes, 0, size);
+		} finally {
+			releaseBuffers();
+		}
+	}
+
+	@Override
+	public byte[] encode(JsonObject message) throws IOException {
+		try {
+			int size = encodeFrame(message);
+			return Arrays.copyOf(bytes, size);
+		} finally {
+			releaseBuffers();
+		}
+	}
+
+	@Override
+	public void writeSuccessful(DataOutputStream out) throws IOException {
+		out.write(RESPONSES.getSuccessful());
+	}
+
+	@Override
+	public void writeError(DataOutputStream out, String errorMessage) throws IOException {
+		out.write(RESPONSES.getError(errorMessage));
+	}
+
+	@Override
+	public int getFrameLength(ByteBuffer buffer) {
+		if (buffer.position() < LENGTH_PREFIX_SIZE) {
+			return -1;
+		}
+		return LENGTH_PREFIX_SIZE + (buffer.getShort(0) & 0xFFFF);
+	}
+
+	@Override
+	public String getName() {
+		return "json";
+	}
+
+	/**
+	 * Parses a message, the whole text has to be a single JSON object as it had to be for Gson
+	 *
+	 * @param jsonReader
+	 *            The reader of the message
+	 * @return The message
+	 * @throws IOException
+	 *             if the message isn't a JSON object
+	 */
+	private static JsonObject parse(JsonReader jsonReader) throws IOException {
+		JsonElement message;
+		try {
+			message = PARSER.parse(jsonReader);
+			if (message.isJsonNull()) {
+				// An empty message
+				return null;
+			}
+			if (!message.isJsonObject() || jsonReader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException("The message isn't a single JSON object");
+			}
+		} catch (JsonIOException e) {
+			throw new IOException(e);
+		}
+		return message.getAsJsonObject();
+	}
+
+	/**
+	 * Decodes the modified UTF-8 of writeUTF from the byte buffer into the character buffer
+	 *
+	 * @param length
+	 *            The amount of bytes
+	 * @return The amount of characters
+	 * @throws UTFDataFormatException
+	 *             if the bytes aren't valid modified UTF-8
+	 */
+	private int decode(int length) throws UTFDataFormatException {
+		int count = 0;
+		int i = 0;
+		while (i < length) {
+			int b = bytes[i] & 0xFF;
+			if (b < 0x80) {
+				chars[count++] = (char) b;
+				i++;
+			} else if ((b & 0xE0) == 0xC0) {
+				if (i + 1 >= length || (bytes[i + 1] & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("Malformed input around byte " + i);
+				}
+				chars[count++] = (char) (((b & 0x1F) << 6) | (bytes[i + 1] & 0x3F));
+				i += 2;
+			} else if ((b & 0xF0) == 0xE0) {
+				if (i + 2 >= length || (bytes[i + 1] & 0xC0) != 0x80 || (bytes[i + 2] & 0xC0) != 0x80) {
+					throw new UTFDataFormatException("Malformed input around byte " + i);
+				}
+				chars[count++] = (char) (((b & 0x0F) << 12) | ((bytes[i + 1] & 0x3F) << 6) | (bytes[i + 2] & 0x3F));
+				i += 3;
+			} else {
+				throw new UTFDataFormatException("Malformed input around byte " + i);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes a message with its length prefix into the byte buffer, the same bytes writeUTF would write
+	 *
+	 * @param message
+	 *            The message
+	 * @return The size of the frame
+	 * @throws IOException
+	 *             if the message is larger than writeUTF allows
+	 */
+	private int encodeFrame(JsonObject message) throws IOException {
+		text.setLength(0);
+		try {
+			GSON.toJson(message, text);
+		} catch (JsonIOException e) {
+			throw new IOException(e);
+		}
+
+		int length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+		}
+		if (length > MAX_MESSAGE_SIZE) {
+			throw new UTFDataFormatException("Message of " + length + " bytes is too large");
+		}
+
+		ensureCapacity(LENGTH_PREFIX_SIZE + length);
+		int size = 0;
+		bytes[size++] = (byte) (length >>> 8);
+		bytes[size++] = (byte) length;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c >= 0x0001 && c <= 0x007F) {
+				bytes[size++] = (byte) c;
+			} else if (c <= 0x07FF) {
+				bytes[size++] = (byte) (0xC0 | ((c >> 6) & 0x1F));
+				bytes[size++] = (byte) (0x80 | (c & 0x3F));
+			} else {
+				bytes[size++] = (byte) (0xE0 | ((c >> 12) & 0x0F));
+				bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				bytes[size++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Makes sure the buffers can hold a message of the given amount of bytes
+	 *
+	 * @param capacity
+	 *            The required capacity
+	 */
+	private void ensureCapacity(int capacity) {
+		if (bytes.length < capacity) {
+			bytes = new byte[Math.max(capacity, bytes.length * 2)];
+		}
+		if (chars.length < capacity) {
+			chars = new char[Math.max(capacity, chars.length * 2)];
+		}
+	}
+
+	/**
+	 * Releases the buffers which grew for a large message
+	 */
+	private void releaseBuffers() {
+		reader.reset(null, 0);
+		if (bytes.length > RETAINED_BUFFER_SIZE) {
+			bytes = new byte[INITIAL_BUFFER_SIZE];
+			chars = new char[INITIAL_BUFFER_SIZE];
+		}
+		if (text.length() > RETAINED_BUFFER_SIZE) {
+			text.setLength(0);
+			text.trimToSize();
+		}
+	}
+
+	/**
+	 * Reads the characters of the current message, the same reader is used for every message of the connection
+	 */
+	private static final class MessageReader extends Reader {
+
+		private char[] chars;
+
+		private int length;
+
+		private int position;
+
+		/**
+		 * Starts reading a new message
+		 *
+		 * @param chars
+		 *            The characters of the message
+		 * @param length
+		 *            The amount of characters
+		 */
+		void reset(char[] chars, int length) {
+			this.chars = chars;
+			this.length = length;
+			this.position = 0;
+		}
+
+		@Override
+		public int read(char[] buffer, int offset, int count) {
+			if (position >= length) {
+				return -1;
+			}
+			int read = Math.min(count, length - position);
+			System.arraycopy(chars, position, buffer, offset, read);
+			position += read;
+			return read;
+		}
+
+		@Override
+		public void close() {
+			// The characters belong to the codec
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package org.fides.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Encodes the requests and responses on a connection. The handlers work with JSON objects, a codec decides how these
+ * are framed on the wire.
+ */
+public interface MessageCodec {
+
+	/**
+	 * Reads the next message
+	 *
+	 * @param in
+	 *            The stream to read the message from
+	 * @return The message
+	 * @throws IOException
+	 *             if the message could not be read or isn't valid
+	 */
+	JsonObject readMessage(DataInputStream in) throws IOException;
+
+	/**
+	 * Writes a message with a single write on the stream
+	 *
+	 * @param out
+	 *            The stream to write the message to
+	 * @param message
+	 *            The message
+	 * @throws IOException
+	 *             if the message could not be written
+	 */
+	void writeMessage(DataOutputStream out, JsonObject message) throws IOException;
+
+	/**
+	 * Encodes a message into a complete frame, used for the responses which are encoded once
+	 *
+	 * @param message
+	 *            The message
+	 * @return The frame
+	 * @throws IOException
+	 *             if the message can't be encoded
+	 */
+	byte[] encode(JsonObject message) throws IOException;
+
+	/**
+	 * Writes the response of a successful action
+	 *
+	 * @param out
+	 *            The stream to write the response to
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	void writeSuccessful(DataOutputStream out) throws IOException;
+
+	/**
+	 * Writes the response of a failed action
+	 *
+	 * @param out
+	 *            The stream to write the response to
+	 * @param errorMessage
+	 *            The message of the error
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	void writeError(DataOutputStream out, String errorMessage) throws IOException;
+
+	/**
+	 * Returns the length of the frame at the start of the buffer, used by transports which collect the frames
+	 * themselves
+	 *
+	 * @param buffer
+	 *            The buffer in write mode, its position is the amount of available data
+	 * @return The length of the frame including its header, -1 if the header isn't complete yet
+	 * @throws IOException
+	 *             if the header isn't valid
+	 */
+	int getFrameLength(ByteBuffer buffer) throws IOException;
+
+	/**
+	 * Returns the name of the codec for the log and the metrics
+	 *
+	 * @return The name
+	 */
+	String getName();
+}
@@ -0,0 +1,200 @@
+package org.fides.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+
+import org.fides.server.tools.Metrics;
+
+import com.google.gson.JsonObject;
+
+/**
+ * Chooses the codec of a connection. A client which supports the {@link BinaryCodec} starts the connection with a
+ * preamble of "FDS" and the version of the frames, the server answers with its own preamble before the first response.
+ * Any other client is a JSON client. The third byte of a JSON request is always '{', so a JSON request can't be
+ * mistaken for the preamble.
+ */
+public final class MessageCodecs {
+
+	private static final byte[] MAGIC = { 'F', 'D', 'S' };
+
+	/** The size of the preamble of a binary client */
+	public static final int PREAMBLE_SIZE = MAGIC.length + 1;
+
+	/** Only used for the constant responses, which don't use the buffers of the codec */
+	private static final MessageCodec JSON = new JsonCodec();
+
+	private MessageCodecs() {
+	}
+
+	/**
+	 * Reads the start of a connection to choose its codec. The bytes of a JSON client are pushed back, a binary
+	 * client is answered with the preamble of the server.
+	 *
+	 * @param in
+	 *            The input of the connection, it has to be able to push back {@link #PREAMBLE_SIZE} bytes
+	 * @param out
+	 *            The output of the connection
+	 * @return The codec of the connection
+	 * @throws IOException
+	 *             if the connection failed
+	 */
+	public static MessageCodec negotiate(PushbackInputStream in, OutputStream out) throws IOException {
+		byte[] start = new byte[PREAMBLE_SIZE];
+		int read = 0;
+		while (read < PREAMBLE_SIZE) {
+			int b = in.read();
+			if (b < 0) {
+				break;
+			}
+			start[read++] = (byte) b;
+			if (read <= MAGIC.length && start[read - 1] != MAGIC[read - 1]) {
+				// Don't wait for bytes a short JSON request may not have
+				break;
+			}
+		}
+
+		if (read == PREAMBLE_SIZE) {
+			// The server answers with the version it speaks, a client which doesn't support it closes the connection.
+			// The answer isn't flushed, it is sent together with the first response.
+			out.write(createPreamble());
+			return create(true);
+		}
+		in.unread(start, 0, read);
+		return create(false);
+	}
+
+	/**
+	 * Detects the codec from the first bytes of a connection, used by transports which collect the input themselves
+	 *
+	 * @param buffer
+	 *            The first bytes in write mode, its position is the amount of available bytes
+	 * @return {@link #PREAMBLE_SIZE} for a binary client, 0 for a JSON client, -1 if more bytes are needed
+	 */
+	public static int detect(ByteBuffer buffer) {
+		for (int i = 0; i < PREAMBLE_SIZE; i++) {
+			if (i >= buffer.position()) {
+				return -1;
+			}
+			if (i < MAGIC.length && buffer.get(i) != MAGIC[i]) {
+				return 0;
+			}
+		}
+		return PREAMBLE_SIZE;
+	}
+
+	/**
+	 * Creates the codec of a new connection
+	 *
+	 * @param binary
+	 *            Whether the client sent the preamble of the binary frames
+	 * @return The codec
+	 */
+	public static MessageCodec create(boolean binary) {
+		if (binary) {
+			Metrics.increment("protocol.binary");
+			return new BinaryCodec();
+		}
+		Metrics.increment("protocol.json");
+		return new JsonCodec();
+	}
+
+	/**
+	 * Creates a codec of the same kind as the codec of a connection, for a logical stream which carries the same messages
+	 * but needs its own buffers
+	 *
+	 * @param in
+	 *            The input of the connection
+	 * @return The codec, JSON for a stream without a codec
+	 */
+	public static MessageCodec createLike(DataInputStream in) {
+		if (in instanceof ProtocolInputStream && ((ProtocolInputStream) in).getCodec() instanceof BinaryCodec) {
+			return new BinaryCodec();
+		}
+		return new JsonCodec();
+	}
+
+	/**
+	 * Creates the preamble with which the server answers a binary client
+	 *
+	 * @return The preamble
+	 */
+	public static byte[] createPreamble() {
+		byte[] preamble = new byte[PREAMBLE_SIZE];
+		System.arraycopy(MAGIC, 0, preamble, 0, MAGIC.length);
+		preamble[MAGIC.length] = BinaryCodec.VERSION;
+		return preamble;
+	}
+
+	/**
+	 * Reads a message with the codec of the stream, JSON for a stream without a codec. Only the streams of a connection
+	 * keep a codec with its buffers, the others get a new one.
+	 *
+	 * @param in
+	 *            The stream to read the message from
+	 * @return The message
+	 * @throws IOException
+	 *             if the message could not be read or isn't valid
+	 */
+	public static JsonObject read(DataInputStream in) throws IOException {
+		if (in instanceof ProtocolInputStream) {
+			return ((ProtocolInputStream) in).readMessage();
+		}
+		return new JsonCodec().readMessage(in);
+	}
+
+	/**
+	 * Writes a message with the codec of the stream, JSON for a stream without a codec
+	 *
+	 * @param out
+	 *            The stream to write the message to
+	 * @param message
+	 *            The message
+	 * @throws IOException
+	 *             if the message could not be written
+	 */
+	public static void write(DataOutputStream out, JsonObject message) throws IOException {
+		if (out instanceof ProtocolOutputStream) {
+			((ProtocolOutputStream) out).writeMessage(message);
+		} else {
+			new JsonCodec().writeMessage(out, message);
+		}
+	}
+
+	/**
+	 * Writes the response of a successful action with the codec of the stream, JSON for a stream without a codec
+	 *
+	 * @param out
+	 *            The stream to write the response to
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	public static void writeSuccessful(DataOutputStream out) throws IOException {
+		if (out instanceof ProtocolOutputStream) {
+			((ProtocolOutputStream) out).writeSuccessful();
+		} else {
+			JSON.writeSuccessful(out);
+		}
+	}
+
+	/**
+	 * Writes the response of a failed action with the codec of the stream, JSON for a stream without a codec
+	 *
+	 * @param out
+	 *            The stream to write the response to
+	 * @param errorMessage
+	 *            The message of the error
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	public static void writeError(DataOutputStream out, String errorMessage) throws IOException {
+		if (out instanceof ProtocolOutputStream) {
+			((ProtocolOutputStream) out).writeError(errorMessage);
+		} else {
+			JSON.writeError(out, errorMessage);
+		}
+	}
+}
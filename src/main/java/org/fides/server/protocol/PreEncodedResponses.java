@@ -0,0 +1,112 @@
+package org.fides.server.protocol;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.fides.components.Responses;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The frames of the responses which never change: the successful response and the errors. A frame is encoded the
+ * first time it is needed and then written as it is. The errors are all constants, but the amount of cached errors is
+ * limited in case a message is ever composed.
+ */
+final class PreEncodedResponses {
+
+	private static final int MAX_CACHED_ERRORS = 64;
+
+	private final MessageCodec codec;
+
+	private final byte[] successful;
+
+	private final ConcurrentMap<String, byte[]> errors = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor for PreEncodedResponses
+	 *
+	 * @param codec
+	 *            The codec which encodes the frames, it is only used by this class
+	 */
+	PreEncodedResponses(MessageCodec codec) {
+		this.codec = codec;
+		try {
+			this.successful = encode(createSuccessful());
+		} catch (IOException e) {
+			throw new IllegalStateException("The successful response could not be encoded", e);
+		}
+	}
+
+	/**
+	 * Returns the frame of the successful response
+	 *
+	 * @return The frame, it may not be changed
+	 */
+	byte[] getSuccessful() {
+		return successful;
+	}
+
+	/**
+	 * Returns the frame of an error response
+	 *
+	 * @param errorMessage
+	 *            The message of the error
+	 * @return The frame, it may not be changed
+	 * @throws IOException
+	 *             if the response can't be encoded
+	 */
+	byte[] getError(String errorMessage) throws IOException {
+		if (errorMessage == null) {
+			return encode(createError(null));
+		}
+		byte[] frame = errors.get(errorMessage);
+		if (frame == null) {
+			frame = encode(createError(errorMessage));
+			if (errors.size() < MAX_CACHED_ERRORS) {
+				errors.putIfAbsent(errorMessage, frame);
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * Creates the successful response
+	 *
+	 * @return The response
+	 */
+	static JsonObject createSuccessful() {
+		JsonObject response = new JsonObject();
+		response.addProperty(Responses.SUCCESSFUL, true);
+		return response;
+	}
+
+	/**
+	 * Creates an error response
+	 *
+	 * @param errorMessage
+	 *            The message of the error
+	 * @return The response
+	 */
+	static JsonObject createError(String errorMessage) {
+		JsonObject response = new JsonObject();
+		response.addProperty(Responses.SUCCESSFUL, false);
+		response.addProperty(Responses.ERROR, errorMessage);
+		return response;
+	}
+
+	/**
+	 * Encodes a response, the codec keeps state so only one thread may use it at a time
+	 *
+	 * @param response
+	 *            The response
+	 * @return The frame
+	 * @throws IOException
+	 *             if the response can't be encoded
+	 */
+	private byte[] encode(JsonObject response) throws IOException {
+		synchronized (codec) {
+			return codec.encode(response);
+		}
+	}
+}
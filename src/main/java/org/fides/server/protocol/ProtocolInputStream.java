@@ -0,0 +1,48 @@
+package org.fides.server.protocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The input of a connection together with the codec that was negotiated for it
+ */
+public class ProtocolInputStream extends DataInputStream {
+
+	private final MessageCodec codec;
+
+	/**
+	 * Constructor for ProtocolInputStream
+	 *
+	 * @param in
+	 *            The input of the connection
+	 * @param codec
+	 *            The codec of the messages on the connection
+	 */
+	public ProtocolInputStream(InputStream in, MessageCodec codec) {
+		super(in);
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns the codec of the messages on the connection
+	 *
+	 * @return The codec
+	 */
+	public MessageCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Reads the next message
+	 *
+	 * @return The message
+	 * @throws IOException
+	 *             if the message could not be read or isn't valid
+	 */
+	public JsonObject readMessage() throws IOException {
+		return codec.readMessage(this);
+	}
+}
@@ -0,0 +1,71 @@
+package org.fides.server.protocol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The output of a connection together with the codec that was negotiated for it
+ */
+public class ProtocolOutputStream extends DataOutputStream {
+
+	private final MessageCodec codec;
+
+	/**
+	 * Constructor for ProtocolOutputStream
+	 *
+	 * @param out
+	 *            The output of the connection
+	 * @param codec
+	 *            The codec of the messages on the connection
+	 */
+	public ProtocolOutputStream(OutputStream out, MessageCodec codec) {
+		super(out);
+		this.codec = codec;
+	}
+
+	/**
+	 * Returns the codec of the messages on the connection
+	 *
+	 * @return The codec
+	 */
+	public MessageCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * Writes a message
+	 *
+	 * @param message
+	 *            The message
+	 * @throws IOException
+	 *             if the message could not be written
+	 */
+	public void writeMessage(JsonObject message) throws IOException {
+		codec.writeMessage(this, message);
+	}
+
+	/**
+	 * Writes the response of a successful action
+	 *
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	public void writeSuccessful() throws IOException {
+		codec.writeSuccessful(this);
+	}
+
+	/**
+	 * Writes the response of a failed action
+	 *
+	 * @param errorMessage
+	 *            The message of the error
+	 * @throws IOException
+	 *             if the response could not be written
+	 */
+	public void writeError(String errorMessage) throws IOException {
+		codec.writeError(this, errorMessage);
+	}
+}
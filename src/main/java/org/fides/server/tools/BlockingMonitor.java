@@ -0,0 +1,51 @@
+package org.fides.server.tools;
+
+/**
+ * Measures the sections in which a client thread blocks, for example on file I/O or a monitor. On a virtual thread
+ * such a section can pin or capture the carrier thread, so with the diagnostics enabled the time spent in each section
+ * is recorded in the {@link Metrics} together with how often it ran on a virtual thread.
+ */
+public final class BlockingMonitor {
+
+	private static volatile boolean enabled;
+
+	private BlockingMonitor() {
+	}
+
+	/**
+	 * Enables or disables the measuring of the blocking sections
+	 *
+	 * @param enable
+	 *            Whether the sections should be measured
+	 */
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * Marks the start of a blocking section
+	 *
+	 * @return The start time to pass to {@link #end(String, long)}, 0 if the diagnostics are disabled
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Marks the end of a blocking section and records its duration
+	 *
+	 * @param section
+	 *            The name of the section
+	 * @param startTime
+	 *            The time returned by {@link #start()}
+	 */
+	public static void end(String section, long startTime) {
+		if (!enabled || startTime == 0) {
+			return;
+		}
+		Metrics.histogram("blocking." + section + "Micros").record((System.nanoTime() - startTime) / 1000);
+		if (VirtualThreads.isVirtual(Thread.currentThread())) {
+			Metrics.increment("blocking." + section + ".onVirtualThread");
+		}
+	}
+}
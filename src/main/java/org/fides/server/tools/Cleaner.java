@@ -5,12 +5,14 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.FileFilterUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.fides.server.files.FileManager;
 
 /**
  * Cleaner for outdated files
@@ -50,4 +52,19 @@ public class Cleaner {
 			log.trace("Running cleaner is unnecessary");
 		}
 	}
+
+	/**
+	 * Cleans the part files of resumable uploads which weren't continued within the expiration time
+	 */
+	public void cleanExpiredUploads() {
+		long time = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(PropertiesManager.getInstance().getUploadExpirationInHours());
+
+		Collection<File> files = FileUtils.listFiles(new File(PropertiesManager.getInstance().getDataDir()),
+			FileFilterUtils.and(FileFilterUtils.suffixFileFilter(FileManager.PART_SUFFIX), FileFilterUtils.ageFileFilter(time)), null);
+
+		log.trace("Deleting " + files.size() + " expired uploads");
+		for (File file : files) {
+			file.delete();
+		}
+	}
 }
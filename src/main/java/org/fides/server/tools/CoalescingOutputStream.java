@@ -0,0 +1,103 @@
+package org.fides.server.tools;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Collects the writes of a response, so the response leaves the server as one TLS record instead of a record for every
+ * small write. The collected bytes are written when the buffer is full, when the stream is flushed and before a write
+ * which is larger than the buffer, which goes to the connection directly. The stream is flushed at the points where the
+ * server waits for the client: before a read that would block (see {@link FlushingInputStream}) and at the end of a
+ * download. The reader of a pipelined connection may flush while a response is written, so the stream is synchronized.
+ */
+public class CoalescingOutputStream extends FilterOutputStream {
+
+	/** The maximum amount of application data in a TLS record */
+	public static final int RECORD_SIZE = 16 * 1024;
+
+	private final byte[] buffer = new byte[RECORD_SIZE];
+
+	private int count;
+
+	/**
+	 * Constructor for CoalescingOutputStream
+	 *
+	 * @param out
+	 *            The output of the connection
+	 */
+	public CoalescingOutputStream(OutputStream out) {
+		super(out);
+	}
+
+	@Override
+	public synchronized void write(int b) throws IOException {
+		if (count == buffer.length) {
+			writeBuffer();
+		}
+		buffer[count++] = (byte) b;
+	}
+
+	@Override
+	public synchronized void write(byte[] b, int off, int len) throws IOException {
+		if (len >= buffer.length) {
+			// Copying doesn't make the records of a large write any fuller
+			writeBuffer();
+			writeThrough(b, off, len);
+			return;
+		}
+		if (len > buffer.length - count) {
+			writeBuffer();
+		}
+		System.arraycopy(b, off, buffer, count, len);
+		count += len;
+	}
+
+	@Override
+	public synchronized void flush() throws IOException {
+		writeBuffer();
+		out.flush();
+	}
+
+	/**
+	 * Returns whether there are bytes which haven't been written to the connection yet
+	 *
+	 * @return Whether the buffer contains bytes
+	 */
+	public synchronized boolean hasBufferedData() {
+		return count > 0;
+	}
+
+	/**
+	 * Writes the collected bytes to the connection
+	 *
+	 * @throws IOException
+	 *             if the bytes could not be written
+	 */
+	private void writeBuffer() throws IOException {
+		if (count > 0) {
+			writeThrough(buffer, 0, count);
+			count = 0;
+		}
+	}
+
+	/**
+	 * Writes bytes to the connection and counts the records they are sent in
+	 *
+	 * @param b
+	 *            The bytes to write
+	 * @param off
+	 *            The start of the bytes
+	 * @param len
+	 *            The amount of bytes
+	 * @throws IOException
+	 *             if the bytes could not be written
+	 */
+	private void writeThrough(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		int records = (len + RECORD_SIZE - 1) / RECORD_SIZE;
+		Metrics.add("output.records", records);
+		Metrics.add("output.bytes", len);
+		Metrics.histogram("output.bytesPerRecord").record(len / records);
+	}
+}
@@ -8,13 +8,14 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.fides.components.Responses;
+import org.fides.server.protocol.MessageCodecs;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 /**
- * This communicationUtil can copy successful or error messages to the given streams
+ * This communicationUtil can copy successful or error messages to the given streams. The messages are written with the
+ * codec of the stream, see {@link MessageCodecs}. The successful and error messages are encoded once per codec.
  */
 public final class CommunicationUtil {
 
@@ -34,9 +35,7 @@ public final class CommunicationUtil {
 	 * @throws IOException
 	 */
 	public static void returnSuccessful(DataOutputStream outputStream) throws IOException {
-		JsonObject returnJobj = new JsonObject();
-		returnJobj.addProperty(Responses.SUCCESSFUL, true);
-		outputStream.writeUTF(new Gson().toJson(returnJobj));
+		MessageCodecs.writeSuccessful(outputStream);
 	}
 
 	/**
@@ -49,12 +48,9 @@ public final class CommunicationUtil {
 	 * @throws IOException
 	 */
 	public static boolean uploadSuccessful(DataOutputStream outputStream, DataInputStream inputStream) throws IOException {
-		JsonObject returnJobj = new JsonObject();
-		returnJobj.addProperty(Responses.SUCCESSFUL, true);
-		outputStream.writeUTF(new Gson().toJson(returnJobj));
+		MessageCodecs.writeSuccessful(outputStream);
 
-		String message = inputStream.readUTF();
-		JsonObject response = new Gson().fromJson(message, JsonObject.class);
+		JsonObject response = MessageCodecs.read(inputStream);
 		if (response.has(Responses.SUCCESSFUL) && response.get(Responses.SUCCESSFUL).getAsBoolean()) {
 			return true;
 		}
@@ -89,7 +85,7 @@ public final class CommunicationUtil {
 				throw new IllegalArgumentException("Object may only be of type: String, Number, Boolean or Character");
 			}
 		}
-		outputStream.writeUTF(new Gson().toJson(returnJobj));
+		MessageCodecs.write(outputStream, returnJobj);
 	}
 
 	/**
@@ -102,10 +98,7 @@ public final class CommunicationUtil {
 	 */
 	public static void returnError(DataOutputStream outputStream, String errorMessage) {
 		try {
-			JsonObject returnJobj = new JsonObject();
-			returnJobj.addProperty(Responses.SUCCESSFUL, false);
-			returnJobj.addProperty(Responses.ERROR, errorMessage);
-			outputStream.writeUTF(new Gson().toJson(returnJobj));
+			MessageCodecs.writeError(outputStream, errorMessage);
 		} catch (IOException e) {
 			LOG.error(e.getMessage());
 		}
@@ -0,0 +1,182 @@
+package org.fides.server.tools;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decides whether an accepted connection may be handled. It limits the amount of concurrent connections of the whole
+ * server and of a single address, and the rate at which new connections are admitted. A limit of 0 means unlimited.
+ */
+public class ConnectionLimiter {
+
+	private final int maxConnections;
+
+	private final int maxConnectionsPerAddress;
+
+	private final int maxAcceptsPerSecond;
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private final ConcurrentMap<InetAddress, AtomicInteger> connectionsPerAddress = new ConcurrentHashMap<>();
+
+	private final Object rateLock = new Object();
+
+	private double acceptTokens;
+
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * Constructor for ConnectionLimiter
+	 *
+	 * @param maxConnections
+	 *            The maximum amount of concurrent connections, 0 for unlimited
+	 * @param maxConnectionsPerAddress
+	 *            The maximum amount of concurrent connections of a single address, 0 for unlimited
+	 * @param maxAcceptsPerSecond
+	 *            The maximum amount of connections admitted per second, 0 for unlimited
+	 */
+	public ConnectionLimiter(int maxConnections, int maxConnectionsPerAddress, int maxAcceptsPerSecond) {
+		this.maxConnections = maxConnections;
+		this.maxConnectionsPerAddress = maxConnectionsPerAddress;
+		this.maxAcceptsPerSecond = maxAcceptsPerSecond;
+		this.acceptTokens = maxAcceptsPerSecond;
+
+		Metrics.registerGauge("admission.connections", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return connections.get();
+			}
+		});
+		Metrics.registerGauge("admission.addresses", new Metrics.Gauge() {
+			@Override
+			public long getValue() {
+				return connectionsPerAddress.size();
+			}
+		});
+	}
+
+	/**
+	 * Tries to admit a new connection from the given address. Every admitted connection has to be released with
+	 * {@link #release(InetAddress)}.
+	 *
+	 * @param address
+	 *            The address of the client
+	 * @return true if the connection is admitted, false if it should be refused
+	 */
+	public boolean tryAcquire(InetAddress address) {
+		if (!tryTakeAcceptToken()) {
+			Metrics.increment("admission.rejected.rate");
+			return false;
+		}
+
+		if (maxConnections > 0) {
+			int current;
+			do {
+				current = connections.get();
+				if (current >= maxConnections) {
+					Metrics.increment("admission.rejected.global");
+					return false;
+				}
+			} while (!connections.compareAndSet(current, current + 1));
+		} else {
+			connections.incrementAndGet();
+		}
+
+		if (!tryAcquireAddress(address)) {
+			connections.decrementAndGet();
+			Metrics.increment("admission.rejected.perAddress");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Releases a connection which was admitted by {@link #tryAcquire(InetAddress)}
+	 *
+	 * @param address
+	 *            The address of the client
+	 */
+	public void release(InetAddress address) {
+		connections.decrementAndGet();
+		AtomicInteger counter = connectionsPerAddress.get(address);
+		if (counter != null && counter.decrementAndGet() == 0) {
+			connectionsPerAddress.remove(address, counter);
+		}
+	}
+
+	/**
+	 * Returns the amount of admitted connections
+	 *
+	 * @return The amount of connections
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * Returns the amount of admitted connections of the given address
+	 *
+	 * @param address
+	 *            The address of the client
+	 * @return The amount of connections of the address
+	 */
+	public int getConnections(InetAddress address) {
+		AtomicInteger counter = connectionsPerAddress.get(address);
+		return counter == null ? 0 : counter.get();
+	}
+
+	/**
+	 * Increments the amount of connections of the given address if it is below the limit
+	 *
+	 * @param address
+	 *            The address of the client
+	 * @return Whether the connection was counted
+	 */
+	private boolean tryAcquireAddress(InetAddress address) {
+		while (true) {
+			AtomicInteger counter = connectionsPerAddress.get(address);
+			if (counter == null) {
+				if (connectionsPerAddress.putIfAbsent(address, new AtomicInteger(1)) == null) {
+					return true;
+				}
+				continue;
+			}
+
+			int current = counter.get();
+			if (current == 0) {
+				// The counter is being removed, help to remove it and try again
+				connectionsPerAddress.remove(address, counter);
+				continue;
+			}
+			if (maxConnectionsPerAddress > 0 && current >= maxConnectionsPerAddress) {
+				return false;
+			}
+			if (counter.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Takes a token from the bucket which limits the rate of new connections
+	 *
+	 * @return Whether a token was available
+	 */
+	private boolean tryTakeAcceptToken() {
+		if (maxAcceptsPerSecond <= 0) {
+			return true;
+		}
+		synchronized (rateLock) {
+			long now = System.nanoTime();
+			acceptTokens = Math.min(maxAcceptsPerSecond, acceptTokens + (now - lastRefill) * maxAcceptsPerSecond / 1000000000.0);
+			lastRefill = now;
+			if (acceptTokens >= 1) {
+				acceptTokens--;
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -59,4 +59,49 @@ public class Errors {
 	 * File could not be removed
 	 */
 	public static final String COULD_NOT_RETRIEVE_LOCATIONS = "The locations cannot be retrieved from the server";
+
+	/**
+	 * File could not be read
+	 */
+	public static final String FILE_NOT_READ = "File could not be read on the server";
+
+	/**
+	 * The amount of files in a batch isn't allowed
+	 */
+	public static final String INVALID_AMOUNT = "The amount of files is not allowed";
+
+	/**
+	 * The upload doesn't fit in the space of the user
+	 */
+	public static final String UPLOAD_TOO_BIG = "Upload file size too big.";
+
+	/**
+	 * The upload failed on the server
+	 */
+	public static final String UPLOAD_FAILED = "Upload failed. Please contact your server's administrator.";
+
+	/**
+	 * A stream of a multiplexed session can't be multiplexed again
+	 */
+	public static final String ALREADY_MULTIPLEXED = "The connection is already multiplexed";
+
+	/**
+	 * The keyfile of the user is missing on the server
+	 */
+	public static final String KEY_FILE_NOT_FOUND = "User keyfile could not be found (Please contact a server administrator)";
+
+	/**
+	 * The requested range of a file is invalid or starts after the end of the file
+	 */
+	public static final String INVALID_RANGE = "The requested range is not within the file";
+
+	/**
+	 * The resumable upload doesn't belong to the user or has expired
+	 */
+	public static final String UNKNOWN_UPLOAD = "The upload could not be found on the server, please start it again";
+
+	/**
+	 * The resumable upload is still being received on another connection
+	 */
+	public static final String UPLOAD_IN_PROGRESS = "The upload is still in progress, please try again later";
 }
@@ -0,0 +1,36 @@
+package org.fides.server.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.input.ProxyInputStream;
+
+/**
+ * The input of a connection which flushes the output of the connection before a read that would block. A response is
+ * collected by the {@link CoalescingOutputStream} until the server has to wait for the client, so the client always
+ * receives what it waits for, while a client that sends its requests ahead still gets its responses in full records.
+ */
+public class FlushingInputStream extends ProxyInputStream {
+
+	private final CoalescingOutputStream output;
+
+	/**
+	 * Constructor for FlushingInputStream
+	 *
+	 * @param in
+	 *            The input of the connection
+	 * @param output
+	 *            The output of the same connection
+	 */
+	public FlushingInputStream(InputStream in, CoalescingOutputStream output) {
+		super(in);
+		this.output = output;
+	}
+
+	@Override
+	protected void beforeRead(int n) throws IOException {
+		if (output.hasBufferedData() && in.available() == 0) {
+			output.flush();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package org.fides.server.tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram with power of two buckets. It is used to keep track of latencies and sizes without keeping
+ * every recorded value in memory.
+ */
+public class Histogram {
+
+	/** The amount of buckets, bucket n contains the values in the range [2^(n-1), 2^n) */
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong sum = new AtomicLong();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value in the histogram, negative values are recorded as 0
+	 *
+	 * @param value
+	 *            The value to record
+	 */
+	public void record(long value) {
+		long positiveValue = Math.max(0, value);
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(positiveValue));
+		count.incrementAndGet();
+		sum.addAndGet(positiveValue);
+
+		long currentMax = max.get();
+		while (positiveValue > currentMax && !max.compareAndSet(currentMax, positiveValue)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Returns the amount of recorded values
+	 *
+	 * @return The amount of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Returns the sum of all recorded values
+	 *
+	 * @return The sum of all recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * Returns the highest recorded value
+	 *
+	 * @return The highest recorded value
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Returns the mean of all recorded values
+	 *
+	 * @return The mean, or 0 if nothing was recorded
+	 */
+	public long getMean() {
+		long currentCount = count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+		return sum.get() / currentCount;
+	}
+
+	/**
+	 * Returns an upper bound of the given percentile. Because of the power of two buckets the result is at most twice
+	 * the real value.
+	 *
+	 * @param percentile
+	 *            The percentile to get, between 0 and 100
+	 * @return The upper bound of the bucket that contains the percentile
+	 */
+	public long getPercentile(double percentile) {
+		long currentCount = count.get();
+		if (currentCount == 0) {
+			return 0;
+		}
+		long threshold = (long) Math.ceil(currentCount * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= threshold) {
+				return Math.min(i == 0 ? 0 : (1L << i) - 1, max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + " mean=" + getMean() + " p50=" + getPercentile(50) + " p99=" + getPercentile(99) + " max=" + getMax();
+	}
+}
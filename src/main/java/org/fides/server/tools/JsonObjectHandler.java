@@ -1,5 +1,9 @@
 package org.fides.server.tools;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
 /**
@@ -28,4 +32,25 @@ public final class JsonObjectHandler {
 		return null;
 	}
 
+	/**
+	 * Get a list of strings from jsonobject
+	 * 
+	 * @param jobj
+	 *            jsonobject where to property is taken from
+	 * @param property
+	 *            name to get property
+	 * @return the strings of the given property, null if the property isn't an array
+	 */
+	public static List<String> getStringList(JsonObject jobj, String property) {
+		if (!jobj.has(property) || !jobj.get(property).isJsonArray()) {
+			return null;
+		}
+
+		List<String> values = new ArrayList<>();
+		for (JsonElement element : jobj.getAsJsonArray(property)) {
+			values.add(element.isJsonNull() ? null : element.getAsString());
+		}
+		return values;
+	}
+
 }
@@ -0,0 +1,157 @@
+package org.fides.server.tools;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A static registry of counters, gauges and histograms which describe the behaviour of the running server. The values
+ * are periodically written to the log by the {@link MetricsTask}.
+ */
+public final class Metrics {
+
+	private static final ConcurrentMap<String, AtomicLong> COUNTERS = new ConcurrentHashMap<>();
+
+	private static final ConcurrentMap<String, Gauge> GAUGES = new ConcurrentHashMap<>();
+
+	private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<>();
+
+	/**
+	 * A value which is read at the moment the metrics are reported
+	 */
+	public interface Gauge {
+		/**
+		 * Returns the current value of the gauge
+		 *
+		 * @return The current value
+		 */
+		long getValue();
+	}
+
+	private Metrics() {
+	}
+
+	/**
+	 * Increments the counter with the given name by one
+	 *
+	 * @param name
+	 *            The name of the counter
+	 */
+	public static void increment(String name) {
+		add(name, 1);
+	}
+
+	/**
+	 * Adds the given amount to the counter with the given name
+	 *
+	 * @param name
+	 *            The name of the counter
+	 * @param amount
+	 *            The amount to add
+	 */
+	public static void add(String name, long amount) {
+		AtomicLong counter = COUNTERS.get(name);
+		if (counter == null) {
+			AtomicLong newCounter = new AtomicLong();
+			counter = COUNTERS.putIfAbsent(name, newCounter);
+			if (counter == null) {
+				counter = newCounter;
+			}
+		}
+		counter.addAndGet(amount);
+	}
+
+	/**
+	 * Returns the current value of the counter with the given name
+	 *
+	 * @param name
+	 *            The name of the counter
+	 * @return The value of the counter, 0 if the counter doesn't exist
+	 */
+	public static long getCount(String name) {
+		AtomicLong counter = COUNTERS.get(name);
+		if (counter == null) {
+			return 0;
+		}
+		return counter.get();
+	}
+
+	/**
+	 * Registers a gauge under the given name, replacing an existing gauge with the same name
+	 *
+	 * @param name
+	 *            The name of the gauge
+	 * @param gauge
+	 *            The gauge to register
+	 */
+	public static void registerGauge(String name, Gauge gauge) {
+		GAUGES.put(name, gauge);
+	}
+
+	/**
+	 * Removes the gauge with the given name
+	 *
+	 * @param name
+	 *            The name of the gauge
+	 */
+	public static void unregisterGauge(String name) {
+		GAUGES.remove(name);
+	}
+
+	/**
+	 * Returns the histogram with the given name, it is created if it doesn't exist yet
+	 *
+	 * @param name
+	 *            The name of the histogram
+	 * @return The histogram
+	 */
+	public static Histogram histogram(String name) {
+		Histogram histogram = HISTOGRAMS.get(name);
+		if (histogram == null) {
+			Histogram newHistogram = new Histogram();
+			histogram = HISTOGRAMS.putIfAbsent(name, newHistogram);
+			if (histogram == null) {
+				histogram = newHistogram;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns the current value of all the counters
+	 *
+	 * @return A sorted copy of the counters
+	 */
+	public static SortedMap<String, Long> counters() {
+		SortedMap<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> counter : COUNTERS.entrySet()) {
+			values.put(counter.getKey(), counter.getValue().get());
+		}
+		return values;
+	}
+
+	/**
+	 * Returns the current value of all the gauges
+	 *
+	 * @return A sorted copy of the gauges
+	 */
+	public static SortedMap<String, Long> gauges() {
+		SortedMap<String, Long> values = new TreeMap<>();
+		for (Map.Entry<String, Gauge> gauge : GAUGES.entrySet()) {
+			values.put(gauge.getKey(), gauge.getValue().getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * Returns all the histograms
+	 *
+	 * @return A sorted view of the histograms
+	 */
+	public static SortedMap<String, Histogram> histograms() {
+		return new TreeMap<>(HISTOGRAMS);
+	}
+}
@@ -0,0 +1,46 @@
+package org.fides.server.tools;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimerTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A task which periodically writes the {@link Metrics} to the log
+ *
+ */
+public class MetricsTask extends TimerTask {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(MetricsTask.class);
+
+	private final Map<String, Long> previousCounters = new HashMap<>();
+
+	private long previousRun = System.nanoTime();
+
+	@Override
+	public void run() {
+		long now = System.nanoTime();
+		double seconds = Math.max(1, now - previousRun) / 1000000000.0;
+		previousRun = now;
+
+		StringBuilder report = new StringBuilder("Server metrics:");
+		for (Map.Entry<String, Long> counter : Metrics.counters().entrySet()) {
+			Long previous = previousCounters.put(counter.getKey(), counter.getValue());
+			long delta = counter.getValue() - (previous == null ? 0 : previous);
+			report.append("\n  ").append(counter.getKey()).append('=').append(counter.getValue());
+			report.append(" (").append(String.format("%.1f", delta / seconds)).append("/s)");
+		}
+		for (Map.Entry<String, Long> gauge : Metrics.gauges().entrySet()) {
+			report.append("\n  ").append(gauge.getKey()).append('=').append(gauge.getValue());
+		}
+		for (Map.Entry<String, Histogram> histogram : Metrics.histograms().entrySet()) {
+			report.append("\n  ").append(histogram.getKey()).append(": ").append(histogram.getValue());
+		}
+		LOG.info(report.toString());
+	}
+}
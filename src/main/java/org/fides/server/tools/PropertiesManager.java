@@ -23,6 +23,30 @@ public class PropertiesManager {
 
 	private static final String FILEPATH = "./config.properties";
 
+	/** Connection mode which starts a new thread for every client */
+	public static final String CONNECTION_MODE_THREAD = "thread";
+
+	/** Connection mode which handles the clients on a bounded pool of worker threads */
+	public static final String CONNECTION_MODE_POOL = "pool";
+
+	/** Connection mode which starts a new virtual thread for every client, requires Java 21 */
+	public static final String CONNECTION_MODE_VIRTUAL = "virtual";
+
+	/** Transport which uses a blocking SSLServerSocket */
+	public static final String TRANSPORT_BLOCKING = "blocking";
+
+	/** Transport which uses non blocking channels with SSLEngines */
+	public static final String TRANSPORT_NIO = "nio";
+
+	/** TLS profile which keeps the protocols and cipher suites of the JVM */
+	public static final String TLS_PROFILE_DEFAULT = "default";
+
+	/** TLS profile which only allows TLS 1.2 and 1.3 with forward secret AES-GCM and ChaCha20 suites */
+	public static final String TLS_PROFILE_PERFORMANCE = "performance";
+
+	/** TLS profile which also allows the older TLS protocols */
+	public static final String TLS_PROFILE_COMPATIBLE = "compatible";
+
 	private static PropertiesManager instance = null;
 
 	private int port;
@@ -39,6 +63,92 @@ public class PropertiesManager {
 
 	private int expirationTimeInMonths;
 
+	private String connectionMode;
+
+	private int workerCoreSize;
+
+	private int workerMaxSize;
+
+	private int workerQueueSize;
+
+	private int metricsIntervalInSeconds;
+
+	private String transport;
+
+	private int eventLoopThreads;
+
+	private boolean virtualThreadDiagnostics;
+
+	private int acceptorThreads;
+
+	private boolean reusePort;
+
+	private int acceptBacklog;
+
+	private int maxConnections;
+
+	private int maxConnectionsPerAddress;
+
+	private int maxAcceptsPerSecond;
+
+	private int handshakeTimeoutInSeconds;
+
+	private int handshakeThreads;
+
+	private int sslSessionCacheSize;
+
+	private int sslSessionTimeoutInSeconds;
+
+	private String sslSessionTickets;
+
+	private String tlsProfile;
+
+	private String ecdsaKeystorePath;
+
+	private char[] ecdsaKeystorePassword;
+
+	private int plainPort;
+
+	private String plainBindAddress;
+
+	private int drainTimeoutInSeconds;
+
+	private boolean warmupEnabled;
+
+	private int warmupMaxSeconds;
+
+	private int idleTimeoutInSeconds;
+
+	private int readTimeoutInSeconds;
+
+	private int socketSendBufferSize;
+
+	private int socketReceiveBufferSize;
+
+	private boolean tcpNoDelay;
+
+	private boolean tcpKeepAlive;
+
+	private int adaptiveBufferThresholdInMegabytes;
+
+	private int adaptiveBufferSize;
+
+	private int maxPipelinedRequests;
+
+	private int maxStreamsPerConnection;
+
+	private int streamWindowSize;
+
+	private int prefetchBufferSize;
+
+	private int maxFilesPerUpload;
+
+	private int uploadExpirationInHours;
+
+	private int uploadCheckpointSize;
+
+	private int maxRangesPerUpdate;
+
 	/**
 	 * Constructor of the properties manager. Loads the properties file.
 	 */
@@ -71,6 +181,51 @@ public class PropertiesManager {
 		// Converts amount of megabytes to bytes
 		maxAmountOfBytesPerUser = Long.parseLong(properties.getProperty("maxAmountOfMegabytesPerUser")) * 1048576L;
 
+		// Optional properties, the defaults keep the original behaviour of the server
+		connectionMode = properties.getProperty("connectionMode", CONNECTION_MODE_THREAD).trim();
+		workerCoreSize = Integer.parseInt(properties.getProperty("workerCoreSize", "16").trim());
+		workerMaxSize = Integer.parseInt(properties.getProperty("workerMaxSize", "256").trim());
+		workerQueueSize = Integer.parseInt(properties.getProperty("workerQueueSize", "512").trim());
+		metricsIntervalInSeconds = Integer.parseInt(properties.getProperty("metricsIntervalInSeconds", "0").trim());
+		transport = properties.getProperty("transport", TRANSPORT_BLOCKING).trim();
+		eventLoopThreads = Integer.parseInt(properties.getProperty("eventLoopThreads", "0").trim());
+		virtualThreadDiagnostics = Boolean.parseBoolean(properties.getProperty("virtualThreadDiagnostics", "false").trim());
+		acceptorThreads = Integer.parseInt(properties.getProperty("acceptorThreads", "1").trim());
+		reusePort = Boolean.parseBoolean(properties.getProperty("reusePort", "false").trim());
+		acceptBacklog = Integer.parseInt(properties.getProperty("acceptBacklog", "50").trim());
+		maxConnections = Integer.parseInt(properties.getProperty("maxConnections", "0").trim());
+		maxConnectionsPerAddress = Integer.parseInt(properties.getProperty("maxConnectionsPerAddress", "0").trim());
+		maxAcceptsPerSecond = Integer.parseInt(properties.getProperty("maxAcceptsPerSecond", "0").trim());
+		handshakeTimeoutInSeconds = Integer.parseInt(properties.getProperty("handshakeTimeoutInSeconds", "10").trim());
+		handshakeThreads = Integer.parseInt(properties.getProperty("handshakeThreads", "0").trim());
+		sslSessionCacheSize = Integer.parseInt(properties.getProperty("sslSessionCacheSize", "0").trim());
+		sslSessionTimeoutInSeconds = Integer.parseInt(properties.getProperty("sslSessionTimeoutInSeconds", "0").trim());
+		sslSessionTickets = properties.getProperty("sslSessionTickets", "").trim();
+		tlsProfile = properties.getProperty("tlsProfile", TLS_PROFILE_DEFAULT).trim();
+		ecdsaKeystorePath = properties.getProperty("ecdsaKeystorePath", "").trim();
+		ecdsaKeystorePassword = properties.getProperty("ecdsaKeystorePassword", "").toCharArray();
+		plainPort = Integer.parseInt(properties.getProperty("plainPort", "0").trim());
+		plainBindAddress = properties.getProperty("plainBindAddress", "127.0.0.1").trim();
+		drainTimeoutInSeconds = Integer.parseInt(properties.getProperty("drainTimeoutInSeconds", "30").trim());
+		warmupEnabled = Boolean.parseBoolean(properties.getProperty("warmupEnabled", "false").trim());
+		warmupMaxSeconds = Integer.parseInt(properties.getProperty("warmupMaxSeconds", "30").trim());
+		idleTimeoutInSeconds = Integer.parseInt(properties.getProperty("idleTimeoutInSeconds", "600").trim());
+		readTimeoutInSeconds = Integer.parseInt(properties.getProperty("readTimeoutInSeconds", "60").trim());
+		socketSendBufferSize = Integer.parseInt(properties.getProperty("socketSendBufferSize", "0").trim());
+		socketReceiveBufferSize = Integer.parseInt(properties.getProperty("socketReceiveBufferSize", "0").trim());
+		tcpNoDelay = Boolean.parseBoolean(properties.getProperty("tcpNoDelay", "true").trim());
+		tcpKeepAlive = Boolean.parseBoolean(properties.getProperty("tcpKeepAlive", "false").trim());
+		adaptiveBufferThresholdInMegabytes = Integer.parseInt(properties.getProperty("adaptiveBufferThresholdInMegabytes", "0").trim());
+		adaptiveBufferSize = Integer.parseInt(properties.getProperty("adaptiveBufferSize", "4194304").trim());
+		maxPipelinedRequests = Integer.parseInt(properties.getProperty("maxPipelinedRequests", "0").trim());
+		maxStreamsPerConnection = Integer.parseInt(properties.getProperty("maxStreamsPerConnection", "8").trim());
+		streamWindowSize = Integer.parseInt(properties.getProperty("streamWindowSize", "262144").trim());
+		prefetchBufferSize = Integer.parseInt(properties.getProperty("prefetchBufferSize", "4194304").trim());
+		maxFilesPerUpload = Integer.parseInt(properties.getProperty("maxFilesPerUpload", "1000").trim());
+		uploadExpirationInHours = Integer.parseInt(properties.getProperty("uploadExpirationInHours", "24").trim());
+		uploadCheckpointSize = Integer.parseInt(properties.getProperty("uploadCheckpointSize", "4194304").trim());
+		maxRangesPerUpdate = Integer.parseInt(properties.getProperty("maxRangesPerUpdate", "1000").trim());
+
 		// Create the userDirectory and the dataDirectory if they don't exist.
 		File userFolder = new File(userDir);
 		if (!userFolder.exists()) {
@@ -151,4 +306,395 @@ public class PropertiesManager {
 	public int getExpirationTimeInMonths() {
 		return expirationTimeInMonths;
 	}
+
+	/**
+	 * Get the way connections are handled, either {@value #CONNECTION_MODE_THREAD}, {@value #CONNECTION_MODE_POOL} or
+	 * {@value #CONNECTION_MODE_VIRTUAL}
+	 * 
+	 * @return The connection mode
+	 */
+	public String getConnectionMode() {
+		return connectionMode;
+	}
+
+	/**
+	 * Get the amount of worker threads that are kept alive in the pool connection mode
+	 * 
+	 * @return The core size of the worker pool
+	 */
+	public int getWorkerCoreSize() {
+		return workerCoreSize;
+	}
+
+	/**
+	 * Get the maximum amount of worker threads in the pool connection mode
+	 * 
+	 * @return The maximum size of the worker pool
+	 */
+	public int getWorkerMaxSize() {
+		return workerMaxSize;
+	}
+
+	/**
+	 * Get the amount of accepted connections that may wait for a worker thread in the pool connection mode
+	 * 
+	 * @return The size of the accept queue
+	 */
+	public int getWorkerQueueSize() {
+		return workerQueueSize;
+	}
+
+	/**
+	 * Get the interval in which the metrics are written to the log, 0 if they shouldn't be logged
+	 * 
+	 * @return The interval in seconds
+	 */
+	public int getMetricsIntervalInSeconds() {
+		return metricsIntervalInSeconds;
+	}
+
+	/**
+	 * Get the transport which accepts the connections, either {@value #TRANSPORT_BLOCKING} or {@value #TRANSPORT_NIO}
+	 * 
+	 * @return The transport
+	 */
+	public String getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Get the amount of event loop threads of the {@value #TRANSPORT_NIO} transport, 0 to use one per processor
+	 * 
+	 * @return The amount of event loop threads
+	 */
+	public int getEventLoopThreads() {
+		return eventLoopThreads;
+	}
+
+	/**
+	 * Get whether the blocking sections of the client threads should be reported, used to check whether the
+	 * {@value #CONNECTION_MODE_VIRTUAL} connection mode scales
+	 * 
+	 * @return true if the diagnostics are enabled
+	 */
+	public boolean isVirtualThreadDiagnostics() {
+		return virtualThreadDiagnostics;
+	}
+
+	/**
+	 * Get the amount of threads that accept connections
+	 * 
+	 * @return The amount of acceptor threads
+	 */
+	public int getAcceptorThreads() {
+		return acceptorThreads;
+	}
+
+	/**
+	 * Get whether every acceptor thread should get its own listening socket using SO_REUSEPORT, which requires Java 9
+	 * 
+	 * @return true if SO_REUSEPORT should be used
+	 */
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	/**
+	 * Get the maximum amount of connections waiting to be accepted, 0 uses the default of the JVM
+	 * 
+	 * @return The accept backlog
+	 */
+	public int getAcceptBacklog() {
+		return acceptBacklog;
+	}
+
+	/**
+	 * Get the maximum amount of concurrent connections, 0 for unlimited
+	 * 
+	 * @return The maximum amount of connections
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Get the maximum amount of concurrent connections of a single address, 0 for unlimited
+	 * 
+	 * @return The maximum amount of connections per address
+	 */
+	public int getMaxConnectionsPerAddress() {
+		return maxConnectionsPerAddress;
+	}
+
+	/**
+	 * Get the maximum amount of new connections admitted per second, 0 for unlimited
+	 * 
+	 * @return The maximum accept rate
+	 */
+	public int getMaxAcceptsPerSecond() {
+		return maxAcceptsPerSecond;
+	}
+
+	/**
+	 * Get the time a client gets to finish the TLS handshake, 0 to wait forever
+	 * 
+	 * @return The handshake timeout in seconds
+	 */
+	public int getHandshakeTimeoutInSeconds() {
+		return handshakeTimeoutInSeconds;
+	}
+
+	/**
+	 * Get the amount of threads which perform the TLS handshakes, 0 to use one per processor
+	 * 
+	 * @return The amount of handshake threads
+	 */
+	public int getHandshakeThreads() {
+		return handshakeThreads;
+	}
+
+	/**
+	 * Get the maximum amount of TLS sessions the server remembers for resumption, 0 keeps the default of the JVM
+	 * 
+	 * @return The size of the session cache
+	 */
+	public int getSslSessionCacheSize() {
+		return sslSessionCacheSize;
+	}
+
+	/**
+	 * Get the time a TLS session can be resumed, 0 keeps the default of the JVM
+	 * 
+	 * @return The session timeout in seconds
+	 */
+	public int getSslSessionTimeoutInSeconds() {
+		return sslSessionTimeoutInSeconds;
+	}
+
+	/**
+	 * Get whether the server issues stateless session tickets, "true" or "false", empty keeps the default of the JVM
+	 * 
+	 * @return The session ticket setting
+	 */
+	public String getSslSessionTickets() {
+		return sslSessionTickets;
+	}
+
+	/**
+	 * Get the name of the TLS profile which restricts the protocols and cipher suites
+	 * 
+	 * @return The name of the TLS profile
+	 */
+	public String getTlsProfile() {
+		return tlsProfile;
+	}
+
+	/**
+	 * Get the path of the keystore with the ECDSA certificate which is offered next to the certificate of the main
+	 * keystore, empty if there is none
+	 * 
+	 * @return The path of the ECDSA keystore as String
+	 */
+	public String getEcdsaKeystorePath() {
+		return ecdsaKeystorePath;
+	}
+
+	/**
+	 * Get the password of the ECDSA keystore, this is also used for its private key
+	 * 
+	 * @return The password for the ECDSA keystore as Char[]
+	 */
+	public char[] getEcdsaKeystorePassword() {
+		return ecdsaKeystorePassword;
+	}
+
+	/**
+	 * Get the port of the plaintext listener for a local TLS terminator, 0 if it is disabled
+	 * 
+	 * @return The plaintext port
+	 */
+	public int getPlainPort() {
+		return plainPort;
+	}
+
+	/**
+	 * Get the loopback address the plaintext listener is bound to
+	 * 
+	 * @return The address of the plaintext listener
+	 */
+	public String getPlainBindAddress() {
+		return plainBindAddress;
+	}
+
+	/**
+	 * Get the time the clients get to finish their current action when the server shuts down
+	 * 
+	 * @return The drain timeout in seconds
+	 */
+	public int getDrainTimeoutInSeconds() {
+		return drainTimeoutInSeconds;
+	}
+
+	/**
+	 * Get whether the expensive code paths are warmed up before the server accepts clients
+	 * 
+	 * @return true if the warm-up is enabled
+	 */
+	public boolean isWarmupEnabled() {
+		return warmupEnabled;
+	}
+
+	/**
+	 * Get the maximum duration of the warm-up
+	 * 
+	 * @return The maximum duration in seconds
+	 */
+	public int getWarmupMaxSeconds() {
+		return warmupMaxSeconds;
+	}
+
+	/**
+	 * Get the time a client may be idle between two actions before its session is closed
+	 * 
+	 * @return The idle timeout in seconds, 0 for no limit
+	 */
+	public int getIdleTimeoutInSeconds() {
+		return idleTimeoutInSeconds;
+	}
+
+	/**
+	 * Get the time a read may block while an action is handled, for example when a client stops sending an upload
+	 * 
+	 * @return The read timeout in seconds, 0 for no limit
+	 */
+	public int getReadTimeoutInSeconds() {
+		return readTimeoutInSeconds;
+	}
+
+	/**
+	 * Get the size of the send buffer of a connection
+	 * 
+	 * @return The size in bytes, 0 to use the default of the operating system
+	 */
+	public int getSocketSendBufferSize() {
+		return socketSendBufferSize;
+	}
+
+	/**
+	 * Get the size of the receive buffer of a connection
+	 * 
+	 * @return The size in bytes, 0 to use the default of the operating system
+	 */
+	public int getSocketReceiveBufferSize() {
+		return socketReceiveBufferSize;
+	}
+
+	/**
+	 * Get whether small writes are sent right away instead of being combined (Nagle's algorithm is disabled)
+	 * 
+	 * @return true if TCP_NODELAY is set on the connections
+	 */
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Get whether the operating system checks idle connections with keep-alive probes
+	 * 
+	 * @return true if SO_KEEPALIVE is set on the connections
+	 */
+	public boolean isTcpKeepAlive() {
+		return tcpKeepAlive;
+	}
+
+	/**
+	 * Get the amount of data an action has to transfer before the buffers of its connection are raised
+	 * 
+	 * @return The threshold in megabytes, 0 to disable the adaptive buffers
+	 */
+	public int getAdaptiveBufferThresholdInMegabytes() {
+		return adaptiveBufferThresholdInMegabytes;
+	}
+
+	/**
+	 * Get the size the buffers of a connection with a bulk transfer are raised to
+	 * 
+	 * @return The size in bytes
+	 */
+	public int getAdaptiveBufferSize() {
+		return adaptiveBufferSize;
+	}
+
+	/**
+	 * Get the amount of requests of a connection which may be read before the earlier ones are answered
+	 * 
+	 * @return The amount of requests, 0 or 1 reads a request after the previous one is answered
+	 */
+	public int getMaxPipelinedRequests() {
+		return maxPipelinedRequests;
+	}
+
+	/**
+	 * Get the amount of streams a multiplexed connection may have open at the same time
+	 * 
+	 * @return The amount of streams
+	 */
+	public int getMaxStreamsPerConnection() {
+		return maxStreamsPerConnection;
+	}
+
+	/**
+	 * Get the amount of data which may be sent on a stream of a multiplexed connection before the other side allows more
+	 * 
+	 * @return The size of the window in bytes
+	 */
+	public int getStreamWindowSize() {
+		return streamWindowSize;
+	}
+
+	/**
+	 * Get the amount of file content which is read ahead while the earlier files of a batch download are sent
+	 * 
+	 * @return The size in bytes
+	 */
+	public int getPrefetchBufferSize() {
+		return prefetchBufferSize;
+	}
+
+	/**
+	 * Get the maximum amount of files of a batch upload
+	 * 
+	 * @return The amount of files
+	 */
+	public int getMaxFilesPerUpload() {
+		return maxFilesPerUpload;
+	}
+
+	/**
+	 * Get the time after which an interrupted resumable upload is removed
+	 * 
+	 * @return The time in hours
+	 */
+	public int getUploadExpirationInHours() {
+		return uploadExpirationInHours;
+	}
+
+	/**
+	 * Get the amount of a resumable upload which is received before it is written to the disk, this is the most a
+	 * client has to send again after the server crashed
+	 * 
+	 * @return The size in bytes
+	 */
+	public int getUploadCheckpointSize() {
+		return uploadCheckpointSize;
+	}
+
+	/**
+	 * Get the maximum amount of ranges of a range update
+	 * 
+	 * @return The amount of ranges
+	 */
+	public int getMaxRangesPerUpdate() {
+		return maxRangesPerUpdate;
+	}
 }
@@ -0,0 +1,100 @@
+package org.fides.server.tools;
+
+/**
+ * Actions which are handled by the server in addition to the actions of the components
+ */
+public class ServerActions {
+
+	/**
+	 * Keeps the session open, the server answers with a successful response. It is allowed before and after the login.
+	 */
+	public static final String PING = "ping";
+
+	/**
+	 * Turns the connection of a logged in client into a multiplexed session, see {@link org.fides.server.mux.MuxSession}.
+	 * The server answers with the size of the window and the maximum amount of streams, after which the connection only
+	 * carries frames.
+	 */
+	public static final String MULTIPLEX = "multiplex";
+
+	/**
+	 * The size of the window of a stream in the response to {@link #MULTIPLEX}
+	 */
+	public static final String STREAM_WINDOW = "streamWindow";
+
+	/**
+	 * The maximum amount of open streams in the response to {@link #MULTIPLEX}
+	 */
+	public static final String MAX_STREAMS = "maxStreams";
+
+	/**
+	 * Downloads several files in one response. The request holds the locations under
+	 * {@link org.fides.components.Responses#LOCATIONS}. After a successful response every file follows in the order of
+	 * the request, as a response with its location and its own status, followed by its content when it was successful.
+	 */
+	public static final String GET_FILES = "getFiles";
+
+	/**
+	 * Uploads several files in one exchange. The request holds the amount of files under {@link #AMOUNT}. After a
+	 * successful response the client sends the content of every file, the server answers with a response per file with
+	 * the location it assigned or its error, and commits the files after a single confirmation of the client.
+	 */
+	public static final String UPLOAD_FILES = "uploadFiles";
+
+	/**
+	 * The amount of files in the request of {@link #UPLOAD_FILES}
+	 */
+	public static final String AMOUNT = "amount";
+
+	/**
+	 * Removes several files in one request. The request holds the locations under
+	 * {@link org.fides.components.Responses#LOCATIONS}, the successful response holds the locations that were removed.
+	 * The files are deleted from the disk after the response.
+	 */
+	public static final String REMOVE_FILES = "removeFiles";
+
+	/**
+	 * Logs in and starts the session in one request. The request holds the same properties as a login, the successful
+	 * response holds the locations of the user under {@link org.fides.components.Responses#LOCATIONS} and is followed
+	 * by the content of the keyfile.
+	 */
+	public static final String BOOTSTRAP = "bootstrap";
+
+	/**
+	 * The position of the first byte of a file to download, an optional property of a request for a file. A request
+	 * with a range is answered with the total size of the file under {@link #SIZE}.
+	 */
+	public static final String OFFSET = "offset";
+
+	/**
+	 * The maximum amount of bytes of a file to download, an optional property of a request for a file
+	 */
+	public static final String LENGTH = "length";
+
+	/**
+	 * The total size of a file in the response to a request for a range of it
+	 */
+	public static final String SIZE = "size";
+
+	/**
+	 * Uploads a file which can be continued after the connection was interrupted. A request without a
+	 * {@link org.fides.components.Actions.Properties#LOCATION} starts a new upload, a request with the location of an
+	 * unfinished upload continues it. The successful response holds the location and the {@link #OFFSET} from which the
+	 * client sends the rest of the content, after which the upload is confirmed like a normal upload.
+	 */
+	public static final String RESUMABLE_UPLOAD = "resumableUpload";
+
+	/**
+	 * Writes changed ranges into a file. The request holds the location, the offsets of the ranges under
+	 * {@link #OFFSETS} and optionally the size of the file before the ranges are written under {@link #SIZE}. After a
+	 * successful response the client sends the content of every range in the order of the offsets, after which the
+	 * update is confirmed like an upload.
+	 */
+	public static final String UPDATE_FILE_RANGE = "updateFileRange";
+
+	/**
+	 * The offsets of the ranges in the request of {@link #UPDATE_FILE_RANGE}
+	 */
+	public static final String OFFSETS = "offsets";
+
+}
@@ -0,0 +1,140 @@
+package org.fides.server.tools;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Applies the configured TCP options to the sockets of the server. The options are a best effort, a socket on which an
+ * option can't be set is used with the defaults of the operating system.
+ */
+public final class SocketTuning {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(SocketTuning.class);
+
+	private static volatile int sendBufferSize;
+
+	private static volatile int receiveBufferSize;
+
+	private static volatile boolean tcpNoDelay = true;
+
+	private static volatile boolean keepAlive;
+
+	private static volatile long adaptiveThreshold;
+
+	private static volatile int adaptiveBufferSize;
+
+	private SocketTuning() {
+	}
+
+	/**
+	 * Reads the socket options from the properties
+	 *
+	 * @param propertiesManager
+	 *            The properties containing the socket options
+	 */
+	public static void configure(PropertiesManager propertiesManager) {
+		sendBufferSize = propertiesManager.getSocketSendBufferSize();
+		receiveBufferSize = propertiesManager.getSocketReceiveBufferSize();
+		tcpNoDelay = propertiesManager.isTcpNoDelay();
+		keepAlive = propertiesManager.isTcpKeepAlive();
+		adaptiveThreshold = propertiesManager.getAdaptiveBufferThresholdInMegabytes() * 1024L * 1024L;
+		adaptiveBufferSize = propertiesManager.getAdaptiveBufferSize();
+		LOG.debug("Socket options: send buffer " + sendBufferSize + ", receive buffer " + receiveBufferSize + ", TCP_NODELAY " + tcpNoDelay + ", keep-alive " + keepAlive
+			+ ", adaptive buffer " + (isAdaptive() ? adaptiveBufferSize + " after " + adaptiveThreshold + " bytes" : "disabled"));
+	}
+
+	/**
+	 * Sets the receive buffer of a listening socket, this has to happen before it is bound. The accepted connections
+	 * inherit the buffer, and the buffer at the moment of the handshake decides how far the TCP window can grow. In the
+	 * adaptive mode the buffer therefore starts at the adaptive size.
+	 *
+	 * @param serverSocket
+	 *            The unbound listening socket
+	 */
+	public static void applyToListener(ServerSocket serverSocket) {
+		int size = Math.max(receiveBufferSize, isAdaptive() ? adaptiveBufferSize : 0);
+		if (size <= 0) {
+			return;
+		}
+		try {
+			serverSocket.setReceiveBufferSize(size);
+		} catch (SocketException e) {
+			LOG.debug("Could not set the receive buffer of the listening socket", e);
+		}
+	}
+
+	/**
+	 * Sets the options of an accepted connection
+	 *
+	 * @param socket
+	 *            The socket of the connection
+	 */
+	public static void apply(Socket socket) {
+		try {
+			if (tcpNoDelay) {
+				socket.setTcpNoDelay(true);
+			}
+			if (keepAlive) {
+				socket.setKeepAlive(true);
+			}
+			if (sendBufferSize > 0) {
+				socket.setSendBufferSize(sendBufferSize);
+			}
+			if (receiveBufferSize > 0) {
+				socket.setReceiveBufferSize(receiveBufferSize);
+			}
+		} catch (SocketException e) {
+			LOG.debug("Could not set the socket options", e);
+		}
+	}
+
+	/**
+	 * Raises the buffers of a connection which sustains a bulk transfer to the adaptive size. Buffers which are already
+	 * larger are left alone.
+	 *
+	 * @param socket
+	 *            The socket of the connection
+	 * @return Whether a buffer was raised
+	 */
+	static boolean raiseBuffers(Socket socket) {
+		boolean raised = false;
+		try {
+			if (socket.getSendBufferSize() < adaptiveBufferSize) {
+				socket.setSendBufferSize(adaptiveBufferSize);
+				raised = true;
+			}
+			if (socket.getReceiveBufferSize() < adaptiveBufferSize) {
+				socket.setReceiveBufferSize(adaptiveBufferSize);
+				raised = true;
+			}
+		} catch (SocketException e) {
+			LOG.debug("Could not raise the socket buffers", e);
+		}
+		return raised;
+	}
+
+	/**
+	 * Checks whether the buffers of connections with bulk transfers are raised
+	 *
+	 * @return true if the adaptive mode is enabled
+	 */
+	static boolean isAdaptive() {
+		return adaptiveThreshold > 0 && adaptiveBufferSize > 0;
+	}
+
+	/**
+	 * Returns the amount of bytes an action has to transfer before the buffers of its connection are raised
+	 *
+	 * @return The threshold in bytes
+	 */
+	static long getAdaptiveThreshold() {
+		return adaptiveThreshold;
+	}
+}
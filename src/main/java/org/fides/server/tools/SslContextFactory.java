@@ -0,0 +1,154 @@
+package org.fides.server.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Creates the SSLContext which is used by the listeners of the server
+ */
+public final class SslContextFactory {
+
+	/** The system property which enables or disables the stateless session tickets of the JDK (Java 13 and newer) */
+	private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+	private SslContextFactory() {
+	}
+
+	/**
+	 * Creates an SSLContext with the keystore from the properties
+	 *
+	 * @return The initialized SSLContext
+	 * @throws GeneralSecurityException
+	 *             if the keystore or the context could not be initialized
+	 * @throws IOException
+	 *             if the keystore could not be read
+	 */
+	public static SSLContext createSslContext() throws GeneralSecurityException, IOException {
+		PropertiesManager propertiesManager = PropertiesManager.getInstance();
+
+		// The JDK reads this property once, so it has to be set before the first context is created
+		String sessionTickets = propertiesManager.getSslSessionTickets();
+		if ("true".equalsIgnoreCase(sessionTickets) || "false".equalsIgnoreCase(sessionTickets)) {
+			System.setProperty(SESSION_TICKETS_PROPERTY, sessionTickets.toLowerCase());
+		}
+
+		// Set up the key manager for server authentication
+		SSLContext sslContext = SSLContext.getInstance("TLS");
+		KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+
+		// Load the given keystore with the given password
+		KeyStore keyStore = loadKeyStore(propertiesManager.getKeystorePath(), propertiesManager.getKeystorePassword());
+
+		// Offer the ECDSA certificate next to the RSA one, the key manager chooses the certificate which fits the
+		// negotiated cipher suite
+		String ecdsaKeystorePath = propertiesManager.getEcdsaKeystorePath();
+		if (ecdsaKeystorePath != null && !ecdsaKeystorePath.isEmpty()) {
+			addKeys(keyStore, propertiesManager.getKeystorePassword(), loadKeyStore(ecdsaKeystorePath, propertiesManager.getEcdsaKeystorePassword()),
+				propertiesManager.getEcdsaKeystorePassword());
+		}
+		keyManagerFactory.init(keyStore, propertiesManager.getKeystorePassword());
+
+		// Load the KeyManagers in the sslContext
+		sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+
+		// Keep the sessions around so reconnecting clients can resume them instead of doing a full handshake
+		SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+		if (propertiesManager.getSslSessionCacheSize() > 0) {
+			sessionContext.setSessionCacheSize(propertiesManager.getSslSessionCacheSize());
+		}
+		if (propertiesManager.getSslSessionTimeoutInSeconds() > 0) {
+			sessionContext.setSessionTimeout(propertiesManager.getSslSessionTimeoutInSeconds());
+		}
+		return sslContext;
+	}
+
+	/**
+	 * Creates the context of a client which connects to a listener of this server over the loopback interface, for
+	 * example to warm up or benchmark the TLS stack. It trusts every certificate, so it may never be used for other
+	 * connections.
+	 *
+	 * @return The context of the client
+	 * @throws GeneralSecurityException
+	 *             if the context could not be created
+	 */
+	public static SSLContext createLoopbackClientContext() throws GeneralSecurityException {
+		SSLContext clientContext = SSLContext.getInstance("TLS");
+		clientContext.init(null, new TrustManager[] { new X509TrustManager() {
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		} }, null);
+		return clientContext;
+	}
+
+	/**
+	 * Loads a JKS keystore
+	 *
+	 * @param path
+	 *            The path of the keystore
+	 * @param password
+	 *            The password of the keystore
+	 * @return The loaded keystore
+	 * @throws GeneralSecurityException
+	 *             if the keystore could not be loaded
+	 * @throws IOException
+	 *             if the keystore could not be read
+	 */
+	private static KeyStore loadKeyStore(String path, char[] password) throws GeneralSecurityException, IOException {
+		KeyStore keyStore = KeyStore.getInstance("JKS");
+		InputStream keyStoreStream = new FileInputStream(path);
+		try {
+			keyStore.load(keyStoreStream, password);
+		} finally {
+			IOUtils.closeQuietly(keyStoreStream);
+		}
+		return keyStore;
+	}
+
+	/**
+	 * Copies the private keys of one keystore into another. The key manager requires all keys to have the same
+	 * password, so the copied keys get the password of the target keystore.
+	 *
+	 * @param target
+	 *            The keystore to copy the keys into
+	 * @param targetPassword
+	 *            The password of the keys in the target keystore
+	 * @param source
+	 *            The keystore to copy the keys from
+	 * @param sourcePassword
+	 *            The password of the keys in the source keystore
+	 * @throws GeneralSecurityException
+	 *             if a key could not be copied
+	 */
+	private static void addKeys(KeyStore target, char[] targetPassword, KeyStore source, char[] sourcePassword) throws GeneralSecurityException {
+		for (String alias : Collections.list(source.aliases())) {
+			if (!source.isKeyEntry(alias)) {
+				continue;
+			}
+			String targetAlias = target.containsAlias(alias) ? "ecdsa-" + alias : alias;
+			target.setKeyEntry(targetAlias, source.getKey(alias, sourcePassword), targetPassword, source.getCertificateChain(alias));
+		}
+	}
+}
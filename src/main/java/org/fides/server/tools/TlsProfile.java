@@ -0,0 +1,144 @@
+package org.fides.server.tools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * A named set of TLS protocols and cipher suites which is applied to the listeners of the server. The performance
+ * profile only allows forward secret AES-GCM and ChaCha20 suites on TLS 1.2 and 1.3, which are accelerated by the
+ * processor and are cheap with an ECDSA certificate. The compatible profile also allows the older protocols. The
+ * default profile keeps the settings of the JVM.
+ */
+public final class TlsProfile {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(TlsProfile.class);
+
+	private static final String[] PERFORMANCE_PROTOCOLS = { "TLSv1.3", "TLSv1.2" };
+
+	private static final String[] PERFORMANCE_CIPHER_SUITES = { "TLS_AES_128_GCM_SHA256", "TLS_AES_256_GCM_SHA384", "TLS_CHACHA20_POLY1305_SHA256",
+		"TLS_ECDHE_ECDSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256", "TLS_ECDHE_ECDSA_WITH_AES_256_GCM_SHA384",
+		"TLS_ECDHE_RSA_WITH_AES_256_GCM_SHA384", "TLS_ECDHE_ECDSA_WITH_CHACHA20_POLY1305_SHA256", "TLS_ECDHE_RSA_WITH_CHACHA20_POLY1305_SHA256" };
+
+	private static final String[] COMPATIBLE_PROTOCOLS = { "TLSv1.3", "TLSv1.2", "TLSv1.1", "TLSv1" };
+
+	private final String name;
+
+	private final String[] protocols;
+
+	private final String[] cipherSuites;
+
+	/**
+	 * Constructor for TlsProfile
+	 *
+	 * @param name
+	 *            The name of the profile
+	 * @param protocols
+	 *            The enabled protocols, null to keep the default of the JVM
+	 * @param cipherSuites
+	 *            The enabled cipher suites, null to keep the default of the JVM
+	 */
+	private TlsProfile(String name, String[] protocols, String[] cipherSuites) {
+		this.name = name;
+		this.protocols = protocols;
+		this.cipherSuites = cipherSuites;
+	}
+
+	/**
+	 * Creates the profile with the given name, restricted to the protocols and suites the context supports
+	 *
+	 * @param name
+	 *            The name of the profile, an unknown or empty name results in the default profile
+	 * @param sslContext
+	 *            The context the profile is used with
+	 * @return The profile
+	 */
+	public static TlsProfile forName(String name, SSLContext sslContext) {
+		SSLParameters supported = sslContext.getSupportedSSLParameters();
+		if (PropertiesManager.TLS_PROFILE_PERFORMANCE.equals(name)) {
+			return new TlsProfile(name, retain(PERFORMANCE_PROTOCOLS, supported.getProtocols()), retain(PERFORMANCE_CIPHER_SUITES, supported.getCipherSuites()));
+		} else if (PropertiesManager.TLS_PROFILE_COMPATIBLE.equals(name)) {
+			return new TlsProfile(name, retain(COMPATIBLE_PROTOCOLS, supported.getProtocols()), null);
+		}
+		if (name != null && !name.isEmpty() && !PropertiesManager.TLS_PROFILE_DEFAULT.equals(name)) {
+			LOG.warn("Unknown TLS profile " + name + ", using the default of the JVM");
+		}
+		return new TlsProfile(PropertiesManager.TLS_PROFILE_DEFAULT, null, null);
+	}
+
+	/**
+	 * Returns the name of the profile
+	 *
+	 * @return The name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Restricts the protocols and cipher suites of a listening socket to the profile
+	 *
+	 * @param serverSocket
+	 *            The listening socket
+	 */
+	public void apply(SSLServerSocket serverSocket) {
+		if (protocols != null) {
+			serverSocket.setEnabledProtocols(protocols);
+		}
+		if (cipherSuites != null) {
+			serverSocket.setEnabledCipherSuites(cipherSuites);
+		}
+	}
+
+	/**
+	 * Restricts the protocols and cipher suites of an engine to the profile
+	 *
+	 * @param engine
+	 *            The engine of a connection
+	 */
+	public void apply(SSLEngine engine) {
+		if (protocols != null) {
+			engine.setEnabledProtocols(protocols);
+		}
+		if (cipherSuites != null) {
+			engine.setEnabledCipherSuites(cipherSuites);
+		}
+	}
+
+	/**
+	 * Keeps the wanted values which are supported, in the order of the wanted values
+	 *
+	 * @param wanted
+	 *            The values of the profile
+	 * @param supported
+	 *            The values which are supported
+	 * @return The supported values of the profile
+	 */
+	private static String[] retain(String[] wanted, String[] supported) {
+		List<String> supportedList = Arrays.asList(supported);
+		List<String> result = new ArrayList<>();
+		for (String value : wanted) {
+			if (supportedList.contains(value)) {
+				result.add(value);
+			}
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + (protocols == null ? "default protocols" : Arrays.toString(protocols)) + " "
+			+ (cipherSuites == null ? "default cipher suites" : cipherSuites.length + " cipher suites");
+	}
+}
@@ -0,0 +1,168 @@
+package org.fides.server.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+import org.apache.commons.io.input.ProxyInputStream;
+import org.apache.commons.io.output.ProxyOutputStream;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Counts the bytes of a connection to report the throughput of its actions. When the adaptive mode of
+ * {@link SocketTuning} is enabled, the buffers of a connection are raised as soon as an action transfers more than the
+ * threshold. A monitor is used by one thread at a time.
+ */
+public class TransferMonitor {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(TransferMonitor.class);
+
+	/** Actions which transfer less than this are too short to tell something about the throughput */
+	private static final long MIN_MEASURED_BYTES = 64 * 1024;
+
+	private final Socket socket;
+
+	private final long openedAt = System.nanoTime();
+
+	private long actionStart;
+
+	private long bytesIn;
+
+	private long bytesOut;
+
+	private long totalBytesIn;
+
+	private long totalBytesOut;
+
+	private boolean raised;
+
+	/**
+	 * Constructor for TransferMonitor
+	 *
+	 * @param socket
+	 *            The socket of the connection
+	 */
+	public TransferMonitor(Socket socket) {
+		this.socket = socket;
+	}
+
+	/**
+	 * Wraps the input of the connection so the received bytes are counted
+	 *
+	 * @param in
+	 *            The input of the connection
+	 * @return The counted input
+	 */
+	public InputStream wrap(InputStream in) {
+		return new ProxyInputStream(in) {
+			@Override
+			protected void afterRead(int n) {
+				if (n > 0) {
+					bytesIn += n;
+					checkBulkTransfer();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Wraps the output of the connection so the sent bytes are counted
+	 *
+	 * @param out
+	 *            The output of the connection
+	 * @return The counted output
+	 */
+	public OutputStream wrap(OutputStream out) {
+		return new ProxyOutputStream(out) {
+			@Override
+			protected void beforeWrite(int n) throws IOException {
+				bytesOut += n;
+				checkBulkTransfer();
+			}
+		};
+	}
+
+	/**
+	 * Marks the start of an action
+	 */
+	public void startAction() {
+		actionStart = System.nanoTime();
+		bytesIn = 0;
+		bytesOut = 0;
+	}
+
+	/**
+	 * Marks the end of an action and records its throughput when it transferred enough data
+	 */
+	public void endAction() {
+		long elapsed = Math.max(1, System.nanoTime() - actionStart);
+		totalBytesIn += bytesIn;
+		totalBytesOut += bytesOut;
+		if (bytesIn >= MIN_MEASURED_BYTES) {
+			long throughput = toKilobytesPerSecond(bytesIn, elapsed);
+			Metrics.histogram("transfer.inKBps").record(throughput);
+			LOG.debug("Received " + bytesIn + " bytes from " + socket.getRemoteSocketAddress() + " at " + throughput + " KB/s" + describeBuffers());
+		}
+		if (bytesOut >= MIN_MEASURED_BYTES) {
+			long throughput = toKilobytesPerSecond(bytesOut, elapsed);
+			Metrics.histogram("transfer.outKBps").record(throughput);
+			LOG.debug("Sent " + bytesOut + " bytes to " + socket.getRemoteSocketAddress() + " at " + throughput + " KB/s" + describeBuffers());
+		}
+		bytesIn = 0;
+		bytesOut = 0;
+	}
+
+	/**
+	 * Reports the totals of the connection when it is closed
+	 */
+	public void close() {
+		long seconds = (System.nanoTime() - openedAt) / 1000000000L;
+		LOG.debug("Connection " + socket.getRemoteSocketAddress() + " received " + (totalBytesIn + bytesIn) + " and sent " + (totalBytesOut + bytesOut) + " bytes in " + seconds
+			+ " seconds" + (raised ? ", its buffers were raised" : ""));
+	}
+
+	/**
+	 * Raises the buffers of the connection once the current action passes the threshold of the adaptive mode
+	 */
+	private void checkBulkTransfer() {
+		if (!raised && SocketTuning.isAdaptive() && bytesIn + bytesOut >= SocketTuning.getAdaptiveThreshold()) {
+			raised = true;
+			if (SocketTuning.raiseBuffers(socket)) {
+				Metrics.increment("transfer.buffersRaised");
+				LOG.debug("Raised the buffers of " + socket.getRemoteSocketAddress() + describeBuffers());
+			}
+		}
+	}
+
+	/**
+	 * Describes the current buffers of the connection for the log
+	 *
+	 * @return The description
+	 */
+	private String describeBuffers() {
+		try {
+			return " (send buffer " + socket.getSendBufferSize() + ", receive buffer " + socket.getReceiveBufferSize() + ")";
+		} catch (SocketException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Converts an amount of bytes transferred in a duration to kilobytes per second
+	 *
+	 * @param bytes
+	 *            The amount of bytes
+	 * @param nanos
+	 *            The duration in nanoseconds
+	 * @return The throughput in kilobytes per second
+	 */
+	private static long toKilobytesPerSecond(long bytes, long nanos) {
+		return (long) (bytes / 1024.0 / (nanos / 1000000000.0));
+	}
+}
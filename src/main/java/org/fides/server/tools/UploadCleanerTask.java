@@ -0,0 +1,18 @@
+package org.fides.server.tools;
+
+import java.util.TimerTask;
+
+/**
+ * A {@link Cleaner} which periodically removes the resumable uploads that expired. It runs every hour, because the
+ * expiration time of an upload is set in hours.
+ *
+ */
+public class UploadCleanerTask extends TimerTask {
+
+	private Cleaner cleaner = new Cleaner();
+
+	@Override
+	public void run() {
+		cleaner.cleanExpiredUploads();
+	}
+}
@@ -39,11 +39,14 @@ public final class UserLocker {
 		String userDir = PropertiesManager.getInstance().getUserDir();
 		boolean locked = false;
 		if (!StringUtils.isEmpty(userDir)) {
+			long blockingStart = BlockingMonitor.start();
 			try {
 				File lockFile = new File(PropertiesManager.getInstance().getUserDir(), usernameHash.concat(".lock"));
 				locked = lockFile.createNewFile();
 			} catch (IOException e) {
 				locked = false;
+			} finally {
+				BlockingMonitor.end("userLock", blockingStart);
 			}
 		}
 
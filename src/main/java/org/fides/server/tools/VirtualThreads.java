@@ -0,0 +1,102 @@
+package org.fides.server.tools;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Access to the virtual threads of Java 21 and newer. The server is compiled for older Java versions, so the virtual
+ * threads are used through reflection and are unavailable when the server runs on an older JVM.
+ */
+public final class VirtualThreads {
+
+	/**
+	 * Log for this class
+	 */
+	private static final Logger LOG = LogManager.getLogger(VirtualThreads.class);
+
+	private static final Method IS_VIRTUAL = findIsVirtual();
+
+	private VirtualThreads() {
+	}
+
+	private static Method findIsVirtual() {
+		try {
+			return Thread.class.getMethod("isVirtual");
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Checks whether the JVM supports virtual threads
+	 *
+	 * @return true if virtual threads can be created
+	 */
+	public static boolean isSupported() {
+		return IS_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates a factory which starts each runnable on a new virtual thread
+	 *
+	 * @param name
+	 *            The prefix of the names of the threads
+	 * @return The factory, or null if the JVM doesn't support virtual threads
+	 */
+	public static ThreadFactory createFactory(String name) {
+		if (!isSupported()) {
+			return null;
+		}
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 0L);
+			return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+		} catch (NoSuchMethodException | ClassNotFoundException | IllegalAccessException | InvocationTargetException e) {
+			LOG.error("Virtual threads could not be created", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a thread which helps the current thread with its connection. It is a virtual thread when the current
+	 * thread is one, otherwise a daemon thread.
+	 *
+	 * @param task
+	 *            The task of the thread
+	 * @param name
+	 *            The name of the thread
+	 * @return The thread, it isn't started yet
+	 */
+	public static Thread newHelperThread(Runnable task, String name) {
+		ThreadFactory factory = isVirtual(Thread.currentThread()) ? createFactory(name) : null;
+		if (factory != null) {
+			return factory.newThread(task);
+		}
+		Thread thread = new Thread(task, name);
+		thread.setDaemon(true);
+		return thread;
+	}
+
+	/**
+	 * Checks whether the given thread is a virtual thread
+	 *
+	 * @param thread
+	 *            The thread to check
+	 * @return true if the thread is virtual
+	 */
+	public static boolean isVirtual(Thread thread) {
+		if (IS_VIRTUAL == null) {
+			return false;
+		}
+		try {
+			return (Boolean) IS_VIRTUAL.invoke(thread);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return false;
+		}
+	}
+}
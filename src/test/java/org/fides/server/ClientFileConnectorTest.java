@@ -20,6 +20,11 @@ import java.io.SequenceInputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -27,10 +32,13 @@ import org.fides.components.Actions;
 import org.fides.components.Responses;
 import org.fides.components.virtualstream.VirtualInputStream;
 import org.fides.components.virtualstream.VirtualOutputStream;
+import org.fides.server.files.DeletionQueue;
+import org.fides.server.files.FileJournal;
 import org.fides.server.files.FileManager;
 import org.fides.server.files.UserFile;
 import org.fides.server.tools.Errors;
 import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.ServerActions;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -43,7 +51,10 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
 
 /**
  * The tests for the ClientFileConnector class
@@ -51,7 +62,7 @@ import com.google.gson.JsonObject;
  */
 @PowerMockIgnore("javax.management.*")
 @RunWith(PowerMockRunner.class)
-@PrepareForTest({ PropertiesManager.class, FileManager.class })
+@PrepareForTest({ PropertiesManager.class, FileManager.class, FileJournal.class })
 public class ClientFileConnectorTest {
 
 	/** A mocked PropertiesManager which should always return the test Data Directory */
@@ -102,6 +113,7 @@ public class ClientFileConnectorTest {
 		Mockito.when(PropertiesManager.getInstance()).thenReturn(MOCKED_PROPERTIES_MANAGER);
 		Mockito.when(mockedUserFile.getAmountOfFreeBytes()).thenReturn(10000000L);
 		Mockito.when(mockedUserFile.getMaxAmountOfBytes()).thenReturn(10000000L);
+		Mockito.when(mockedUserFile.reserveBytes(Mockito.anyLong())).thenReturn(true);
 	}
 
 	/**
@@ -164,6 +176,52 @@ public class ClientFileConnectorTest {
 		return byteOut.toByteArray();
 	}
 
+	/**
+	 * Creates a file in the test folder with the given content
+	 * 
+	 * @param location
+	 *            The location of the file
+	 * @param content
+	 *            The content of the file
+	 * @return The file
+	 * @throws IOException
+	 */
+	private File createExistingFile(String location, byte[] content) throws IOException {
+		File file = new File(testDataDir, location);
+		assertFalse(file.exists());
+		OutputStream fileOut = new FileOutputStream(file);
+		fileOut.write(content);
+		fileOut.flush();
+		fileOut.close();
+		return file;
+	}
+
+	/**
+	 * Reads the next response of the server from the stream
+	 * 
+	 * @param inputStream
+	 *            The stream to read the response from
+	 * @return The response
+	 * @throws IOException
+	 */
+	private JsonObject readResponse(DataInputStream inputStream) throws IOException {
+		return new Gson().fromJson(inputStream.readUTF(), JsonObject.class);
+	}
+
+	/**
+	 * Reads the content of a file of a batch, which the server sent in a virtualstream of its own
+	 * 
+	 * @param inputStream
+	 *            The stream to read the file from
+	 * @return The bytes of the file
+	 * @throws IOException
+	 */
+	private byte[] readVirtualStream(DataInputStream inputStream) throws IOException {
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+		IOUtils.copy(new VirtualInputStream(inputStream), byteOut);
+		return byteOut.toByteArray();
+	}
+
 	/**
 	 * Tests the file upload
 	 */
@@ -826,6 +884,766 @@ public class ClientFileConnectorTest {
 		}
 	}
 
+	/**
+	 * Tests the download of several files, every file gets its own status
+	 */
+	@Test
+	public void testFilesDownload() {
+		try {
+			// Two files of the user, one which the user doesn't own and one which doesn't exist
+			String firstLocation = "DownloadFilesFirst";
+			String secondLocation = "DownloadFilesSecond";
+			String notOwnedLocation = "DownloadFilesNotOwned";
+			String notExistingLocation = "DownloadFilesNotExisting";
+			createExistingFile(firstLocation, FILECONTENT);
+			createExistingFile(secondLocation, KEYFILECONTENT);
+			createExistingFile(notOwnedLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(firstLocation)).thenReturn(true);
+			Mockito.when(mockedUserFile.checkOwned(secondLocation)).thenReturn(true);
+			Mockito.when(mockedUserFile.checkOwned(notExistingLocation)).thenReturn(true);
+
+			// Only the first file fits in the buffer, the second file is read while it is sent
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getPrefetchBufferSize()).thenReturn(FILECONTENT.length);
+
+			// Create the stream to use for the download's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// The actual download request
+			JsonArray locations = new JsonArray();
+			locations.add(new JsonPrimitive(firstLocation));
+			locations.add(new JsonPrimitive(notOwnedLocation));
+			locations.add(new JsonPrimitive(notExistingLocation));
+			locations.add(new JsonPrimitive(secondLocation));
+			JsonObject filesRequest = new JsonObject();
+			filesRequest.add(Responses.LOCATIONS, locations);
+			assertTrue(connector.downloadFiles(filesRequest, out));
+
+			// The batch is successful, the statuses follow in the order of the request
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			assertTrue(readResponse(in).get(Responses.SUCCESSFUL).getAsBoolean());
+
+			JsonObject status = readResponse(in);
+			assertTrue(status.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(firstLocation, status.get(Actions.Properties.LOCATION).getAsString());
+			assertArrayEquals(FILECONTENT, readVirtualStream(in));
+
+			status = readResponse(in);
+			assertFalse(status.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(notOwnedLocation, status.get(Actions.Properties.LOCATION).getAsString());
+			assertEquals(Errors.FILE_WITHOUT_OWNERSHIP, status.get(Responses.ERROR).getAsString());
+
+			status = readResponse(in);
+			assertFalse(status.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(notExistingLocation, status.get(Actions.Properties.LOCATION).getAsString());
+			assertEquals(Errors.FILE_NOT_FOUND, status.get(Responses.ERROR).getAsString());
+
+			status = readResponse(in);
+			assertTrue(status.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(secondLocation, status.get(Actions.Properties.LOCATION).getAsString());
+			assertArrayEquals(KEYFILECONTENT, readVirtualStream(in));
+
+			// Nothing follows the last file
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the download of several files fails correctly if no locations are given.
+	 */
+	@Test
+	public void testFilesDownloadNoLocations() {
+		try {
+			// Create the stream to use for the download's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// The actual download request
+			JsonObject filesRequest = new JsonObject();
+			filesRequest.add(Responses.LOCATIONS, new JsonArray());
+			assertFalse(connector.downloadFiles(filesRequest, out));
+
+			// Only the error is sent
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject downloadResponse = readResponse(in);
+			assertFalse(downloadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.NO_FILE_LOCATION, downloadResponse.get(Responses.ERROR).getAsString());
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests the upload of several files, the files are stored on the locations which the client is told
+	 */
+	@Test
+	public void testFilesUpload() {
+		try {
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxFilesPerUpload()).thenReturn(10);
+			Mockito.when(mockedUserFile.addFiles(Mockito.anyCollectionOf(String.class), Mockito.anyLong())).thenReturn(true);
+
+			// Create the streams to use for the upload and the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = addSuccessfulToStream(new DataInputStream(new SequenceInputStream(byteArrayToDataStream(FILECONTENT),
+				byteArrayToDataStream(KEYFILECONTENT))));
+
+			// Upload the files
+			JsonObject uploadRequest = new JsonObject();
+			uploadRequest.addProperty(ServerActions.AMOUNT, 2);
+			assertTrue(connector.uploadFiles(inStream, uploadRequest, out));
+			inStream.close();
+
+			// Every file is reported with the location it is stored on
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			assertTrue(readResponse(in).get(Responses.SUCCESSFUL).getAsBoolean());
+			JsonObject firstStatus = readResponse(in);
+			JsonObject secondStatus = readResponse(in);
+			assertTrue(firstStatus.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertTrue(secondStatus.get(Responses.SUCCESSFUL).getAsBoolean());
+			String firstLocation = firstStatus.get(Actions.Properties.LOCATION).getAsString();
+			String secondLocation = secondStatus.get(Actions.Properties.LOCATION).getAsString();
+			assertArrayEquals(FILECONTENT, Files.readAllBytes(new File(testDataDir, firstLocation).toPath()));
+			assertArrayEquals(KEYFILECONTENT, Files.readAllBytes(new File(testDataDir, secondLocation).toPath()));
+
+			// The files are added to the user at once, and no temporary files are left
+			Mockito.verify(mockedUserFile, Mockito.times(1)).addFiles(Arrays.asList(firstLocation, secondLocation),
+				FILECONTENT.length + KEYFILECONTENT.length);
+			assertEquals(0, testDataDir.list(TEMPFILTER).length);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the upload of several files is rolled back when the userfile can't be saved
+	 */
+	@Test
+	public void testFilesUploadNotSaved() {
+		try {
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxFilesPerUpload()).thenReturn(10);
+			Mockito.when(mockedUserFile.addFiles(Mockito.anyCollectionOf(String.class), Mockito.anyLong())).thenReturn(false);
+
+			// Create the streams to use for the upload and the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = addSuccessfulToStream(new DataInputStream(new SequenceInputStream(byteArrayToDataStream(FILECONTENT),
+				byteArrayToDataStream(KEYFILECONTENT))));
+
+			// Upload the files
+			JsonObject uploadRequest = new JsonObject();
+			uploadRequest.addProperty(ServerActions.AMOUNT, 2);
+			assertFalse(connector.uploadFiles(inStream, uploadRequest, out));
+			inStream.close();
+
+			// The files were reported, after the confirmation of the client the upload failed
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			assertTrue(readResponse(in).get(Responses.SUCCESSFUL).getAsBoolean());
+			String firstLocation = readResponse(in).get(Actions.Properties.LOCATION).getAsString();
+			String secondLocation = readResponse(in).get(Actions.Properties.LOCATION).getAsString();
+			assertTrue(readResponse(in).get(Responses.SUCCESSFUL).getAsBoolean());
+			JsonObject commitResponse = readResponse(in);
+			assertFalse(commitResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.UPLOAD_FAILED, commitResponse.get(Responses.ERROR).getAsString());
+
+			// The files don't belong to the user, so they are removed
+			assertFalse(new File(testDataDir, firstLocation).exists());
+			assertFalse(new File(testDataDir, secondLocation).exists());
+			assertEquals(0, testDataDir.list(TEMPFILTER).length);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if a file of an upload of several files which doesn't fit in the space of the user fails on its own
+	 */
+	@Test
+	public void testFilesUploadTooBig() {
+		try {
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxFilesPerUpload()).thenReturn(10);
+			Mockito.when(mockedUserFile.addFiles(Mockito.anyCollectionOf(String.class), Mockito.anyLong())).thenReturn(true);
+			// The user has no space left, only an empty file fits
+			Mockito.when(mockedUserFile.reserveBytes(Mockito.anyLong())).thenReturn(false);
+
+			// Create the streams to use for the upload and the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = addSuccessfulToStream(new DataInputStream(new SequenceInputStream(byteArrayToDataStream(FILECONTENT),
+				byteArrayToDataStream(new byte[0]))));
+
+			// Upload the files
+			JsonObject uploadRequest = new JsonObject();
+			uploadRequest.addProperty(ServerActions.AMOUNT, 2);
+			assertTrue(connector.uploadFiles(inStream, uploadRequest, out));
+			inStream.close();
+
+			// The first file failed without a location, the second file is stored
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			assertTrue(readResponse(in).get(Responses.SUCCESSFUL).getAsBoolean());
+			JsonObject firstStatus = readResponse(in);
+			assertFalse(firstStatus.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertFalse(firstStatus.has(Actions.Properties.LOCATION));
+			assertEquals(Errors.UPLOAD_TOO_BIG, firstStatus.get(Responses.ERROR).getAsString());
+			JsonObject secondStatus = readResponse(in);
+			assertTrue(secondStatus.get(Responses.SUCCESSFUL).getAsBoolean());
+			String secondLocation = secondStatus.get(Actions.Properties.LOCATION).getAsString();
+			assertTrue(new File(testDataDir, secondLocation).exists());
+
+			Mockito.verify(mockedUserFile, Mockito.times(1)).addFiles(Arrays.asList(secondLocation), 0);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the upload of several files fails correctly if the amount of files isn't allowed.
+	 */
+	@Test
+	public void testFilesUploadInvalidAmount() {
+		try {
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxFilesPerUpload()).thenReturn(10);
+
+			// Create the stream to use for the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// More files than allowed
+			JsonObject uploadRequest = new JsonObject();
+			uploadRequest.addProperty(ServerActions.AMOUNT, 11);
+			assertFalse(connector.uploadFiles(new DataInputStream(new ByteArrayInputStream(new byte[0])), uploadRequest, out));
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject uploadResponse = readResponse(in);
+			assertFalse(uploadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.INVALID_AMOUNT, uploadResponse.get(Responses.ERROR).getAsString());
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests removing several files, only the files of the user are removed
+	 */
+	@Test
+	public void testFilesRemove() {
+		try {
+			// Two files of the user and one which the user doesn't own
+			String firstLocation = "RemoveFilesFirst";
+			String secondLocation = "RemoveFilesSecond";
+			String notOwnedLocation = "RemoveFilesNotOwned";
+			File firstFile = createExistingFile(firstLocation, FILECONTENT);
+			File secondFile = createExistingFile(secondLocation, KEYFILECONTENT);
+			File notOwnedFile = createExistingFile(notOwnedLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(firstLocation)).thenReturn(true);
+			Mockito.when(mockedUserFile.checkOwned(secondLocation)).thenReturn(true);
+			Map<String, Long> sizes = new HashMap<>();
+			sizes.put(firstLocation, (long) FILECONTENT.length);
+			sizes.put(secondLocation, (long) KEYFILECONTENT.length);
+			Mockito.when(mockedUserFile.removeFiles(sizes)).thenReturn(Arrays.asList(firstLocation, secondLocation));
+
+			// create stream for the response
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// Remove the files
+			JsonArray locations = new JsonArray();
+			locations.add(new JsonPrimitive(firstLocation));
+			locations.add(new JsonPrimitive(notOwnedLocation));
+			locations.add(new JsonPrimitive(secondLocation));
+			JsonObject removeRequest = new JsonObject();
+			removeRequest.add(Responses.LOCATIONS, locations);
+			assertTrue(connector.removeFiles(removeRequest, out));
+
+			// The response holds the removed locations, the file which isn't owned is left out
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject removeResponse = readResponse(in);
+			assertTrue(removeResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			JsonArray removed = removeResponse.getAsJsonArray(Responses.LOCATIONS);
+			assertEquals(2, removed.size());
+			assertEquals(firstLocation, removed.get(0).getAsString());
+			assertEquals(secondLocation, removed.get(1).getAsString());
+
+			// The files are deleted in the background
+			DeletionQueue.flush();
+			assertFalse(firstFile.exists());
+			assertFalse(secondFile.exists());
+			assertTrue(notOwnedFile.exists());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if removing several files fails correctly if the userfile can't be saved, the files are kept then
+	 */
+	@Test
+	public void testFilesRemoveNotSaved() {
+		try {
+			String existingLocation = "RemoveFilesNotSaved";
+			File existingFile = createExistingFile(existingLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(existingLocation)).thenReturn(true);
+			Mockito.when(mockedUserFile.removeFiles(Mockito.anyMapOf(String.class, Long.class))).thenReturn(null);
+
+			// create stream for the response
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// Remove the file
+			JsonArray locations = new JsonArray();
+			locations.add(new JsonPrimitive(existingLocation));
+			JsonObject removeRequest = new JsonObject();
+			removeRequest.add(Responses.LOCATIONS, locations);
+			assertFalse(connector.removeFiles(removeRequest, out));
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject removeResponse = readResponse(in);
+			assertFalse(removeResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.CANNOT_SAVE_USER_FILE, removeResponse.get(Responses.ERROR).getAsString());
+			DeletionQueue.flush();
+			assertTrue(existingFile.exists());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests the start of a session, the locations of the user are followed by the keyfile
+	 */
+	@Test
+	public void testBootstrap() {
+		try {
+			// Create a keyfile that belongs to the user, and the locations of the user
+			String keyFileLocation = "BootstrapKeyFile";
+			createExistingFile(keyFileLocation, KEYFILECONTENT);
+			Mockito.when(mockedUserFile.getKeyFileLocation()).thenReturn(keyFileLocation);
+			Set<String> locations = new HashSet<>(Arrays.asList("BootstrapFirst", "BootstrapSecond"));
+			Mockito.when(mockedUserFile.getLocations()).thenReturn(locations);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getPrefetchBufferSize()).thenReturn(KEYFILECONTENT.length);
+
+			// Create the stream to use for the response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			assertTrue(connector.bootstrap(out));
+
+			// The timestamps of the files are updated
+			Mockito.verify(mockedUserFile, Mockito.times(1)).touch();
+
+			// First the successful response with the locations, then the keyfile
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject bootstrapResponse = readResponse(in);
+			assertTrue(bootstrapResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			Set<String> receivedLocations = new HashSet<>();
+			for (JsonElement location : bootstrapResponse.getAsJsonArray(Responses.LOCATIONS)) {
+				receivedLocations.add(location.getAsString());
+			}
+			assertEquals(locations, receivedLocations);
+			assertArrayEquals(KEYFILECONTENT, readVirtualStream(in));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the start of a session fails correctly if the keyfile doesn't exist.
+	 */
+	@Test
+	public void testBootstrapKeyFileNotExisting() {
+		try {
+			Mockito.when(mockedUserFile.getKeyFileLocation()).thenReturn("BootstrapKeyFileNotExisting");
+			Mockito.when(mockedUserFile.getLocations()).thenReturn(new HashSet<String>());
+
+			// Create the stream to use for the response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			assertFalse(connector.bootstrap(out));
+
+			// Only the error is sent
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject bootstrapResponse = readResponse(in);
+			assertFalse(bootstrapResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.KEY_FILE_NOT_FOUND, bootstrapResponse.get(Responses.ERROR).getAsString());
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests the download of a range of a file
+	 */
+	@Test
+	public void testFileDownloadRange() {
+		try {
+			String downloadFileLocation = "DownloadRangeTestFile";
+			createExistingFile(downloadFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(downloadFileLocation)).thenReturn(true);
+
+			// Create the stream to use for the download's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// A range within the file
+			JsonObject fileRequest = new JsonObject();
+			fileRequest.addProperty(Actions.Properties.LOCATION, downloadFileLocation);
+			fileRequest.addProperty(ServerActions.OFFSET, 5);
+			fileRequest.addProperty(ServerActions.LENGTH, 10);
+			assertTrue(connector.downloadFile(fileRequest, out));
+
+			// A range without a length runs until the end of the file
+			fileRequest = new JsonObject();
+			fileRequest.addProperty(Actions.Properties.LOCATION, downloadFileLocation);
+			fileRequest.addProperty(ServerActions.OFFSET, 20);
+			assertTrue(connector.downloadFile(fileRequest, out));
+
+			// The responses hold the size of the whole file
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject downloadResponse = readResponse(in);
+			assertTrue(downloadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(FILECONTENT.length, downloadResponse.get(ServerActions.SIZE).getAsLong());
+			assertArrayEquals(Arrays.copyOfRange(FILECONTENT, 5, 15), readVirtualStream(in));
+
+			downloadResponse = readResponse(in);
+			assertTrue(downloadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(FILECONTENT.length, downloadResponse.get(ServerActions.SIZE).getAsLong());
+			assertArrayEquals(Arrays.copyOfRange(FILECONTENT, 20, FILECONTENT.length), readVirtualStream(in));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the download of a range fails correctly if the range isn't within the file.
+	 */
+	@Test
+	public void testFileDownloadInvalidRange() {
+		try {
+			String downloadFileLocation = "DownloadInvalidRangeTestFile";
+			createExistingFile(downloadFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(downloadFileLocation)).thenReturn(true);
+
+			// Create the stream to use for the download's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// A negative offset, and an offset after the end of the file
+			JsonObject fileRequest = new JsonObject();
+			fileRequest.addProperty(Actions.Properties.LOCATION, downloadFileLocation);
+			fileRequest.addProperty(ServerActions.OFFSET, -1);
+			assertFalse(connector.downloadFile(fileRequest, out));
+			fileRequest.addProperty(ServerActions.OFFSET, FILECONTENT.length + 1);
+			assertFalse(connector.downloadFile(fileRequest, out));
+
+			// Only the errors are sent
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			for (int i = 0; i < 2; i++) {
+				JsonObject downloadResponse = readResponse(in);
+				assertFalse(downloadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+				assertEquals(Errors.INVALID_RANGE, downloadResponse.get(Responses.ERROR).getAsString());
+			}
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests a resumable upload which is continued after its connection dropped, the client continues after what the
+	 * server received and the part file is charged to the user while the upload is pending
+	 */
+	@Test
+	public void testResumableUploadResumed() {
+		try {
+			Mockito.when(mockedUserFile.addPendingUpload(Mockito.anyString())).thenReturn(true);
+			Mockito.when(mockedUserFile.checkPendingUpload(Mockito.anyString())).thenReturn(true);
+			Mockito.when(mockedUserFile.commitPendingUpload(Mockito.anyString(), Mockito.anyLong())).thenReturn(true);
+			byte[] firstPart = Arrays.copyOfRange(FILECONTENT, 0, 16);
+			byte[] secondPart = Arrays.copyOfRange(FILECONTENT, 16, FILECONTENT.length);
+
+			// The connection drops after the first part of the file was sent
+			ByteArrayOutputStream firstPartOut = new ByteArrayOutputStream();
+			VirtualOutputStream virtualOut = new VirtualOutputStream(firstPartOut);
+			virtualOut.write(firstPart);
+			virtualOut.flush();
+			InputStream droppedStream = new InputStream() {
+				@Override
+				public int read() throws IOException {
+					throw new IOException("Connection reset");
+				}
+			};
+			DataInputStream inStream = new DataInputStream(new SequenceInputStream(new ByteArrayInputStream(firstPartOut.toByteArray()), droppedStream));
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			assertFalse(connector.resumableUpload(inStream, new JsonObject(), out));
+
+			// The new upload starts at the beginning, the drop is answered with an error
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject startResponse = readResponse(in);
+			assertTrue(startResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(0, startResponse.get(ServerActions.OFFSET).getAsLong());
+			String location = startResponse.get(Actions.Properties.LOCATION).getAsString();
+			assertEquals(Errors.UPLOAD_FAILED, readResponse(in).get(Responses.ERROR).getAsString());
+
+			// What was received is kept and charged to the user
+			File partFile = new File(testDataDir, location + FileManager.PART_SUFFIX);
+			assertArrayEquals(firstPart, Files.readAllBytes(partFile.toPath()));
+			Mockito.verify(mockedUserFile, Mockito.times(1)).chargePendingUpload(location, firstPart.length);
+
+			// Continue the upload on a new connection
+			outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			inStream = addSuccessfulToStream(new DataInputStream(byteArrayToDataStream(secondPart)));
+			JsonObject resumeRequest = new JsonObject();
+			resumeRequest.addProperty(Actions.Properties.LOCATION, location);
+			assertTrue(connector.resumableUpload(inStream, resumeRequest, out));
+			inStream.close();
+
+			// The client is told to continue after the first part
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject resumeResponse = readResponse(in);
+			assertTrue(resumeResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(location, resumeResponse.get(Actions.Properties.LOCATION).getAsString());
+			assertEquals(firstPart.length, resumeResponse.get(ServerActions.OFFSET).getAsLong());
+
+			// The part file is charged again while it is continued, and becomes the file on commit
+			Mockito.verify(mockedUserFile, Mockito.times(2)).chargePendingUpload(location, firstPart.length);
+			Mockito.verify(mockedUserFile, Mockito.times(1)).commitPendingUpload(location, FILECONTENT.length);
+			assertArrayEquals(FILECONTENT, Files.readAllBytes(new File(testDataDir, location).toPath()));
+			assertFalse(partFile.exists());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if a resumable upload fails correctly if its location isn't an upload of the user.
+	 */
+	@Test
+	public void testResumableUploadUnknown() {
+		try {
+			Mockito.when(mockedUserFile.checkPendingUpload("UnknownUpload")).thenReturn(false);
+
+			// Create the stream to use for the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			JsonObject resumeRequest = new JsonObject();
+			resumeRequest.addProperty(Actions.Properties.LOCATION, "UnknownUpload");
+			assertFalse(connector.resumableUpload(new DataInputStream(new ByteArrayInputStream(new byte[0])), resumeRequest, out));
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject uploadResponse = readResponse(in);
+			assertFalse(uploadResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.UNKNOWN_UPLOAD, uploadResponse.get(Responses.ERROR).getAsString());
+			assertEquals(-1, in.read());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if a resumable upload which doesn't fit in the space of the user is dropped
+	 */
+	@Test
+	public void testResumableUploadTooBig() {
+		try {
+			Mockito.when(mockedUserFile.addPendingUpload(Mockito.anyString())).thenReturn(true);
+			Mockito.when(mockedUserFile.reserveBytes(Mockito.anyLong())).thenReturn(false);
+
+			// Create the streams to use for the upload and the upload's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = new DataInputStream(byteArrayToDataStream(FILECONTENT));
+			assertFalse(connector.resumableUpload(inStream, new JsonObject(), out));
+			inStream.close();
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			String location = readResponse(in).get(Actions.Properties.LOCATION).getAsString();
+			assertEquals(Errors.UPLOAD_TOO_BIG, readResponse(in).get(Responses.ERROR).getAsString());
+
+			// The upload can't be continued, the user is no longer charged for it
+			assertFalse(new File(testDataDir, location + FileManager.PART_SUFFIX).exists());
+			assertFalse(new File(testDataDir, location).exists());
+			Mockito.verify(mockedUserFile, Mockito.times(1)).removePendingUploads(Collections.singleton(location));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if the resumable uploads of which the part file was removed are forgotten
+	 */
+	@Test
+	public void testForgetExpiredUploads() {
+		try {
+			// The part file of the expired upload was removed, its reserved location is left
+			String expiredLocation = "ExpiredUpload";
+			String pendingLocation = "PendingUpload";
+			File expiredFile = createExistingFile(expiredLocation, new byte[0]);
+			createExistingFile(pendingLocation + FileManager.PART_SUFFIX, FILECONTENT);
+			Mockito.when(mockedUserFile.getPendingUploads()).thenReturn(new HashSet<>(Arrays.asList(expiredLocation, pendingLocation)));
+
+			connector.forgetExpiredUploads();
+
+			// Only the expired upload is forgotten, which gives back its space
+			assertFalse(expiredFile.exists());
+			Mockito.verify(mockedUserFile, Mockito.times(1)).removePendingUploads(Arrays.asList(expiredLocation));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests writing changed ranges into a file, a range after the end makes the file larger
+	 */
+	@Test
+	public void testFileUpdateRange() {
+		try {
+			String existingFileLocation = "UpdateRangeTestFile";
+			File existingFile = createExistingFile(existingFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(existingFileLocation)).thenReturn(true);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxRangesPerUpdate()).thenReturn(10);
+
+			// Create the streams to use for the update and the update's response.
+			byte[] firstRange = "THIS".getBytes();
+			byte[] secondRange = "!!".getBytes();
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = addSuccessfulToStream(new DataInputStream(new SequenceInputStream(byteArrayToDataStream(firstRange),
+				byteArrayToDataStream(secondRange))));
+
+			// The update
+			JsonArray offsets = new JsonArray();
+			offsets.add(new JsonPrimitive(0));
+			offsets.add(new JsonPrimitive(FILECONTENT.length));
+			JsonObject updateRequest = new JsonObject();
+			updateRequest.addProperty(Actions.Properties.LOCATION, existingFileLocation);
+			updateRequest.add(ServerActions.OFFSETS, offsets);
+			assertTrue(connector.updateFileRange(inStream, updateRequest, out));
+			inStream.close();
+
+			// The ranges are written into the file, and the journal is removed
+			String response = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).replace("\\u0027", "'");
+			assertFalse(response.contains("\"" + Responses.SUCCESSFUL + "\":false"));
+			byte[] expectedContent = Arrays.copyOf(FILECONTENT, FILECONTENT.length + secondRange.length);
+			System.arraycopy(firstRange, 0, expectedContent, 0, firstRange.length);
+			System.arraycopy(secondRange, 0, expectedContent, FILECONTENT.length, secondRange.length);
+			assertArrayEquals(expectedContent, Files.readAllBytes(existingFile.toPath()));
+			assertFalse(new File(testDataDir, existingFileLocation + FileJournal.SUFFIX).exists());
+
+			// Only the bytes the file grew are added to the used space
+			Mockito.verify(mockedUserFile, Mockito.times(1)).addAmountOfBytes(secondRange.length);
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if writing ranges into a file fails correctly if the file is not owned by the user.
+	 */
+	@Test
+	public void testFileUpdateRangeNotOwned() {
+		try {
+			String notOwnedFileLocation = "UpdateRangeNotOwned";
+			File notOwnedFile = createExistingFile(notOwnedFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(notOwnedFileLocation)).thenReturn(false);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxRangesPerUpdate()).thenReturn(10);
+
+			// Create the stream to use for the update's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			JsonArray offsets = new JsonArray();
+			offsets.add(new JsonPrimitive(0));
+			JsonObject updateRequest = new JsonObject();
+			updateRequest.addProperty(Actions.Properties.LOCATION, notOwnedFileLocation);
+			updateRequest.add(ServerActions.OFFSETS, offsets);
+			assertFalse(connector.updateFileRange(new DataInputStream(byteArrayToDataStream("THIS".getBytes())), updateRequest, out));
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject updateResponse = readResponse(in);
+			assertFalse(updateResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.FILE_WITHOUT_OWNERSHIP, updateResponse.get(Responses.ERROR).getAsString());
+			assertArrayEquals(FILECONTENT, Files.readAllBytes(notOwnedFile.toPath()));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if writing ranges into a file fails correctly if a range doesn't start within the file.
+	 */
+	@Test
+	public void testFileUpdateRangeInvalidRange() {
+		try {
+			String existingFileLocation = "UpdateInvalidRangeTestFile";
+			File existingFile = createExistingFile(existingFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(existingFileLocation)).thenReturn(true);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxRangesPerUpdate()).thenReturn(10);
+
+			// Create the stream to use for the update's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+
+			// The range starts after the end of the new size of the file
+			JsonArray offsets = new JsonArray();
+			offsets.add(new JsonPrimitive(10));
+			JsonObject updateRequest = new JsonObject();
+			updateRequest.addProperty(Actions.Properties.LOCATION, existingFileLocation);
+			updateRequest.add(ServerActions.OFFSETS, offsets);
+			updateRequest.addProperty(ServerActions.SIZE, 5);
+			assertFalse(connector.updateFileRange(new DataInputStream(byteArrayToDataStream("THIS".getBytes())), updateRequest, out));
+
+			in = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+			JsonObject updateResponse = readResponse(in);
+			assertFalse(updateResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.INVALID_RANGE, updateResponse.get(Responses.ERROR).getAsString());
+			assertArrayEquals(FILECONTENT, Files.readAllBytes(existingFile.toPath()));
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if a committed update of ranges is successful when writing it into the file fails, the committed journal is
+	 * kept so it is written later
+	 */
+	@Test
+	public void testFileUpdateRangeApplyFailed() {
+		try {
+			String existingFileLocation = "UpdateRangeApplyFailed";
+			File existingFile = createExistingFile(existingFileLocation, FILECONTENT);
+			Mockito.when(mockedUserFile.checkOwned(existingFileLocation)).thenReturn(true);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxRangesPerUpdate()).thenReturn(10);
+			PowerMockito.stub(PowerMockito.method(FileJournal.class, "apply", File.class)).toThrow(new IOException("No space left on device"));
+
+			// Create the streams to use for the update and the update's response.
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			out = addCloseSpyToStream(new DataOutputStream(outputStream));
+			DataInputStream inStream = addSuccessfulToStream(new DataInputStream(byteArrayToDataStream("THIS".getBytes())));
+
+			JsonArray offsets = new JsonArray();
+			offsets.add(new JsonPrimitive(0));
+			JsonObject updateRequest = new JsonObject();
+			updateRequest.addProperty(Actions.Properties.LOCATION, existingFileLocation);
+			updateRequest.add(ServerActions.OFFSETS, offsets);
+			assertTrue(connector.updateFileRange(inStream, updateRequest, out));
+			inStream.close();
+
+			// The client isn't told about the failure, the committed journal is kept
+			String response = new String(outputStream.toByteArray(), StandardCharsets.UTF_8).replace("\\u0027", "'");
+			assertFalse(response.contains("\"" + Responses.SUCCESSFUL + "\":false"));
+			assertArrayEquals(FILECONTENT, Files.readAllBytes(existingFile.toPath()));
+			assertTrue(new File(testDataDir, existingFileLocation + FileJournal.SUFFIX).exists());
+		} catch (IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
 	/**
 	 * Tears down the test class by clearing the test folder.
 	 */
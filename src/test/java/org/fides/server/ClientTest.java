@@ -22,6 +22,7 @@ import org.fides.components.Actions;
 import org.fides.components.Responses;
 import org.fides.server.files.UserFile;
 import org.fides.server.files.UserManager;
+import org.fides.server.tools.ServerActions;
 import org.fides.server.tools.UserLocker;
 import org.junit.After;
 import org.junit.Before;
@@ -154,6 +155,22 @@ public class ClientTest {
 		UserManager.authenticateUser(Mockito.any(JsonObject.class), Mockito.any(DataOutputStream.class));
 	}
 
+	/**
+	 * This test will verify if the bootstrap authenticates the user without sending the login response itself
+	 * 
+	 * @throws Exception
+	 */
+	@Test
+	public void runTestBootstrap() throws Exception {
+		beforeRun(ServerActions.BOOTSTRAP);
+		client.run();
+
+		verifyStatic(Mockito.never());
+		UserManager.authenticateUser(Mockito.any(JsonObject.class), Mockito.any(DataOutputStream.class));
+		verifyStatic(Mockito.times(1));
+		UserManager.authenticateUser(Mockito.any(JsonObject.class), Mockito.any(DataOutputStream.class), Mockito.eq(false));
+	}
+
 	/**
 	 * This function should be called before testing anything from the handle function. This will set a mock for the
 	 * userfile and adds a given action to the stream
@@ -326,6 +343,24 @@ public class ClientTest {
 		verify(client, Mockito.times(1)).requestLocations(Mockito.any(DataOutputStream.class));
 	}
 
+	/**
+	 * This test will verify if a ping is answered without touching the files of the user
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void handlePingAction() throws Exception {
+		beforeHandleAction(ServerActions.PING);
+		ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+		client.handleActions(dataInputStream, clientFileConnector, new DataOutputStream(byteOut));
+
+		JsonObject response = new Gson().fromJson(new DataInputStream(new ByteArrayInputStream(byteOut.toByteArray())).readUTF(), JsonObject.class);
+		assertTrue(response.get(Responses.SUCCESSFUL).getAsBoolean());
+		verify(clientFileConnector, Mockito.never()).downloadFile(Mockito.any(JsonObject.class), Mockito.any(DataOutputStream.class));
+		verify(clientFileConnector, Mockito.never()).uploadFile(Mockito.any(DataInputStream.class), Mockito.any(DataOutputStream.class));
+		verify(client, Mockito.never()).requestLocations(Mockito.any(DataOutputStream.class));
+	}
+
 	/**
 	 * This test will verify if the requestLocations function is correctly executed
 	 *
@@ -0,0 +1,75 @@
+package org.fides.server;
+
+import static org.junit.Assert.assertEquals;
+
+import javax.net.ssl.SSLSession;
+
+import org.fides.server.tools.Metrics;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * The tests for the HandshakeExecutor class, which reports whether the handshakes resumed an earlier TLS session
+ */
+public class HandshakeExecutorTest {
+
+	/**
+	 * Checks whether a handshake which created its session is counted as a full handshake
+	 */
+	@Test
+	public void testRecordFullHandshake() {
+		long full = Metrics.getCount("tls.handshakes.full");
+		long resumed = Metrics.getCount("tls.handshakes.resumed");
+		long fullRecorded = Metrics.histogram("tls.fullHandshakeMicros").getCount();
+
+		long startMillis = System.currentTimeMillis();
+		SSLSession session = Mockito.mock(SSLSession.class);
+		Mockito.when(session.getCreationTime()).thenReturn(startMillis);
+		HandshakeExecutor.recordHandshake(System.nanoTime(), startMillis, session);
+
+		assertEquals(full + 1, Metrics.getCount("tls.handshakes.full"));
+		assertEquals(resumed, Metrics.getCount("tls.handshakes.resumed"));
+		assertEquals(fullRecorded + 1, Metrics.histogram("tls.fullHandshakeMicros").getCount());
+	}
+
+	/**
+	 * Checks whether a handshake which got a session that was created before it started is counted as resumed
+	 */
+	@Test
+	public void testRecordResumedHandshake() {
+		long full = Metrics.getCount("tls.handshakes.full");
+		long resumed = Metrics.getCount("tls.handshakes.resumed");
+		long resumedRecorded = Metrics.histogram("tls.resumedHandshakeMicros").getCount();
+
+		long startMillis = System.currentTimeMillis();
+		SSLSession session = Mockito.mock(SSLSession.class);
+		Mockito.when(session.getCreationTime()).thenReturn(startMillis - 60000);
+		HandshakeExecutor.recordHandshake(System.nanoTime(), startMillis, session);
+
+		assertEquals(full, Metrics.getCount("tls.handshakes.full"));
+		assertEquals(resumed + 1, Metrics.getCount("tls.handshakes.resumed"));
+		assertEquals(resumedRecorded + 1, Metrics.histogram("tls.resumedHandshakeMicros").getCount());
+	}
+
+	/**
+	 * Checks whether the hit rate of the session cache is the share of resumed handshakes
+	 */
+	@Test
+	public void testResumptionHitRate() {
+		HandshakeExecutor handshakeExecutor = new HandshakeExecutor(1, 0);
+		try {
+			long startMillis = System.currentTimeMillis();
+			SSLSession resumedSession = Mockito.mock(SSLSession.class);
+			Mockito.when(resumedSession.getCreationTime()).thenReturn(startMillis - 60000);
+			for (int i = 0; i < 3; i++) {
+				HandshakeExecutor.recordHandshake(System.nanoTime(), startMillis, resumedSession);
+			}
+
+			long resumed = Metrics.getCount("tls.handshakes.resumed");
+			long total = resumed + Metrics.getCount("tls.handshakes.full");
+			assertEquals(resumed * 100 / total, (long) Metrics.gauges().get("tls.resumptionHitRatePercent"));
+		} finally {
+			handshakeExecutor.shutdown();
+		}
+	}
+}
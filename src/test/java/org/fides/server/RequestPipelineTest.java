@@ -0,0 +1,272 @@
+package org.fides.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.fides.components.Actions;
+import org.fides.server.protocol.BinaryCodec;
+import org.fides.server.protocol.JsonCodec;
+import org.fides.server.protocol.MessageCodec;
+import org.fides.server.protocol.MessageCodecs;
+import org.fides.server.protocol.ProtocolInputStream;
+import org.fides.server.protocol.ProtocolOutputStream;
+import org.junit.Test;
+
+import com.google.gson.JsonObject;
+
+/**
+ * The tests for the RequestPipeline class.
+ *
+ */
+public class RequestPipelineTest {
+
+	/** An action which doesn't read more from the connection than its request */
+	private static final String SHORT_ACTION = Actions.REQUEST_LOCATIONS;
+
+	/**
+	 * Checks whether the requests are handed over in order and no more than the limit is read ahead
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testOrderAndLimit() throws Exception {
+		LinkedBlockingQueue<JsonObject> requests = new LinkedBlockingQueue<>();
+		for (int i = 0; i < 5; i++) {
+			requests.add(createRequest(SHORT_ACTION, i));
+		}
+		CountingReader reader = new CountingReader(requests);
+		RequestPipeline pipeline = new RequestPipeline(2, reader);
+		pipeline.start();
+		try {
+			waitForReads(reader, 2);
+			Thread.sleep(100);
+			assertEquals(2, reader.reads.get());
+
+			for (int i = 0; i < 5; i++) {
+				JsonObject request = pipeline.take();
+				assertEquals(i, request.get("index").getAsInt());
+				pipeline.finished(request);
+			}
+		} finally {
+			pipeline.stop();
+		}
+	}
+
+	/**
+	 * Checks whether the reader waits after an upload until the upload is finished
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testPauseAfterUpload() throws Exception {
+		LinkedBlockingQueue<JsonObject> requests = new LinkedBlockingQueue<>();
+		requests.add(createRequest(Actions.UPLOAD_FILE, 0));
+		requests.add(createRequest(SHORT_ACTION, 1));
+		CountingReader reader = new CountingReader(requests);
+		RequestPipeline pipeline = new RequestPipeline(4, reader);
+		pipeline.start();
+		try {
+			JsonObject upload = pipeline.take();
+			Thread.sleep(100);
+			assertEquals(1, reader.reads.get());
+			assertTrue(pipeline.isEmpty());
+
+			pipeline.finished(upload);
+			assertEquals(1, pipeline.take().get("index").getAsInt());
+		} finally {
+			pipeline.stop();
+		}
+	}
+
+	/**
+	 * Checks whether a failure of the reader is passed to the handler after the requests that were read
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		LinkedBlockingQueue<JsonObject> requests = new LinkedBlockingQueue<>();
+		requests.add(createRequest(SHORT_ACTION, 0));
+		RequestPipeline pipeline = new RequestPipeline(4, new CountingReader(requests));
+		pipeline.start();
+		try {
+			pipeline.finished(pipeline.take());
+			pipeline.take();
+			fail("The end of the connection should be passed on");
+		} catch (EOFException e) {
+			// Expected
+		} finally {
+			pipeline.stop();
+		}
+	}
+
+	/**
+	 * Checks whether the answers are encoded correctly while the next JSON requests are decoded
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteWhileReadingJson() throws Exception {
+		writeWhileReading(new JsonCodec());
+	}
+
+	/**
+	 * Checks whether the answers are encoded correctly while the next binary requests are decoded
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWriteWhileReadingBinary() throws Exception {
+		writeWhileReading(new BinaryCodec());
+	}
+
+	/**
+	 * Checks whether only the wait for a request is tried again after a timeout while requests are in flight
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRetryWaitForRequest() throws Exception {
+		LinkedBlockingQueue<JsonObject> requests = new LinkedBlockingQueue<>();
+		requests.add(createRequest(SHORT_ACTION, 0));
+		requests.add(createRequest(SHORT_ACTION, 1));
+		CountingReader reader = new CountingReader(requests);
+		reader.timeouts.set(3);
+		RequestPipeline pipeline = new RequestPipeline(4, reader);
+		pipeline.start();
+		try {
+			JsonObject first = pipeline.take();
+			assertEquals(1, pipeline.take().get("index").getAsInt());
+			assertEquals(0, reader.timeouts.get());
+			pipeline.finished(first);
+		} finally {
+			pipeline.stop();
+		}
+	}
+
+	/**
+	 * Writes large answers with the codec of a connection while the pipeline decodes the requests of the connection,
+	 * and checks whether both arrive intact
+	 *
+	 * @param codec
+	 *            The codec of the connection
+	 * @throws Exception
+	 */
+	private static void writeWhileReading(MessageCodec codec) throws Exception {
+		int count = 200;
+		String content = StringUtils.repeat('x', 10000);
+		ByteArrayOutputStream requestBytes = new ByteArrayOutputStream();
+		DataOutputStream requestOut = new DataOutputStream(requestBytes);
+		for (int i = 0; i < count; i++) {
+			JsonObject request = createRequest(SHORT_ACTION, i);
+			request.addProperty("content", content);
+			codec.writeMessage(requestOut, request);
+		}
+
+		DataInputStream in = new ProtocolInputStream(new ByteArrayInputStream(requestBytes.toByteArray()), codec);
+		ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+		DataOutputStream out = new ProtocolOutputStream(responseBytes, codec);
+		RequestPipeline pipeline = new RequestPipeline(count, new RequestPipeline.StreamRequestReader(in));
+		pipeline.start();
+		try {
+			for (int i = 0; i < count; i++) {
+				JsonObject request = pipeline.take();
+				assertEquals(i, request.get("index").getAsInt());
+				assertEquals(content, request.get("content").getAsString());
+				JsonObject response = createRequest(SHORT_ACTION, i);
+				response.addProperty("content", content + i);
+				MessageCodecs.write(out, response);
+				pipeline.finished(request);
+			}
+		} finally {
+			pipeline.stop();
+		}
+
+		DataInputStream responses = new DataInputStream(new ByteArrayInputStream(responseBytes.toByteArray()));
+		MessageCodec responseCodec = codec instanceof BinaryCodec ? new BinaryCodec() : new JsonCodec();
+		for (int i = 0; i < count; i++) {
+			JsonObject response = responseCodec.readMessage(responses);
+			assertEquals(i, response.get("index").getAsInt());
+			assertEquals(content + i, response.get("content").getAsString());
+		}
+	}
+
+	/**
+	 * Creates a numbered request
+	 *
+	 * @param action
+	 *            The action of the request
+	 * @param index
+	 *            The number of the request
+	 * @return The request
+	 */
+	private static JsonObject createRequest(String action, int index) {
+		JsonObject request = new JsonObject();
+		request.addProperty(Actions.ACTION, action);
+		request.addProperty("index", index);
+		return request;
+	}
+
+	/**
+	 * Waits until the reader read the given amount of requests
+	 *
+	 * @param reader
+	 *            The reader
+	 * @param reads
+	 *            The amount of requests
+	 * @throws InterruptedException
+	 */
+	private static void waitForReads(CountingReader reader, int reads) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (reader.reads.get() < reads && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Reads the requests from a queue and ends the connection when the queue is empty, the wait for a request can time
+	 * out a given amount of times first
+	 */
+	private static class CountingReader implements RequestPipeline.RequestReader {
+
+		private final LinkedBlockingQueue<JsonObject> requests;
+
+		private final AtomicInteger reads = new AtomicInteger();
+
+		private final AtomicInteger timeouts = new AtomicInteger();
+
+		CountingReader(LinkedBlockingQueue<JsonObject> requests) {
+			this.requests = requests;
+		}
+
+		@Override
+		public void awaitRequest() throws IOException {
+			if (reads.get() > 0 && timeouts.get() > 0) {
+				timeouts.decrementAndGet();
+				throw new SocketTimeoutException();
+			}
+			if (requests.isEmpty()) {
+				throw new EOFException();
+			}
+		}
+
+		@Override
+		public JsonObject readRequest() {
+			reads.incrementAndGet();
+			return requests.poll();
+		}
+	}
+}
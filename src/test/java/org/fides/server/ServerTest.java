@@ -1,16 +1,29 @@
 package org.fides.server;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Properties;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 
+import org.fides.components.Actions;
+import org.fides.components.Responses;
+import org.fides.server.tools.Errors;
 import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.ServerActions;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -21,6 +34,9 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
 /**
  * This unittest tests the Server class
  */
@@ -37,6 +53,8 @@ public class ServerTest {
 
 	private static final char[] KEYSTOREPASSWORD = "12345678".toCharArray();
 
+	private static final String DATADIR = "./target/serverTestData";
+
 	private static final PropertiesManager MOCKED_PROPERTIES_MANAGER = Mockito.mock(PropertiesManager.class);
 
 	/**
@@ -56,6 +74,7 @@ public class ServerTest {
 			Mockito.when(MOCKED_PROPERTIES_MANAGER.getPort()).thenReturn(PORT);
 			Mockito.when(MOCKED_PROPERTIES_MANAGER.getKeystorePath()).thenReturn(KEYSTOREPATH);
 			Mockito.when(MOCKED_PROPERTIES_MANAGER.getKeystorePassword()).thenReturn(KEYSTOREPASSWORD);
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getDataDir()).thenReturn(DATADIR);
 		} catch (Exception e) {
 			fail("Unexpected error in setUp: " + e.getMessage());
 		}
@@ -105,4 +124,218 @@ public class ServerTest {
 		}
 	}
 
+	/**
+	 * Tests whether the non blocking transport accepts a connection and completes the TLS handshake
+	 */
+	@Test
+	public void testNioSocketConnectionIsConnected() {
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(PropertiesManager.TRANSPORT_NIO);
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getEventLoopThreads()).thenReturn(1);
+
+		Server server = null;
+		try {
+			// Starting a Server
+			server = new Server();
+			Thread serverThread = new Thread(server);
+			serverThread.start();
+
+			// Starting the connection
+			SSLSocketFactory sslsocketfactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+			SSLSocket sslsocket = (SSLSocket) sslsocketfactory.createSocket("localhost", PORT);
+			sslsocket.startHandshake();
+
+			// Assert that the connection is active
+			assertTrue(sslsocket.isConnected());
+
+			// Close connection
+			sslsocket.close();
+
+		} catch (UnknownHostException e) {
+			fail("UnknownHostException");
+		} catch (IOException e) {
+			fail("IOException");
+		} finally {
+			if (server != null) {
+				server.kill();
+			}
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(null);
+		}
+	}
+
+	/**
+	 * Tests whether a client which doesn't send its TLS handshake is disconnected at the handshake deadline
+	 */
+	@Test
+	public void testHandshakeDeadline() {
+		checkHandshakeDeadline();
+	}
+
+	/**
+	 * Tests whether the non blocking transport disconnects a client which doesn't send its TLS handshake at the
+	 * handshake deadline
+	 */
+	@Test
+	public void testNioHandshakeDeadline() {
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(PropertiesManager.TRANSPORT_NIO);
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getEventLoopThreads()).thenReturn(1);
+		try {
+			checkHandshakeDeadline();
+		} finally {
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(null);
+		}
+	}
+
+	/**
+	 * Connects a client which stalls before its TLS handshake, and checks whether the server closes the connection at the
+	 * deadline of one second
+	 */
+	private void checkHandshakeDeadline() {
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getHandshakeTimeoutInSeconds()).thenReturn(1);
+
+		Server server = null;
+		try {
+			// Starting a Server
+			server = new Server();
+			Thread serverThread = new Thread(server);
+			serverThread.start();
+
+			// Starting a connection which never sends its handshake
+			Socket socket = new Socket("localhost", PORT);
+			socket.setSoTimeout(10000);
+			long start = System.nanoTime();
+			try {
+				InputStream in = socket.getInputStream();
+				while (in.read() != -1) {
+					// The server may send a TLS alert before it closes the connection
+				}
+			} catch (SocketException e) {
+				// The connection was reset by the server, which closed it as well
+			}
+			long elapsedMillis = (System.nanoTime() - start) / 1000000;
+			socket.close();
+
+			// Assert that the server closed the connection at the deadline instead of waiting for the client
+			assertTrue(elapsedMillis < 5000);
+
+		} catch (UnknownHostException e) {
+			fail("UnknownHostException");
+		} catch (SocketTimeoutException e) {
+			fail("The connection was not closed at the handshake deadline");
+		} catch (IOException e) {
+			fail("IOException");
+		} finally {
+			if (server != null) {
+				server.kill();
+			}
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getHandshakeTimeoutInSeconds()).thenReturn(0);
+		}
+	}
+
+	/**
+	 * Tests whether the non blocking transport hands the requests of a client to the client and sends the answers back
+	 */
+	@Test
+	public void testNioRequestResponse() {
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(PropertiesManager.TRANSPORT_NIO);
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getEventLoopThreads()).thenReturn(1);
+
+		Server server = null;
+		try {
+			// Starting a Server
+			server = new Server();
+			Thread serverThread = new Thread(server);
+			serverThread.start();
+
+			// Starting the connection
+			SSLSocketFactory sslsocketfactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+			SSLSocket sslsocket = (SSLSocket) sslsocketfactory.createSocket("localhost", PORT);
+			sslsocket.setSoTimeout(10000);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sslsocket.getOutputStream()));
+			DataInputStream in = new DataInputStream(sslsocket.getInputStream());
+
+			// A ping, and an action which isn't known, sent together
+			JsonObject ping = new JsonObject();
+			ping.addProperty(Actions.ACTION, ServerActions.PING);
+			out.writeUTF(ping.toString());
+			JsonObject unknown = new JsonObject();
+			unknown.addProperty(Actions.ACTION, "unknownAction");
+			out.writeUTF(unknown.toString());
+			out.flush();
+
+			// Assert that the answers arrive in the order of the requests
+			JsonObject pingResponse = new Gson().fromJson(in.readUTF(), JsonObject.class);
+			assertTrue(pingResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			JsonObject unknownResponse = new Gson().fromJson(in.readUTF(), JsonObject.class);
+			assertFalse(unknownResponse.get(Responses.SUCCESSFUL).getAsBoolean());
+			assertEquals(Errors.UNKNOWN_ACTION, unknownResponse.get(Responses.ERROR).getAsString());
+
+			// Assert that the server closes the connection when the client disconnects
+			JsonObject disconnect = new JsonObject();
+			disconnect.addProperty(Actions.ACTION, Actions.DISCONNECT);
+			out.writeUTF(disconnect.toString());
+			out.flush();
+			assertEquals(-1, in.read());
+
+			// Close connection
+			sslsocket.close();
+
+		} catch (UnknownHostException e) {
+			fail("UnknownHostException");
+		} catch (IOException e) {
+			fail("IOException");
+		} finally {
+			if (server != null) {
+				server.kill();
+			}
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getTransport()).thenReturn(null);
+		}
+	}
+
+	/**
+	 * Tests whether a second connection of an address is refused when an address may have one connection
+	 */
+	@Test
+	public void testConnectionLimitPerAddress() {
+		Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxConnectionsPerAddress()).thenReturn(1);
+
+		Server server = null;
+		try {
+			// Starting a Server
+			server = new Server();
+			Thread serverThread = new Thread(server);
+			serverThread.start();
+
+			// Starting the first connection, which is admitted
+			SSLSocketFactory sslsocketfactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+			SSLSocket sslsocket = (SSLSocket) sslsocketfactory.createSocket("localhost", PORT);
+			sslsocket.startHandshake();
+
+			// Assert that the second connection is closed before its handshake finishes
+			SSLSocket refusedSocket = (SSLSocket) sslsocketfactory.createSocket("localhost", PORT);
+			refusedSocket.setSoTimeout(10000);
+			try {
+				refusedSocket.startHandshake();
+				fail("The second connection of the address was admitted");
+			} catch (SocketTimeoutException e) {
+				fail("The second connection of the address was not refused");
+			} catch (IOException e) {
+				// The connection was refused
+			}
+
+			// Close connections
+			refusedSocket.close();
+			sslsocket.close();
+
+		} catch (UnknownHostException e) {
+			fail("UnknownHostException");
+		} catch (IOException e) {
+			fail("IOException");
+		} finally {
+			if (server != null) {
+				server.kill();
+			}
+			Mockito.when(MOCKED_PROPERTIES_MANAGER.getMaxConnectionsPerAddress()).thenReturn(0);
+		}
+	}
+
 }
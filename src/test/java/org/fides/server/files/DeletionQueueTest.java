@@ -0,0 +1,60 @@
+package org.fides.server.files;
+
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests for the DeletionQueue class.
+ *
+ */
+public class DeletionQueueTest {
+
+	private File folder;
+
+	/**
+	 * Creates the folder for the files of a test
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("deletion").toFile();
+	}
+
+	/**
+	 * Removes the files of a test
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	/**
+	 * Checks whether the queued files are deleted at the latest when the queue is flushed
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testDelete() throws IOException {
+		File first = new File(folder, "first");
+		File second = new File(folder, "second");
+		Files.write(first.toPath(), new byte[10]);
+		Files.write(second.toPath(), new byte[10]);
+
+		DeletionQueue.delete(Arrays.asList(first, second, new File(folder, "missing")));
+		DeletionQueue.flush();
+		assertFalse(first.exists());
+		assertFalse(second.exists());
+	}
+}
@@ -0,0 +1,131 @@
+package org.fides.server.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests for the FileJournal class.
+ *
+ */
+public class FileJournalTest {
+
+	private File folder;
+
+	private File file;
+
+	/**
+	 * Creates the file of a test
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("journal").toFile();
+		file = new File(folder, "file");
+		Files.write(file.toPath(), "0123456789".getBytes());
+	}
+
+	/**
+	 * Removes the files of a test
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	/**
+	 * Checks whether the ranges of a committed journal are written into the file, and the file may grow
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testApply() throws IOException {
+		try (FileJournal journal = new FileJournal(file)) {
+			assertEquals(2, journal.addRange(2, new ByteArrayInputStream("ab".getBytes()), 100));
+			assertEquals(3, journal.addRange(9, new ByteArrayInputStream("xyz".getBytes()), 100));
+			assertEquals(12, journal.getEnd());
+			journal.commit(10);
+		}
+		FileJournal.apply(file);
+
+		assertArrayEquals("01ab45678xyz".getBytes(), Files.readAllBytes(file.toPath()));
+		assertFalse(new File(folder, "file" + FileJournal.SUFFIX).exists());
+	}
+
+	/**
+	 * Checks whether the file is cut off at the size from before the ranges
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTruncate() throws IOException {
+		try (FileJournal journal = new FileJournal(file)) {
+			journal.addRange(0, new ByteArrayInputStream("ab".getBytes()), 100);
+			journal.commit(4);
+		}
+		FileJournal.apply(file);
+
+		assertArrayEquals("ab23".getBytes(), Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Checks whether a journal which wasn't committed is thrown away when the server starts
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRecoverUncommitted() throws IOException {
+		try (FileJournal journal = new FileJournal(file)) {
+			journal.addRange(0, new ByteArrayInputStream("ab".getBytes()), 100);
+		}
+		assertEquals(0, FileJournal.recover(folder));
+
+		assertArrayEquals("0123456789".getBytes(), Files.readAllBytes(file.toPath()));
+		assertFalse(new File(folder, "file" + FileJournal.SUFFIX).exists());
+	}
+
+	/**
+	 * Checks whether a committed journal is applied when the server starts
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRecoverCommitted() throws IOException {
+		try (FileJournal journal = new FileJournal(file)) {
+			journal.addRange(8, new ByteArrayInputStream("ab".getBytes()), 100);
+			journal.commit(10);
+		}
+		assertEquals(1, FileJournal.recover(folder));
+
+		assertArrayEquals("01234567ab".getBytes(), Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Checks whether ranges which are larger than allowed are refused
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTooBig() throws IOException {
+		try (FileJournal journal = new FileJournal(file)) {
+			journal.addRange(0, new ByteArrayInputStream(new byte[6]), 10);
+			assertEquals(-1, journal.addRange(0, new ByteArrayInputStream(new byte[6]), 10));
+			journal.discard();
+		}
+		assertEquals(Arrays.asList("file"), Arrays.asList(folder.list()));
+	}
+}
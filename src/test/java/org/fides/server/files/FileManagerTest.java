@@ -1,20 +1,30 @@
 package org.fides.server.files;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.fides.components.virtualstream.VirtualInputStream;
+import org.fides.server.protocol.JsonCodec;
 import org.fides.server.tools.PropertiesManager;
+import org.fides.server.tools.ServerActions;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -26,6 +36,8 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.google.gson.JsonObject;
+
 /**
  * The JUnit Test Case for the FileManager
  */
@@ -184,6 +196,33 @@ public class FileManagerTest {
 		}
 	}
 
+	/**
+	 * Tests if a range of a file is copied together with the total size of the file
+	 */
+	@Test
+	public void testCopyFileRangeToStream() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			assertTrue(FileManager.copyFileRangeToStream(new File(testDataDir, DEFAULTFILELOCATION), 10, 20, new DataOutputStream(bytes)));
+
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+			JsonObject response = new JsonCodec().readMessage(in);
+			assertEquals(MESSAGE.length, response.get(ServerActions.SIZE).getAsLong());
+			assertArrayEquals(Arrays.copyOfRange(MESSAGE, 10, 30), IOUtils.toByteArray(new VirtualInputStream(in)));
+		} catch (IOException e) {
+			fail("An unexpected exception has occured: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests if a range which starts after the end of the file is refused
+	 */
+	@Test
+	public void testCopyFileRangePastEnd() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		assertFalse(FileManager.copyFileRangeToStream(new File(testDataDir, DEFAULTFILELOCATION), MESSAGE.length + 1, 20, new DataOutputStream(bytes)));
+	}
+
 	/**
 	 * Tears down the test class by clearing the test folder.
 	 */
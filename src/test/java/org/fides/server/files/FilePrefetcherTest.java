@@ -0,0 +1,156 @@
+package org.fides.server.files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.FileUtils;
+import org.fides.server.files.FilePrefetcher.Prefetched;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests for the FilePrefetcher class.
+ *
+ */
+public class FilePrefetcherTest {
+
+	private File folder;
+
+	/**
+	 * Creates the folder for the files of a test
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("prefetcher").toFile();
+	}
+
+	/**
+	 * Removes the files of a test
+	 *
+	 * @throws IOException
+	 */
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(folder);
+	}
+
+	/**
+	 * Checks whether the files are handed over in order, with the content of the files that fit in the limit
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testOrderAndLargeFile() throws Exception {
+		File small = createFile("small", 10);
+		File large = createFile("large", 100);
+		File empty = createFile("empty", 0);
+		FilePrefetcher prefetcher = new FilePrefetcher(Arrays.asList(small, large, empty), 50);
+		prefetcher.start();
+		try {
+			Prefetched first = prefetcher.take();
+			assertArrayEquals(Files.readAllBytes(small.toPath()), first.getContent());
+			prefetcher.release(first);
+
+			Prefetched second = prefetcher.take();
+			assertEquals(large, second.getFile());
+			assertNull(second.getContent());
+			assertNull(second.getFailure());
+			prefetcher.release(second);
+
+			Prefetched third = prefetcher.take();
+			assertEquals(0, third.getContent().length);
+			prefetcher.release(third);
+		} finally {
+			prefetcher.stop();
+		}
+	}
+
+	/**
+	 * Checks whether no more than the limit is read ahead until the content is released
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testLimit() throws Exception {
+		File first = createFile("first", 40);
+		File second = createFile("second", 40);
+		final FilePrefetcher prefetcher = new FilePrefetcher(Arrays.asList(first, second), 50);
+		prefetcher.start();
+		try {
+			Prefetched prefetched = prefetcher.take();
+			FutureTask<Prefetched> next = new FutureTask<>(new Callable<Prefetched>() {
+				@Override
+				public Prefetched call() throws IOException {
+					return prefetcher.take();
+				}
+			});
+			new Thread(next).start();
+			try {
+				next.get(200, TimeUnit.MILLISECONDS);
+				fail("The second file doesn't fit until the first one is released");
+			} catch (TimeoutException e) {
+				// Expected
+			}
+
+			prefetcher.release(prefetched);
+			assertEquals(40, next.get(5, TimeUnit.SECONDS).getContent().length);
+		} finally {
+			prefetcher.stop();
+		}
+	}
+
+	/**
+	 * Checks whether a file which can't be read is handed over with its failure
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		File missing = new File(folder, "missing");
+		File present = createFile("present", 5);
+		FilePrefetcher prefetcher = new FilePrefetcher(Arrays.asList(missing, present), 50);
+		prefetcher.start();
+		try {
+			Prefetched failed = prefetcher.take();
+			assertNotNull(failed.getFailure());
+			prefetcher.release(failed);
+			assertEquals(5, prefetcher.take().getContent().length);
+		} finally {
+			prefetcher.stop();
+		}
+	}
+
+	/**
+	 * Creates a file with random content
+	 *
+	 * @param name
+	 *            The name of the file
+	 * @param size
+	 *            The size of the file
+	 * @return The file
+	 * @throws IOException
+	 */
+	private File createFile(String name, int size) throws IOException {
+		File file = new File(folder, name);
+		byte[] content = new byte[size];
+		new Random(size).nextBytes(content);
+		Files.write(file.toPath(), content);
+		return file;
+	}
+}
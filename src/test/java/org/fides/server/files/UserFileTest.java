@@ -4,8 +4,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import org.junit.Before;
@@ -70,6 +73,124 @@ public class UserFileTest {
 		assertFalse(userFile.checkOwned("testlocation"));
 	}
 
+	/**
+	 * Checks whether the files of a batch are added together with their space and saved once
+	 */
+	@Test
+	public void testAddFiles() {
+		UserFile userFile = new UserFile("userName6", "passwordHash");
+		long freeBytes = userFile.getAmountOfFreeBytes();
+
+		assertTrue(userFile.addFiles(Arrays.asList("location1", "location2"), 30));
+		assertTrue(userFile.checkOwned("location1"));
+		assertTrue(userFile.checkOwned("location2"));
+		assertEquals(freeBytes - 30, userFile.getAmountOfFreeBytes());
+
+		PowerMockito.verifyStatic(Mockito.times(1));
+		UserManager.saveUserFile(userFile);
+	}
+
+	/**
+	 * Checks whether only the owned files of a batch are removed together with their space and saved once
+	 */
+	@Test
+	public void testRemoveFiles() {
+		UserFile userFile = new UserFile("userName7", "passwordHash");
+		userFile.addFiles(Arrays.asList("location1", "location2"), 30);
+		long freeBytes = userFile.getAmountOfFreeBytes();
+
+		Map<String, Long> sizes = new HashMap<>();
+		sizes.put("location1", 10L);
+		sizes.put("location3", 20L);
+		assertEquals(Arrays.asList("location1"), userFile.removeFiles(sizes));
+		assertFalse(userFile.checkOwned("location1"));
+		assertTrue(userFile.checkOwned("location2"));
+		assertEquals(freeBytes + 10, userFile.getAmountOfFreeBytes());
+
+		PowerMockito.verifyStatic(Mockito.times(2));
+		UserManager.saveUserFile(userFile);
+	}
+
+	/**
+	 * Checks whether a resumable upload becomes a file of the user with its space when it is committed
+	 */
+	@Test
+	public void testCommitPendingUpload() {
+		UserFile userFile = new UserFile("userName8", "passwordHash");
+		long freeBytes = userFile.getAmountOfFreeBytes();
+
+		assertTrue(userFile.addPendingUpload("upload1"));
+		assertTrue(userFile.checkPendingUpload("upload1"));
+		assertFalse(userFile.checkOwned("upload1"));
+
+		assertTrue(userFile.commitPendingUpload("upload1", 40));
+		assertFalse(userFile.checkPendingUpload("upload1"));
+		assertTrue(userFile.checkOwned("upload1"));
+		assertEquals(freeBytes - 40, userFile.getAmountOfFreeBytes());
+	}
+
+	/**
+	 * Checks whether an abandoned resumable upload is forgotten
+	 */
+	@Test
+	public void testRemovePendingUploads() {
+		UserFile userFile = new UserFile("userName9", "passwordHash");
+		assertTrue(userFile.getPendingUploads().isEmpty());
+
+		userFile.addPendingUpload("upload1");
+		userFile.addPendingUpload("upload2");
+		assertTrue(userFile.removePendingUploads(Arrays.asList("upload1")));
+		assertFalse(userFile.checkPendingUpload("upload1"));
+		assertEquals(1, userFile.getPendingUploads().size());
+	}
+
+	/**
+	 * Checks whether the bytes a resumable upload received are counted in the used space until it is committed or
+	 * forgotten
+	 */
+	@Test
+	public void testChargePendingUpload() {
+		UserFile userFile = new UserFile("userName10", "passwordHash");
+		long freeBytes = userFile.getAmountOfFreeBytes();
+		userFile.addPendingUpload("upload1");
+		userFile.addPendingUpload("upload2");
+
+		assertTrue(userFile.chargePendingUpload("upload1", 30));
+		assertTrue(userFile.chargePendingUpload("upload1", 50));
+		assertTrue(userFile.chargePendingUpload("upload2", 20));
+		assertTrue(userFile.chargePendingUpload("upload3", 100));
+		assertEquals(freeBytes - 70, userFile.getAmountOfFreeBytes());
+
+		userFile.commitPendingUpload("upload1", 60);
+		assertEquals(freeBytes - 80, userFile.getAmountOfFreeBytes());
+
+		userFile.removePendingUploads(Arrays.asList("upload2"));
+		assertEquals(freeBytes - 60, userFile.getAmountOfFreeBytes());
+	}
+
+	/**
+	 * Checks whether uploads which reserve space at the same time can't together take more than the free space, and
+	 * whether the space they didn't use is free again when their reservations are closed
+	 */
+	@Test
+	public void testReserveBytes() {
+		UserFile userFile = new UserFile("userName11", "passwordHash");
+		userFile.addAmountOfBytes(userFile.getAmountOfFreeBytes() - 100);
+
+		SpaceReservation first = new SpaceReservation(userFile);
+		SpaceReservation second = new SpaceReservation(userFile);
+		assertTrue(first.take(60));
+		assertFalse(second.take(60));
+		assertTrue(second.take(40));
+		assertEquals(0, userFile.getAmountOfFreeBytes());
+
+		// The first upload is added to the used space, the second one failed
+		userFile.addAmountOfBytes(60);
+		first.close();
+		second.close();
+		assertEquals(40, userFile.getAmountOfFreeBytes());
+	}
+
 	/**
 	 * Checks whether amount of free bytes is calculated correctly
 	 */
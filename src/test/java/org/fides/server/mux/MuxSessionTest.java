@@ -0,0 +1,410 @@
+package org.fides.server.mux;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests for the MuxSession class.
+ *
+ */
+public class MuxSessionTest {
+
+	private static final int TIMEOUT_MILLIS = 5000;
+
+	/** The frames the client sends */
+	private DataOutputStream client;
+
+	/** The frames the server sends */
+	private DataInputStream server;
+
+	private DataInputStream sessionIn;
+
+	private DataOutputStream sessionOut;
+
+	private Thread sessionThread;
+
+	/**
+	 * Connects the client side of the test to the session
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		PipedInputStream toSession = new PipedInputStream(64 * 1024);
+		client = new DataOutputStream(new PipedOutputStream(toSession));
+		sessionIn = new DataInputStream(toSession);
+		PipedInputStream fromSession = new PipedInputStream(64 * 1024);
+		sessionOut = new DataOutputStream(new PipedOutputStream(fromSession));
+		server = new DataInputStream(fromSession);
+	}
+
+	/**
+	 * Ends the session
+	 *
+	 * @throws Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		if (sessionThread != null) {
+			writeFrame(0, MuxSession.CLOSE, new byte[0]);
+			sessionThread.join(TIMEOUT_MILLIS);
+		}
+	}
+
+	/**
+	 * Checks whether the handler of a stream gets the data of the stream and its answer is sent on the same stream
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testEcho() throws Exception {
+		startSession(new StreamHandler() {
+			@Override
+			public void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException {
+				IOUtils.copy(in, out);
+			}
+		}, 4, 1024);
+
+		byte[] data = "hello".getBytes(StandardCharsets.UTF_8);
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		writeFrame(1, MuxSession.DATA, data);
+		writeFrame(1, MuxSession.CLOSE, new byte[0]);
+
+		assertArrayEquals(data, readFrame(1, MuxSession.DATA));
+		readFrame(1, MuxSession.CLOSE);
+	}
+
+	/**
+	 * Checks whether a stream above the limit is refused
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testRefuseAboveLimit() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		startSession(new WaitingHandler(release), 1, 1024);
+
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		writeFrame(2, MuxSession.OPEN, new byte[0]);
+		readFrame(2, MuxSession.RESET);
+		release.countDown();
+	}
+
+	/**
+	 * Checks whether a stream which receives more than its window is reset
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWindowExceeded() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		startSession(new WaitingHandler(release), 4, 16);
+
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		writeFrame(1, MuxSession.DATA, new byte[16]);
+		writeFrame(1, MuxSession.DATA, new byte[1]);
+		readFrame(1, MuxSession.RESET);
+		release.countDown();
+	}
+
+	/**
+	 * Checks whether the session only ends after a handler which is busy with something else than its stream is done,
+	 * also when that takes longer than a few seconds, because the user is unlocked when the session ends
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testWaitForBusyHandler() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		startSession(new StreamHandler() {
+			@Override
+			public void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException {
+				started.countDown();
+				try {
+					release.await(6 * TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 4, 1024);
+
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		writeFrame(0, MuxSession.CLOSE, new byte[0]);
+		sessionThread.join(TIMEOUT_MILLIS + 1000);
+		assertTrue(sessionThread.isAlive());
+
+		release.countDown();
+		sessionThread.join(TIMEOUT_MILLIS);
+		assertFalse(sessionThread.isAlive());
+		sessionThread = null;
+	}
+
+	/**
+	 * Checks whether a handler which writes to a client that stopped reading doesn't keep the session from ending,
+	 * because the connection is closed before the session waits for the handlers
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testCloseUnblocksWriter() throws Exception {
+		final CountDownLatch writing = new CountDownLatch(1);
+		startSession(new StreamHandler() {
+			@Override
+			public void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException {
+				writing.countDown();
+				// More than the buffer of the connection
+				out.write(new byte[256 * 1024]);
+				out.flush();
+			}
+		}, server, 4, 1024 * 1024);
+
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		assertTrue(writing.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		writeFrame(0, MuxSession.CLOSE, new byte[0]);
+		sessionThread.join(TIMEOUT_MILLIS);
+		assertFalse(sessionThread.isAlive());
+		sessionThread = null;
+	}
+
+	/**
+	 * Checks whether a drain resets a stream which waits for a request, lets a busy stream finish its action and ends
+	 * the session after it
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testDrain() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		// The frames are sent by threads which end, a pipe fails when its last writer is gone
+		try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			Socket clientSocket = new Socket(listener.getInetAddress(), listener.getLocalPort());
+			Socket serverSocket = listener.accept()) {
+			client = new DataOutputStream(clientSocket.getOutputStream());
+			server = new DataInputStream(clientSocket.getInputStream());
+			sessionIn = new DataInputStream(serverSocket.getInputStream());
+			sessionOut = new DataOutputStream(serverSocket.getOutputStream());
+			checkDrain(started, release, serverSocket);
+		}
+	}
+
+	/**
+	 * Runs the drain test on a connection
+	 *
+	 * @param started
+	 *            Counted down when the busy stream started its action
+	 * @param release
+	 *            Ends the action of the busy stream
+	 * @param connection
+	 *            The connection of the session
+	 * @throws Exception
+	 */
+	private void checkDrain(final CountDownLatch started, final CountDownLatch release, Closeable connection) throws Exception {
+		final MuxSession session = startSession(new StreamHandler() {
+			@Override
+			public void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException {
+				while (in.read() >= 0) {
+					if (!tracker.startAction()) {
+						return;
+					}
+					try {
+						started.countDown();
+						release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+						out.write('a');
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						if (!tracker.endAction()) {
+							return;
+						}
+					}
+				}
+			}
+		}, connection, 4, 1024);
+
+		writeFrame(1, MuxSession.OPEN, new byte[0]);
+		writeFrame(2, MuxSession.OPEN, new byte[0]);
+		writeFrame(2, MuxSession.DATA, new byte[] { 1 });
+		assertTrue(started.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+
+		session.drain();
+		// The reset and the close of the session are sent by different threads
+		Set<String> frames = new HashSet<>();
+		for (int i = 0; i < 2; i++) {
+			frames.add(server.readInt() + ":" + server.readUnsignedByte());
+			assertEquals(0, server.readInt());
+		}
+		assertEquals(new HashSet<>(Arrays.asList("1:" + MuxSession.RESET, "0:" + MuxSession.CLOSE)), frames);
+		release.countDown();
+		assertArrayEquals(new byte[] { 'a' }, readFrame(2, MuxSession.DATA));
+		readFrame(2, MuxSession.CLOSE);
+		assertEquals(-1, server.read());
+		sessionThread.join(TIMEOUT_MILLIS);
+		assertFalse(sessionThread.isAlive());
+		sessionThread = null;
+	}
+
+	/**
+	 * Checks whether the session ends when the client sends nothing within the timeout of the connection, also when a
+	 * stream is open
+	 *
+	 * @throws Exception
+	 */
+	@Test
+	public void testIdleWithOpenStream() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		try (ServerSocket listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			Socket clientSocket = new Socket(listener.getInetAddress(), listener.getLocalPort());
+			Socket serverSocket = listener.accept()) {
+			serverSocket.setSoTimeout(200);
+			final MuxSession session = new MuxSession(new DataInputStream(serverSocket.getInputStream()), new DataOutputStream(
+				serverSocket.getOutputStream()), serverSocket, new WaitingHandler(release), 4, 1024, TIMEOUT_MILLIS);
+			DataOutputStream frames = new DataOutputStream(clientSocket.getOutputStream());
+			frames.writeInt(1);
+			frames.writeByte(MuxSession.OPEN);
+			frames.writeInt(0);
+			frames.flush();
+
+			try {
+				session.run();
+				fail("The idle session didn't time out");
+			} catch (SocketTimeoutException e) {
+				// The session ended
+			} finally {
+				release.countDown();
+			}
+		}
+	}
+
+	/**
+	 * Starts a session on its own thread, the connection isn't closed by the session
+	 *
+	 * @param handler
+	 *            The handler of the streams
+	 * @param maxStreams
+	 *            The maximum amount of open streams
+	 * @param windowSize
+	 *            The window of a stream
+	 * @return The session
+	 */
+	private MuxSession startSession(StreamHandler handler, int maxStreams, int windowSize) {
+		return startSession(handler, null, maxStreams, windowSize);
+	}
+
+	/**
+	 * Starts a session on its own thread
+	 *
+	 * @param handler
+	 *            The handler of the streams
+	 * @param connection
+	 *            What the session closes when it ends
+	 * @param maxStreams
+	 *            The maximum amount of open streams
+	 * @param windowSize
+	 *            The window of a stream
+	 * @return The session
+	 */
+	private MuxSession startSession(StreamHandler handler, Closeable connection, int maxStreams, int windowSize) {
+		final MuxSession session = new MuxSession(sessionIn, sessionOut, connection, handler, maxStreams, windowSize, TIMEOUT_MILLIS);
+		sessionThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					session.run();
+				} catch (IOException e) {
+					// The test checks the frames
+				}
+			}
+		});
+		sessionThread.setDaemon(true);
+		sessionThread.start();
+		return session;
+	}
+
+	/**
+	 * Sends a frame to the session
+	 *
+	 * @param streamId
+	 *            The id of the stream
+	 * @param type
+	 *            The type of the frame
+	 * @param payload
+	 *            The payload
+	 * @throws IOException
+	 */
+	private void writeFrame(int streamId, int type, byte[] payload) throws IOException {
+		client.writeInt(streamId);
+		client.writeByte(type);
+		client.writeInt(payload.length);
+		client.write(payload);
+		client.flush();
+	}
+
+	/**
+	 * Reads a frame of the session and checks its stream and type
+	 *
+	 * @param streamId
+	 *            The expected id of the stream
+	 * @param type
+	 *            The expected type
+	 * @return The payload
+	 * @throws IOException
+	 */
+	private byte[] readFrame(int streamId, int type) throws IOException {
+		assertEquals(streamId, server.readInt());
+		assertEquals(type, server.readUnsignedByte());
+		byte[] payload = new byte[server.readInt()];
+		server.readFully(payload);
+		return payload;
+	}
+
+	/**
+	 * A handler which doesn't read its stream until it is released
+	 */
+	private static class WaitingHandler implements StreamHandler {
+
+		private final CountDownLatch release;
+
+		WaitingHandler(CountDownLatch release) {
+			this.release = release;
+		}
+
+		@Override
+		public void handleStream(InputStream in, OutputStream out, ActionTracker tracker) throws IOException {
+			try {
+				release.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+package org.fides.server.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+
+import org.fides.components.Actions;
+import org.fides.components.Responses;
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+/**
+ * The tests for the BinaryCodec class and the negotiation of the codecs.
+ *
+ */
+public class BinaryCodecTest {
+
+	/**
+	 * Checks whether a request with a known action and properties survives the binary frames
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testRequest() throws IOException {
+		JsonObject request = new JsonObject();
+		request.addProperty(Actions.ACTION, Actions.GET_FILE);
+		request.addProperty(Actions.Properties.LOCATION, "c0ffee");
+
+		assertEquals(request, roundTrip(request));
+	}
+
+	/**
+	 * Checks whether responses with every type of value survive the binary frames
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testResponses() throws IOException {
+		JsonArray locations = new JsonArray();
+		locations.add(new JsonPrimitive("first"));
+		locations.add(new JsonPrimitive("second"));
+		JsonObject nested = new JsonObject();
+		nested.addProperty("size", 3);
+
+		JsonObject response = new JsonObject();
+		response.addProperty(Responses.SUCCESSFUL, true);
+		response.add(Responses.LOCATIONS, locations);
+		response.addProperty("count", -42L);
+		response.addProperty("ratio", 0.5);
+		response.addProperty("flag", false);
+		response.addProperty("unicode", "f\u00eed\u00e8s \u2713");
+		response.add("empty", JsonNull.INSTANCE);
+		response.add("nested", nested);
+		assertEquals(response, roundTrip(response));
+
+		JsonObject error = new JsonObject();
+		error.addProperty(Responses.SUCCESSFUL, false);
+		error.addProperty(Responses.ERROR, "Something went wrong");
+		assertEquals(error, roundTrip(error));
+	}
+
+	/**
+	 * Checks whether an action that isn't in the tables is sent by name
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testUnknownAction() throws IOException {
+		JsonObject request = new JsonObject();
+		request.addProperty(Actions.ACTION, "somethingNew");
+		assertEquals(request, roundTrip(request));
+	}
+
+	/**
+	 * Checks whether a frame with an invalid length is refused
+	 */
+	@Test
+	public void testInvalidLength() {
+		byte[] frame = { 0x7F, 0, 0, 0 };
+		try {
+			new BinaryCodec().readMessage(new DataInputStream(new ByteArrayInputStream(frame)));
+			fail("A frame larger than the maximum should be refused");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("length"));
+		}
+	}
+
+	/**
+	 * Checks whether a binary client is answered with the preamble and gets the binary codec
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNegotiateBinary() throws IOException {
+		ByteArrayOutputStream answer = new ByteArrayOutputStream();
+		PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(MessageCodecs.createPreamble()), MessageCodecs.PREAMBLE_SIZE);
+
+		MessageCodec codec = MessageCodecs.negotiate(in, answer);
+		assertTrue(codec instanceof BinaryCodec);
+		assertArrayEquals(MessageCodecs.createPreamble(), answer.toByteArray());
+	}
+
+	/**
+	 * Checks whether a JSON client gets the JSON codec and its request is left intact
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNegotiateJson() throws IOException {
+		JsonObject request = new JsonObject();
+		request.addProperty(Actions.ACTION, Actions.DISCONNECT);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF(request.toString());
+
+		ByteArrayOutputStream answer = new ByteArrayOutputStream();
+		PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(bytes.toByteArray()), MessageCodecs.PREAMBLE_SIZE);
+		MessageCodec codec = MessageCodecs.negotiate(in, answer);
+
+		assertSame(JsonCodec.class, codec.getClass());
+		assertEquals(0, answer.size());
+		assertEquals(request, codec.readMessage(new DataInputStream(in)));
+	}
+
+	/**
+	 * Writes a message with the binary codec and reads it back
+	 *
+	 * @param message
+	 *            The message
+	 * @return The message that was read
+	 * @throws IOException
+	 */
+	private static JsonObject roundTrip(JsonObject message) throws IOException {
+		BinaryCodec codec = new BinaryCodec();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.writeMessage(new DataOutputStream(bytes), message);
+		return codec.readMessage(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
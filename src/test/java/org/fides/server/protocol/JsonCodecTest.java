@@ -0,0 +1,117 @@
+package org.fides.server.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.fides.components.Actions;
+import org.fides.components.Responses;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * The tests for the JsonCodec class and the pre-encoded responses.
+ *
+ */
+public class JsonCodecTest {
+
+	/**
+	 * Checks whether the codec writes the same bytes as writeUTF with Gson, which the clients expect
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSameBytesAsWriteUtf() throws IOException {
+		JsonArray locations = new JsonArray();
+		locations.add(new JsonPrimitive("first"));
+		JsonObject message = new JsonObject();
+		message.addProperty(Responses.SUCCESSFUL, true);
+		message.add(Responses.LOCATIONS, locations);
+		message.addProperty("unicode", "f\u00eed\u00e8s \u2713 \u0000 <'>");
+
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		new DataOutputStream(expected).writeUTF(new Gson().toJson(message));
+
+		assertArrayEquals(expected.toByteArray(), new JsonCodec().encode(message));
+	}
+
+	/**
+	 * Checks whether the same codec reads several messages of different sizes after each other
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testReadMessages() throws IOException {
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			large.append("\u00e8x");
+		}
+		JsonObject first = new JsonObject();
+		first.addProperty(Actions.ACTION, Actions.GET_FILE);
+		first.addProperty(Actions.Properties.LOCATION, large.toString());
+		JsonObject second = new JsonObject();
+		second.addProperty(Actions.ACTION, Actions.DISCONNECT);
+		second.addProperty("size", 42);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeUTF(new Gson().toJson(first));
+		out.writeUTF(new Gson().toJson(second));
+
+		JsonCodec codec = new JsonCodec();
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		assertEquals(first, codec.readMessage(in));
+		JsonObject read = codec.readMessage(in);
+		assertEquals(second, read);
+		assertEquals(42, read.get("size").getAsInt());
+	}
+
+	/**
+	 * Checks whether a message with more than one JSON value is refused
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testTrailingContent() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new DataOutputStream(bytes).writeUTF("{\"action\":\"disconnect\"} {}");
+		try {
+			new JsonCodec().readMessage(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			fail("A message with trailing content should be refused");
+		} catch (JsonSyntaxException e) {
+			// Expected
+		}
+	}
+
+	/**
+	 * Checks whether the pre-encoded responses are the same as the encoded responses for both codecs
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testPreEncodedResponses() throws IOException {
+		MessageCodec[] codecs = { new JsonCodec(), new BinaryCodec() };
+		for (MessageCodec codec : codecs) {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			codec.writeSuccessful(out);
+			assertArrayEquals(codec.encode(PreEncodedResponses.createSuccessful()), bytes.toByteArray());
+
+			bytes.reset();
+			codec.writeError(out, "Something went wrong");
+			assertArrayEquals(codec.encode(PreEncodedResponses.createError("Something went wrong")), bytes.toByteArray());
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package org.fides.server.tools;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The tests for the CoalescingOutputStream and FlushingInputStream classes, which decide when the collected bytes of a
+ * response are written to the connection
+ */
+public class CoalescingOutputStreamTest {
+
+	/** The writes which reached the connection, by their size */
+	private final List<Integer> writes = new ArrayList<>();
+
+	private ByteArrayOutputStream connection;
+
+	private CoalescingOutputStream out;
+
+	/**
+	 * Creates a stream on a connection which records its writes
+	 */
+	@Before
+	public void setUp() {
+		writes.clear();
+		connection = new ByteArrayOutputStream() {
+			@Override
+			public synchronized void write(byte[] b, int off, int len) {
+				writes.add(len);
+				super.write(b, off, len);
+			}
+		};
+		out = new CoalescingOutputStream(connection);
+	}
+
+	/**
+	 * Checks whether small writes are collected until the stream is flushed, and then written at once
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testSmallWritesAreCollected() throws IOException {
+		out.write(1);
+		out.write(new byte[] { 2, 3 });
+		out.write(new byte[] { 4, 5, 6 }, 1, 2);
+		assertTrue(out.hasBufferedData());
+		assertTrue(writes.isEmpty());
+
+		out.flush();
+		assertFalse(out.hasBufferedData());
+		assertEquals(Arrays.asList(5), writes);
+		assertArrayEquals(new byte[] { 1, 2, 3, 5, 6 }, connection.toByteArray());
+
+		// Flushing an empty buffer writes nothing
+		out.flush();
+		assertEquals(1, writes.size());
+	}
+
+	/**
+	 * Checks whether the collected bytes are written when the next write doesn't fit in the buffer
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFullBufferIsWritten() throws IOException {
+		byte[] half = new byte[CoalescingOutputStream.RECORD_SIZE / 2 + 1];
+		out.write(half);
+		assertTrue(writes.isEmpty());
+
+		// The second half doesn't fit, so the first half is written as a record of its own
+		out.write(half);
+		assertEquals(Arrays.asList(half.length), writes);
+
+		// A single byte fills the buffer up to a whole record
+		out.write(new byte[CoalescingOutputStream.RECORD_SIZE - half.length]);
+		out.write(7);
+		assertEquals(Arrays.asList(half.length, CoalescingOutputStream.RECORD_SIZE), writes);
+
+		out.flush();
+		assertEquals(Arrays.asList(half.length, CoalescingOutputStream.RECORD_SIZE, 1), writes);
+		assertEquals(half.length + CoalescingOutputStream.RECORD_SIZE + 1, connection.size());
+	}
+
+	/**
+	 * Checks whether a write of a whole record or more goes to the connection directly, after the collected bytes
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testLargeWriteIsWrittenThrough() throws IOException {
+		out.write(new byte[] { 1, 2, 3 });
+		byte[] large = new byte[CoalescingOutputStream.RECORD_SIZE * 3];
+		Arrays.fill(large, (byte) 9);
+		out.write(large);
+
+		assertEquals(Arrays.asList(3, large.length), writes);
+		assertFalse(out.hasBufferedData());
+		byte[] written = connection.toByteArray();
+		assertArrayEquals(new byte[] { 1, 2, 3 }, Arrays.copyOfRange(written, 0, 3));
+		assertArrayEquals(large, Arrays.copyOfRange(written, 3, written.length));
+	}
+
+	/**
+	 * Checks whether the response is flushed before a read which would wait for the client
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testFlushBeforeBlockingRead() throws IOException {
+		// Nothing has arrived yet, so the server would wait for the client
+		InputStream in = new FlushingInputStream(new ByteArrayInputStream(new byte[0]), out);
+		out.write(new byte[] { 1, 2, 3 });
+		assertEquals(-1, in.read());
+		assertEquals(Arrays.asList(3), writes);
+		assertFalse(out.hasBufferedData());
+	}
+
+	/**
+	 * Checks whether the response is kept while the next request has already arrived, so the responses of pipelined
+	 * requests are collected
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testNoFlushWhileInputIsAvailable() throws IOException {
+		InputStream in = new FlushingInputStream(new ByteArrayInputStream(new byte[] { 4, 5 }), out);
+		out.write(new byte[] { 1, 2, 3 });
+		assertEquals(4, in.read());
+		assertTrue(writes.isEmpty());
+		assertTrue(out.hasBufferedData());
+
+		// The last byte of the request is read, after it the server would wait for the client
+		assertEquals(5, in.read());
+		assertEquals(-1, in.read());
+		assertEquals(Arrays.asList(3), writes);
+	}
+}
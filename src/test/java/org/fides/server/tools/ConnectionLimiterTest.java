@@ -0,0 +1,95 @@
+package org.fides.server.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import org.junit.Test;
+
+/**
+ * The tests for the ConnectionLimiter class.
+ *
+ */
+public class ConnectionLimiterTest {
+
+	/**
+	 * Checks whether a limiter without limits admits every connection
+	 * 
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void testUnlimited() throws UnknownHostException {
+		ConnectionLimiter limiter = new ConnectionLimiter(0, 0, 0);
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		for (int i = 0; i < 100; i++) {
+			assertTrue(limiter.tryAcquire(address));
+		}
+		assertEquals(100, limiter.getConnections());
+		assertEquals(100, limiter.getConnections(address));
+	}
+
+	/**
+	 * Checks whether the global limit is enforced and a released connection makes room for a new one
+	 * 
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void testGlobalLimit() throws UnknownHostException {
+		ConnectionLimiter limiter = new ConnectionLimiter(2, 0, 0);
+		InetAddress first = InetAddress.getByName("127.0.0.1");
+		InetAddress second = InetAddress.getByName("127.0.0.2");
+
+		assertTrue(limiter.tryAcquire(first));
+		assertTrue(limiter.tryAcquire(second));
+		assertFalse(limiter.tryAcquire(second));
+		assertEquals(2, limiter.getConnections());
+
+		limiter.release(first);
+		assertEquals(0, limiter.getConnections(first));
+		assertTrue(limiter.tryAcquire(second));
+		assertEquals(2, limiter.getConnections(second));
+	}
+
+	/**
+	 * Checks whether the limit per address doesn't affect other addresses
+	 * 
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void testPerAddressLimit() throws UnknownHostException {
+		ConnectionLimiter limiter = new ConnectionLimiter(0, 1, 0);
+		InetAddress first = InetAddress.getByName("127.0.0.1");
+		InetAddress second = InetAddress.getByName("127.0.0.2");
+
+		assertTrue(limiter.tryAcquire(first));
+		assertFalse(limiter.tryAcquire(first));
+		assertTrue(limiter.tryAcquire(second));
+		assertEquals(2, limiter.getConnections());
+
+		limiter.release(first);
+		assertTrue(limiter.tryAcquire(first));
+	}
+
+	/**
+	 * Checks whether no more connections than the accept rate are admitted at once
+	 * 
+	 * @throws UnknownHostException
+	 */
+	@Test
+	public void testAcceptRate() throws UnknownHostException {
+		ConnectionLimiter limiter = new ConnectionLimiter(0, 0, 5);
+		InetAddress address = InetAddress.getByName("127.0.0.1");
+		int admitted = 0;
+		for (int i = 0; i < 20; i++) {
+			if (limiter.tryAcquire(address)) {
+				admitted++;
+			}
+		}
+		// A few tokens may be refilled while looping
+		assertTrue(admitted >= 5 && admitted <= 6);
+		assertEquals(admitted, limiter.getConnections());
+	}
+}
@@ -0,0 +1,80 @@
+package org.fides.server.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The tests for the Histogram class.
+ *
+ */
+public class HistogramTest {
+
+	/**
+	 * Checks whether an empty histogram returns zeroes
+	 */
+	@Test
+	public void testEmptyHistogram() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getCount());
+		assertEquals(0, histogram.getMean());
+		assertEquals(0, histogram.getMax());
+		assertEquals(0, histogram.getPercentile(99));
+	}
+
+	/**
+	 * Checks whether the count, sum, mean and max are calculated correctly
+	 */
+	@Test
+	public void testCountSumMeanAndMax() {
+		Histogram histogram = new Histogram();
+		histogram.record(10);
+		histogram.record(20);
+		histogram.record(30);
+
+		assertEquals(3, histogram.getCount());
+		assertEquals(60, histogram.getSum());
+		assertEquals(20, histogram.getMean());
+		assertEquals(30, histogram.getMax());
+	}
+
+	/**
+	 * Checks whether the percentiles are an upper bound which is at most twice the real value
+	 */
+	@Test
+	public void testPercentileUpperBound() {
+		Histogram histogram = new Histogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		long median = histogram.getPercentile(50);
+		assertTrue(median >= 50);
+		assertTrue(median <= 100);
+		assertEquals(100, histogram.getPercentile(100));
+	}
+
+	/**
+	 * Checks whether negative values are recorded as zero
+	 */
+	@Test
+	public void testNegativeValue() {
+		Histogram histogram = new Histogram();
+		histogram.record(-5);
+		assertEquals(1, histogram.getCount());
+		assertEquals(0, histogram.getSum());
+	}
+
+	/**
+	 * Checks whether the counters in the Metrics are added up
+	 */
+	@Test
+	public void testMetricsCounter() {
+		String name = "test.counter." + System.nanoTime();
+		Metrics.increment(name);
+		Metrics.add(name, 4);
+		assertEquals(5, Metrics.getCount(name));
+		assertEquals(Long.valueOf(5), Metrics.counters().get(name));
+	}
+}
@@ -0,0 +1,175 @@
+package org.fides.server.tools;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * The tests for the SocketTuning class, and the raising of the buffers of a connection by the TransferMonitor
+ */
+public class SocketTuningTest {
+
+	private static final int ADAPTIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+	private static final int SMALL_BUFFER_SIZE = 64 * 1024;
+
+	private final PropertiesManager propertiesManager = Mockito.mock(PropertiesManager.class);
+
+	private final Socket socket = Mockito.mock(Socket.class);
+
+	/**
+	 * Enables the adaptive mode, which raises the buffers after an action transferred one megabyte
+	 *
+	 * @throws IOException
+	 */
+	@Before
+	public void setUp() throws IOException {
+		Mockito.when(propertiesManager.getAdaptiveBufferThresholdInMegabytes()).thenReturn(1);
+		Mockito.when(propertiesManager.getAdaptiveBufferSize()).thenReturn(ADAPTIVE_BUFFER_SIZE);
+		SocketTuning.configure(propertiesManager);
+
+		Mockito.when(socket.getSendBufferSize()).thenReturn(SMALL_BUFFER_SIZE);
+		Mockito.when(socket.getReceiveBufferSize()).thenReturn(SMALL_BUFFER_SIZE);
+	}
+
+	/**
+	 * Restores the default socket options
+	 */
+	@After
+	public void tearDown() {
+		PropertiesManager defaults = Mockito.mock(PropertiesManager.class);
+		Mockito.when(defaults.isTcpNoDelay()).thenReturn(true);
+		SocketTuning.configure(defaults);
+	}
+
+	/**
+	 * Checks whether the configured options are set on an accepted connection
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testApply() throws IOException {
+		Mockito.when(propertiesManager.getSocketSendBufferSize()).thenReturn(128 * 1024);
+		Mockito.when(propertiesManager.getSocketReceiveBufferSize()).thenReturn(256 * 1024);
+		Mockito.when(propertiesManager.isTcpNoDelay()).thenReturn(true);
+		Mockito.when(propertiesManager.isTcpKeepAlive()).thenReturn(true);
+		SocketTuning.configure(propertiesManager);
+
+		SocketTuning.apply(socket);
+		Mockito.verify(socket).setTcpNoDelay(true);
+		Mockito.verify(socket).setKeepAlive(true);
+		Mockito.verify(socket).setSendBufferSize(128 * 1024);
+		Mockito.verify(socket).setReceiveBufferSize(256 * 1024);
+	}
+
+	/**
+	 * Checks whether the options which aren't configured are left to the operating system
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testApplyDefaults() throws IOException {
+		SocketTuning.apply(socket);
+		Mockito.verify(socket, Mockito.never()).setTcpNoDelay(Mockito.anyBoolean());
+		Mockito.verify(socket, Mockito.never()).setKeepAlive(Mockito.anyBoolean());
+		Mockito.verify(socket, Mockito.never()).setSendBufferSize(Mockito.anyInt());
+		Mockito.verify(socket, Mockito.never()).setReceiveBufferSize(Mockito.anyInt());
+	}
+
+	/**
+	 * Checks whether the buffers are raised once, as soon as an action sent more than the threshold
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testBuffersRaisedAfterThreshold() throws IOException {
+		TransferMonitor monitor = new TransferMonitor(socket);
+		OutputStream out = monitor.wrap(NullOutputStream.NULL_OUTPUT_STREAM);
+		byte[] halfThreshold = new byte[512 * 1024];
+
+		monitor.startAction();
+		out.write(halfThreshold);
+		Mockito.verify(socket, Mockito.never()).setSendBufferSize(Mockito.anyInt());
+
+		out.write(halfThreshold);
+		out.write(halfThreshold);
+		monitor.endAction();
+		Mockito.verify(socket, Mockito.times(1)).setSendBufferSize(ADAPTIVE_BUFFER_SIZE);
+		Mockito.verify(socket, Mockito.times(1)).setReceiveBufferSize(ADAPTIVE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Checks whether the threshold applies to a single action, and counts the received bytes as well
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testThresholdPerAction() throws IOException {
+		TransferMonitor monitor = new TransferMonitor(socket);
+		OutputStream out = monitor.wrap(NullOutputStream.NULL_OUTPUT_STREAM);
+		byte[] halfThreshold = new byte[512 * 1024];
+
+		// Two actions which both stay below the threshold
+		monitor.startAction();
+		out.write(halfThreshold);
+		monitor.endAction();
+		monitor.startAction();
+		out.write(halfThreshold);
+		monitor.endAction();
+		Mockito.verify(socket, Mockito.never()).setSendBufferSize(Mockito.anyInt());
+
+		// An action which sends and receives half of the threshold
+		InputStream in = monitor.wrap(new ByteArrayInputStream(halfThreshold));
+		monitor.startAction();
+		out.write(halfThreshold);
+		IOUtils.copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+		monitor.endAction();
+		Mockito.verify(socket, Mockito.times(1)).setSendBufferSize(ADAPTIVE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Checks whether buffers which are larger than the adaptive size are left alone
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testLargeBuffersNotLowered() throws IOException {
+		Mockito.when(socket.getSendBufferSize()).thenReturn(ADAPTIVE_BUFFER_SIZE * 2);
+		TransferMonitor monitor = new TransferMonitor(socket);
+		OutputStream out = monitor.wrap(NullOutputStream.NULL_OUTPUT_STREAM);
+
+		monitor.startAction();
+		out.write(new byte[2 * 1024 * 1024]);
+		monitor.endAction();
+		Mockito.verify(socket, Mockito.never()).setSendBufferSize(Mockito.anyInt());
+		Mockito.verify(socket, Mockito.times(1)).setReceiveBufferSize(ADAPTIVE_BUFFER_SIZE);
+	}
+
+	/**
+	 * Checks whether the buffers aren't raised when the adaptive mode is disabled
+	 *
+	 * @throws IOException
+	 */
+	@Test
+	public void testAdaptiveDisabled() throws IOException {
+		Mockito.when(propertiesManager.getAdaptiveBufferThresholdInMegabytes()).thenReturn(0);
+		SocketTuning.configure(propertiesManager);
+		TransferMonitor monitor = new TransferMonitor(socket);
+		OutputStream out = monitor.wrap(NullOutputStream.NULL_OUTPUT_STREAM);
+
+		monitor.startAction();
+		out.write(new byte[2 * 1024 * 1024]);
+		monitor.endAction();
+		Mockito.verify(socket, Mockito.never()).setSendBufferSize(Mockito.anyInt());
+		Mockito.verify(socket, Mockito.never()).setReceiveBufferSize(Mockito.anyInt());
+	}
+}
@@ -0,0 +1,79 @@
+package org.fides.server.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mockito;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+/**
+ * The tests for the SslContextFactory class
+ */
+@PowerMockIgnore({ "javax.net.ssl.*", "javax.management.*" })
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(PropertiesManager.class)
+public class SslContextFactoryTest {
+
+	private static final String KEYSTOREPATH = "./keystore.jks";
+
+	private static final char[] KEYSTOREPASSWORD = "12345678".toCharArray();
+
+	private final PropertiesManager mockedPropertiesManager = Mockito.mock(PropertiesManager.class);
+
+	/**
+	 * Mocks the PropertiesManager to return the keystore of the tests
+	 */
+	@Before
+	public void setUpMock() {
+		PowerMockito.mockStatic(PropertiesManager.class);
+		Mockito.when(PropertiesManager.getInstance()).thenReturn(mockedPropertiesManager);
+		Mockito.when(mockedPropertiesManager.getKeystorePath()).thenReturn(KEYSTOREPATH);
+		Mockito.when(mockedPropertiesManager.getKeystorePassword()).thenReturn(KEYSTOREPASSWORD);
+	}
+
+	/**
+	 * Tests whether the session cache of the server gets the configured size and timeout
+	 */
+	@Test
+	public void testSessionCache() {
+		Mockito.when(mockedPropertiesManager.getSslSessionCacheSize()).thenReturn(1234);
+		Mockito.when(mockedPropertiesManager.getSslSessionTimeoutInSeconds()).thenReturn(600);
+		try {
+			SSLSessionContext sessionContext = SslContextFactory.createSslContext().getServerSessionContext();
+			assertEquals(1234, sessionContext.getSessionCacheSize());
+			assertEquals(600, sessionContext.getSessionTimeout());
+		} catch (GeneralSecurityException | IOException e) {
+			fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Tests whether the session cache keeps the defaults of the JDK when it isn't configured
+	 */
+	@Test
+	public void testSessionCacheDefaults() {
+		try {
+			SSLContext defaultContext = SSLContext.getInstance("TLS");
+			defaultContext.init(null, null, null);
+			SSLSessionContext defaults = defaultContext.getServerSessionContext();
+
+			SSLSessionContext sessionContext = SslContextFactory.createSslContext().getServerSessionContext();
+			assertEquals(defaults.getSessionCacheSize(), sessionContext.getSessionCacheSize());
+			assertEquals(defaults.getSessionTimeout(), sessionContext.getSessionTimeout());
+		} catch (GeneralSecurityException | IOException e) {
+			fail(e.getMessage());
+		}
+	}
+}